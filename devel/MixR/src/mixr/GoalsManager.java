@@ -28,6 +28,8 @@ import mixr.components.GoalProvider;
 import mixr.logic.Goal;
 import mixr.logic.Goals;
 import mixr.logic.InferenceStepResult;
+import mixr.logic.ProofTraceLogWriter;
+import mixr.logic.StandardProofTrace;
 import java.beans.PropertyChangeListener;
 
 /**
@@ -56,6 +58,26 @@ public interface GoalsManager {
      */
     void commitTransformedGoals(InferenceStepResult inferenceResult);
 
+    /**
+     * Sets the log to which this manager appends the
+     * {@link StandardProofTrace structured proof traces} of all committed
+     * inference steps. Steps without a structured proof trace are not logged.
+     *
+     * @param proofTraceLog the log to which to append the proof traces of
+     * committed inference steps. If {@code null}, no proof traces are logged.
+     */
+    void setProofTraceLog(ProofTraceLogWriter proofTraceLog);
+
+    /**
+     * Returns the log to which this manager appends the proof traces of
+     * committed inference steps (may be {@code null}). See
+     * {@link GoalsManager#setProofTraceLog(mixr.logic.ProofTraceLogWriter)}.
+     *
+     * @return the log to which this manager appends the proof traces of
+     * committed inference steps.
+     */
+    ProofTraceLogWriter getProofTraceLog();
+
     //<editor-fold defaultstate="collapsed" desc="Property Changed Stuff">
     /**
      * Registers a property listener. This manager provides the following
@@ -0,0 +1,52 @@
+/*
+ * File name: FormulaTranslatorsCatalogue.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.components;
+
+import java.util.Collection;
+import mixr.logic.FormulaTranslator;
+
+/**
+ * Lists formula translators without being a {@link MixRDriver MixR driver}.
+ * Implementations are registered in the default lookup (e.g.: with {@link
+ * org.openide.util.lookup.ServiceProvider}) and must be cheap to create.
+ *
+ * <p>Tools that run outside the MixR platform (e.g.: batch runners) use
+ * catalogues to find formula translators, since creating the drivers that
+ * {@link FormulaTranslationsProvider provide the translators} may need the
+ * running platform. Drivers should therefore list the same translators in a
+ * catalogue as they provide through {@link
+ * FormulaTranslationsProvider#getFormulaTranslators()}.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public interface FormulaTranslatorsCatalogue {
+
+    /**
+     * Returns the formula translators listed in this catalogue.
+     *
+     * @return the formula translators listed in this catalogue.
+     */
+    Collection<FormulaTranslator> getFormulaTranslators();
+}
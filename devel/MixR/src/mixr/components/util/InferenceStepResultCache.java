@@ -0,0 +1,365 @@
+/*
+ * File name: InferenceStepResultCache.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.components.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import mixr.components.GoalAcceptingReasoner;
+import mixr.components.GoalTransformer;
+import mixr.logic.AutomatedInferenceRule;
+import mixr.logic.Goal;
+import mixr.logic.GoalFingerprints;
+import mixr.logic.GoalTransformationResult;
+import mixr.logic.Goals;
+import mixr.logic.InferenceRuleDescriptor;
+import mixr.logic.InferenceStepResult;
+import mixr.logic.InferenceTarget;
+import mixr.logic.InferenceTargets;
+import mixr.logic.NondeterministicInferenceRule;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.NbBundle;
+import propity.util.MovableArrayList;
+
+/**
+ * Memoizes the results of
+ * {@link GoalTransformer#applyAutomatedInferenceRule(mixr.logic.InferenceTargets, mixr.logic.InferenceRuleDescriptor) automated inference rule applications}.
+ *
+ * <p>Results are keyed by the inference rule, the shape of the inference
+ * targets (their goal and subformula indices), and the
+ * {@link GoalFingerprints fingerprints} of the targeted goals. This means that
+ * applying the same rule on a structurally identical goal (e.g.: after the
+ * master reasoner refreshed its goals) returns the memoized result instead of
+ * recomputing it. Because fingerprints may collide, a memoized result is
+ * returned only if the targeted goals also
+ * {@link GoalFingerprints#haveEqualContents(mixr.logic.Goal, mixr.logic.Goal) have equal contents}.</p>
+ *
+ * <p>Memoized results are rebased onto the {@link Goals goals} of the new
+ * inference targets. The returned result therefore always references the new
+ * goals, which means that committing it reaches the correct
+ * {@link GoalAcceptingReasoner goal-accepting reasoner}.</p>
+ *
+ * <p>Only {@link GoalTransformationResult goal-transformation results} are
+ * memoized. Rules that implement {@link NondeterministicInferenceRule} are
+ * never memoized.</p>
+ *
+ * <p>The cache holds a bounded number of results and evicts the least
+ * recently used ones first. This class is thread-safe.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class InferenceStepResultCache {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    /**
+     * The maximum number of results held by the
+     * {@link InferenceStepResultCache#getDefault() default cache}.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+    private final LinkedHashMap<Key, MemoizedResult> results;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a cache that holds at most the given number of results.
+     *
+     * @param capacity the maximum number of results held by this cache.
+     */
+    @NbBundle.Messages({
+        "ISRC_capacity_invalid=The capacity of the inference step result cache must be positive."
+    })
+    public InferenceStepResultCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(Bundle.ISRC_capacity_invalid());
+        }
+        this.results = new LinkedHashMap<Key, MemoizedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MemoizedResult> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Returns the memoized result of applying the given rule on the given
+     * targets. If there is no memoized result, this method applies the rule
+     * through its {@link InferenceRuleDescriptor#getOwner() owner} and
+     * memoizes the result.
+     *
+     * @param targets the targets on which to apply the inference rule.
+     * @param inferenceRule the automated inference rule to apply.
+     * @return the result of the inference rule application.
+     */
+    public InferenceStepResult applyAutomatedInferenceRule(@NonNull final InferenceTargets targets, @NonNull final InferenceRuleDescriptor inferenceRule) {
+        return applyAutomatedInferenceRule(targets, inferenceRule, new AutomatedInferenceRule() {
+            @Override
+            public InferenceStepResult applyAutomatedInferenceRule(InferenceTargets targets) {
+                return inferenceRule.getOwner().applyAutomatedInferenceRule(targets, inferenceRule);
+            }
+        });
+    }
+
+    /**
+     * Returns the memoized result of applying the given rule on the given
+     * targets. If there is no memoized result, this method invokes the given
+     * computation and memoizes its result.
+     *
+     * <p>Goal-transforming reasoners can call this method from within their
+     * implementation of
+     * {@link GoalTransformer#applyAutomatedInferenceRule(mixr.logic.InferenceTargets, mixr.logic.InferenceRuleDescriptor)}.</p>
+     *
+     * @param targets the targets on which to apply the inference rule.
+     * @param inferenceRule the inference rule that identifies the memoized
+     * result.
+     * @param computation computes the result if it has not been memoized yet.
+     * @return the result of the inference rule application.
+     */
+    public InferenceStepResult applyAutomatedInferenceRule(@NonNull InferenceTargets targets, @NonNull InferenceRuleDescriptor inferenceRule, @NonNull AutomatedInferenceRule computation) {
+        if (inferenceRule instanceof NondeterministicInferenceRule) {
+            return computation.applyAutomatedInferenceRule(targets);
+        }
+        Key key = createKey(targets, inferenceRule);
+        MemoizedResult memoized;
+        synchronized (results) {
+            memoized = results.get(key);
+        }
+        if (memoized != null) {
+            InferenceStepResult rebased = memoized.rebase(targets.getGoals());
+            if (rebased != null) {
+                hits.incrementAndGet();
+                return rebased;
+            }
+        }
+        misses.incrementAndGet();
+        InferenceStepResult result = computation.applyAutomatedInferenceRule(targets);
+        if (result instanceof GoalTransformationResult && result.getOriginalGoals() == targets.getGoals()) {
+            synchronized (results) {
+                results.put(key, new MemoizedResult(result));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all memoized results.
+     */
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    /**
+     * Returns the number of currently memoized results.
+     *
+     * @return the number of currently memoized results.
+     */
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    /**
+     * Returns the number of times a memoized result was returned.
+     *
+     * @return the number of times a memoized result was returned.
+     */
+    public long getHitsCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times a result had to be computed.
+     *
+     * @return the number of times a result had to be computed.
+     */
+    public long getMissesCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the cache shared by all of MixR.
+     *
+     * @return the cache shared by all of MixR.
+     */
+    public static InferenceStepResultCache getDefault() {
+        return SingletonContainer.Instance;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private static Key createKey(InferenceTargets targets, InferenceRuleDescriptor inferenceRule) {
+        Goals goals = targets.getGoals();
+        List<InferenceTarget> inferenceTargets = targets.getInferenceTargets();
+        int[] shape;
+        Goal[] targetedGoals;
+        if (inferenceTargets.isEmpty()) {
+            // The rule is applied on all goals:
+            shape = new int[0];
+            targetedGoals = goals.toArray();
+        } else {
+            shape = new int[inferenceTargets.size() * 2];
+            targetedGoals = new Goal[inferenceTargets.size()];
+            for (int i = 0; i < inferenceTargets.size(); i++) {
+                InferenceTarget target = inferenceTargets.get(i);
+                shape[2 * i] = target.getGoalIndex();
+                shape[2 * i + 1] = target.getSubformulaIndex();
+                targetedGoals[i] = target.getGoalIndex() >= 0 && target.getGoalIndex() < goals.size()
+                        ? goals.get(target.getGoalIndex())
+                        : null;
+            }
+        }
+        return new Key(inferenceRule, goals.size(), shape, targetedGoals);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    private static final class Key {
+
+        private final InferenceRuleDescriptor inferenceRule;
+        private final int goalsCount;
+        private final int[] shape;
+        /**
+         * The targeted goals. Only their fingerprints take part in the hash
+         * code, their contents are compared in
+         * {@link Key#equals(java.lang.Object)}.
+         */
+        private final Goal[] targetedGoals;
+        private final long[] fingerprints;
+        private final int hash;
+
+        Key(InferenceRuleDescriptor inferenceRule, int goalsCount, int[] shape, Goal[] targetedGoals) {
+            this.inferenceRule = inferenceRule;
+            this.goalsCount = goalsCount;
+            this.shape = shape;
+            this.targetedGoals = targetedGoals;
+            this.fingerprints = new long[targetedGoals.length];
+            for (int i = 0; i < targetedGoals.length; i++) {
+                fingerprints[i] = GoalFingerprints.fingerprint(targetedGoals[i]);
+            }
+            int h = inferenceRule.hashCode();
+            h = 31 * h + goalsCount;
+            h = 31 * h + Arrays.hashCode(shape);
+            h = 31 * h + Arrays.hashCode(fingerprints);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && goalsCount == other.goalsCount
+                    && inferenceRule.equals(other.inferenceRule)
+                    && Arrays.equals(shape, other.shape)
+                    && Arrays.equals(fingerprints, other.fingerprints)
+                    && haveEqualContents(targetedGoals, other.targetedGoals);
+        }
+
+        private static boolean haveEqualContents(Goal[] goals1, Goal[] goals2) {
+            for (int i = 0; i < goals1.length; i++) {
+                if (!GoalFingerprints.haveEqualContents(goals1[i], goals2[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class MemoizedResult {
+
+        private final InferenceStepResult result;
+        /**
+         * The fingerprints of the original goals that were changed by the
+         * memoized result ({@code 0} for unchanged goals). A memoized result
+         * may be rebased only onto goals where all these fingerprints match
+         * and whose contents equal the ones of the original goals.
+         */
+        private final long[] changedGoalFingerprints;
+
+        MemoizedResult(InferenceStepResult result) {
+            this.result = result;
+            Goals originalGoals = result.getOriginalGoals();
+            this.changedGoalFingerprints = new long[result.getTransformedGoalsCount()];
+            for (int i = 0; i < changedGoalFingerprints.length; i++) {
+                if (result.isGoalChanged(i)) {
+                    changedGoalFingerprints[i] = GoalFingerprints.fingerprint(originalGoals.get(i));
+                }
+            }
+        }
+
+        /**
+         * Returns the memoized result rebased onto the given goals, or
+         * {@code null} if the memoized result does not fit the given goals.
+         */
+        @SuppressWarnings("unchecked")
+        InferenceStepResult rebase(Goals goals) {
+            if (goals == result.getOriginalGoals()) {
+                return result;
+            }
+            if (goals.size() < changedGoalFingerprints.length) {
+                return null;
+            }
+            MovableArrayList<Goal>[] transformedGoals = new MovableArrayList[goals.size()];
+            for (int i = 0; i < changedGoalFingerprints.length; i++) {
+                if (result.isGoalChanged(i)) {
+                    if (GoalFingerprints.fingerprint(goals.get(i)) != changedGoalFingerprints[i]
+                            || !GoalFingerprints.haveEqualContents(goals.get(i), result.getOriginalGoals().get(i))) {
+                        return null;
+                    }
+                    List<Goal> goalsForTarget = result.getTransformedGoalsFor(i);
+                    transformedGoals[i] = new MovableArrayList<>(goalsForTarget.size());
+                    transformedGoals[i].addAll(goalsForTarget);
+                }
+            }
+            return new GoalTransformationResult(result.getSlaveReasoner(), goals, transformedGoals, result.getProofTrace());
+        }
+    }
+
+    private static class SingletonContainer {
+
+        private static final InferenceStepResultCache Instance = new InferenceStepResultCache(DEFAULT_CAPACITY);
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,351 @@
+/*
+ * File name: RepresentationPrecomputer.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.components.util;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mixr.FormulaFormatManager;
+import mixr.GoalsManager;
+import mixr.MixR;
+import mixr.logic.Formula;
+import mixr.logic.FormulaFormat;
+import mixr.logic.FormulaRepresentation;
+import mixr.logic.FormulaTranslator;
+import mixr.logic.Goal;
+import mixr.logic.Goals;
+import org.openide.util.Lookup;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Speculatively translates the current goals into all formats reachable from
+ * their main representations, so that the user does not have to wait for
+ * translations when first selecting a goal.
+ *
+ * <p>This precomputer listens for the {@link GoalsManager#CurrentGoalsChangedEvent
+ * current goals changed event}. Whenever a new snapshot of goals arrives, it
+ * schedules one low-priority background task per goal. Each task calls
+ * {@link Formula#fetchRepresentations(mixr.logic.FormulaFormat)} on the goal
+ * formula, the conclusion and all premises for every format that one of the
+ * {@link FormulaFormatManager#getFormulaTranslatorsFrom(mixr.logic.FormulaFormat)
+ * registered translators} can produce. It then continues with the translators
+ * from each newly produced format, until no new formats can be reached.
+ * Translations are memoized in the formulae themselves, so later requests from
+ * the UI return immediately.</p>
+ *
+ * <p>Goals nearest the {@link RepresentationPrecomputer#setSelectedGoalIndex(int)
+ * user's selection} are processed first. Changing the selection reorders the
+ * tasks that have not started yet.</p>
+ *
+ * <p>All outstanding work is cancelled as soon as a newer snapshot of goals
+ * arrives. Tasks that are already running stop before the next translation.
+ * This class is thread-safe.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public final class RepresentationPrecomputer implements PropertyChangeListener {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final RequestProcessor processor;
+    private final Object lock = new Object();
+    private volatile int generation;
+    private Goals goals;
+    private RequestProcessor.Task[] tasks;
+    private int selectedGoalIndex;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructor">
+    /**
+     * Creates a precomputer that runs its tasks on the given number of
+     * background threads.
+     *
+     * @param throughput the maximum number of goals translated concurrently.
+     */
+    @NbBundle.Messages({
+        "RP_processor_name=MixR representation precomputation"
+    })
+    public RepresentationPrecomputer(int throughput) {
+        this.processor = new RequestProcessor(Bundle.RP_processor_name(), Math.max(1, throughput));
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Returns the precomputer used by MixR. It uses all but one of the
+     * available processors.
+     *
+     * @return the precomputer used by MixR.
+     */
+    public static RepresentationPrecomputer getDefault() {
+        return SingletonContainer.Instance;
+    }
+
+    /**
+     * Starts listening for goal changes of the given manager and schedules the
+     * precomputation of its current goals.
+     *
+     * @param goalsManager the goals manager whose goals to precompute.
+     */
+    public void attachTo(GoalsManager goalsManager) {
+        goalsManager.addPropertyChangeListener(this, GoalsManager.CurrentGoalsChangedEvent);
+        precompute(goalsManager.getCurrentGoals());
+    }
+
+    /**
+     * Stops listening for goal changes of the given manager and cancels all
+     * outstanding work.
+     *
+     * @param goalsManager the goals manager from which to detach.
+     */
+    public void detachFrom(GoalsManager goalsManager) {
+        goalsManager.removePropertyChangeListener(this, GoalsManager.CurrentGoalsChangedEvent);
+        precompute(null);
+    }
+
+    /**
+     * Cancels all outstanding work and schedules the precomputation of the
+     * given goals.
+     *
+     * @param goals the new snapshot of goals. May be {@code null}, in which
+     * case only the outstanding work is cancelled.
+     */
+    public void precompute(Goals goals) {
+        synchronized (lock) {
+            cancelPendingTasks();
+            ++generation;
+            this.goals = goals;
+            this.tasks = goals == null || goals.isEmpty() ? null : new RequestProcessor.Task[goals.size()];
+            if (tasks != null) {
+                for (int goalIndex : goalsBySelectionDistance()) {
+                    tasks[goalIndex] = postTask(goalIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the goal that the user currently focuses on.
+     *
+     * @return the index of the goal that the user currently focuses on.
+     */
+    public int getSelectedGoalIndex() {
+        synchronized (lock) {
+            return selectedGoalIndex;
+        }
+    }
+
+    /**
+     * Tells this precomputer which goal the user currently focuses on. Goals
+     * nearer this one are precomputed first.
+     *
+     * @param selectedGoalIndex the index of the selected goal in the current
+     * goals.
+     */
+    public void setSelectedGoalIndex(int selectedGoalIndex) {
+        synchronized (lock) {
+            if (this.selectedGoalIndex != selectedGoalIndex) {
+                this.selectedGoalIndex = selectedGoalIndex;
+                if (tasks != null) {
+                    // Repost the tasks that have not started yet in the new
+                    // order:
+                    for (int goalIndex : goalsBySelectionDistance()) {
+                        if (tasks[goalIndex].cancel()) {
+                            tasks[goalIndex] = postTask(goalIndex);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        if (GoalsManager.CurrentGoalsChangedEvent.equals(evt.getPropertyName())) {
+            assert (evt.getNewValue() == null || evt.getNewValue() instanceof Goals);
+            precompute((Goals) evt.getNewValue());
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private void cancelPendingTasks() {
+        if (tasks != null) {
+            for (RequestProcessor.Task task : tasks) {
+                task.cancel();
+            }
+        }
+    }
+
+    private Integer[] goalsBySelectionDistance() {
+        Integer[] order = new Integer[tasks.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final int selected = selectedGoalIndex;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int distanceA = Math.abs(a - selected);
+                int distanceB = Math.abs(b - selected);
+                return distanceA == distanceB ? Integer.compare(a, b) : Integer.compare(distanceA, distanceB);
+            }
+        });
+        return order;
+    }
+
+    private RequestProcessor.Task postTask(int goalIndex) {
+        return processor.post(new GoalPrecomputation(generation, goals.get(goalIndex)), 0, Thread.MIN_PRIORITY);
+    }
+
+    private boolean isStale(int taskGeneration) {
+        return taskGeneration != generation;
+    }
+
+    private class GoalPrecomputation implements Runnable {
+
+        private final int taskGeneration;
+        private final Goal goal;
+
+        GoalPrecomputation(int taskGeneration, Goal goal) {
+            this.taskGeneration = taskGeneration;
+            this.goal = goal;
+        }
+
+        @Override
+        public void run() {
+            MixR mixr = Lookup.getDefault().lookup(MixR.class);
+            if (mixr == null || goal == null) {
+                return;
+            }
+            ArrayList<Formula> formulae = new ArrayList<>();
+            formulae.add(goal.asFormula());
+            formulae.add(goal.getConclusion());
+            for (int i = 0; i < goal.getPremisesCount(); i++) {
+                formulae.add(goal.getPremiseAt(i));
+            }
+            for (Formula formula : formulae) {
+                if (formula != null && !precomputeFormula(mixr.getFormulaFormatManager(), formula)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Walks the translator graph breadth-first from the main translation
+         * source of the formula. Only formats into which the formula was
+         * actually translated are expanded further, and every format is
+         * visited at most once.
+         *
+         * @return {@code false} iff this task became stale.
+         */
+        private boolean precomputeFormula(FormulaFormatManager formatManager, Formula formula) {
+            if (!formula.hasMainTranslationSource()) {
+                return true;
+            }
+            FormulaFormat sourceFormat = formula.getMainTranslationSourceFormat();
+            HashSet<FormulaFormat> visitedFormats = new HashSet<>();
+            ArrayDeque<FormulaFormat> producedFormats = new ArrayDeque<>();
+            visitedFormats.add(sourceFormat);
+            producedFormats.add(sourceFormat);
+            while (!producedFormats.isEmpty()) {
+                FormulaFormat fromFormat = producedFormats.poll();
+                for (Map.Entry<FormulaFormat, ArrayList<FormulaTranslator>> entry : getTranslatorsByTarget(formatManager, fromFormat).entrySet()) {
+                    FormulaFormat format = entry.getKey();
+                    if (!visitedFormats.add(format)) {
+                        continue;
+                    }
+                    if (isStale(taskGeneration)) {
+                        return false;
+                    }
+                    if (!formula.hasAttemptedTranslations(format)) {
+                        try {
+                            if (fromFormat == sourceFormat) {
+                                formula.fetchRepresentations(format);
+                            } else {
+                                translateWithAny(formula, entry.getValue());
+                            }
+                        } catch (RuntimeException ex) {
+                            Logger.getLogger(RepresentationPrecomputer.class.getName()).log(Level.INFO, String.format("Speculative translation to '%s' failed.", format.getFormatName()), ex);
+                        }
+                    }
+                    if (formula.getRepresentation(format) != null) {
+                        producedFormats.add(format);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private LinkedHashMap<FormulaFormat, ArrayList<FormulaTranslator>> getTranslatorsByTarget(FormulaFormatManager formatManager, FormulaFormat fromFormat) {
+            LinkedHashMap<FormulaFormat, ArrayList<FormulaTranslator>> translatorsByTarget = new LinkedHashMap<>();
+            Set<FormulaTranslator> translators = formatManager.getFormulaTranslatorsFrom(fromFormat);
+            if (translators != null) {
+                for (FormulaTranslator translator : translators) {
+                    ArrayList<FormulaTranslator> targetTranslators = translatorsByTarget.get(translator.getToFormat());
+                    if (targetTranslators == null) {
+                        translatorsByTarget.put(translator.getToFormat(), targetTranslators = new ArrayList<>());
+                    }
+                    targetTranslators.add(translator);
+                }
+            }
+            return translatorsByTarget;
+        }
+
+        /**
+         * Formulae translate only from their main translation source by
+         * themselves, so formats further away are translated here, from the
+         * representations produced earlier in the walk.
+         */
+        private void translateWithAny(Formula formula, ArrayList<FormulaTranslator> translators) {
+            for (FormulaTranslator translator : translators) {
+                try {
+                    FormulaRepresentation representation = formula.translateWith(translator);
+                    if (representation != null) {
+                        formula.addRepresentation(representation);
+                        return;
+                    }
+                } catch (FormulaTranslator.TranslationException ex) {
+                    Logger.getLogger(RepresentationPrecomputer.class.getName()).log(Level.INFO, String.format("Speculative translation with '%s' failed.", translator.getPrettyName()), ex);
+                }
+            }
+        }
+    }
+
+    private static class SingletonContainer {
+
+        private static final RepresentationPrecomputer Instance = new RepresentationPrecomputer(Runtime.getRuntime().availableProcessors() - 1);
+    }
+    // </editor-fold>
+}
@@ -30,9 +30,12 @@ import mixr.components.GoalAcceptingReasoner;
 import mixr.components.GoalProvider;
 import mixr.logic.Goals;
 import mixr.logic.InferenceStepResult;
+import mixr.logic.ProofTraceLogWriter;
+import mixr.logic.StandardProofTrace;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.openide.util.NbBundle;
@@ -49,6 +52,7 @@ class GoalsManagerImpl implements GoalsManager, ManagerInternals {
     private Goals currentGoals;
     private GoalsChangedListener goalsChangedListener;
     private MixRImpl mixr;
+    private volatile ProofTraceLogWriter proofTraceLog;
     // </editor-fold>
 
     // <editor-fold defaultstate="collapsed" desc="Constructors">
@@ -85,10 +89,21 @@ class GoalsManagerImpl implements GoalsManager, ManagerInternals {
                 GoalAcceptingReasoner goalAcceptingReasoner = (GoalAcceptingReasoner) masterReasoner;
                 goalAcceptingReasoner.commitTransformedGoals(inferenceResult);
             }
+            logProofTrace(inferenceResult);
         } else {
             throw new IllegalArgumentException(Bundle.GMI_inference_step_empty_or_invalid());
         }
     }
+
+    @Override
+    public void setProofTraceLog(ProofTraceLogWriter proofTraceLog) {
+        this.proofTraceLog = proofTraceLog;
+    }
+
+    @Override
+    public ProofTraceLogWriter getProofTraceLog() {
+        return proofTraceLog;
+    }
     //</editor-fold>
 
     // <editor-fold defaultstate="collapsed" desc="Property Changed Event Stuff">
@@ -118,6 +133,25 @@ class GoalsManagerImpl implements GoalsManager, ManagerInternals {
     private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
     // </editor-fold>
 
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    @NbBundle.Messages({
+        "GMI_proof_trace_log_failed=Could not append the proof trace of the committed inference step to the proof trace log."
+    })
+    private void logProofTrace(InferenceStepResult inferenceResult) {
+        ProofTraceLogWriter log = proofTraceLog;
+        if (log != null && inferenceResult.getProofTrace() instanceof StandardProofTrace) {
+            try {
+                synchronized (log) {
+                    log.write((StandardProofTrace) inferenceResult.getProofTrace());
+                    log.flush();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(GoalsManagerImpl.class.getName()).log(Level.WARNING, Bundle.GMI_proof_trace_log_failed(), ex);
+            }
+        }
+    }
+    // </editor-fold>
+
     // <editor-fold defaultstate="collapsed" desc="Private Properties">
     private void setCurrentGoals(Goals goals) {
         if (goals != currentGoals) {
@@ -25,6 +25,7 @@
 package mixr.implementation;
 
 import mixr.components.MixRDriver;
+import mixr.components.util.RepresentationPrecomputer;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -130,6 +131,9 @@ public final class MixRImpl implements MixR, Runnable {
                 manager.onAfterComponentsLoaded();
             }
 
+            // Start translating new goals speculatively in the background:
+            RepresentationPrecomputer.getDefault().attachTo(goalManager);
+
             initialised = true;
             Logger.getLogger(MixRImpl.class.getName()).log(Level.INFO, "MixR initialised.");
         } else {
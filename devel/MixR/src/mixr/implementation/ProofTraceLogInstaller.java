@@ -0,0 +1,125 @@
+/*
+ * File name: ProofTraceLogInstaller.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.implementation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mixr.GoalsManager;
+import mixr.MixR;
+import mixr.logic.ProofTraceLogWriter;
+import org.openide.modules.OnStart;
+import org.openide.modules.OnStop;
+import org.openide.modules.Places;
+import org.openide.util.Lookup;
+import org.openide.util.NbBundle;
+
+/**
+ * Opens the proof trace log when MixR starts and sets it to the {@link
+ * GoalsManager#setProofTraceLog(mixr.logic.ProofTraceLogWriter) goals
+ * manager}, which then appends the proof traces of all committed inference
+ * steps to it.
+ *
+ * <p>The log is the file {@link ProofTraceLogInstaller#LOG_FILE_NAME} in the
+ * {@link Places#getUserDirectory() user directory}. Every run of MixR appends
+ * a new session to it. Start MixR with {@code -J-Dmixr.proofTraceLog=false}
+ * to turn the log off.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+@OnStart
+public final class ProofTraceLogInstaller implements Runnable {
+
+    // <editor-fold defaultstate="collapsed" desc="Constants">
+    /**
+     * The system property that turns the proof trace log off if set to
+     * {@code false}.
+     */
+    public static final String ENABLED_PROPERTY = "mixr.proofTraceLog";
+    /**
+     * The path of the proof trace log relative to the user directory.
+     */
+    public static final String LOG_FILE_NAME = "var/log/mixr-proof-traces.bin";
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Runnable Implementation">
+    @Override
+    @NbBundle.Messages({
+        "PTLI_open_failed=Could not open the proof trace log ''{0}''."
+    })
+    public void run() {
+        GoalsManager goalsManager = getGoalsManager();
+        File userDirectory = Places.getUserDirectory();
+        if (goalsManager == null || userDirectory == null
+                || !Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+            return;
+        }
+        File logFile = new File(userDirectory, LOG_FILE_NAME);
+        try {
+            logFile.getParentFile().mkdirs();
+            goalsManager.setProofTraceLog(new ProofTraceLogWriter(logFile));
+        } catch (IOException ex) {
+            Logger.getLogger(ProofTraceLogInstaller.class.getName()).log(Level.WARNING, Bundle.PTLI_open_failed(logFile), ex);
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    /**
+     * Closes the proof trace log when MixR shuts down.
+     */
+    @OnStop
+    public static final class Closer implements Runnable {
+
+        @Override
+        @NbBundle.Messages({
+            "PTLI_close_failed=Could not close the proof trace log."
+        })
+        public void run() {
+            GoalsManager goalsManager = getGoalsManager();
+            ProofTraceLogWriter log = goalsManager == null ? null : goalsManager.getProofTraceLog();
+            if (log != null) {
+                goalsManager.setProofTraceLog(null);
+                try {
+                    // The goals manager synchronises its writes on the log:
+                    synchronized (log) {
+                        log.close();
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(ProofTraceLogInstaller.class.getName()).log(Level.WARNING, Bundle.PTLI_close_failed(), ex);
+                }
+            }
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private static GoalsManager getGoalsManager() {
+        MixR mixr = Lookup.getDefault().lookup(MixR.class);
+        return mixr == null ? null : mixr.getGoalManager();
+    }
+    // </editor-fold>
+}
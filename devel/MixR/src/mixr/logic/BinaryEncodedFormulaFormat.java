@@ -0,0 +1,76 @@
+/*
+ * File name: BinaryEncodedFormulaFormat.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
+
+/**
+ * Formula formats of this type provide a binary codec for their
+ * {@link FormulaRepresentation representations}. The codec is used by
+ * {@link GoalCorpusWriter} and {@link GoalCorpusReader} to store and load
+ * goals.
+ *
+ * <p>Formats that do not implement this interface but implement
+ * {@link TextEncodedFormulaFormat} are stored through their text encoding
+ * instead. Representations in formats that implement neither are not
+ * stored.</p>
+ *
+ * <p>The codec is responsible for encoding the whole representation,
+ * including its {@link FormulaRepresentation#getFreeVariables() free
+ * variables}. Use {@link BinaryEncoding} for compact encodings of integers and
+ * strings.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public interface BinaryEncodedFormulaFormat extends FormulaFormat {
+
+    /**
+     * Writes the given representation (which must be of this format) to the
+     * given output.
+     *
+     * @param representation the representation to encode.
+     * @param out the output to which to write the representation.
+     * @throws IOException thrown if writing to the output failed.
+     * @throws FormulaEncodingException thrown if the given representation
+     * could not be encoded (e.g.: if it is not of this format).
+     */
+    void encodeRepresentation(FormulaRepresentation representation, DataOutput out) throws IOException, FormulaEncodingException;
+
+    /**
+     * Reads a representation of this format from the given input. The input
+     * contains exactly the data written by
+     * {@link BinaryEncodedFormulaFormat#encodeRepresentation(mixr.logic.FormulaRepresentation, java.io.DataOutput)}.
+     *
+     * @param in the input from which to read the representation.
+     * @return the decoded representation.
+     * @throws IOException thrown if reading from the input failed.
+     * @throws FormulaEncodingException thrown if the representation could not
+     * be decoded.
+     */
+    FormulaRepresentation decodeRepresentation(DataInput in) throws IOException, FormulaEncodingException;
+}
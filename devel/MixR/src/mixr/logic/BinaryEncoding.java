@@ -0,0 +1,210 @@
+/*
+ * File name: BinaryEncoding.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.openide.util.NbBundle;
+
+/**
+ * Helper methods for compact binary encodings used by MixR's binary formats
+ * (e.g.: {@link ProofTraceLogWriter proof trace logs}, {@link GoalCorpusWriter
+ * goal corpora}, and {@link BinaryEncodedFormulaFormat binary formula
+ * codecs}).
+ *
+ * <p>Integers are encoded as variable-length integers (7 bits per byte, least
+ * significant group first). Signed values should be
+ * {@link BinaryEncoding#zigZag(int) zig-zag encoded} before they are written
+ * as variable-length integers. Strings are written as UTF-8 bytes prefixed by
+ * their length (there is no limit on the length of the string).</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public final class BinaryEncoding {
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    private BinaryEncoding() {
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Writing">
+    /**
+     * Writes the given integer as an unsigned variable-length integer.
+     *
+     * @param out the output to which to write the integer.
+     * @param value the integer to write.
+     * @throws IOException thrown if the integer could not be written.
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes the given long integer as an unsigned variable-length integer.
+     *
+     * @param out the output to which to write the integer.
+     * @param value the integer to write.
+     * @throws IOException thrown if the integer could not be written.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Writes the given string as a length-prefixed sequence of UTF-8 bytes.
+     * {@code null} strings are supported.
+     *
+     * @param out the output to which to write the string.
+     * @param str the string to write. May be {@code null}.
+     * @throws IOException thrown if the string could not be written.
+     */
+    public static void writeString(DataOutput out, String str) throws IOException {
+        if (str == null) {
+            writeVarInt(out, 0);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Reading">
+    /**
+     * Reads an unsigned variable-length integer.
+     *
+     * @param in the input from which to read the integer.
+     * @return the read integer.
+     * @throws IOException thrown if the integer could not be read or is
+     * malformed.
+     */
+    @NbBundle.Messages({
+        "BE_malformed_varint=Encountered a malformed variable-length integer."
+    })
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException(Bundle.BE_malformed_varint());
+    }
+
+    /**
+     * Reads an unsigned variable-length long integer.
+     *
+     * @param in the input from which to read the integer.
+     * @return the read integer.
+     * @throws IOException thrown if the integer could not be read or is
+     * malformed.
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException(Bundle.BE_malformed_varint());
+    }
+
+    /**
+     * Reads a string written by
+     * {@link BinaryEncoding#writeString(java.io.DataOutput, java.lang.String)}.
+     *
+     * @param in the input from which to read the string.
+     * @return the read string (may be {@code null}).
+     * @throws IOException thrown if the string could not be read.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Zig-Zag Encoding">
+    /**
+     * Maps signed integers to unsigned ones so that numbers with a small
+     * absolute value have a short variable-length encoding.
+     *
+     * @param value the signed integer.
+     * @return the zig-zag encoded integer.
+     */
+    public static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Maps signed long integers to unsigned ones so that numbers with a small
+     * absolute value have a short variable-length encoding.
+     *
+     * @param value the signed integer.
+     * @return the zig-zag encoded integer.
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * The inverse of {@link BinaryEncoding#zigZag(int)}.
+     *
+     * @param value the zig-zag encoded integer.
+     * @return the signed integer.
+     */
+    public static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The inverse of {@link BinaryEncoding#zigZag(long)}.
+     *
+     * @param value the zig-zag encoded integer.
+     * @return the signed integer.
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    // </editor-fold>
+}
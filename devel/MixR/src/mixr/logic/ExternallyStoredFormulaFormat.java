@@ -0,0 +1,56 @@
+/*
+ * File name: ExternallyStoredFormulaFormat.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+/**
+ * Formula formats of this type encode formulae as references to resources
+ * stored elsewhere (for example, as paths of image files). The referenced
+ * resource may change while its encoding stays the same. The
+ * {@link PlaceholderPayloadCache placeholder payload cache} uses
+ * {@link ExternallyStoredFormulaFormat#getModificationStamp(java.lang.String)}
+ * to notice such changes.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public interface ExternallyStoredFormulaFormat extends TextEncodedFormulaFormat {
+
+    /**
+     * The modification stamp of resources whose modifications cannot be
+     * tracked. Formulae decoded from such resources are never memoized.
+     */
+    long UNKNOWN_MODIFICATION_STAMP = Long.MIN_VALUE;
+
+    /**
+     * Returns a stamp that changes whenever the resource referenced by the
+     * given encoded formula changes (for example, the time at which the file
+     * was last modified).
+     *
+     * @param encodedFormula the string that references the resource.
+     * @return the current modification stamp of the referenced resource, or
+     * {@link ExternallyStoredFormulaFormat#UNKNOWN_MODIFICATION_STAMP} if its
+     * modifications cannot be tracked.
+     */
+    long getModificationStamp(String encodedFormula);
+}
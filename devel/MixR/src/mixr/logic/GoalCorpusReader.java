@@ -0,0 +1,268 @@
+/*
+ * File name: GoalCorpusReader.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mixr.FormulaFormatManager;
+import mixr.MixR;
+import mixr.components.GoalProvider;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
+import org.openide.util.Lookup;
+import org.openide.util.NbBundle;
+import static mixr.logic.BinaryEncoding.*;
+
+/**
+ * Reads goal corpora written by {@link GoalCorpusWriter}. Goals are read one
+ * at a time with {@link GoalCorpusReader#next()}.
+ *
+ * <p>Formats of representations are looked up by their names in a
+ * {@link FormulaFormatManager formula format manager}. Representations whose
+ * format is not registered or whose decoding fails are skipped (see
+ * {@link GoalCorpusReader#getSkippedRepresentationsCount()}).</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class GoalCorpusReader implements Closeable {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final DataInputStream in;
+    private final FormulaFormatManager formatManager;
+    private final ArrayList<String> formatNames = new ArrayList<>();
+    private long skippedRepresentationsCount;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a reader of the goal corpus in the given stream. Formats are
+     * looked up in MixR's {@link MixR#getFormulaFormatManager() formula format
+     * manager}.
+     *
+     * @param in the stream from which to read the goals.
+     * @throws IOException thrown if the header could not be read or if the
+     * stream does not contain a goal corpus.
+     */
+    public GoalCorpusReader(InputStream in) throws IOException {
+        this(in, Lookup.getDefault().lookup(MixR.class).getFormulaFormatManager());
+    }
+
+    /**
+     * Creates a reader of the goal corpus in the given stream.
+     *
+     * @param in the stream from which to read the goals.
+     * @param formatManager the manager in which to look up the formats of
+     * representations.
+     * @throws IOException thrown if the header could not be read or if the
+     * stream does not contain a goal corpus.
+     */
+    @NbBundle.Messages({
+        "GCR_in_null=An input stream must be provided.",
+        "GCR_format_manager_null=A formula format manager must be provided.",
+        "GCR_not_a_goal_corpus=The given stream does not contain a MixR goal corpus.",
+        "# {0} - the version of the goal corpus",
+        "GCR_unsupported_version=Unsupported version of the goal corpus: {0}."
+    })
+    public GoalCorpusReader(InputStream in, FormulaFormatManager formatManager) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException(Bundle.GCR_in_null());
+        }
+        if (formatManager == null) {
+            throw new IllegalArgumentException(Bundle.GCR_format_manager_null());
+        }
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        this.formatManager = formatManager;
+        for (byte magicByte : GoalCorpusWriter.MAGIC) {
+            if (this.in.read() != magicByte) {
+                throw new IOException(Bundle.GCR_not_a_goal_corpus());
+            }
+        }
+        int version = readVarInt(this.in);
+        if (version != GoalCorpusWriter.VERSION) {
+            throw new IOException(Bundle.GCR_unsupported_version(version));
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Reads the next goal from the corpus. Returns {@code null} when the end
+     * of the corpus has been reached.
+     *
+     * @return the next goal or {@code null} if there are no more goals.
+     * @throws IOException thrown if the corpus could not be read or is
+     * malformed.
+     */
+    @NbBundle.Messages({
+        "# {0} - the unknown tag",
+        "GCR_unknown_record=The goal corpus contains an unknown record type: {0}."
+    })
+    public Goal next() throws IOException {
+        int tag = in.read();
+        if (tag < 0) {
+            return null;
+        }
+        if (tag != GoalCorpusWriter.TAG_GOAL) {
+            throw new IOException(Bundle.GCR_unknown_record(tag));
+        }
+        ArrayList<Formula> premises = null;
+        int premisesRef = readVarInt(in);
+        if (premisesRef > 0) {
+            premises = new ArrayList<>(premisesRef - 1);
+            for (int i = 0; i < premisesRef - 1; i++) {
+                premises.add(readFormula());
+            }
+        }
+        Formula premisesFormula = readFormula();
+        Formula conclusion = readFormula();
+        Formula goalFormula = readFormula();
+        return new Goal(premises, premisesFormula, conclusion, goalFormula);
+    }
+
+    /**
+     * Reads all the remaining goals from the corpus.
+     *
+     * <p><span style="font-weight:bold">Note</span>: this method keeps all
+     * goals in memory. Use {@link GoalCorpusReader#next()} to process large
+     * corpora.</p>
+     *
+     * @param owner the reasoner that should own the returned goals.
+     * @return all the remaining goals from the corpus.
+     * @throws IOException thrown if the corpus could not be read or is
+     * malformed.
+     */
+    public Goals readAll(GoalProvider owner) throws IOException {
+        ArrayList<Goal> goals = new ArrayList<>();
+        Goal goal;
+        while ((goal = next()) != null) {
+            goals.add(goal);
+        }
+        return new Goals(owner, goals);
+    }
+
+    /**
+     * Returns the number of representations that could not be read (either
+     * because their format is not registered or because decoding failed).
+     *
+     * @return the number of representations that could not be read.
+     */
+    public long getSkippedRepresentationsCount() {
+        return skippedRepresentationsCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    @NbBundle.Messages({
+        "# {0} - the invalid role",
+        "GCR_invalid_role=The goal corpus contains a formula with an invalid role: {0}."
+    })
+    private Formula readFormula() throws IOException {
+        int roleRef = in.readUnsignedByte();
+        if (roleRef == 0) {
+            return null;
+        }
+        Formula.FormulaRole[] roles = Formula.FormulaRole.values();
+        if (roleRef > roles.length) {
+            throw new IOException(Bundle.GCR_invalid_role(roleRef));
+        }
+        FormulaRepresentation mainRepresentation = in.readUnsignedByte() == 0 ? null : readRepresentation();
+        int othersCount = readVarInt(in);
+        ArrayList<FormulaRepresentation> others = new ArrayList<>(othersCount);
+        for (int i = 0; i < othersCount; i++) {
+            FormulaRepresentation representation = readRepresentation();
+            if (representation != null) {
+                others.add(representation);
+            }
+        }
+        return new Formula(mainRepresentation, roles[roleRef - 1], others);
+    }
+
+    /**
+     * Reads a representation or returns {@code null} if it could not be
+     * decoded.
+     */
+    @NbBundle.Messages({
+        "# {0} - the format reference",
+        "GCR_invalid_format_ref=The goal corpus references an undefined format: {0}."
+    })
+    private FormulaRepresentation readRepresentation() throws IOException {
+        int formatRef = readVarInt(in);
+        String formatName;
+        if (formatRef == 0) {
+            formatName = readString(in);
+            formatNames.add(formatName);
+        } else if (formatRef <= formatNames.size()) {
+            formatName = formatNames.get(formatRef - 1);
+        } else {
+            throw new IOException(Bundle.GCR_invalid_format_ref(formatRef));
+        }
+        int encoding = in.readUnsignedByte();
+        byte[] payload = new byte[readVarInt(in)];
+        in.readFully(payload);
+
+        FormulaFormat format = formatManager.getFormulaFormat(formatName);
+        DataInputStream payloadIn = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            if (encoding == GoalCorpusWriter.ENCODING_BINARY && format instanceof BinaryEncodedFormulaFormat) {
+                return ((BinaryEncodedFormulaFormat) format).decodeRepresentation(payloadIn);
+            } else if (encoding == GoalCorpusWriter.ENCODING_TEXT && format instanceof TextEncodedFormulaFormat) {
+                Object formula = ((TextEncodedFormulaFormat) format).decodeFromString(readString(payloadIn));
+                return new FormulaRepresentation(formula, format, readFreeVariables(payloadIn));
+            }
+        } catch (FormulaEncodingException | IOException | RuntimeException ex) {
+            Logger.getLogger(GoalCorpusReader.class.getName()).log(Level.FINE, null, ex);
+        }
+        ++skippedRepresentationsCount;
+        return null;
+    }
+
+    private static HashSet<FreeVariable> readFreeVariables(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        if (count == 0) {
+            return null;
+        }
+        HashSet<FreeVariable> freeVariables = new HashSet<>();
+        for (int i = 0; i < count - 1; i++) {
+            String name = readString(in);
+            freeVariables.add(new FreeVariable(name, readString(in)));
+        }
+        return freeVariables;
+    }
+    // </editor-fold>
+}
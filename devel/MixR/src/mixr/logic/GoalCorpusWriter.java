@@ -0,0 +1,285 @@
+/*
+ * File name: GoalCorpusWriter.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
+import org.openide.util.NbBundle;
+import static mixr.logic.BinaryEncoding.*;
+
+/**
+ * Writes {@link Goal goals} (together with all their present
+ * representations) into a versioned binary stream. Use
+ * {@link GoalCorpusReader} to read the goals back.
+ *
+ * <p>Goals are written one at a time, which means that arbitrarily large goal
+ * corpora can be written without keeping them in memory.</p>
+ *
+ * <p>Representations are encoded with the codec of their
+ * {@link BinaryEncodedFormulaFormat binary formats} or, if the format is not
+ * binary-encoded, through their {@link TextEncodedFormulaFormat text
+ * encoding}. Representations in formats that support neither are skipped
+ * (see {@link GoalCorpusWriter#getSkippedRepresentationsCount()}).
+ * Placeholders are not stored explicitly, they are decoded from the stored
+ * main representations when needed.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class GoalCorpusWriter implements Closeable, Flushable {
+
+    // <editor-fold defaultstate="collapsed" desc="Format Constants">
+    static final byte[] MAGIC = {'M', 'X', 'G', 'C'};
+    static final int VERSION = 1;
+    static final int TAG_GOAL = 1;
+    static final int ENCODING_BINARY = 1;
+    static final int ENCODING_TEXT = 2;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final DataOutputStream out;
+    /**
+     * Format names are written only once. Afterwards they are referenced by
+     * their index (plus one) in this table.
+     */
+    private final HashMap<String, Integer> formatNames = new HashMap<>();
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOut = new DataOutputStream(payloadBuffer);
+    private long goalsCount;
+    private long skippedRepresentationsCount;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a writer that writes the goal corpus into the given stream. The
+     * header of the corpus is written immediately.
+     *
+     * @param out the stream to which to write the goals.
+     * @throws IOException thrown if the header could not be written.
+     */
+    @NbBundle.Messages({
+        "GCW_out_null=An output stream must be provided."
+    })
+    public GoalCorpusWriter(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException(Bundle.GCW_out_null());
+        }
+        this.out = new DataOutputStream(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out));
+        this.out.write(MAGIC);
+        writeVarInt(this.out, VERSION);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Writes the given goal.
+     *
+     * @param goal the goal to write.
+     * @throws IOException thrown if the goal could not be written.
+     */
+    @NbBundle.Messages({
+        "GCW_goal_null=Cannot write a null goal."
+    })
+    public void write(Goal goal) throws IOException {
+        if (goal == null) {
+            throw new IllegalArgumentException(Bundle.GCW_goal_null());
+        }
+        out.writeByte(TAG_GOAL);
+        int premisesCount = goal.getPremisesCount();
+        writeVarInt(out, goal.getPremises() == null ? 0 : premisesCount + 1);
+        for (int i = 0; i < premisesCount; i++) {
+            writeFormula(goal.getPremiseAt(i));
+        }
+        // The premises formula is re-created by the goal if it carries no
+        // representations of its own:
+        writeFormula(goal.getPremisesFormula().isEmpty() ? null : goal.getPremisesFormula());
+        writeFormula(goal.getConclusion());
+        writeFormula(goal.asFormula());
+        ++goalsCount;
+    }
+
+    /**
+     * Writes all the given goals.
+     *
+     * @param goals the goals to write.
+     * @throws IOException thrown if the goals could not be written.
+     */
+    public void writeAll(Iterable<Goal> goals) throws IOException {
+        for (Goal goal : goals) {
+            write(goal);
+        }
+    }
+
+    /**
+     * Returns the number of goals written by this writer.
+     *
+     * @return the number of goals written by this writer.
+     */
+    public long getGoalsCount() {
+        return goalsCount;
+    }
+
+    /**
+     * Returns the number of representations that could not be written (either
+     * because their format provides no codec or because encoding failed).
+     *
+     * @return the number of representations that could not be written.
+     */
+    public long getSkippedRepresentationsCount() {
+        return skippedRepresentationsCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private void writeFormula(Formula formula) throws IOException {
+        if (formula == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(formula.getRole().ordinal() + 1);
+
+        FormulaRepresentation mainRepresentation = formula.getMainRepresentation();
+        EncodedRepresentation main = mainRepresentation == null ? null : encode(mainRepresentation);
+        if (main == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            main.writeTo(out);
+        }
+
+        ArrayList<EncodedRepresentation> others = new ArrayList<>();
+        FormulaRepresentation[] representations = formula.getRepresentations();
+        if (representations != null) {
+            for (FormulaRepresentation representation : representations) {
+                if (representation != mainRepresentation) {
+                    EncodedRepresentation encoded = encode(representation);
+                    if (encoded != null) {
+                        others.add(encoded);
+                    }
+                }
+            }
+        }
+        writeVarInt(out, others.size());
+        for (EncodedRepresentation encoded : others) {
+            encoded.writeTo(out);
+        }
+    }
+
+    /**
+     * Encodes the given representation or returns {@code null} if it cannot
+     * be encoded.
+     */
+    private EncodedRepresentation encode(FormulaRepresentation representation) throws IOException {
+        FormulaFormat format = representation.getFormat();
+        payloadBuffer.reset();
+        int encoding;
+        try {
+            if (format instanceof BinaryEncodedFormulaFormat) {
+                ((BinaryEncodedFormulaFormat) format).encodeRepresentation(representation, payloadOut);
+                encoding = ENCODING_BINARY;
+            } else if (format instanceof TextEncodedFormulaFormat) {
+                writeString(payloadOut, ((TextEncodedFormulaFormat) format).encodeAsString(representation.getFormula()));
+                writeFreeVariables(payloadOut, representation.getFreeVariables());
+                encoding = ENCODING_TEXT;
+            } else {
+                ++skippedRepresentationsCount;
+                return null;
+            }
+        } catch (FormulaEncodingException ex) {
+            Logger.getLogger(GoalCorpusWriter.class.getName()).log(Level.FINE, null, ex);
+            ++skippedRepresentationsCount;
+            return null;
+        }
+        payloadOut.flush();
+        return new EncodedRepresentation(format.getFormatName(), encoding, payloadBuffer.toByteArray());
+    }
+
+    /**
+     * Free variables of text-encoded representations are stored with their
+     * names only, unless their types are strings.
+     */
+    private static void writeFreeVariables(DataOutputStream out, Set<FreeVariable> freeVariables) throws IOException {
+        if (freeVariables == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, freeVariables.size() + 1);
+            for (FreeVariable freeVariable : freeVariables) {
+                writeString(out, freeVariable.getName());
+                writeString(out, freeVariable.getType() instanceof String ? (String) freeVariable.getType() : null);
+            }
+        }
+    }
+
+    private final class EncodedRepresentation {
+
+        private final String formatName;
+        private final int encoding;
+        private final byte[] payload;
+
+        EncodedRepresentation(String formatName, int encoding, byte[] payload) {
+            this.formatName = formatName;
+            this.encoding = encoding;
+            this.payload = payload;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            Integer formatRef = formatNames.get(formatName);
+            if (formatRef == null) {
+                // A reference of 0 introduces a new format name:
+                writeVarInt(out, 0);
+                writeString(out, formatName);
+                formatNames.put(formatName, formatNames.size() + 1);
+            } else {
+                writeVarInt(out, formatRef);
+            }
+            out.writeByte(encoding);
+            writeVarInt(out, payload.length);
+            out.write(payload);
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,181 @@
+/*
+ * File name: GoalFingerprints.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Computes compact 64-bit fingerprints of {@link Goal goals}. A fingerprint
+ * is derived from the {@link Formula#getMainRepresentation() main
+ * representations} of the goal's premises, conclusion and the goal formula
+ * itself (their format names and the hash codes of their raw formulae).
+ *
+ * <p>Fingerprints are meant for audit trails and caches. Two structurally
+ * equal goals (coming from the same reasoner) will have equal fingerprints,
+ * while different goals will have different ones with very high
+ * probability.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public final class GoalFingerprints {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    private GoalFingerprints() {
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Returns the fingerprint of the given goal. Returns {@code 0} if the
+     * goal is {@code null}.
+     *
+     * @param goal the goal for which to compute the fingerprint.
+     * @return the fingerprint of the given goal.
+     */
+    public static long fingerprint(Goal goal) {
+        if (goal == null) {
+            return 0;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        int premisesCount = goal.getPremisesCount();
+        hash = mix(hash, premisesCount);
+        for (int i = 0; i < premisesCount; i++) {
+            hash = mix(hash, fingerprint(goal.getPremiseAt(i)));
+        }
+        hash = mix(hash, fingerprint(goal.getConclusion()));
+        hash = mix(hash, fingerprint(goal.asFormula()));
+        return hash;
+    }
+
+    /**
+     * Returns the fingerprint of the given formula. Only the {@link
+     * Formula#getMainRepresentation() main representation} of the formula is
+     * taken into account. Returns {@code 0} if the formula is {@code null} or
+     * has no main representation.
+     *
+     * @param formula the formula for which to compute the fingerprint.
+     * @return the fingerprint of the given formula.
+     */
+    public static long fingerprint(Formula formula) {
+        if (formula == null || formula.getMainRepresentation() == null) {
+            return 0;
+        }
+        FormulaRepresentation mainRepresentation = formula.getMainRepresentation();
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, mainRepresentation.getFormat().getFormatName().hashCode());
+        hash = mix(hash, mainRepresentation.getFormula().hashCode());
+        return hash;
+    }
+
+    /**
+     * Returns the fingerprints of all the given goals (in the same order).
+     *
+     * @param goals the goals for which to compute the fingerprints.
+     * @return the fingerprints of all the given goals (an empty array if
+     * {@code goals} is {@code null} or empty).
+     */
+    public static long[] fingerprints(List<Goal> goals) {
+        if (goals == null || goals.isEmpty()) {
+            return new long[0];
+        }
+        long[] fingerprints = new long[goals.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = fingerprint(goals.get(i));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Returns the fingerprints of all the given goals (in the same order).
+     *
+     * @param goals the goals for which to compute the fingerprints.
+     * @return the fingerprints of all the given goals (an empty array if
+     * {@code goals} is {@code null} or empty).
+     */
+    public static long[] fingerprints(Goals goals) {
+        return goals == null ? new long[0] : fingerprints(goals.getGoals());
+    }
+
+    /**
+     * Indicates whether the two goals have equal contents, that is, whether
+     * the {@link Formula#getMainRepresentation() main representations} of
+     * their premises, conclusions and goal formulae are equal. These are
+     * exactly the parts of the goals that determine their fingerprints.
+     *
+     * <p>Use this method to confirm that two goals with equal fingerprints
+     * are indeed equal (fingerprints may collide).</p>
+     *
+     * @param goal1 the first goal.
+     * @param goal2 the second goal.
+     * @return {@code true} if the two goals have equal contents (or are both
+     * {@code null}).
+     */
+    public static boolean haveEqualContents(Goal goal1, Goal goal2) {
+        if (goal1 == goal2) {
+            return true;
+        }
+        if (goal1 == null || goal2 == null) {
+            return false;
+        }
+        int premisesCount = goal1.getPremisesCount();
+        if (premisesCount != goal2.getPremisesCount()) {
+            return false;
+        }
+        for (int i = 0; i < premisesCount; i++) {
+            if (!haveEqualContents(goal1.getPremiseAt(i), goal2.getPremiseAt(i))) {
+                return false;
+            }
+        }
+        return haveEqualContents(goal1.getConclusion(), goal2.getConclusion())
+                && haveEqualContents(goal1.asFormula(), goal2.asFormula());
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private static boolean haveEqualContents(Formula formula1, Formula formula2) {
+        FormulaRepresentation main1 = formula1 == null ? null : formula1.getMainRepresentation();
+        FormulaRepresentation main2 = formula2 == null ? null : formula2.getMainRepresentation();
+        if (main1 == null || main2 == null) {
+            return main1 == main2;
+        }
+        return main1.getFormat().getFormatName().equals(main2.getFormat().getFormatName())
+                && Objects.equals(main1.getFormula(), main2.getFormula());
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+    // </editor-fold>
+}
@@ -132,7 +132,7 @@ public class GoalTransformationResult implements InferenceStepResult {
             // Take ownership of the transformed goals:
             for (int i = 0; i < transformedGoals.length; i++) {
                 MovableArrayList<Goal> curTransformedGoals = transformedGoals[i];
-                if (transformedGoals != null) {
+                if (curTransformedGoals != null) {
                     tmp[i] = new MovableArrayList<>(curTransformedGoals, true).getReadOnlyStore();
                 }
             }
@@ -165,7 +165,7 @@ public class Placeholder {
             TextEncodedFormulaFormat payloadFormat = (TextEncodedFormulaFormat) formulaFormat;
             Object decodedFormula;
             try {
-                decodedFormula = payloadFormat.decodeFromString(payloadFormula);
+                decodedFormula = PlaceholderPayloadCache.getDefault().decode(payloadFormat, payloadFormula, freeVariables);
             } catch (FormulaEncodingException ex) {
                 throw new CarrierFormulaFormat.PlaceholderEmbeddingException(Bundle.Placeholder_formula_invalid(payloadFormulaFormat), ex);
             }
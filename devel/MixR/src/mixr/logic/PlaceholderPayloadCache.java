@@ -0,0 +1,246 @@
+/*
+ * File name: PlaceholderPayloadCache.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.NbBundle;
+
+/**
+ * Memoizes the formulae decoded from the payloads of
+ * {@link Placeholder placeholders}.
+ *
+ * <p>Every time goals are refreshed, their placeholders are extracted again
+ * and their payloads would be decoded through
+ * {@link TextEncodedFormulaFormat#decodeFromString(java.lang.String)} (which
+ * may parse a large formula or read an image from disk). With this cache,
+ * payloads that have not changed are decoded only once.</p>
+ *
+ * <p>Decoded formulae are keyed by the payload format, the payload string and
+ * the free variables of the placeholder. Payloads of
+ * {@link ExternallyStoredFormulaFormat externally stored formats} are also
+ * keyed by the {@link ExternallyStoredFormulaFormat#getModificationStamp(java.lang.String)
+ * modification stamp} of the resource they reference, so they are decoded
+ * again after the resource changes. The cache holds a bounded number of
+ * decoded formulae and evicts the least recently used ones first. Failed
+ * decodings are not memoized. This class is thread-safe.</p>
+ *
+ * <p><span style="font-weight:bold">Note</span>: decoded formulae are shared
+ * between all placeholders with the same payload. They must not be
+ * modified.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class PlaceholderPayloadCache {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    /**
+     * The maximum number of decoded formulae held by the
+     * {@link PlaceholderPayloadCache#getDefault() default cache}.
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+    private final LinkedHashMap<Key, Object> decodedFormulae;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a cache that holds at most the given number of decoded
+     * formulae.
+     *
+     * @param capacity the maximum number of decoded formulae held by this
+     * cache.
+     */
+    @NbBundle.Messages({
+        "PPC_capacity_invalid=The capacity of the placeholder payload cache must be positive."
+    })
+    public PlaceholderPayloadCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(Bundle.PPC_capacity_invalid());
+        }
+        this.decodedFormulae = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Returns the memoized formula decoded from the given payload. If there is
+     * no memoized formula, this method decodes the payload with the given
+     * format and memoizes the result.
+     *
+     * @param payloadFormat the format of the payload.
+     * @param payload the encoded payload formula. Payloads that are
+     * {@code null} or reference resources with an
+     * {@link ExternallyStoredFormulaFormat#UNKNOWN_MODIFICATION_STAMP unknown
+     * modification stamp} are never memoized.
+     * @param freeVariables the free variables of the placeholder (may be
+     * {@code null}).
+     * @return the decoded formula.
+     * @throws FormulaEncodingException thrown if the payload could not be
+     * decoded.
+     */
+    public Object decode(@NonNull TextEncodedFormulaFormat payloadFormat, String payload, Set<FreeVariable> freeVariables) throws FormulaEncodingException {
+        if (payload == null) {
+            return payloadFormat.decodeFromString(payload);
+        }
+        long modificationStamp = payloadFormat instanceof ExternallyStoredFormulaFormat
+                ? ((ExternallyStoredFormulaFormat) payloadFormat).getModificationStamp(payload)
+                : 0;
+        if (modificationStamp == ExternallyStoredFormulaFormat.UNKNOWN_MODIFICATION_STAMP) {
+            misses.incrementAndGet();
+            return payloadFormat.decodeFromString(payload);
+        }
+        Key key = new Key(payloadFormat, payload, freeVariables, modificationStamp);
+        Object decodedFormula;
+        synchronized (decodedFormulae) {
+            decodedFormula = decodedFormulae.get(key);
+        }
+        if (decodedFormula != null) {
+            hits.incrementAndGet();
+            return decodedFormula;
+        }
+        misses.incrementAndGet();
+        decodedFormula = payloadFormat.decodeFromString(payload);
+        if (decodedFormula != null) {
+            synchronized (decodedFormulae) {
+                decodedFormulae.put(key, decodedFormula);
+            }
+        }
+        return decodedFormula;
+    }
+
+    /**
+     * Removes all memoized formulae.
+     */
+    public void clear() {
+        synchronized (decodedFormulae) {
+            decodedFormulae.clear();
+        }
+    }
+
+    /**
+     * Returns the number of currently memoized formulae.
+     *
+     * @return the number of currently memoized formulae.
+     */
+    public int size() {
+        synchronized (decodedFormulae) {
+            return decodedFormulae.size();
+        }
+    }
+
+    /**
+     * Returns the number of times a memoized formula was returned.
+     *
+     * @return the number of times a memoized formula was returned.
+     */
+    public long getHitsCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times a payload had to be decoded.
+     *
+     * @return the number of times a payload had to be decoded.
+     */
+    public long getMissesCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the cache shared by all of MixR.
+     *
+     * @return the cache shared by all of MixR.
+     */
+    public static PlaceholderPayloadCache getDefault() {
+        return SingletonContainer.Instance;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    private static final class Key {
+
+        private final TextEncodedFormulaFormat payloadFormat;
+        private final String payload;
+        private final Set<FreeVariable> freeVariables;
+        private final long modificationStamp;
+        private final int hash;
+
+        Key(TextEncodedFormulaFormat payloadFormat, String payload, Set<FreeVariable> freeVariables, long modificationStamp) {
+            this.payloadFormat = payloadFormat;
+            this.payload = payload;
+            this.freeVariables = freeVariables == null || freeVariables.isEmpty()
+                    ? Collections.<FreeVariable>emptySet()
+                    : new HashSet<>(freeVariables);
+            this.modificationStamp = modificationStamp;
+            int h = payloadFormat.hashCode();
+            h = 31 * h + payload.hashCode();
+            h = 31 * h + this.freeVariables.hashCode();
+            h = 31 * h + (int) (modificationStamp ^ (modificationStamp >>> 32));
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && modificationStamp == other.modificationStamp
+                    && payloadFormat.equals(other.payloadFormat)
+                    && payload.equals(other.payload)
+                    && freeVariables.equals(other.freeVariables);
+        }
+    }
+
+    private static class SingletonContainer {
+
+        private static final PlaceholderPayloadCache Instance = new PlaceholderPayloadCache(DEFAULT_CAPACITY);
+    }
+    // </editor-fold>
+}
@@ -25,6 +25,13 @@
 package mixr.logic;
 
 /**
+ * Describes how an {@link InferenceStepResult inference step} has been
+ * performed.
+ *
+ * <p>{@link OracleProofTrace} indicates that the step was performed by an
+ * oracle, while {@link StandardProofTrace} carries a structured record of the
+ * step that can be {@link ProofTraceLogWriter logged} and later
+ * {@link ProofTraceLogReader replayed}.</p>
  *
  * @author Matej Urbas [matej.urbas@gmail.com]
  */
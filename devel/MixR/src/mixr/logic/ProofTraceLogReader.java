@@ -0,0 +1,282 @@
+/*
+ * File name: ProofTraceLogReader.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import org.openide.util.NbBundle;
+import static mixr.logic.BinaryEncoding.*;
+
+/**
+ * Reads binary proof trace logs written by {@link ProofTraceLogWriter}. The
+ * log can be read step by step with {@link ProofTraceLogReader#next()} or
+ * replayed in one go with
+ * {@link ProofTraceLogReader#replay(mixr.logic.ProofTraceLogReader.ReplayHandler)}.
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class ProofTraceLogReader implements Closeable {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final DataInputStream in;
+    private final ArrayList<String> stringTable = new ArrayList<>();
+    private int sessionIndex = -1;
+    private long sessionTimestamp;
+    private StandardProofTrace currentStep;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a reader of the proof trace log in the given stream. The log
+     * header is read immediately.
+     *
+     * @param in the stream from which to read the log.
+     * @throws IOException thrown if the header could not be read or if the
+     * stream does not contain a proof trace log.
+     */
+    @NbBundle.Messages({
+        "PTLR_in_null=An input stream must be provided.",
+        "PTLR_not_a_trace_log=The given stream does not contain a MixR proof trace log.",
+        "# {0} - the version of the log",
+        "PTLR_unsupported_version=Unsupported version of the proof trace log: {0}."
+    })
+    public ProofTraceLogReader(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException(Bundle.PTLR_in_null());
+        }
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        for (byte magicByte : ProofTraceLogWriter.MAGIC) {
+            if (this.in.read() != magicByte) {
+                throw new IOException(Bundle.PTLR_not_a_trace_log());
+            }
+        }
+        int version = readVarInt(this.in);
+        if (version != ProofTraceLogWriter.VERSION) {
+            throw new IOException(Bundle.PTLR_unsupported_version(version));
+        }
+    }
+
+    /**
+     * Creates a reader of the proof trace log in the given file.
+     *
+     * @param file the file from which to read the log.
+     * @throws IOException thrown if the file could not be opened or if it does
+     * not contain a proof trace log.
+     */
+    public ProofTraceLogReader(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Reads the next inference step from the log. Returns {@code null} when
+     * the end of the log has been reached.
+     *
+     * @return the next inference step or {@code null} if there are no more
+     * steps in the log.
+     * @throws IOException thrown if the log could not be read or is
+     * malformed.
+     */
+    public StandardProofTrace next() throws IOException {
+        int tag;
+        while ((tag = readRecord()) >= 0) {
+            if (tag == ProofTraceLogWriter.TAG_STEP) {
+                return currentStep;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the whole remainder of the log and passes every session and step
+     * to the given handler.
+     *
+     * @param handler the handler that receives the replayed sessions and
+     * steps.
+     * @return the number of replayed steps.
+     * @throws IOException thrown if the log could not be read or is
+     * malformed.
+     */
+    public long replay(ReplayHandler handler) throws IOException {
+        long stepsCount = 0;
+        int tag;
+        while ((tag = readRecord()) >= 0) {
+            if (tag == ProofTraceLogWriter.TAG_SESSION) {
+                handler.sessionStarted(sessionIndex, sessionTimestamp);
+            } else if (tag == ProofTraceLogWriter.TAG_STEP) {
+                handler.stepReplayed(sessionIndex, currentStep);
+                ++stepsCount;
+            }
+        }
+        return stepsCount;
+    }
+
+    /**
+     * Returns the index of the session the last read step belongs to (the
+     * first session has the index {@code 0}).
+     *
+     * @return the index of the current session.
+     */
+    public int getSessionIndex() {
+        return sessionIndex;
+    }
+
+    /**
+     * Returns the wall-clock time (in milliseconds since the epoch) at which
+     * the current session started.
+     *
+     * @return the wall-clock time at which the current session started.
+     */
+    public long getSessionTimestamp() {
+        return sessionTimestamp;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Replay Handler">
+    /**
+     * Receives sessions and steps replayed by
+     * {@link ProofTraceLogReader#replay(mixr.logic.ProofTraceLogReader.ReplayHandler)}.
+     */
+    public static interface ReplayHandler {
+
+        /**
+         * Called when a new logging session starts in the log.
+         *
+         * @param sessionIndex the index of the session.
+         * @param timestamp the wall-clock time (in milliseconds since the
+         * epoch) at which the session started.
+         */
+        void sessionStarted(int sessionIndex, long timestamp);
+
+        /**
+         * Called for every inference step in the log.
+         *
+         * @param sessionIndex the index of the session this step belongs to.
+         * @param step the replayed inference step.
+         */
+        void stepReplayed(int sessionIndex, StandardProofTrace step);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    /**
+     * Reads the next record and returns its tag. Returns {@code -1} at the end
+     * of the log.
+     */
+    @NbBundle.Messages({
+        "PTLR_no_session=The proof trace log contains records outside of a session.",
+        "# {0} - the unknown tag",
+        "PTLR_unknown_record=The proof trace log contains an unknown record type: {0}."
+    })
+    private int readRecord() throws IOException {
+        int tag = in.read();
+        if (tag < 0) {
+            return -1;
+        }
+        if (tag == ProofTraceLogWriter.TAG_SESSION) {
+            ++sessionIndex;
+            sessionTimestamp = readVarLong(in);
+            stringTable.clear();
+        } else if (sessionIndex < 0) {
+            throw new IOException(Bundle.PTLR_no_session());
+        } else if (tag == ProofTraceLogWriter.TAG_STRING) {
+            stringTable.add(readString(in));
+        } else if (tag == ProofTraceLogWriter.TAG_STEP) {
+            currentStep = readStep();
+        } else {
+            throw new IOException(Bundle.PTLR_unknown_record(tag));
+        }
+        return tag;
+    }
+
+    private StandardProofTrace readStep() throws IOException {
+        String ruleName = readStringRef();
+        String inferenceSetName = readStringRef();
+
+        int targetsCount = readVarInt(in);
+        int[] goalIndices = new int[targetsCount];
+        int[] subformulaIndices = new int[targetsCount];
+        for (int i = 0; i < targetsCount; i++) {
+            goalIndices[i] = unZigZag(readVarInt(in));
+            subformulaIndices[i] = unZigZag(readVarInt(in));
+        }
+
+        int originalGoalsCount = readVarInt(in);
+        long[] originalHashes = new long[originalGoalsCount];
+        int[] transformedCounts = new int[originalGoalsCount];
+        int totalTransformed = 0;
+        for (int i = 0; i < originalGoalsCount; i++) {
+            originalHashes[i] = in.readLong();
+            transformedCounts[i] = unZigZag(readVarInt(in));
+            totalTransformed += Math.max(0, transformedCounts[i]);
+        }
+        long[] transformedHashes = new long[totalTransformed];
+        for (int i = 0; i < totalTransformed; i++) {
+            transformedHashes[i] = in.readLong();
+        }
+
+        long timestamp = sessionTimestamp + unZigZag(readVarLong(in));
+        long durationNanos = unZigZag(readVarLong(in));
+
+        int payloadRef = readVarInt(in);
+        byte[] payload = null;
+        if (payloadRef > 0) {
+            payload = new byte[payloadRef - 1];
+            in.readFully(payload);
+        }
+
+        return new StandardProofTrace(ruleName, inferenceSetName, goalIndices, subformulaIndices, originalHashes, transformedCounts, transformedHashes, timestamp, durationNanos, payload);
+    }
+
+    @NbBundle.Messages({
+        "# {0} - the string reference",
+        "PTLR_invalid_string_ref=The proof trace log references an undefined string: {0}."
+    })
+    private String readStringRef() throws IOException {
+        int ref = readVarInt(in);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > stringTable.size()) {
+            throw new IOException(Bundle.PTLR_invalid_string_ref(ref));
+        }
+        return stringTable.get(ref - 1);
+    }
+    // </editor-fold>
+}
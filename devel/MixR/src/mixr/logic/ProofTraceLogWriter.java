@@ -0,0 +1,225 @@
+/*
+ * File name: ProofTraceLogWriter.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import org.openide.util.NbBundle;
+import static mixr.logic.BinaryEncoding.*;
+
+/**
+ * Appends {@link StandardProofTrace structured proof traces} to a compact
+ * binary log. Use {@link ProofTraceLogReader} to replay the log.
+ *
+ * <p>The log starts with a short header (the magic bytes {@code MXPT} and a
+ * format version). The header is followed by a sequence of records, each
+ * starting with a single tag byte:
+ *
+ * <ul>
+ *
+ * <li><span style="font-weight:bold">session</span>: starts a new logging
+ * session (every writer starts one) and resets the string table. Contains the
+ * wall-clock time of the session start.</li>
+ *
+ * <li><span style="font-weight:bold">string</span>: appends a new string
+ * (e.g.: the name of an inference rule) to the string table of the current
+ * session. Steps refer to strings by their index in the string table, so
+ * every string is stored only once per session.</li>
+ *
+ * <li><span style="font-weight:bold">step</span>: a single inference step.
+ * All integers are encoded as variable-length integers (zig-zag encoded where
+ * they may be negative), timestamps are stored relative to the session start,
+ * and goal fingerprints are stored as fixed 8-byte values.</li>
+ *
+ * </ul></p>
+ *
+ * <p>Because every writer starts a new session, many writers may append to the
+ * same file one after another (e.g.: one per application run).</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class ProofTraceLogWriter implements Closeable, Flushable {
+
+    // <editor-fold defaultstate="collapsed" desc="Format Constants">
+    static final byte[] MAGIC = {'M', 'X', 'P', 'T'};
+    static final int VERSION = 1;
+    static final int TAG_SESSION = 1;
+    static final int TAG_STRING = 2;
+    static final int TAG_STEP = 3;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final DataOutputStream out;
+    private final HashMap<String, Integer> stringTable = new HashMap<>();
+    private final long sessionTimestamp;
+    private long stepsCount;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a writer that starts a new session in the given stream. The
+     * header of the log is written as well.
+     *
+     * @param out the stream to which to write the log.
+     * @throws IOException thrown if the header could not be written.
+     */
+    public ProofTraceLogWriter(OutputStream out) throws IOException {
+        this(out, true);
+    }
+
+    /**
+     * Creates a writer that appends a new session to the given file. The log
+     * header is written only if the file is empty or does not exist yet.
+     *
+     * @param file the file to which to append the log.
+     * @throws IOException thrown if the file could not be opened or written
+     * to.
+     */
+    public ProofTraceLogWriter(File file) throws IOException {
+        this(new FileOutputStream(file, true), !file.exists() || file.length() == 0);
+    }
+
+    @NbBundle.Messages({
+        "PTLW_out_null=An output stream must be provided."
+    })
+    private ProofTraceLogWriter(OutputStream out, boolean writeHeader) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException(Bundle.PTLW_out_null());
+        }
+        this.out = new DataOutputStream(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out));
+        if (writeHeader) {
+            this.out.write(MAGIC);
+            writeVarInt(this.out, VERSION);
+        }
+        this.sessionTimestamp = System.currentTimeMillis();
+        this.out.write(TAG_SESSION);
+        writeVarLong(this.out, sessionTimestamp);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Appends the given inference step to the log.
+     *
+     * @param trace the inference step to append.
+     * @throws IOException thrown if the step could not be written.
+     */
+    @NbBundle.Messages({
+        "PTLW_trace_null=Cannot log a null proof trace."
+    })
+    public void write(StandardProofTrace trace) throws IOException {
+        if (trace == null) {
+            throw new IllegalArgumentException(Bundle.PTLW_trace_null());
+        }
+        // Strings must be defined before the step that references them:
+        int ruleNameRef = stringRef(trace.getRuleName());
+        int inferenceSetNameRef = stringRef(trace.getInferenceSetName());
+
+        out.write(TAG_STEP);
+        writeVarInt(out, ruleNameRef);
+        writeVarInt(out, inferenceSetNameRef);
+
+        int[] goalIndices = trace.getTargetGoalIndices();
+        int[] subformulaIndices = trace.getTargetSubformulaIndices();
+        writeVarInt(out, goalIndices.length);
+        for (int i = 0; i < goalIndices.length; i++) {
+            writeVarInt(out, zigZag(goalIndices[i]));
+            writeVarInt(out, zigZag(subformulaIndices[i]));
+        }
+
+        long[] originalHashes = trace.getOriginalGoalHashes();
+        int[] transformedCounts = trace.getTransformedGoalCounts();
+        writeVarInt(out, originalHashes.length);
+        for (int i = 0; i < originalHashes.length; i++) {
+            out.writeLong(originalHashes[i]);
+            writeVarInt(out, zigZag(transformedCounts[i]));
+        }
+        for (long transformedHash : trace.getTransformedGoalHashes()) {
+            out.writeLong(transformedHash);
+        }
+
+        writeVarLong(out, zigZag(trace.getTimestamp() - sessionTimestamp));
+        writeVarLong(out, zigZag(trace.getDurationNanos()));
+
+        byte[] payload = trace.getPayload();
+        if (payload == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, payload.length + 1);
+            out.write(payload);
+        }
+        ++stepsCount;
+    }
+
+    /**
+     * Returns the number of steps written by this writer.
+     *
+     * @return the number of steps written by this writer.
+     */
+    public long getStepsCount() {
+        return stepsCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    /**
+     * Returns the reference to the given string in the string table (the
+     * index plus one, {@code 0} stands for {@code null}). Writes the string to
+     * the string table if it is not there yet.
+     */
+    private int stringRef(String str) throws IOException {
+        if (str == null) {
+            return 0;
+        }
+        Integer ref = stringTable.get(str);
+        if (ref == null) {
+            out.write(TAG_STRING);
+            writeString(out, str);
+            ref = stringTable.size() + 1;
+            stringTable.put(str, ref);
+        }
+        return ref;
+    }
+    // </editor-fold>
+}
@@ -24,7 +24,330 @@
  */
 package mixr.logic;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.openide.util.NbBundle;
 
+/**
+ * A structured record of a single inference step. It stores the name of the
+ * applied inference rule, the {@link InferenceTarget targets} on which the
+ * rule was applied, the {@link GoalFingerprints fingerprints} of the original
+ * and the transformed goals, the timing of the step, and an arbitrary payload
+ * provided by the driver (e.g.: the proof text that was generated for the
+ * step).
+ *
+ * <p>Only fingerprints of goals are stored (not the goals themselves). This
+ * makes traces small enough to keep or {@link ProofTraceLogWriter log} many
+ * thousands of them.</p>
+ *
+ * <p>This class is immutable.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
 public class StandardProofTrace implements ProofTrace {
-    
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    /**
+     * Indicates that the original goal at the same index has not been changed
+     * by the inference step. See
+     * {@link StandardProofTrace#getTransformedGoalsCount(int)}.
+     */
+    public static final int UNCHANGED_GOAL = -1;
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_LONGS = new long[0];
+    private final String ruleName;
+    private final String inferenceSetName;
+    private final int[] targetGoalIndices;
+    private final int[] targetSubformulaIndices;
+    private final long[] originalGoalHashes;
+    private final int[] transformedGoalCounts;
+    private final long[] transformedGoalHashes;
+    private final long timestamp;
+    private final long durationNanos;
+    private final byte[] payload;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructors">
+    /**
+     * Creates a new structured proof trace.
+     *
+     * <p><span style="font-weight:bold">Note</span>: the given arrays are
+     * stored by reference (no copies are made). Callers must not modify them
+     * afterwards.</p>
+     *
+     * @param ruleName the name of the applied inference rule.
+     * @param inferenceSetName the name of the inference set (usually the name
+     * of the goal-transforming reasoner) the applied rule belongs to.
+     * @param targetGoalIndices the goal indices of all inference targets.
+     * @param targetSubformulaIndices the subformula indices of all inference
+     * targets. Must be of the same length as {@code targetGoalIndices}.
+     * @param originalGoalHashes the fingerprints of all original goals.
+     * @param transformedGoalCounts for each original goal, the number of goals
+     * it was transformed into (or {@link StandardProofTrace#UNCHANGED_GOAL} if
+     * it was not changed). Must be of the same length as
+     * {@code originalGoalHashes}.
+     * @param transformedGoalHashes the fingerprints of all transformed goals
+     * (in the order of the original goals they stem from).
+     * @param timestamp the wall-clock time (in milliseconds since the epoch)
+     * at which the inference step started.
+     * @param durationNanos the duration of the inference step in nanoseconds.
+     * @param payload arbitrary driver-specific data. May be {@code null}.
+     */
+    @NbBundle.Messages({
+        "SPT_targets_mismatch=The number of target goal indices does not match the number of target subformula indices.",
+        "SPT_goal_counts_mismatch=The number of transformed goal counts does not match the number of original goals.",
+        "SPT_transformed_hashes_mismatch=The number of transformed goal fingerprints does not match the transformed goal counts."
+    })
+    public StandardProofTrace(String ruleName,
+                              String inferenceSetName,
+                              int[] targetGoalIndices,
+                              int[] targetSubformulaIndices,
+                              long[] originalGoalHashes,
+                              int[] transformedGoalCounts,
+                              long[] transformedGoalHashes,
+                              long timestamp,
+                              long durationNanos,
+                              byte[] payload) {
+        this.targetGoalIndices = targetGoalIndices == null ? NO_INTS : targetGoalIndices;
+        this.targetSubformulaIndices = targetSubformulaIndices == null ? NO_INTS : targetSubformulaIndices;
+        if (this.targetGoalIndices.length != this.targetSubformulaIndices.length) {
+            throw new IllegalArgumentException(Bundle.SPT_targets_mismatch());
+        }
+        this.originalGoalHashes = originalGoalHashes == null ? NO_LONGS : originalGoalHashes;
+        this.transformedGoalCounts = transformedGoalCounts == null ? NO_INTS : transformedGoalCounts;
+        if (this.originalGoalHashes.length != this.transformedGoalCounts.length) {
+            throw new IllegalArgumentException(Bundle.SPT_goal_counts_mismatch());
+        }
+        this.transformedGoalHashes = transformedGoalHashes == null ? NO_LONGS : transformedGoalHashes;
+        int totalTransformed = 0;
+        for (int count : this.transformedGoalCounts) {
+            totalTransformed += Math.max(0, count);
+        }
+        if (totalTransformed != this.transformedGoalHashes.length) {
+            throw new IllegalArgumentException(Bundle.SPT_transformed_hashes_mismatch());
+        }
+        this.ruleName = ruleName;
+        this.inferenceSetName = inferenceSetName;
+        this.timestamp = timestamp;
+        this.durationNanos = durationNanos;
+        this.payload = payload;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Properties">
+    /**
+     * Returns the name of the applied inference rule.
+     *
+     * @return the name of the applied inference rule.
+     */
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    /**
+     * Returns the name of the inference set the applied rule belongs to.
+     *
+     * @return the name of the inference set the applied rule belongs to.
+     */
+    public String getInferenceSetName() {
+        return inferenceSetName;
+    }
+
+    /**
+     * Returns the number of inference targets on which the rule was applied.
+     *
+     * @return the number of inference targets on which the rule was applied.
+     */
+    public int getTargetsCount() {
+        return targetGoalIndices.length;
+    }
+
+    /**
+     * Returns the inference target at the given index.
+     *
+     * @param index the index of the target.
+     * @return the inference target at the given index.
+     */
+    public InferenceTarget getTargetAt(int index) {
+        return new InferenceTarget(targetGoalIndices[index], targetSubformulaIndices[index]);
+    }
+
+    /**
+     * Returns the number of original goals (the goals on which the inference
+     * step was performed).
+     *
+     * @return the number of original goals.
+     */
+    public int getOriginalGoalsCount() {
+        return originalGoalHashes.length;
+    }
+
+    /**
+     * Returns the {@link GoalFingerprints fingerprint} of the original goal at
+     * the given index.
+     *
+     * @param goalIndex the index of the original goal.
+     * @return the fingerprint of the original goal at the given index.
+     */
+    public long getOriginalGoalHash(int goalIndex) {
+        return originalGoalHashes[goalIndex];
+    }
+
+    /**
+     * Returns the number of goals into which the original goal at the given
+     * index has been transformed. Returns
+     * {@link StandardProofTrace#UNCHANGED_GOAL} if the original goal has not
+     * been changed and {@code 0} if it has been discharged.
+     *
+     * @param goalIndex the index of the original goal.
+     * @return the number of goals into which the original goal at the given
+     * index has been transformed.
+     */
+    public int getTransformedGoalsCount(int goalIndex) {
+        return transformedGoalCounts[goalIndex];
+    }
+
+    /**
+     * Returns the total number of transformed goals.
+     *
+     * @return the total number of transformed goals.
+     */
+    public int getTransformedGoalHashesCount() {
+        return transformedGoalHashes.length;
+    }
+
+    /**
+     * Returns the {@link GoalFingerprints fingerprint} of the transformed goal
+     * at the given index. Transformed goals are ordered by the original goals
+     * they stem from.
+     *
+     * @param index the index of the transformed goal.
+     * @return the fingerprint of the transformed goal at the given index.
+     */
+    public long getTransformedGoalHash(int index) {
+        return transformedGoalHashes[index];
+    }
+
+    /**
+     * Returns the wall-clock time (in milliseconds since the epoch) at which
+     * the inference step started.
+     *
+     * @return the wall-clock time at which the inference step started.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the duration of the inference step in nanoseconds.
+     *
+     * @return the duration of the inference step in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the driver-specific payload of this trace. May be {@code null}.
+     *
+     * <p><span style="font-weight:bold">Note</span>: the returned array must
+     * not be modified.</p>
+     *
+     * @return the driver-specific payload of this trace.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns the driver-specific payload decoded as an UTF-8 string. Returns
+     * {@code null} if there is no payload.
+     *
+     * @return the driver-specific payload decoded as an UTF-8 string.
+     */
+    public String getPayloadAsString() {
+        return payload == null ? null : new String(payload, StandardCharsets.UTF_8);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Package Private Accessors">
+    int[] getTargetGoalIndices() {
+        return targetGoalIndices;
+    }
+
+    int[] getTargetSubformulaIndices() {
+        return targetSubformulaIndices;
+    }
+
+    long[] getOriginalGoalHashes() {
+        return originalGoalHashes;
+    }
+
+    int[] getTransformedGoalCounts() {
+        return transformedGoalCounts;
+    }
+
+    long[] getTransformedGoalHashes() {
+        return transformedGoalHashes;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Static Convenience Methods">
+    /**
+     * Creates a structured trace of an inference step.
+     *
+     * @param rule the applied inference rule.
+     * @param targets the targets on which the rule was applied.
+     * @param transformedGoals the transformed goals (see
+     * {@link InferenceStepResult#getTransformedGoals()} for the semantics of
+     * this list).
+     * @param timestamp the wall-clock time (in milliseconds since the epoch)
+     * at which the inference step started.
+     * @param durationNanos the duration of the inference step in nanoseconds.
+     * @param payload driver-specific payload (e.g.: the generated proof text).
+     * May be {@code null}.
+     * @return a structured trace of the inference step.
+     */
+    public static StandardProofTrace create(InferenceRuleDescriptor rule,
+                                            InferenceTargets targets,
+                                            List<? extends List<Goal>> transformedGoals,
+                                            long timestamp,
+                                            long durationNanos,
+                                            String payload) {
+        List<InferenceTarget> inferenceTargets = targets.getInferenceTargets();
+        int[] goalIndices = new int[inferenceTargets.size()];
+        int[] subformulaIndices = new int[inferenceTargets.size()];
+        for (int i = 0; i < goalIndices.length; i++) {
+            goalIndices[i] = inferenceTargets.get(i).getGoalIndex();
+            subformulaIndices[i] = inferenceTargets.get(i).getSubformulaIndex();
+        }
+
+        Goals originalGoals = targets.getGoals();
+        long[] originalHashes = GoalFingerprints.fingerprints(originalGoals);
+        int[] transformedCounts = new int[originalHashes.length];
+        ArrayList<Goal> allTransformedGoals = new ArrayList<>();
+        for (int i = 0; i < transformedCounts.length; i++) {
+            List<Goal> goals = transformedGoals == null || i >= transformedGoals.size() ? null : transformedGoals.get(i);
+            if (goals == null || (goals.size() == 1 && goals.get(0) == originalGoals.get(i))) {
+                transformedCounts[i] = UNCHANGED_GOAL;
+            } else {
+                transformedCounts[i] = goals.size();
+                allTransformedGoals.addAll(goals);
+            }
+        }
+
+        return new StandardProofTrace(
+                rule == null ? null : rule.getName(),
+                rule == null || rule.getOwner() == null ? null : rule.getOwner().getInferenceSetName(),
+                goalIndices,
+                subformulaIndices,
+                originalHashes,
+                transformedCounts,
+                GoalFingerprints.fingerprints(allTransformedGoals),
+                timestamp,
+                durationNanos,
+                payload == null ? null : payload.getBytes(StandardCharsets.UTF_8));
+    }
+    // </editor-fold>
 }
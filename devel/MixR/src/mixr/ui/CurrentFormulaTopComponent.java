@@ -34,6 +34,7 @@ import javax.swing.ActionMap;
 import javax.swing.InputMap;
 import javax.swing.JComponent;
 import javax.swing.tree.TreeSelectionModel;
+import mixr.components.util.RepresentationPrecomputer;
 import mixr.logic.Formula;
 import mixr.logic.FormulaRepresentation;
 import mixr.logic.Goal;
@@ -241,6 +242,9 @@ public final class CurrentFormulaTopComponent extends TopComponent implements Ex
         } else {
             showGoal(generalGoalNode);
         }
+        if (generalGoalNode != null) {
+            RepresentationPrecomputer.getDefault().setSelectedGoalIndex(generalGoalNode.getGoalIndex());
+        }
     }
 
     private void updateSelectionFrom(ExplorerManager em) {
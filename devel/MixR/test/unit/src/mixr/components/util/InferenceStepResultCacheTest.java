@@ -0,0 +1,312 @@
+/*
+ * File name: InferenceStepResultCacheTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.components.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import mixr.components.GoalTransformer;
+import mixr.logic.AutomatedInferenceRule;
+import mixr.logic.Formula;
+import mixr.logic.FormulaFormat;
+import mixr.logic.FormulaFormatDescriptor;
+import mixr.logic.FormulaRepresentation;
+import mixr.logic.Goal;
+import mixr.logic.GoalFingerprints;
+import mixr.logic.GoalTransformationResult;
+import mixr.logic.Goals;
+import mixr.logic.InferenceRuleDescriptor;
+import mixr.logic.InferenceStepResult;
+import mixr.logic.InferenceTarget;
+import mixr.logic.InferenceTargets;
+import mixr.logic.NondeterministicInferenceRule;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import propity.util.MovableArrayList;
+
+/**
+ * Tests of {@link InferenceStepResultCache}.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class InferenceStepResultCacheTest {
+
+    private static final FormulaFormat FORMAT = new FormulaFormatDescriptor("test_format", "Test format", Object.class);
+    private final TestReasoner reasoner = new TestReasoner();
+    private final TestRule rule = new TestRule(reasoner);
+
+    @Test
+    public void testHit() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(4);
+        CountingComputation computation = new CountingComputation();
+        InferenceStepResult first = cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+
+        // A structurally equal goal (e.g.: after the goals were refreshed):
+        InferenceTargets refreshed = targets(goals("A"));
+        InferenceStepResult second = cache.applyAutomatedInferenceRule(refreshed, rule, computation);
+
+        assertEquals(1, computation.invocations);
+        assertEquals(1, cache.getHitsCount());
+        assertEquals(1, cache.getMissesCount());
+        assertSame(refreshed.getGoals(), second.getOriginalGoals());
+        assertSame(first.getTransformedGoalsFor(0).get(0), second.getTransformedGoalsFor(0).get(0));
+    }
+
+    @Test
+    public void testMiss() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(4);
+        CountingComputation computation = new CountingComputation();
+        cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+        InferenceStepResult result = cache.applyAutomatedInferenceRule(targets(goals("B")), rule, computation);
+
+        assertEquals(2, computation.invocations);
+        assertEquals(0, cache.getHitsCount());
+        assertEquals(2, cache.getMissesCount());
+        assertEquals(2, cache.size());
+        assertEquals("B'", rawFormula(result.getTransformedGoalsFor(0).get(0)));
+    }
+
+    @Test
+    public void testFingerprintCollisionIsAMiss() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(4);
+        CountingComputation computation = new CountingComputation();
+        Goals goals1 = new Goals(reasoner, new ArrayList<>(Arrays.asList(goal(new CollidingFormula("A")))));
+        Goals goals2 = new Goals(reasoner, new ArrayList<>(Arrays.asList(goal(new CollidingFormula("B")))));
+        assertEquals(GoalFingerprints.fingerprint(goals1.get(0)), GoalFingerprints.fingerprint(goals2.get(0)));
+
+        cache.applyAutomatedInferenceRule(targets(goals1), rule, computation);
+        InferenceStepResult result = cache.applyAutomatedInferenceRule(targets(goals2), rule, computation);
+
+        assertEquals(2, computation.invocations);
+        assertEquals(0, cache.getHitsCount());
+        assertEquals("B'", rawFormula(result.getTransformedGoalsFor(0).get(0)));
+    }
+
+    @Test
+    public void testEviction() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(1);
+        CountingComputation computation = new CountingComputation();
+        cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+        cache.applyAutomatedInferenceRule(targets(goals("B")), rule, computation);
+        assertEquals(1, cache.size());
+
+        // The result for "A" has been evicted, the one for "B" is still there:
+        cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+        assertEquals(3, computation.invocations);
+        cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+        assertEquals(3, computation.invocations);
+        assertEquals(1, cache.getHitsCount());
+    }
+
+    @Test
+    public void testRebaseOntoRefreshedGoals() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(4);
+        CountingComputation computation = new CountingComputation();
+        // The rule is applied on all goals, but changes only the first one:
+        cache.applyAutomatedInferenceRule(new InferenceTargets(goals("A", "B"), null), rule, computation);
+        Goals refreshed = goals("A", "B");
+        InferenceStepResult rebased = cache.applyAutomatedInferenceRule(new InferenceTargets(refreshed, null), rule, computation);
+
+        assertEquals(1, computation.invocations);
+        assertSame(refreshed, rebased.getOriginalGoals());
+        assertSame(reasoner, rebased.getSlaveReasoner());
+        assertTrue(rebased.isGoalChanged(0));
+        assertFalse(rebased.isGoalChanged(1));
+        assertEquals("A'", rawFormula(rebased.getTransformedGoalsFor(0).get(0)));
+    }
+
+    @Test
+    public void testClear() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(4);
+        CountingComputation computation = new CountingComputation();
+        cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.applyAutomatedInferenceRule(targets(goals("A")), rule, computation);
+        assertEquals(2, computation.invocations);
+    }
+
+    @Test
+    public void testNondeterministicRulesAreNotMemoized() {
+        InferenceStepResultCache cache = new InferenceStepResultCache(4);
+        CountingComputation computation = new CountingComputation();
+        NondeterministicTestRule nondeterministicRule = new NondeterministicTestRule(reasoner);
+        cache.applyAutomatedInferenceRule(targets(goals("A")), nondeterministicRule, computation);
+        cache.applyAutomatedInferenceRule(targets(goals("A")), nondeterministicRule, computation);
+
+        assertEquals(2, computation.invocations);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitsCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new InferenceStepResultCache(0);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Methods">
+    private static Goal goal(Object rawFormula) {
+        return new Goal(null, null, null, new Formula(new FormulaRepresentation(rawFormula, FORMAT), Formula.FormulaRole.Goal));
+    }
+
+    private Goals goals(String... rawFormulae) {
+        ArrayList<Goal> goals = new ArrayList<>();
+        for (String rawFormula : rawFormulae) {
+            goals.add(goal(rawFormula));
+        }
+        return new Goals(reasoner, goals);
+    }
+
+    private static InferenceTargets targets(Goals goals) {
+        return new InferenceTargets(goals, Arrays.asList(new InferenceTarget(0)));
+    }
+
+    private static Object rawFormula(Goal goal) {
+        return goal.asFormula().getMainRepresentation().getFormula();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    /**
+     * Transforms the first goal {@code X} into the goal {@code X'} and counts
+     * its invocations.
+     */
+    private class CountingComputation implements AutomatedInferenceRule {
+
+        int invocations;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public InferenceStepResult applyAutomatedInferenceRule(InferenceTargets targets) {
+            ++invocations;
+            MovableArrayList<Goal> transformed = new MovableArrayList<>();
+            transformed.add(goal(rawFormula(targets.getGoals().get(0)) + "'"));
+            return new GoalTransformationResult(reasoner, targets.getGoals(), new MovableArrayList[]{transformed}, null);
+        }
+    }
+
+    /**
+     * A raw formula whose hash code is the same for all instances.
+     */
+    private static class CollidingFormula {
+
+        private final String name;
+
+        CollidingFormula(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CollidingFormula && name.equals(((CollidingFormula) obj).name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class TestRule implements InferenceRuleDescriptor {
+
+        private final GoalTransformer owner;
+
+        TestRule(GoalTransformer owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public String getName() {
+            return "test rule";
+        }
+
+        @Override
+        public String getDescription() {
+            return "A test rule.";
+        }
+
+        @Override
+        public boolean isFullyAutomated() {
+            return true;
+        }
+
+        @Override
+        public GoalTransformer getOwner() {
+            return owner;
+        }
+    }
+
+    private static class NondeterministicTestRule extends TestRule implements NondeterministicInferenceRule {
+
+        NondeterministicTestRule(GoalTransformer owner) {
+            super(owner);
+        }
+    }
+
+    private static class TestReasoner extends BareGoalProvidingReasoner implements GoalTransformer {
+
+        @Override
+        public String getName() {
+            return "test reasoner";
+        }
+
+        @Override
+        public Collection<? extends InferenceRuleDescriptor> getApplicableInferenceRules(InferenceTargets target) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<? extends InferenceRuleDescriptor> getInferenceRules() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean canTransform(InferenceTargets target) {
+            return false;
+        }
+
+        @Override
+        public void applyInferenceRule(InferenceTargets targets, InferenceRuleDescriptor inferenceRule) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InferenceStepResult applyAutomatedInferenceRule(InferenceTargets targets, InferenceRuleDescriptor inferenceRule) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getInferenceSetName() {
+            return "test inference set";
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,244 @@
+/*
+ * File name: GoalCorpusTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import mixr.FormulaFormatManager;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
+import static mixr.logic.BinaryEncoding.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Round-trip tests of {@link GoalCorpusWriter} and {@link GoalCorpusReader}.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class GoalCorpusTest {
+
+    private static final BinaryFormat BINARY_FORMAT = new BinaryFormat();
+    private static final TextFormat TEXT_FORMAT = new TextFormat();
+    /**
+     * A format without a codec. Its representations are not stored.
+     */
+    private static final FormulaFormat PLAIN_FORMAT = new FormulaFormatDescriptor("test_plain", "Plain", Object.class);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Goal withPremises = new Goal(
+                new ArrayList<>(Arrays.asList(
+                        formula(Formula.FormulaRole.Premise, "P1"),
+                        formula(Formula.FormulaRole.Premise, "P2"))),
+                null,
+                formula(Formula.FormulaRole.Conclusion, "C"),
+                new Formula(new FormulaRepresentation("P1 & P2 --> C", BINARY_FORMAT), Formula.FormulaRole.Goal,
+                        new FormulaRepresentation("P1 and P2 imply C", TEXT_FORMAT)));
+        Goal withoutPremises = new Goal(null, null, null, formula(Formula.FormulaRole.Goal, "Q"));
+
+        byte[] corpus = write(withPremises, withoutPremises);
+        try (GoalCorpusReader reader = new GoalCorpusReader(new ByteArrayInputStream(corpus), formatManager(BINARY_FORMAT, TEXT_FORMAT))) {
+            assertGoalEquals(withPremises, reader.next());
+            assertGoalEquals(withoutPremises, reader.next());
+            assertNull(reader.next());
+            assertEquals(0, reader.getSkippedRepresentationsCount());
+        }
+    }
+
+    @Test
+    public void testFormatNamesAreStoredOnce() throws IOException {
+        byte[] corpus = write(
+                new Goal(null, null, null, formula(Formula.FormulaRole.Goal, "A")),
+                new Goal(null, null, null, formula(Formula.FormulaRole.Goal, "B")),
+                new Goal(null, null, null, formula(Formula.FormulaRole.Goal, "C")));
+        assertEquals(1, countOccurrences(corpus, BINARY_FORMAT.getFormatName().getBytes(StandardCharsets.UTF_8)));
+        try (GoalCorpusReader reader = new GoalCorpusReader(new ByteArrayInputStream(corpus), formatManager(BINARY_FORMAT))) {
+            assertEquals(3, reader.readAll(null).size());
+        }
+    }
+
+    @Test
+    public void testFreeVariablesOfTextEncodedRepresentations() throws IOException {
+        HashSet<FreeVariable> freeVariables = new HashSet<>(Arrays.asList(new FreeVariable("x", "nat"), new FreeVariable("y", null)));
+        Goal goal = new Goal(null, null, null, new Formula(new FormulaRepresentation("x < y", TEXT_FORMAT, freeVariables), Formula.FormulaRole.Goal));
+
+        byte[] corpus = write(goal);
+        try (GoalCorpusReader reader = new GoalCorpusReader(new ByteArrayInputStream(corpus), formatManager(TEXT_FORMAT))) {
+            Set<FreeVariable> readFreeVariables = reader.next().asFormula().getMainRepresentation().getFreeVariables();
+            assertEquals(freeVariables, readFreeVariables);
+            for (FreeVariable freeVariable : readFreeVariables) {
+                assertEquals(freeVariable.getName().equals("x") ? "nat" : null, freeVariable.getType());
+            }
+        }
+    }
+
+    @Test
+    public void testSkippedRepresentations() throws IOException {
+        Goal goal = new Goal(null, null, null, new Formula(new FormulaRepresentation("A", BINARY_FORMAT), Formula.FormulaRole.Goal,
+                new FormulaRepresentation("A", PLAIN_FORMAT),
+                new FormulaRepresentation("A", TEXT_FORMAT)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GoalCorpusWriter writer = new GoalCorpusWriter(bytes)) {
+            writer.write(goal);
+            // Representations without a codec are not stored:
+            assertEquals(1, writer.getSkippedRepresentationsCount());
+            assertEquals(1, writer.getGoalsCount());
+        }
+        // Representations of unknown formats are skipped on reading:
+        try (GoalCorpusReader reader = new GoalCorpusReader(new ByteArrayInputStream(bytes.toByteArray()), formatManager(BINARY_FORMAT))) {
+            Formula goalFormula = reader.next().asFormula();
+            assertEquals("A", goalFormula.getMainRepresentation().getFormula());
+            assertEquals(1, goalFormula.getRepresentationsCount());
+            assertEquals(1, reader.getSkippedRepresentationsCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsForeignStreams() throws IOException {
+        new GoalCorpusReader(new ByteArrayInputStream("not a corpus".getBytes(StandardCharsets.UTF_8)), formatManager());
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Methods">
+    private static Formula formula(Formula.FormulaRole role, String rawFormula) {
+        return new Formula(new FormulaRepresentation(rawFormula, BINARY_FORMAT), role);
+    }
+
+    private static byte[] write(Goal... goals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GoalCorpusWriter writer = new GoalCorpusWriter(bytes)) {
+            writer.writeAll(Arrays.asList(goals));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns a format manager that knows only the given formats.
+     */
+    private static FormulaFormatManager formatManager(FormulaFormat... formats) {
+        final HashMap<String, FormulaFormat> formatsByName = new HashMap<>();
+        for (FormulaFormat format : formats) {
+            formatsByName.put(format.getFormatName(), format);
+        }
+        return (FormulaFormatManager) Proxy.newProxyInstance(GoalCorpusTest.class.getClassLoader(), new Class<?>[]{FormulaFormatManager.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getFormulaFormat")) {
+                    return formatsByName.get((String) args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static void assertGoalEquals(Goal expected, Goal actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getPremisesCount(), actual.getPremisesCount());
+        for (int i = 0; i < expected.getPremisesCount(); i++) {
+            assertFormulaEquals(expected.getPremiseAt(i), actual.getPremiseAt(i));
+        }
+        assertFormulaEquals(expected.getConclusion(), actual.getConclusion());
+        assertFormulaEquals(expected.asFormula(), actual.asFormula());
+    }
+
+    private static void assertFormulaEquals(Formula expected, Formula actual) {
+        assertEquals(expected.getRole(), actual.getRole());
+        assertEquals(expected.getRepresentationsCount(), actual.getRepresentationsCount());
+        if (expected.getMainRepresentation() == null) {
+            assertNull(actual.getMainRepresentation());
+            return;
+        }
+        assertSame(expected.getMainRepresentation().getFormat(), actual.getMainRepresentation().getFormat());
+        assertEquals(expected.getMainRepresentation().getFormula(), actual.getMainRepresentation().getFormula());
+        FormulaRepresentation[] representations = expected.getRepresentations();
+        for (FormulaRepresentation representation : representations) {
+            ArrayList<? extends FormulaRepresentation> actualRepresentations = actual.fetchRepresentations(representation.getFormat());
+            assertFalse(actualRepresentations == null || actualRepresentations.isEmpty());
+            assertEquals(representation.getFormula(), actualRepresentations.get(0).getFormula());
+        }
+    }
+
+    private static int countOccurrences(byte[] haystack, byte[] needle) {
+        int count = 0;
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            int j = 0;
+            while (j < needle.length && haystack[i + j] == needle[j]) {
+                ++j;
+            }
+            if (j == needle.length) {
+                ++count;
+            }
+        }
+        return count;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    private static class BinaryFormat extends FormulaFormatDescriptor implements BinaryEncodedFormulaFormat {
+
+        BinaryFormat() {
+            super("test_binary", "Binary", String.class);
+        }
+
+        @Override
+        public void encodeRepresentation(FormulaRepresentation representation, DataOutput out) throws IOException, FormulaEncodingException {
+            writeString(out, (String) representation.getFormula());
+        }
+
+        @Override
+        public FormulaRepresentation decodeRepresentation(DataInput in) throws IOException, FormulaEncodingException {
+            return new FormulaRepresentation(readString(in), this);
+        }
+    }
+
+    private static class TextFormat extends FormulaFormatDescriptor implements TextEncodedFormulaFormat {
+
+        TextFormat() {
+            super("test_text", "Text", String.class);
+        }
+
+        @Override
+        public String encodeAsString(Object formula) throws FormulaEncodingException {
+            return (String) formula;
+        }
+
+        @Override
+        public Object decodeFromString(String encodedFormula) throws FormulaEncodingException {
+            return encodedFormula;
+        }
+    }
+    // </editor-fold>
+}
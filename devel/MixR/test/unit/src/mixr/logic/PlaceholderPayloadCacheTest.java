@@ -0,0 +1,181 @@
+/*
+ * File name: PlaceholderPayloadCacheTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.util.Collections;
+import java.util.Set;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Tests of {@link PlaceholderPayloadCache}.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class PlaceholderPayloadCacheTest {
+
+    private static final Set<FreeVariable> NO_VARIABLES = null;
+
+    @Test
+    public void testHit() throws FormulaEncodingException {
+        PlaceholderPayloadCache cache = new PlaceholderPayloadCache(4);
+        CountingFormat format = new CountingFormat();
+        Object first = cache.decode(format, "A", NO_VARIABLES);
+        Object second = cache.decode(format, "A", NO_VARIABLES);
+
+        assertEquals(1, format.decodings);
+        assertSame(first, second);
+        assertEquals(1, cache.getHitsCount());
+        assertEquals(1, cache.getMissesCount());
+    }
+
+    @Test
+    public void testEvictionOrder() throws FormulaEncodingException {
+        PlaceholderPayloadCache cache = new PlaceholderPayloadCache(2);
+        CountingFormat format = new CountingFormat();
+        cache.decode(format, "A", NO_VARIABLES);
+        cache.decode(format, "B", NO_VARIABLES);
+        // "A" is now used more recently than "B":
+        cache.decode(format, "A", NO_VARIABLES);
+        cache.decode(format, "C", NO_VARIABLES);
+        assertEquals(2, cache.size());
+        assertEquals(3, format.decodings);
+
+        // The least recently used "B" has been evicted, "A" is still there:
+        cache.decode(format, "A", NO_VARIABLES);
+        assertEquals(3, format.decodings);
+        cache.decode(format, "B", NO_VARIABLES);
+        assertEquals(4, format.decodings);
+    }
+
+    @Test
+    public void testFreeVariablesArePartOfTheKey() throws FormulaEncodingException {
+        PlaceholderPayloadCache cache = new PlaceholderPayloadCache(4);
+        CountingFormat format = new CountingFormat();
+        Object withoutVariables = cache.decode(format, "A", NO_VARIABLES);
+        Object withVariableX = cache.decode(format, "A", FreeVariable.createSingletonSet("x", "type"));
+        Object withVariableY = cache.decode(format, "A", FreeVariable.createSingletonSet("y", "type"));
+
+        assertEquals(3, format.decodings);
+        assertNotSame(withoutVariables, withVariableX);
+        assertNotSame(withVariableX, withVariableY);
+
+        // No free variables are the same as an empty set of free variables:
+        assertSame(withoutVariables, cache.decode(format, "A", Collections.<FreeVariable>emptySet()));
+        assertSame(withVariableX, cache.decode(format, "A", FreeVariable.createSingletonSet("x", "type")));
+        assertEquals(3, format.decodings);
+    }
+
+    @Test
+    public void testFailedDecodingsAreNotMemoized() {
+        PlaceholderPayloadCache cache = new PlaceholderPayloadCache(4);
+        CountingFormat format = new CountingFormat();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.decode(format, CountingFormat.INVALID_PAYLOAD, NO_VARIABLES);
+                fail("The invalid payload was decoded.");
+            } catch (FormulaEncodingException ex) {
+            }
+        }
+        assertEquals(2, format.decodings);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testModifiedExternalFormulaIsDecodedAgain() throws FormulaEncodingException {
+        PlaceholderPayloadCache cache = new PlaceholderPayloadCache(4);
+        ExternalFormat format = new ExternalFormat();
+        Object original = cache.decode(format, "A", NO_VARIABLES);
+        assertSame(original, cache.decode(format, "A", NO_VARIABLES));
+
+        format.modificationStamp++;
+        Object modified = cache.decode(format, "A", NO_VARIABLES);
+        assertNotSame(original, modified);
+        assertSame(modified, cache.decode(format, "A", NO_VARIABLES));
+        assertEquals(2, format.decodings);
+    }
+
+    @Test
+    public void testUntrackedExternalFormulaIsNotMemoized() throws FormulaEncodingException {
+        PlaceholderPayloadCache cache = new PlaceholderPayloadCache(4);
+        ExternalFormat format = new ExternalFormat();
+        format.modificationStamp = ExternallyStoredFormulaFormat.UNKNOWN_MODIFICATION_STAMP;
+        cache.decode(format, "A", NO_VARIABLES);
+        cache.decode(format, "A", NO_VARIABLES);
+
+        assertEquals(2, format.decodings);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitsCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new PlaceholderPayloadCache(0);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    /**
+     * Decodes every payload into a new object and counts its decodings.
+     */
+    private static class CountingFormat extends FormulaFormatDescriptor implements TextEncodedFormulaFormat {
+
+        static final String INVALID_PAYLOAD = "invalid";
+        int decodings;
+
+        CountingFormat() {
+            super("counting_format", "Counting format", Object.class);
+        }
+
+        @Override
+        public String encodeAsString(Object formula) {
+            return formula.toString();
+        }
+
+        @Override
+        public Object decodeFromString(String encodedFormula) throws FormulaEncodingException {
+            ++decodings;
+            if (INVALID_PAYLOAD.equals(encodedFormula)) {
+                throw new FormulaEncodingException("Invalid payload.");
+            }
+            return new StringBuilder(encodedFormula);
+        }
+    }
+
+    /**
+     * Pretends that every payload references a resource with the given
+     * modification stamp.
+     */
+    private static class ExternalFormat extends CountingFormat implements ExternallyStoredFormulaFormat {
+
+        long modificationStamp;
+
+        @Override
+        public long getModificationStamp(String encodedFormula) {
+            return modificationStamp;
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,217 @@
+/*
+ * File name: ProofTraceLogTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.logic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Round-trip tests of {@link ProofTraceLogWriter} and
+ * {@link ProofTraceLogReader}.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class ProofTraceLogTest {
+
+    @Test
+    public void testRoundTripOfSingleStep() throws IOException {
+        StandardProofTrace trace = createTrace("rule", System.currentTimeMillis(), "proof text");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ProofTraceLogWriter writer = new ProofTraceLogWriter(bytes)) {
+            writer.write(trace);
+            assertEquals(1, writer.getStepsCount());
+        }
+        try (ProofTraceLogReader reader = new ProofTraceLogReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertTraceEquals(trace, reader.next());
+            assertEquals(0, reader.getSessionIndex());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testRoundTripOfNegativeValues() throws IOException {
+        // Unchanged goals, whole-goal targets, a step that started before the
+        // session, and a negative duration are all encoded with zig-zag:
+        StandardProofTrace trace = new StandardProofTrace(
+                null,
+                null,
+                new int[]{0, Integer.MIN_VALUE, Integer.MAX_VALUE},
+                new int[]{-1, -64, 64},
+                new long[]{Long.MIN_VALUE, -1L, Long.MAX_VALUE},
+                new int[]{StandardProofTrace.UNCHANGED_GOAL, 0, 2},
+                new long[]{0L, -42L},
+                0L,
+                -123456789L,
+                null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ProofTraceLogWriter writer = new ProofTraceLogWriter(bytes)) {
+            writer.write(trace);
+        }
+        try (ProofTraceLogReader reader = new ProofTraceLogReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertTraceEquals(trace, reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testStringTableReuse() throws IOException {
+        long timestamp = System.currentTimeMillis();
+        StandardProofTrace first = createTrace("some_rather_long_rule_name", timestamp, null);
+        StandardProofTrace second = createTrace("some_rather_long_rule_name", timestamp + 1, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ProofTraceLogWriter writer = new ProofTraceLogWriter(bytes)) {
+            writer.write(first);
+            writer.write(second);
+        }
+        byte[] log = bytes.toByteArray();
+        assertEquals(1, countOccurrences(log, "some_rather_long_rule_name".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, countOccurrences(log, "test inference set".getBytes(StandardCharsets.UTF_8)));
+        try (ProofTraceLogReader reader = new ProofTraceLogReader(new ByteArrayInputStream(log))) {
+            assertTraceEquals(first, reader.next());
+            assertTraceEquals(second, reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testMultipleSessions() throws IOException {
+        File file = File.createTempFile("mixr-proof-trace", ".log");
+        try {
+            long timestamp = System.currentTimeMillis();
+            StandardProofTrace first = createTrace("rule A", timestamp, "first");
+            StandardProofTrace second = createTrace("rule B", timestamp + 5, "second");
+            StandardProofTrace third = createTrace("rule A", timestamp + 10, null);
+            try (ProofTraceLogWriter writer = new ProofTraceLogWriter(file)) {
+                writer.write(first);
+                writer.write(second);
+            }
+            // The second session must not write the header again and must
+            // define its strings anew:
+            try (ProofTraceLogWriter writer = new ProofTraceLogWriter(file)) {
+                writer.write(third);
+            }
+
+            final ArrayList<Integer> sessions = new ArrayList<>();
+            final ArrayList<Integer> stepSessions = new ArrayList<>();
+            final ArrayList<StandardProofTrace> steps = new ArrayList<>();
+            try (ProofTraceLogReader reader = new ProofTraceLogReader(file)) {
+                long stepsCount = reader.replay(new ProofTraceLogReader.ReplayHandler() {
+                    @Override
+                    public void sessionStarted(int sessionIndex, long timestamp) {
+                        sessions.add(sessionIndex);
+                    }
+
+                    @Override
+                    public void stepReplayed(int sessionIndex, StandardProofTrace step) {
+                        stepSessions.add(sessionIndex);
+                        steps.add(step);
+                    }
+                });
+                assertEquals(3, stepsCount);
+            }
+            assertEquals(2, sessions.size());
+            assertEquals(Integer.valueOf(0), sessions.get(0));
+            assertEquals(Integer.valueOf(1), sessions.get(1));
+            assertEquals(Integer.valueOf(0), stepSessions.get(0));
+            assertEquals(Integer.valueOf(0), stepSessions.get(1));
+            assertEquals(Integer.valueOf(1), stepSessions.get(2));
+            assertTraceEquals(first, steps.get(0));
+            assertTraceEquals(second, steps.get(1));
+            assertTraceEquals(third, steps.get(2));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsForeignStreams() throws IOException {
+        new ProofTraceLogReader(new ByteArrayInputStream("not a log".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testZigZag() {
+        int[] ints = {0, -1, 1, -64, 64, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int value : ints) {
+            assertEquals(value, BinaryEncoding.unZigZag(BinaryEncoding.zigZag(value)));
+        }
+        long[] longs = {0L, -1L, 1L, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (long value : longs) {
+            assertEquals(value, BinaryEncoding.unZigZag(BinaryEncoding.zigZag(value)));
+        }
+        // Small absolute values must map to small unsigned values:
+        assertEquals(1, BinaryEncoding.zigZag(-1));
+        assertEquals(2, BinaryEncoding.zigZag(1));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Methods">
+    private static StandardProofTrace createTrace(String ruleName, long timestamp, String payload) {
+        return new StandardProofTrace(
+                ruleName,
+                "test inference set",
+                new int[]{0},
+                new int[]{3},
+                new long[]{0x0123456789abcdefL, 42L},
+                new int[]{2, StandardProofTrace.UNCHANGED_GOAL},
+                new long[]{7L, -7L},
+                timestamp,
+                1000L,
+                payload == null ? null : payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertTraceEquals(StandardProofTrace expected, StandardProofTrace actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getRuleName(), actual.getRuleName());
+        assertEquals(expected.getInferenceSetName(), actual.getInferenceSetName());
+        assertArrayEquals(expected.getTargetGoalIndices(), actual.getTargetGoalIndices());
+        assertArrayEquals(expected.getTargetSubformulaIndices(), actual.getTargetSubformulaIndices());
+        assertArrayEquals(expected.getOriginalGoalHashes(), actual.getOriginalGoalHashes());
+        assertArrayEquals(expected.getTransformedGoalCounts(), actual.getTransformedGoalCounts());
+        assertArrayEquals(expected.getTransformedGoalHashes(), actual.getTransformedGoalHashes());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getDurationNanos(), actual.getDurationNanos());
+        assertEquals(expected.getPayloadAsString(), actual.getPayloadAsString());
+    }
+
+    private static int countOccurrences(byte[] haystack, byte[] needle) {
+        int count = 0;
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            int j = 0;
+            while (j < needle.length && haystack[i + j] == needle[j]) {
+                ++j;
+            }
+            if (j == needle.length) {
+                ++count;
+            }
+        }
+        return count;
+    }
+    // </editor-fold>
+}
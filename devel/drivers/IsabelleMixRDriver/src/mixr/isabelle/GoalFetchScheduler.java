@@ -0,0 +1,418 @@
+/*
+ * File name: GoalFetchScheduler.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import java.awt.EventQueue;
+import java.util.IdentityHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Decides when to ask Isabelle for its current goals.
+ *
+ * <p>Every {@link GoalFetchScheduler#proofStateChanged() proof state change}
+ * (re)starts a debounce delay. When the delay expires, a fetch is started
+ * through the {@link GoalFetcher goal fetcher}, unless:</p>
+ *
+ * <ul>
+ *
+ * <li>another fetch is still in flight (in which case the new fetch is started
+ * as soon as the running one finishes), or</li>
+ *
+ * <li>the {@link GoalFetcher#getProofStateKey() proof state key} (the active
+ * document and command position) is the same as the one of the goals that were
+ * delivered last.</li>
+ *
+ * </ul>
+ *
+ * <p>The debounce delay adapts to the observed fetch latency (an exponentially
+ * weighted moving average, clamped between {@link GoalFetchScheduler#MIN_DELAY_MILLIS}
+ * and {@link GoalFetchScheduler#MAX_DELAY_MILLIS}). There is no point in asking
+ * Isabelle more often than it can answer.</p>
+ *
+ * <p>Responses of fetches that were superseded by a later state change are
+ * dropped. Responses are {@link GoalFetcher#deliver(java.lang.Object) delivered}
+ * on this scheduler's own background thread (so that decoding them does not
+ * block the event dispatch thread). The goals are then {@link
+ * GoalFetchScheduler#publish(java.lang.Runnable) published} on the event
+ * dispatch thread, where they are dropped too if a state change superseded
+ * them in the meantime.</p>
+ *
+ * <p>The scheduler reads the time and runs its work through a {@link
+ * FetchExecutor fetch executor}. Tests replace the {@link
+ * RequestProcessorExecutor default one} to control time.</p>
+ *
+ * @param <R> the type of responses returned by fetches.
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+final class GoalFetchScheduler<R> {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    /**
+     * The smallest debounce delay.
+     */
+    static final int MIN_DELAY_MILLIS = 100;
+    /**
+     * The largest debounce delay.
+     */
+    static final int MAX_DELAY_MILLIS = 2000;
+    /**
+     * The debounce delay before any latency has been observed.
+     */
+    static final int INITIAL_DELAY_MILLIS = 500;
+    /**
+     * A fetch that has not finished after this time is considered lost.
+     */
+    static final int LOST_FETCH_MILLIS = 30000;
+    private static final double LATENCY_SMOOTHING = 0.3;
+    private final GoalFetcher<R> fetcher;
+    private final FetchExecutor executor;
+    private final Runnable fetchTask;
+    private final Object lock = new Object();
+    private double averageLatencyMillis = INITIAL_DELAY_MILLIS;
+    private long stateVersion;
+    private long issuedGeneration;
+    private boolean fetchInFlight;
+    private boolean fetchPending;
+    private long inFlightStateVersion;
+    private long deliveredStateVersion;
+    private long inFlightStartNanos;
+    private Object inFlightKey;
+    private Object deliveredKey;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructor">
+    /**
+     * Creates a scheduler that fetches goals through the given fetcher.
+     *
+     * @param fetcher performs the actual communication with Isabelle.
+     * @param executor runs the work of this scheduler.
+     */
+    GoalFetchScheduler(GoalFetcher<R> fetcher, FetchExecutor executor) {
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.fetchTask = new Runnable() {
+            @Override
+            public void run() {
+                startFetch();
+            }
+        };
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Scheduling">
+    /**
+     * Notifies this scheduler that the proof state changed. This (re)starts
+     * the debounce delay and supersedes any fetch that is in flight.
+     */
+    void proofStateChanged() {
+        int delay;
+        synchronized (lock) {
+            ++stateVersion;
+            delay = getDelayMillis();
+        }
+        executor.schedule(fetchTask, delay);
+    }
+
+    /**
+     * Forgets the key of the last delivered goals and starts a new fetch
+     * without the debounce delay. This is used when the delivered goals turn
+     * out to be unusable (e.g.: the response referred to goals the fetcher no
+     * longer has).
+     */
+    void refetch() {
+        synchronized (lock) {
+            ++stateVersion;
+            deliveredKey = null;
+        }
+        executor.schedule(fetchTask, 0);
+    }
+
+    /**
+     * Reports the response of the fetch with the given generation. This method
+     * may be called on any thread.
+     *
+     * @param generation the generation that was passed to {@link
+     * GoalFetcher#startFetch(long)}.
+     * @param response the response of the fetch.
+     */
+    void fetchFinished(final long generation, final R response) {
+        executor.post(new Runnable() {
+            @Override
+            public void run() {
+                finishFetch(generation, response);
+            }
+        });
+    }
+
+    /**
+     * Runs the given publication of the goals that are being {@link
+     * GoalFetcher#deliver(java.lang.Object) delivered} on the event dispatch
+     * thread. The publication is dropped if the proof state changes before it
+     * runs. This method must be called from within {@link
+     * GoalFetcher#deliver(java.lang.Object)}.
+     *
+     * @param publication sets the delivered goals.
+     */
+    void publish(final Runnable publication) {
+        final long publishedStateVersion;
+        synchronized (lock) {
+            publishedStateVersion = deliveredStateVersion;
+        }
+        executor.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCurrent(publishedStateVersion)) {
+                    return;
+                }
+                try {
+                    publication.run();
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(GoalFetchScheduler.class.getName()).log(Level.WARNING, "Could not publish the goals fetched from Isabelle.", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the current debounce delay.
+     *
+     * @return the current debounce delay in milliseconds.
+     */
+    int getDelayMillis() {
+        synchronized (lock) {
+            return (int) Math.max(MIN_DELAY_MILLIS, Math.min(MAX_DELAY_MILLIS, Math.round(averageLatencyMillis)));
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private void startFetch() {
+        long generation;
+        synchronized (lock) {
+            if (fetchInFlight && executor.nanoTime() - inFlightStartNanos < LOST_FETCH_MILLIS * 1000000L) {
+                fetchPending = true;
+                return;
+            }
+            fetchPending = false;
+            Object key = fetcher.getProofStateKey();
+            if (key != null && key.equals(deliveredKey)) {
+                return;
+            }
+            generation = ++issuedGeneration;
+            fetchInFlight = true;
+            inFlightKey = key;
+            inFlightStateVersion = stateVersion;
+            inFlightStartNanos = executor.nanoTime();
+        }
+        try {
+            fetcher.startFetch(generation);
+        } catch (RuntimeException ex) {
+            synchronized (lock) {
+                if (generation == issuedGeneration) {
+                    fetchInFlight = false;
+                }
+            }
+            Logger.getLogger(GoalFetchScheduler.class.getName()).log(Level.INFO, "Could not ask Isabelle for its goals.", ex);
+        }
+    }
+
+    /**
+     * Indicates whether the goals of the given state version are still
+     * current. If they are not, the goals of the current state must be fetched
+     * even if it has the key of the dropped goals (the fetch for the current
+     * state might already have been skipped because of that key).
+     */
+    private boolean isCurrent(long publishedStateVersion) {
+        int delay;
+        synchronized (lock) {
+            if (publishedStateVersion == stateVersion) {
+                return true;
+            }
+            deliveredKey = null;
+            delay = getDelayMillis();
+        }
+        executor.schedule(fetchTask, delay);
+        return false;
+    }
+
+    private void finishFetch(long generation, R response) {
+        boolean deliver;
+        boolean startPending;
+        synchronized (lock) {
+            if (generation != issuedGeneration) {
+                // A lost fetch finally came back. A newer one has been issued
+                // since.
+                return;
+            }
+            fetchInFlight = false;
+            double latencyMillis = (executor.nanoTime() - inFlightStartNanos) / 1e6;
+            averageLatencyMillis += LATENCY_SMOOTHING * (latencyMillis - averageLatencyMillis);
+            deliver = inFlightStateVersion == stateVersion;
+            if (deliver) {
+                deliveredKey = inFlightKey;
+                deliveredStateVersion = inFlightStateVersion;
+            }
+            startPending = fetchPending;
+        }
+        if (deliver) {
+            try {
+                fetcher.deliver(response);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(GoalFetchScheduler.class.getName()).log(Level.WARNING, "Could not process the goals fetched from Isabelle.", ex);
+            }
+        }
+        if (startPending) {
+            startFetch();
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Goal Fetcher">
+    /**
+     * Performs the actual communication with Isabelle on behalf of a {@link
+     * GoalFetchScheduler}.
+     *
+     * @param <R> the type of responses returned by fetches.
+     */
+    interface GoalFetcher<R> {
+
+        /**
+         * Returns an object that identifies the current proof state (e.g.: the
+         * active document and the command position). Fetches are skipped if
+         * this key equals the key of the last delivered goals.
+         *
+         * @return the key of the current proof state or {@code null} if it
+         * cannot be determined (in which case goals are always fetched).
+         */
+        Object getProofStateKey();
+
+        /**
+         * Asynchronously asks Isabelle for its goals. The response must be
+         * passed to {@link GoalFetchScheduler#fetchFinished(long,
+         * java.lang.Object)} together with the given generation.
+         *
+         * @param generation identifies this fetch.
+         */
+        void startFetch(long generation);
+
+        /**
+         * Processes the response of the newest fetch. This method is called
+         * on the scheduler's background thread. The resulting goals should be
+         * set through {@link GoalFetchScheduler#publish(java.lang.Runnable)}.
+         *
+         * @param response the response of the fetch.
+         */
+        void deliver(R response);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Fetch Executor">
+    /**
+     * Runs the work of a {@link GoalFetchScheduler} and tells it the time.
+     */
+    interface FetchExecutor {
+
+        /**
+         * Returns the current time of this executor.
+         *
+         * @return the current time in nanoseconds (only differences between
+         * two times are meaningful).
+         */
+        long nanoTime();
+
+        /**
+         * Runs the task on the scheduler's background thread as soon as
+         * possible.
+         *
+         * @param task the task to run.
+         */
+        void post(Runnable task);
+
+        /**
+         * Runs the task on the scheduler's background thread after the given
+         * delay. If the same task is already scheduled and has not started
+         * yet, it is postponed instead.
+         *
+         * @param task the task to run.
+         * @param delayMillis the delay in milliseconds.
+         */
+        void schedule(Runnable task, int delayMillis);
+
+        /**
+         * Runs the task on the event dispatch thread.
+         *
+         * @param task the task to run.
+         */
+        void invokeLater(Runnable task);
+    }
+
+    /**
+     * Runs the work of a scheduler on a single background thread of a {@link
+     * RequestProcessor} and on the {@link EventQueue event dispatch thread}.
+     */
+    static final class RequestProcessorExecutor implements FetchExecutor {
+
+        private final RequestProcessor processor;
+        private final IdentityHashMap<Runnable, RequestProcessor.Task> scheduledTasks = new IdentityHashMap<>();
+
+        @NbBundle.Messages({
+            "GFS_processor_name=Isabelle goal fetching"
+        })
+        RequestProcessorExecutor() {
+            this.processor = new RequestProcessor(Bundle.GFS_processor_name(), 1);
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void post(Runnable task) {
+            processor.post(task);
+        }
+
+        @Override
+        public void schedule(Runnable task, int delayMillis) {
+            RequestProcessor.Task scheduledTask;
+            synchronized (scheduledTasks) {
+                scheduledTask = scheduledTasks.get(task);
+                if (scheduledTask == null) {
+                    scheduledTasks.put(task, scheduledTask = processor.create(task));
+                }
+            }
+            scheduledTask.schedule(delayMillis);
+        }
+
+        @Override
+        public void invokeLater(Runnable task) {
+            EventQueue.invokeLater(task);
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,103 @@
+/*
+ * File name: I3PIsabelleSession.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import org.isabelle.iapp.facade.IAPP;
+import org.isabelle.iapp.process.Message;
+import org.isabelle.iapp.process.features.InjectionContext;
+import org.isabelle.iapp.process.features.InjectionFinishListener;
+import org.isabelle.iapp.process.features.InjectionResult;
+import org.isabelle.iapp.proofdocument.StateListener;
+import org.openide.util.Exceptions;
+
+/**
+ * Talks to the Isabelle prover that is currently running in I3P.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+final class I3PIsabelleSession implements IsabelleSession {
+
+    @Override
+    public void addStateListener(StateListener listener) {
+        IAPP.getInstance().getCentralEvents().addStateListener(listener);
+    }
+
+    @Override
+    public void requestGoals(String mlCommand, final GoalsResponseListener listener) throws UnsupportedOperationException {
+        InjectionResult cmd = IsabelleDriver.executeCommand(mlCommand);
+        cmd.addInjectionResultListener(new InjectionFinishListener() {
+            @Override
+            public void injectedFinished(InjectionResult inj) {
+                listener.responseReceived(toGoalsResponse(inj));
+            }
+        });
+    }
+
+    @Override
+    public void requestMessage(String mlCommand, final MessageResponseListener listener) throws UnsupportedOperationException {
+        InjectionResult cmd = IsabelleDriver.executeCommand(mlCommand);
+        cmd.addInjectionResultListener(new InjectionFinishListener() {
+            @Override
+            public void injectedFinished(InjectionResult inj) {
+                listener.messageReceived(toMessage(inj));
+            }
+        });
+    }
+
+    /**
+     * Returns the first printed message or {@code null} if nothing was
+     * printed.
+     */
+    private static Message toMessage(InjectionResult inj) {
+        try {
+            Message[] results = inj.getResults();
+            return results == null || results.length == 0 ? null : results[0];
+        } catch (InterruptedException ex) {
+            Exceptions.printStackTrace(ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code null} if the results could not be obtained.
+     */
+    private static GoalsResponse toGoalsResponse(InjectionResult inj) {
+        try {
+            Message[] results = inj.getResults();
+            InjectionContext injectionContext = inj.getInjectionContext();
+            if (results == null || injectionContext == null) {
+                return null;
+            }
+            String[] texts = new String[results.length];
+            for (int i = 0; i < results.length; i++) {
+                texts[i] = results[i].getText();
+            }
+            return new GoalsResponse(injectionContext.getProofDocument(), texts, results);
+        } catch (InterruptedException ex) {
+            Exceptions.printStackTrace(ex);
+            return null;
+        }
+    }
+}
@@ -25,28 +25,36 @@
 package mixr.isabelle;
 
 import isabelle.Term.Term;
+import java.awt.BorderLayout;
 import java.awt.Component;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.EventQueue;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyVetoException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JLabel;
-import javax.swing.Timer;
+import javax.swing.JPanel;
 import mixr.components.FormulaFormatsProvider;
 import mixr.components.FormulaPresenter;
 import mixr.components.GoalAcceptingReasoner;
 import mixr.components.MixRDriver;
 import mixr.components.util.BareGoalProvidingReasoner;
+import mixr.isabelle.IsabelleSession.GoalsResponse;
+import mixr.isabelle.pure.lib.FreeVar;
 import mixr.isabelle.pure.lib.TermYXML;
 import mixr.isabelle.terms.StringFormat;
 import mixr.isabelle.terms.StringFormula;
@@ -65,13 +73,10 @@ import mixr.logic.OracleProofTrace;
 import mixr.logic.TextEncodedFormulaFormat;
 import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
 import mixr.logic.VariableReferencingFormulaFormat;
-import org.isabelle.iapp.facade.CentralEventDispatcher;
 import org.isabelle.iapp.facade.IAPP;
 import org.isabelle.iapp.process.Message;
 import org.isabelle.iapp.process.ProverManager;
 import org.isabelle.iapp.process.features.InjectedCommands;
-import org.isabelle.iapp.process.features.InjectionContext;
-import org.isabelle.iapp.process.features.InjectionFinishListener;
 import org.isabelle.iapp.process.features.InjectionResult;
 import org.isabelle.iapp.process.features.InjectionResultListener;
 import org.isabelle.iapp.proofdocument.ProofDocument;
@@ -81,6 +86,7 @@ import org.isabelle.resultdisplay.MarkedupTextDisplay;
 import org.isabelle.theoryeditor.TheoryEditor;
 import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
 import org.openide.util.lookup.ServiceProvider;
 import org.openide.windows.TopComponent;
 
@@ -99,11 +105,56 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
 
     //<editor-fold defaultstate="collapsed" desc="Fields">
     private IsabelleMessageListener isabelleListener;
+    private final ProofScriptCommitter committer = new ProofScriptCommitter();
+    /**
+     * The goals on which the inference steps committed since Isabelle last
+     * reported its goals were based.
+     */
+    private Goals committedOriginalGoals;
+    /**
+     * For each of the {@link IsabelleDriver#committedOriginalGoals committed
+     * original goals}, its index among Isabelle's goals once the steps whose
+     * commits completed are applied, or {@code -1} if one of these steps
+     * changed it.
+     */
+    private int[] committedGoalIndices;
+    /**
+     * Like {@link IsabelleDriver#committedGoalIndices}, but for all the steps
+     * that were submitted, including the ones whose commits are still pending.
+     */
+    private int[] pendingGoalIndices;
+    /**
+     * The commits of the steps on the {@link
+     * IsabelleDriver#committedOriginalGoals committed original goals} that
+     * have not completed yet (in the order of their submission).
+     */
+    private final ArrayList<StepCommitListener> pendingCommits = new ArrayList<>();
     //</editor-fold>
 
     //<editor-fold defaultstate="collapsed" desc="Constructors">
     public IsabelleDriver() {
-        isabelleListener = new IsabelleMessageListener();
+        this(new I3PIsabelleSession());
+    }
+
+    /**
+     * Creates a driver that talks to Isabelle through the given session.
+     *
+     * @param session the connection to Isabelle.
+     */
+    IsabelleDriver(IsabelleSession session) {
+        this(session, new GoalFetchScheduler.RequestProcessorExecutor());
+    }
+
+    /**
+     * Creates a driver that talks to Isabelle through the given session and
+     * schedules its goal fetches with the given executor.
+     *
+     * @param session the connection to Isabelle.
+     * @param fetchExecutor runs the work of the {@link GoalFetchScheduler
+     * goal-fetch scheduler}.
+     */
+    IsabelleDriver(IsabelleSession session, GoalFetchScheduler.FetchExecutor fetchExecutor) {
+        isabelleListener = new IsabelleMessageListener(session, fetchExecutor);
     }
     //</editor-fold>
 
@@ -147,17 +198,43 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
     public Component createVisualiserFor(FormulaRepresentation formula) throws VisualisationException {
         if (canPresent(formula.getFormat()) && formula.getFormula() instanceof StringFormula) {
             StringFormula f = (StringFormula) formula.getFormula();
-            if (f.getMarkedUpFormula() == null) {
-                return new JLabel(f.getFormulaString());
+            Message markedUpFormula = f.getMarkedUpFormula();
+            if (markedUpFormula != null) {
+                return createMarkedUpDisplay(markedUpFormula);
             }
-            MarkedupTextDisplay mtd = new MarkedupTextDisplay(true);
-            mtd.addMessages(new Message[]{f.getMarkedUpFormula()});
-            return mtd;
+            // The markup is kept only softly. If it has been reclaimed, we show
+            // the plain formula until Isabelle prints the formula again (which
+            // may take a while or fail):
+            final JPanel visualiser = new JPanel(new BorderLayout());
+            visualiser.add(new JLabel(f.getFormulaString()), BorderLayout.CENTER);
+            boolean rebuilding = f.requestMarkedUpFormula(new StringFormula.MarkupListener() {
+                @Override
+                public void markupPrinted(final Message markup) {
+                    if (markup != null) {
+                        EventQueue.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                visualiser.removeAll();
+                                visualiser.add(createMarkedUpDisplay(markup), BorderLayout.CENTER);
+                                visualiser.revalidate();
+                                visualiser.repaint();
+                            }
+                        });
+                    }
+                }
+            });
+            return rebuilding ? visualiser : new JLabel(f.getFormulaString());
         } else {
             return null;
         }
     }
 
+    private static MarkedupTextDisplay createMarkedUpDisplay(Message markedUpFormula) {
+        MarkedupTextDisplay mtd = new MarkedupTextDisplay(true);
+        mtd.addMessages(new Message[]{markedUpFormula});
+        return mtd;
+    }
+
     private static class PresentedFormatsContainer {
 
         private static final Set<FormulaFormat> PresentedFormats;
@@ -180,106 +257,204 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
      *
      * </ul>
      *
+     * <p>The step is committed asynchronously (see {@link
+     * IsabelleDriver#commitTransformedGoalsAsync(mixr.logic.InferenceStepResult)}).</p>
+     *
      * @param step
      * @throws UnsupportedOperationException
      */
     @Override
+    public void commitTransformedGoals(InferenceStepResult step) throws UnsupportedOperationException {
+        commitTransformedGoalsAsync(step);
+    }
+
+    /**
+     * Converts the given inference step to proof text and inserts it into the
+     * proof document of the original goals in the background.
+     *
+     * <p>Any number of goals may be changed in a single step and each of them
+     * may be replaced by any number of subgoals (or discharged). Consecutive
+     * steps are inserted in the order in which they were committed. They do
+     * not wait for each other to be processed by Isabelle: steps committed
+     * while an earlier one is being processed are inserted together.</p>
+     *
+     * <p>A step committed before Isabelle reports the goals produced by the
+     * earlier steps is based on the same original goals as the earlier steps.
+     * Its goal numbers are shifted by the subgoals that the earlier steps put
+     * in place of the goals they changed. If the commit of a step fails or is
+     * cancelled, the pending commits of the later steps (whose goal numbers
+     * assumed it) are cancelled and the following steps are numbered as if
+     * only the completed commits were applied.</p>
+     *
+     * @param step the inference step to commit.
+     * @return a future that completes when the proof text has been inserted
+     * and processed by Isabelle.
+     * @throws UnsupportedOperationException thrown if the step cannot be
+     * converted to proof text or if it changes a goal that an earlier step
+     * (still based on the same original goals) changed already.
+     */
     @NbBundle.Messages({
-        "ID_multiple_goals_unsupported=The Isabelle driver does currently not support changes to multiple goals.",
-        "ID_transformed_goal_unknown=The Isabelle driver cannot commit the inference step since the transformed goal is in an unknown format."
+        "ID_transformed_goal_unknown=The Isabelle driver cannot commit the inference step since the transformed goal is in an unknown format.",
+        "ID_goal_changed_by_earlier_step=The Isabelle driver cannot commit the inference step since an earlier step changed the same goal. Wait for Isabelle to process the earlier step."
     })
-    public void commitTransformedGoals(InferenceStepResult step) throws UnsupportedOperationException {
+    public Future<Void> commitTransformedGoalsAsync(InferenceStepResult step) throws UnsupportedOperationException {
         // Insert the changed goals if the committed inference step transformed them:
         Goals originalGoals = step.getOriginalGoals();
         if (originalGoals == null || originalGoals.isEmpty() || !(originalGoals.get(0) instanceof TermGoal)) {
-            return;
+            return ProofScriptCommitter.committed();
         }
         // Get the proof script document into which we will insert the
         // Isabelle command:
         ProofDocument proofDocument = ((TermGoal) originalGoals.get(0)).getProofContext();
-        if (proofDocument != null) {
-            // Get the transformed goals:
-            // TODO: Handle multiple goals:
-            if (step.getGoalChangesCount() > 1) {
-                throw new UnsupportedOperationException(Bundle.ID_multiple_goals_unsupported());
+        if (proofDocument == null) {
+            return ProofScriptCommitter.committed();
+        }
+        String method = step.getProofTrace() instanceof OracleProofTrace ? "mixrOracle" : "mixr";
+        synchronized (committer) {
+            if (committedOriginalGoals != originalGoals) {
+                committedOriginalGoals = originalGoals;
+                committedGoalIndices = new int[originalGoals.size()];
+                for (int i = 0; i < committedGoalIndices.length; i++) {
+                    committedGoalIndices[i] = i;
+                }
+                pendingGoalIndices = committedGoalIndices;
+                pendingCommits.clear();
             }
-            // Find the only goal that was changed:
-            List<Goal> transformedGoals = null;
-            for (int i = 0; i < originalGoals.size(); i++) {
+            int[] goalIndices = pendingGoalIndices.clone();
+            StringBuilder proofText = new StringBuilder();
+            // Changing a goal shifts the goals after it. We therefore change the
+            // goals from the last to the first one.
+            for (int i = originalGoals.size() - 1; i >= 0; i--) {
                 if (step.isGoalChanged(i)) {
-                    transformedGoals = step.getTransformedGoalsFor(i);
-                    break;
+                    if (pendingGoalIndices[i] < 0) {
+                        throw new UnsupportedOperationException(Bundle.ID_goal_changed_by_earlier_step());
+                    }
+                    List<Goal> transformedGoals = step.getTransformedGoalsFor(i);
+                    int subgoalsCount = transformedGoals == null ? 0 : transformedGoals.size();
+                    proofText.append("apply (").append(method);
+                    for (int j = 0; j < subgoalsCount; j++) {
+                        // We now have the corresponding Isabelle string
+                        // formula, which can be printed back to the proof
+                        // script:
+                        proofText.append(" \"").append(toIsabelleString(transformedGoals.get(j))).append('"');
+                    }
+                    proofText.append(" goal: ").append(pendingGoalIndices[i] + 1).append(")\n");
+                    // The subgoals take the place of the changed goal:
+                    for (int j = i + 1; j < goalIndices.length; j++) {
+                        if (goalIndices[j] >= 0) {
+                            goalIndices[j] += subgoalsCount - 1;
+                        }
+                    }
+                    goalIndices[i] = -1;
                 }
             }
-            // Has the goal been discharged?
-            if (transformedGoals == null || transformedGoals.isEmpty()) {
-                throw new UnsupportedOperationException("Discharging of goals not yet supported by the Isabelle driver.");
-            } else {
-                // No, the goal been changed.
-                if (transformedGoals.size() > 1) {
-                    throw new UnsupportedOperationException("The Isabelle driver does not yet support creation of multiple sub-goals from a single one.");
+            if (proofText.length() == 0) {
+                return ProofScriptCommitter.committed();
+            }
+            pendingGoalIndices = goalIndices;
+            // Commit the rule application result back to the Isabelle's proof
+            // script:
+            StepCommitListener listener = new StepCommitListener(originalGoals, goalIndices);
+            listener.commit = committer.commit(proofDocument, proofText.toString(), listener);
+            pendingCommits.add(listener);
+            return listener.commit;
+        }
+    }
+
+    /**
+     * Advances the {@link IsabelleDriver#committedGoalIndices committed goal
+     * indices} when the commit of a step completes and rolls the {@link
+     * IsabelleDriver#pendingGoalIndices pending ones} back when it fails.
+     */
+    private class StepCommitListener implements ProofScriptCommitter.CommitListener {
+
+        private final Goals originalGoals;
+        private final int[] goalIndices;
+        /**
+         * Guarded by the {@link IsabelleDriver#committer committer}.
+         */
+        private Future<Void> commit;
+
+        StepCommitListener(Goals originalGoals, int[] goalIndices) {
+            this.originalGoals = originalGoals;
+            this.goalIndices = goalIndices;
+        }
+
+        @Override
+        public void committed() {
+            synchronized (committer) {
+                if (isPending()) {
+                    pendingCommits.remove(this);
+                    committedGoalIndices = goalIndices;
                 }
-                final Goal transformedGoal = transformedGoals.get(0);
-                // Okay, now get the Isabelle string formula and submit it to
-                // the proof script:
-                Formula goalFormula = transformedGoal.asFormula();
-                if (goalFormula == null) {
-                    throw new RuntimeException(Bundle.ID_transformed_goal_unknown());
+            }
+        }
+
+        @Override
+        public void notCommitted() {
+            ArrayList<StepCommitListener> laterCommits;
+            synchronized (committer) {
+                if (!isPending()) {
+                    return;
                 }
-                ArrayList<? extends FormulaRepresentation> isabelleStringRepresentation = goalFormula.fetchRepresentations(StringFormat.getInstance());
-                try {
-                    Object theStringFormula;
-                    if (isabelleStringRepresentation == null || isabelleStringRepresentation.isEmpty()) {
-                        theStringFormula = createPlaceholder(goalFormula);
-                    } else {
-                        theStringFormula = isabelleStringRepresentation.get(0).getFormula();
-                    }
-                    // We couldn't extract the string formula of the whole goal. Let's construct the formula instead:
-                    if (theStringFormula == null) {
-                        boolean hasConclusion = transformedGoal.getConclusion() != null && !transformedGoal.getConclusion().isEmpty();
-                        FormulaRepresentation strConclusion = hasConclusion ? transformedGoal.getConclusion().getRepresentation(StringFormat.getInstance()) : null;
-                        hasConclusion = hasConclusion && strConclusion != null && strConclusion.getFormula() != null && !strConclusion.getFormula().toString().isEmpty();
-                        StringBuilder sb = new StringBuilder();
-                        // Get the premises together and put them between [| |] signs:
-                        if (transformedGoal.getPremisesCount() > 0) {
-                            sb.append("[| ");
-                            // Place in the plageholders:
-                            for (Formula premise : transformedGoal.getPremises()) {
-                                FormulaRepresentation strPremise = premise.getRepresentation(StringFormat.getInstance());
-                                if (strPremise != null) {
-                                    sb.append(strPremise.getFormula()).append("; ");
-                                }
-                            }
-                            sb.delete(sb.length() - 2, sb.length());
-                            sb.append(" |]");
-                            if (hasConclusion) {
-                                sb.append(" ==> ");
-                            }
-                        }
+                int index = pendingCommits.indexOf(this);
+                laterCommits = new ArrayList<>(pendingCommits.subList(index + 1, pendingCommits.size()));
+                pendingCommits.subList(index, pendingCommits.size()).clear();
+                pendingGoalIndices = index == 0 ? committedGoalIndices : pendingCommits.get(index - 1).goalIndices;
+            }
+            // The goal numbers of the later steps assumed this one:
+            for (StepCommitListener laterCommit : laterCommits) {
+                laterCommit.commit.cancel(false);
+            }
+        }
 
-                        if (hasConclusion) {
-                            sb.append(strConclusion.getFormula());
-                        }
-                        theStringFormula = sb.toString();
-                    }
-                    if (theStringFormula == null) {
-                        throw new RuntimeException(Bundle.ID_transformed_goal_unknown());
-                    }
-                    // We now have the corresponding Isabelle string formula, which
-                    // can be printed back to the proof script:
-                    // Commit the rule application result back to the Isabelle's proof
-                    // script:
-                    if (step.getProofTrace() instanceof OracleProofTrace) {
-                        proofDocument.insertAfter(proofDocument.getLastLockedElement(), String.format("apply (mixrOracle \"%s\")\n", theStringFormula));
-                    } else {
-                        proofDocument.insertAfter(proofDocument.getLastLockedElement(), String.format("apply (mixr \"%s\")\n", theStringFormula));
+        private boolean isPending() {
+            return committedOriginalGoals == originalGoals && pendingCommits.contains(this);
+        }
+    }
+
+    private Object toIsabelleString(final Goal transformedGoal) {
+        // Okay, now get the Isabelle string formula:
+        Formula goalFormula = transformedGoal.asFormula();
+        if (goalFormula == null) {
+            throw new UnsupportedOperationException(Bundle.ID_transformed_goal_unknown());
+        }
+        ArrayList<? extends FormulaRepresentation> isabelleStringRepresentation = goalFormula.fetchRepresentations(StringFormat.getInstance());
+        Object theStringFormula;
+        if (isabelleStringRepresentation == null || isabelleStringRepresentation.isEmpty()) {
+            theStringFormula = createPlaceholder(goalFormula);
+        } else {
+            theStringFormula = isabelleStringRepresentation.get(0).getFormula();
+        }
+        // We couldn't extract the string formula of the whole goal. Let's construct the formula instead:
+        if (theStringFormula == null) {
+            boolean hasConclusion = transformedGoal.getConclusion() != null && !transformedGoal.getConclusion().isEmpty();
+            FormulaRepresentation strConclusion = hasConclusion ? transformedGoal.getConclusion().getRepresentation(StringFormat.getInstance()) : null;
+            hasConclusion = hasConclusion && strConclusion != null && strConclusion.getFormula() != null && !strConclusion.getFormula().toString().isEmpty();
+            StringBuilder sb = new StringBuilder();
+            // Get the premises together and put them between [| |] signs:
+            if (transformedGoal.getPremisesCount() > 0) {
+                sb.append("[| ");
+                // Place in the plageholders:
+                for (Formula premise : transformedGoal.getPremises()) {
+                    FormulaRepresentation strPremise = premise.getRepresentation(StringFormat.getInstance());
+                    if (strPremise != null) {
+                        sb.append(strPremise.getFormula()).append("; ");
                     }
-                    proofDocument.awaitStable();
-                } catch (InterruptedException ex) {
-                    Exceptions.printStackTrace(ex);
                 }
+                sb.delete(sb.length() - 2, sb.length());
+                sb.append(" |]");
+                if (hasConclusion) {
+                    sb.append(" ==> ");
+                }
+            }
+
+            if (hasConclusion) {
+                sb.append(strConclusion.getFormula());
             }
+            theStringFormula = sb.toString();
         }
+        return theStringFormula;
     }
 
     private String createPlaceholder(Formula goalFormula) {
@@ -290,29 +465,24 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
                 TextEncodedFormulaFormat textEncodedFormulaFormat = (TextEncodedFormulaFormat) format;
                 try {
                     String formulaAsString = textEncodedFormulaFormat.encodeAsString(mainRepresentation.getFormula());
-                    TreeSet<FreeVariable> freeVariables = null;
+                    Set<FreeVariable> freeVariables = null;
                     if (format instanceof VariableReferencingFormulaFormat) {
                         VariableReferencingFormulaFormat variableReferencingFormulaFormat = (VariableReferencingFormulaFormat) format;
-                        final Set<FreeVariable> tmpFreeVars = variableReferencingFormulaFormat.getFreeVariables(mainRepresentation);
-                        if (tmpFreeVars != null && !tmpFreeVars.isEmpty()) {
-                            freeVariables = new TreeSet<>(tmpFreeVars);
-                        }
+                        freeVariables = variableReferencingFormulaFormat.getFreeVariables(mainRepresentation);
                     }
                     // Build the Isabelle formula string:
+                    List<List<FreeVar>> variableGroups = TermFormatDescriptor.groupPlaceholderVariables(freeVariables);
                     String isabellePlaceholderFormula;
-                    if (freeVariables == null || freeVariables.isEmpty()) {
+                    if (variableGroups.isEmpty()) {
                         isabellePlaceholderFormula = "MixRNoVars ''" + format.getFormatName() + ": " + formulaAsString + "''";
                     } else {
                         StringBuilder sb = new StringBuilder("MixR [");
-                        while (!freeVariables.isEmpty()) {
-                            FreeVariable var1 = freeVariables.first();
-                            freeVariables.remove(var1);
-                            sb.append("About [").append(var1.getName());
-                            for (FreeVariable varN : freeVariables) {
-                                if (varN.getType() != null && varN.getType().equals(var1.getType())) {
-                                    sb.append(", ").append(varN.getName());
-                                }
+                        for (List<FreeVar> variableGroup : variableGroups) {
+                            sb.append("About [");
+                            for (FreeVar variable : variableGroup) {
+                                sb.append(variable.name()).append(", ");
                             }
+                            sb.delete(sb.length() - 2, sb.length());
                             sb.append("], ");
                         }
                         sb.delete(sb.length() - 2, sb.length());
@@ -397,6 +567,29 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
         return prover;
     }
 
+    /**
+     * Returns the given text as an ML string literal. All characters other
+     * than printable ASCII ones are written as decimal escapes of their UTF-8
+     * bytes.
+     *
+     * @param text the text to quote.
+     * @return the ML string literal.
+     */
+    static String toMLString(String text) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append((char) c);
+            } else if (c < 32 || c > 126) {
+                sb.append(String.format("\\%03d", c));
+            } else {
+                sb.append((char) c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
     /**
      * Issues an ML command to the prover and returns an injection result.
      * <p>
@@ -423,101 +616,227 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
 
     /**
      * This class listens for messages from Isabelle. There are plenty of
-     * messages being exchanged all the time. This listener uses a delay
-     * mechanism to prevent redundant goal updates when there is an onslaught of
-     * messages and goals changes (for example, when the user tells Isabelle to
-     * evaluate commands somewhere late in the theory file). This class receives
-     * notifications of the completion of the request to Isabelle that it should
-     * return current goals.
+     * messages being exchanged all the time. This listener passes state changes
+     * to a {@link GoalFetchScheduler goal-fetch scheduler}, which merges an
+     * onslaught of messages and goals changes (for example, when the user tells
+     * Isabelle to evaluate commands somewhere late in the theory file) into a
+     * single request to Isabelle that it should return current goals. This
+     * class then receives the responses to these requests.
      */
-    private class IsabelleMessageListener extends InjectionFinishListener implements StateListener, ActionListener, PropertyChangeListener {
+    private class IsabelleMessageListener implements StateListener, PropertyChangeListener, GoalFetchScheduler.GoalFetcher<GoalsResponse> {
 
         private static final String DIABELLI_ISABELLE_RESPONSE = "MixRResponse: ";
-        private static final String DIABELLI_ISABELLE_RESPONSE_GOAL = DIABELLI_ISABELLE_RESPONSE + "Goal: ";
-        private static final String DIABELLI_ISABELLE_RESPONSE_GOAL_STRING = DIABELLI_ISABELLE_RESPONSE + "Goal string: ";
-        private static final int DelayMillis = 500;
-        private final Timer delayer;
+        private static final String DIABELLI_ISABELLE_RESPONSE_GOAL_ENTRY = DIABELLI_ISABELLE_RESPONSE + "Goal entry: ";
+        private static final String DIABELLI_ISABELLE_RESPONSE_GOAL_REF = DIABELLI_ISABELLE_RESPONSE + "Goal ref: ";
+        /**
+         * Goals are decoded on the calling thread if there are fewer than this
+         * many of them.
+         */
+        private static final int MIN_PARALLEL_GOALS = 2;
+        private final IsabelleSession session;
+        private final GoalFetchScheduler<GoalsResponse> scheduler;
+        private final RequestProcessor decoder;
+        private volatile TheoryEditor activeTheoryEditor;
+        private volatile ProofDocument lastProofDocument;
+        /**
+         * The goals that were delivered last (by their IDs, in the order in
+         * which Isabelle returned them). Isabelle does not resend these goals
+         * if they did not change.
+         */
+        private volatile Map<String, ExportedGoal> exportedGoals = Collections.emptyMap();
 
         /**
          * <span style="font-weight:bold">Do not create new instances of this
          * class.</span> Use the one provided in
          * {@link IsabelleDriver#isabelleListener}.
          */
-        IsabelleMessageListener() {
+        @NbBundle.Messages({
+            "ID_goal_decoder_name=Isabelle goal decoding"
+        })
+        IsabelleMessageListener(IsabelleSession session, GoalFetchScheduler.FetchExecutor fetchExecutor) {
+            this.session = session;
+            scheduler = new GoalFetchScheduler<>(this, fetchExecutor);
+            decoder = new RequestProcessor(Bundle.ID_goal_decoder_name(), Runtime.getRuntime().availableProcessors());
             // Start listening for goal changes in Isabelle:
-            CentralEventDispatcher centralEvents = IAPP.getInstance().getCentralEvents();
-            centralEvents.addStateListener(this);
+            session.addStateListener(this);
             TopComponent.getRegistry().addPropertyChangeListener(this);
-            delayer = new Timer(DelayMillis, this);
-            delayer.setRepeats(false);
-            delayer.setCoalesce(true);
-            delayer.setInitialDelay(DelayMillis);
         }
 
         /**
-         * This is invoked by the ``delay timer'', which is started (and reset)
-         * upon every
-         * {@link IsabelleMessageListener#stateChanged(org.isabelle.iapp.proofdocument.StateChangeEvent) state change event}.
-         * The reason for delaying this action is to merge an avalanche of state
-         * change events into a single request to Isabelle to give us its
-         * current goals.
-         *
-         * @param e
+         * The proof state is identified by the active theory editor and the
+         * last locked (i.e.: processed) element of the proof document from
+         * which the last goals came.
          */
         @Override
-        public void actionPerformed(ActionEvent e) {
-            delayer.stop();
-            fetchGoalsFromIsabelle();
+        public Object getProofStateKey() {
+            ProofDocument proofDocument = lastProofDocument;
+            if (proofDocument == null) {
+                return null;
+            }
+            return Arrays.asList(activeTheoryEditor, proofDocument, proofDocument.getLastLockedElement());
+        }
+
+        /**
+         * Asks Isabelle to return all its current goals. Isabelle will return
+         * an XML dump of the term trees of those goals that are not among the
+         * {@link IsabelleMessageListener#exportedGoals goals we already have}.
+         * For the other goals it returns just their IDs.
+         */
+        @Override
+        public void startFetch(final long generation) {
+            session.requestGoals("GoalsExport.mixr_write_goals_delta " + toMLStringList(exportedGoals.keySet()), new IsabelleSession.GoalsResponseListener() {
+                @Override
+                public void responseReceived(GoalsResponse response) {
+                    scheduler.fetchFinished(generation, response);
+                }
+            });
         }
 
         /**
          * This method receives Isabelle's response, which gives us the YXML
-         * format of the current goals in Isabelle.
+         * format of the new or changed goals in Isabelle and the IDs of the
+         * unchanged ones.
+         *
+         * <p>If the response refers to a goal we do not have (any more) or
+         * to a goal whose content hash differs from the one we have (i.e.: a
+         * different goal got the same ID), the goals are fetched again in
+         * full.</p>
          *
-         * @param inj
+         * <p>The goals are decoded here (on the scheduler's background thread)
+         * but are set on the event dispatch thread, because the goals'
+         * listeners update the UI.</p>
+         *
+         * @param response
          */
         @Override
         @NbBundle.Messages({
             "ID_isabelle_goals_not_obtained=Could not fetch the list of goals from Isabelle. A communication error occurred."
         })
-        public void injectedFinished(InjectionResult inj) {
-            ArrayList<Goal> goals = null;
+        public void deliver(GoalsResponse response) {
+            final ArrayList<Goal> goals;
+            Map<String, ExportedGoal> previouslyExportedGoals = exportedGoals;
+            exportedGoals = Collections.emptyMap();
             try {
-                Message[] results = inj.getResults();
-                InjectionContext injectionContext = inj.getInjectionContext();
-                if (results != null && (results.length & 1) == 0 && injectionContext != null) {
-                    goals = new ArrayList<>();
-                    for (int i = 0; i < results.length; i += 2) {
-                        Message message = results[i];
-                        if (message.getText() != null && message.getText().startsWith(DIABELLI_ISABELLE_RESPONSE_GOAL)) {
-                            String escapedYXML = message.getText().substring(DIABELLI_ISABELLE_RESPONSE_GOAL.length());
-                            String unescapedYXML = TermYXML.unescapeControlChars(escapedYXML);
-                            Term term = TermYXML.parseYXML(unescapedYXML);
-                            final TermGoal goal = TermsToMixR.toGoal(term, injectionContext.getProofDocument());
-                            addFormulaStringToGoal(goal, results[i + 1]);
-                            // Extract the conclusion from the string formula and add it as another representation to the conclusion (if it exists):
-                            String formulaAsString = results[i + 1].getText();
-                            String metaImplication = META_IMPLICATION;
-                            int indexOfMetaImplication = formulaAsString.lastIndexOf(metaImplication);
-                            if (indexOfMetaImplication < 0) {
-                                metaImplication = META_IMPLICATION_UNICODE;
-                                indexOfMetaImplication = formulaAsString.lastIndexOf(metaImplication);
+                if (response == null) {
+                    goals = null;
+                } else {
+                    ProofDocument proofDocument = response.getProofDocument();
+                    lastProofDocument = proofDocument;
+                    LinkedHashMap<String, ExportedGoal> currentGoals = new LinkedHashMap<>();
+                    ArrayList<GoalEntry> entries = new ArrayList<>();
+                    for (int i = 0; i < response.getMessagesCount(); i++) {
+                        String text = response.getText(i);
+                        if (text == null) {
+                            continue;
+                        }
+                        if (text.startsWith(DIABELLI_ISABELLE_RESPONSE_GOAL_ENTRY) && i + 1 < response.getMessagesCount()) {
+                            int idEnd = text.indexOf(' ', DIABELLI_ISABELLE_RESPONSE_GOAL_ENTRY.length());
+                            int contentHashEnd = idEnd < 0 ? -1 : text.indexOf(' ', idEnd + 1);
+                            if (contentHashEnd < 0) {
+                                throw new RuntimeException(Bundle.ID_isabelle_goals_not_obtained());
                             }
-                            addConclusionStringToGoal(indexOfMetaImplication, formulaAsString, metaImplication, goal);
-                            goals.add(goal);
+                            String goalId = text.substring(DIABELLI_ISABELLE_RESPONSE_GOAL_ENTRY.length(), idEnd);
+                            String contentHash = text.substring(idEnd + 1, contentHashEnd);
+                            ++i;
+                            entries.add(new GoalEntry(goalId, contentHash, text.substring(contentHashEnd + 1), response.getText(i), response.getMarkup(i)));
+                            currentGoals.put(goalId, null);
+                        } else if (text.startsWith(DIABELLI_ISABELLE_RESPONSE_GOAL_REF)) {
+                            int idEnd = text.indexOf(' ', DIABELLI_ISABELLE_RESPONSE_GOAL_REF.length());
+                            if (idEnd < 0) {
+                                throw new RuntimeException(Bundle.ID_isabelle_goals_not_obtained());
+                            }
+                            String goalId = text.substring(DIABELLI_ISABELLE_RESPONSE_GOAL_REF.length(), idEnd);
+                            ExportedGoal exportedGoal = previouslyExportedGoals.get(goalId);
+                            if (exportedGoal == null
+                                    || exportedGoal.goal.getProofContext() != proofDocument
+                                    || !exportedGoal.contentHash.equals(text.substring(idEnd + 1))) {
+                                // We do not have this goal (or a different
+                                // goal got the same ID). Ask for all goals in
+                                // full.
+                                scheduler.refetch();
+                                return;
+                            }
+                            currentGoals.put(goalId, exportedGoal);
                         }
                     }
+                    TermGoal[] decodedGoals = decodeGoals(entries, proofDocument);
+                    for (int i = 0; i < decodedGoals.length; i++) {
+                        currentGoals.put(entries.get(i).goalId, new ExportedGoal(decodedGoals[i], entries.get(i).contentHash));
+                    }
+                    goals = new ArrayList<>(currentGoals.size());
+                    for (ExportedGoal exportedGoal : currentGoals.values()) {
+                        goals.add(exportedGoal.goal);
+                    }
+                    exportedGoals = currentGoals;
                 }
             } catch (InterruptedException ex) {
                 throw new RuntimeException(Bundle.ID_isabelle_goals_not_obtained(), ex);
-            } finally {
-                setGoals(goals);
             }
+            scheduler.publish(new Runnable() {
+                @Override
+                public void run() {
+                    setGoals(goals);
+                }
+            });
+        }
+
+        /**
+         * Decodes the given goal entries and returns the goals in the same
+         * order. The entries are decoded in parallel if there are enough of
+         * them.
+         */
+        private TermGoal[] decodeGoals(ArrayList<GoalEntry> entries, final ProofDocument proofDocument) throws InterruptedException {
+            TermGoal[] goals = new TermGoal[entries.size()];
+            if (entries.size() < MIN_PARALLEL_GOALS) {
+                for (int i = 0; i < goals.length; i++) {
+                    goals[i] = decodeGoal(entries.get(i), proofDocument);
+                }
+            } else {
+                ArrayList<Callable<TermGoal>> decodings = new ArrayList<>(entries.size());
+                for (final GoalEntry entry : entries) {
+                    decodings.add(new Callable<TermGoal>() {
+                        @Override
+                        public TermGoal call() {
+                            return decodeGoal(entry, proofDocument);
+                        }
+                    });
+                }
+                List<Future<TermGoal>> decodedGoals = decoder.invokeAll(decodings);
+                try {
+                    for (int i = 0; i < goals.length; i++) {
+                        goals[i] = decodedGoals.get(i).get();
+                    }
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    throw new RuntimeException(Bundle.ID_isabelle_goals_not_obtained(), ex.getCause());
+                }
+            }
+            return goals;
+        }
+
+        private TermGoal decodeGoal(GoalEntry entry, ProofDocument proofDocument) {
+            String unescapedYXML = TermYXML.unescapeControlChars(entry.escapedYXML);
+            Term term = TermYXML.parseYXML(unescapedYXML);
+            final TermGoal goal = TermsToMixR.toGoal(term, proofDocument);
+            addFormulaStringToGoal(goal, entry.formulaString, entry.formulaMarkup, entry.escapedYXML, new GoalMarkupPrinter(session, entry.goalId + " " + entry.contentHash));
+            // Extract the conclusion from the string formula and add it as another representation to the conclusion (if it exists):
+            String formulaString = entry.formulaString;
+            String metaImplication = META_IMPLICATION;
+            int indexOfMetaImplication = formulaString.lastIndexOf(metaImplication);
+            if (indexOfMetaImplication < 0) {
+                metaImplication = META_IMPLICATION_UNICODE;
+                indexOfMetaImplication = formulaString.lastIndexOf(metaImplication);
+            }
+            addConclusionStringToGoal(indexOfMetaImplication, formulaString, metaImplication, goal);
+            return goal;
         }
 
-        private void addFormulaStringToGoal(final TermGoal goal, Message formulaAsString) {
+        private void addFormulaStringToGoal(final TermGoal goal, String formulaString, Message formulaMarkup, String escapedYXML, StringFormula.MarkupPrinter markupPrinter) {
             // Get the string version of this goal:
-            final FormulaRepresentation stringRep = new FormulaRepresentation(new StringFormula(formulaAsString), StringFormat.getInstance());
+            StringFormula stringFormula = formulaMarkup == null ? new StringFormula(formulaString) : new StringFormula(formulaMarkup, escapedYXML, markupPrinter);
+            final FormulaRepresentation stringRep = new FormulaRepresentation(stringFormula, StringFormat.getInstance());
             goal.asFormula().addRepresentation(stringRep);
         }
 
@@ -532,6 +851,19 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
         private static final String META_IMPLICATION_UNICODE = "⟹";
         private static final String META_IMPLICATION = "==>";
 
+        private String toMLStringList(Collection<String> strings) {
+            StringBuilder sb = new StringBuilder("[");
+            for (String string : strings) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                // Goal IDs contain only hexadecimal digits and dots, so they
+                // need no escaping.
+                sb.append('"').append(string).append('"');
+            }
+            return sb.append(']').toString();
+        }
+
         /**
          * This method is invoked by I3P when the state of the Isabelle prover
          * changes. Typically, only user's interaction (like issuing commands
@@ -542,7 +874,7 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
          */
         @Override
         public void stateChanged(StateChangeEvent ev) {
-            delayer.restart();
+            scheduler.proofStateChanged();
         }
 
         /**
@@ -555,7 +887,9 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
         @Override
         public void propertyChange(PropertyChangeEvent evt) {
             if ("activated".equals(evt.getPropertyName())) {
-                if (getActiveTheoryEditor() != null) {
+                TheoryEditor theoryEditor = getActiveTheoryEditor();
+                if (theoryEditor != null) {
+                    activeTheoryEditor = theoryEditor;
                     requestActive();
                 }
             }
@@ -563,15 +897,72 @@ public class IsabelleDriver extends BareGoalProvidingReasoner implements
     }
 
     /**
-     * Asks Isabelle to return all its current goals. Isabelle will return an
-     * XML dump of the term trees.
+     * Asks Isabelle to print the term of a goal again, in the context in which
+     * Isabelle exported the goal. This is used to rebuild the markup of string
+     * formulae after it has been reclaimed. Isabelle prints nothing once it no
+     * longer has the goal's context (i.e.: after the goal was replaced by
+     * later goals).
      */
-    private void fetchGoalsFromIsabelle() {
-        try {
-            InjectionResult cmd = executeCommand("GoalsExport.mixr_write_sds_goals ()");
-            cmd.addInjectionResultListener(isabelleListener);
-        } catch (UnsupportedOperationException uoex) {
-            Exceptions.attachSeverity(uoex, Level.INFO);
+    private static class GoalMarkupPrinter implements StringFormula.MarkupPrinter {
+
+        private final IsabelleSession session;
+        /**
+         * The goal's ID followed by its content hash.
+         */
+        private final String goalKey;
+
+        GoalMarkupPrinter(IsabelleSession session, String goalKey) {
+            this.session = session;
+            this.goalKey = goalKey;
+        }
+
+        @Override
+        public void printTerm(String escapedYXML, final StringFormula.MarkupListener listener) {
+            try {
+                session.requestMessage("GoalsExport.mixr_print_term " + toMLString(goalKey) + " " + toMLString(TermYXML.unescapeControlChars(escapedYXML)), new IsabelleSession.MessageResponseListener() {
+                    @Override
+                    public void messageReceived(Message message) {
+                        listener.markupPrinted(message);
+                    }
+                });
+            } catch (UnsupportedOperationException ex) {
+                listener.markupPrinted(null);
+            }
+        }
+    }
+
+    /**
+     * A goal that Isabelle sent in full (as opposed to just its ID).
+     */
+    private static class GoalEntry {
+
+        private final String goalId;
+        private final String contentHash;
+        private final String escapedYXML;
+        private final String formulaString;
+        private final Message formulaMarkup;
+
+        GoalEntry(String goalId, String contentHash, String escapedYXML, String formulaString, Message formulaMarkup) {
+            this.goalId = goalId;
+            this.contentHash = contentHash;
+            this.escapedYXML = escapedYXML;
+            this.formulaString = formulaString;
+            this.formulaMarkup = formulaMarkup;
+        }
+    }
+
+    /**
+     * A goal that Isabelle delivered, together with the content hash Isabelle
+     * computed for it.
+     */
+    private static class ExportedGoal {
+
+        private final TermGoal goal;
+        private final String contentHash;
+
+        ExportedGoal(TermGoal goal, String contentHash) {
+            this.goal = goal;
+            this.contentHash = contentHash;
         }
     }
 
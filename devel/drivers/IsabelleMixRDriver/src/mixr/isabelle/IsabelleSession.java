@@ -0,0 +1,144 @@
+/*
+ * File name: IsabelleSession.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import org.isabelle.iapp.process.Message;
+import org.isabelle.iapp.proofdocument.ProofDocument;
+import org.isabelle.iapp.proofdocument.StateListener;
+
+/**
+ * The connection through which the {@link IsabelleDriver Isabelle driver}
+ * talks to Isabelle. It notifies the driver of proof state changes and answers
+ * its requests for goals.
+ *
+ * <p>The driver normally talks to a running Isabelle through I3P (see {@link
+ * I3PIsabelleSession}). Other implementations make it possible to run the
+ * driver without Isabelle (e.g.: by replaying recorded responses).</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+interface IsabelleSession {
+
+    /**
+     * Registers a listener that is notified whenever the state of the prover
+     * changes.
+     *
+     * @param listener the listener to register.
+     */
+    void addStateListener(StateListener listener);
+
+    /**
+     * Issues the given ML command, which should print goals, and passes its
+     * response to the given listener once it is available. The listener may
+     * be invoked on any thread.
+     *
+     * @param mlCommand the ML command that prints the goals.
+     * @param listener the listener that receives the response.
+     * @throws UnsupportedOperationException thrown if commands cannot be
+     * issued to the prover.
+     */
+    void requestGoals(String mlCommand, GoalsResponseListener listener) throws UnsupportedOperationException;
+
+    /**
+     * Issues the given ML command, which should print a single message, and
+     * passes the message to the given listener once it is available. The
+     * listener may be invoked on any thread.
+     *
+     * @param mlCommand the ML command that prints the message.
+     * @param listener the listener that receives the message.
+     * @throws UnsupportedOperationException thrown if commands cannot be
+     * issued to the prover.
+     */
+    void requestMessage(String mlCommand, MessageResponseListener listener) throws UnsupportedOperationException;
+
+    /**
+     * Receives responses to {@link IsabelleSession#requestGoals(java.lang.String,
+     * mixr.isabelle.IsabelleSession.GoalsResponseListener) goal requests}.
+     */
+    interface GoalsResponseListener {
+
+        void responseReceived(GoalsResponse response);
+    }
+
+    /**
+     * Receives responses to {@link IsabelleSession#requestMessage(java.lang.String,
+     * mixr.isabelle.IsabelleSession.MessageResponseListener) message
+     * requests}.
+     */
+    interface MessageResponseListener {
+
+        /**
+         * @param message the printed message (which carries its markup) or
+         * {@code null} if nothing was printed.
+         */
+        void messageReceived(Message message);
+    }
+
+    /**
+     * The messages Isabelle printed in response to a goal request.
+     */
+    final class GoalsResponse {
+
+        private final ProofDocument proofDocument;
+        private final String[] texts;
+        private final Message[] markups;
+
+        /**
+         * Creates a new response.
+         *
+         * @param proofDocument the proof document in whose context the command
+         * was executed. May be {@code null}.
+         * @param texts the texts of the printed messages.
+         * @param markups the printed messages themselves (these carry their
+         * markup). May be {@code null}, in which case the messages have no
+         * markup.
+         */
+        GoalsResponse(ProofDocument proofDocument, String[] texts, Message[] markups) {
+            this.proofDocument = proofDocument;
+            this.texts = texts;
+            this.markups = markups;
+        }
+
+        ProofDocument getProofDocument() {
+            return proofDocument;
+        }
+
+        int getMessagesCount() {
+            return texts.length;
+        }
+
+        String getText(int index) {
+            return texts[index];
+        }
+
+        /**
+         * Returns the message at the given index (which carries the markup of
+         * its text) or {@code null} if the message has no markup.
+         */
+        Message getMarkup(int index) {
+            return markups == null ? null : markups[index];
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * File name: ProofScriptCommitter.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.isabelle.iapp.proofdocument.ProofDocument;
+import org.openide.util.NbBundle;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Inserts proof text into Isabelle proof documents in the background.
+ *
+ * <p>Commits are inserted in the order in which they were {@link
+ * ProofScriptCommitter#commit(org.isabelle.iapp.proofdocument.ProofDocument,
+ * java.lang.String) submitted}. The committer waits for the proof document to
+ * become stable only once per insertion: all commits to the same document
+ * that are submitted while the previous insertion is being processed are
+ * inserted together, as a single block of proof text.</p>
+ *
+ * <p>Failed insertions are logged (their futures fail too), since callers of
+ * {@link IsabelleDriver#commitTransformedGoals(mixr.logic.InferenceStepResult)}
+ * do not wait for them.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+final class ProofScriptCommitter {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final RequestProcessor processor;
+    private final ConcurrentLinkedQueue<Commit> pendingCommits = new ConcurrentLinkedQueue<>();
+    private final Runnable insertPendingCommits = new Runnable() {
+        @Override
+        public void run() {
+            insertPendingCommits();
+        }
+    };
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructor">
+    @NbBundle.Messages({
+        "PSC_processor_name=Isabelle proof script commits"
+    })
+    ProofScriptCommitter() {
+        this.processor = new RequestProcessor(Bundle.PSC_processor_name(), 1);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Committing">
+    /**
+     * Schedules the given proof text for insertion after the last processed
+     * element of the given proof document.
+     *
+     * @param proofDocument the document into which to insert the text.
+     * @param proofText the text to insert. It should end with a new line.
+     * @param listener is notified when the commit completes (may be {@code
+     * null}).
+     * @return a future that completes when the text has been inserted and the
+     * proof document has become stable. Cancelling it prevents the insertion.
+     * It cannot be cancelled once the insertion has started.
+     */
+    Future<Void> commit(ProofDocument proofDocument, String proofText, CommitListener listener) {
+        Commit commit = new Commit(proofDocument, proofText, listener);
+        pendingCommits.add(commit);
+        processor.post(insertPendingCommits);
+        return commit;
+    }
+
+    /**
+     * Returns a future that is already done. This is used for inference steps
+     * that need not be committed.
+     */
+    static Future<Void> committed() {
+        Commit commit = new Commit(null, null, null);
+        commit.succeed();
+        return commit;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    @NbBundle.Messages({
+        "PSC_insertion_failed=Could not insert the proof text into the Isabelle proof document."
+    })
+    private void insertPendingCommits() {
+        Commit first;
+        while ((first = pendingCommits.poll()) != null) {
+            if (!first.start()) {
+                continue;
+            }
+            ArrayList<Commit> batch = new ArrayList<>();
+            batch.add(first);
+            StringBuilder proofText = new StringBuilder(first.proofText);
+            Commit next;
+            while ((next = pendingCommits.peek()) != null && next.proofDocument == first.proofDocument) {
+                pendingCommits.poll();
+                if (next.start()) {
+                    batch.add(next);
+                    proofText.append(next.proofText);
+                }
+            }
+            try {
+                first.proofDocument.insertAfter(first.proofDocument.getLastLockedElement(), proofText.toString());
+                first.proofDocument.awaitStable();
+                for (Commit commit : batch) {
+                    commit.succeed();
+                }
+            } catch (InterruptedException | RuntimeException ex) {
+                Logger.getLogger(ProofScriptCommitter.class.getName()).log(Level.WARNING, Bundle.PSC_insertion_failed(), ex);
+                for (Commit commit : batch) {
+                    commit.fail(ex);
+                }
+                if (ex instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Commit Listener">
+    /**
+     * Is notified when a commit completes.
+     */
+    interface CommitListener {
+
+        /**
+         * Called when the proof text has been inserted and the proof document
+         * has become stable.
+         */
+        void committed();
+
+        /**
+         * Called when the insertion failed or the commit was cancelled.
+         */
+        void notCommitted();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Commit">
+    private static final class Commit extends FutureTask<Void> {
+
+        private static final Runnable NOTHING = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        private final ProofDocument proofDocument;
+        private final String proofText;
+        private final CommitListener listener;
+        /**
+         * Set once the commit is either being inserted or cancelled.
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Commit(ProofDocument proofDocument, String proofText, CommitListener listener) {
+            super(NOTHING, null);
+            this.proofDocument = proofDocument;
+            this.proofText = proofText;
+            this.listener = listener;
+        }
+
+        /**
+         * Marks this commit as being inserted, unless it has been cancelled.
+         *
+         * @return {@code false} if this commit has been cancelled.
+         */
+        boolean start() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claimed.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+        }
+
+        void succeed() {
+            set(null);
+        }
+
+        void fail(Throwable cause) {
+            setException(cause);
+        }
+
+        @Override
+        protected void done() {
+            if (listener == null) {
+                return;
+            }
+            boolean inserted;
+            try {
+                get();
+                inserted = true;
+            } catch (InterruptedException | ExecutionException | CancellationException ex) {
+                inserted = false;
+            }
+            if (inserted) {
+                listener.committed();
+            } else {
+                listener.notCommitted();
+            }
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,342 @@
+/*
+ * File name: BatchTranslationRunner.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle.batch;
+
+import isabelle.Term;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import mixr.components.FormulaTranslatorsCatalogue;
+import mixr.isabelle.pure.lib.TermYXML;
+import mixr.isabelle.terms.TermFormatDescriptor;
+import mixr.isabelle.terms.TermGoal;
+import mixr.isabelle.terms.TermsToMixR;
+import mixr.logic.FormulaRepresentation;
+import mixr.logic.FormulaTranslator;
+import mixr.logic.FormulaTranslator.TranslationException;
+import org.openide.util.Lookup;
+import org.openide.util.NbBundle;
+
+/**
+ * A headless command-line runner that translates a large batch of Isabelle
+ * goals with all registered {@link FormulaTranslator formula translators} and
+ * reports how well each translator fared.
+ *
+ * <p>The runner reads goal files in the unescaped YXML format (the same format
+ * as the {@code UnescapedYXML_*} test resources of the {@code MixRIsabelleApi}
+ * library), parses them with {@link TermYXML#parseYXML(java.lang.CharSequence)},
+ * and converts them to goals with {@link TermsToMixR#toGoal(isabelle.Term.Term,
+ * org.isabelle.iapp.proofdocument.ProofDocument)}. Every goal is then
+ * translated by every translator that accepts {@link TermFormatDescriptor
+ * Isabelle terms}. Files are processed by a fixed pool of workers.</p>
+ *
+ * <p>At the end the runner prints, for every translator, the number of
+ * attempted and successful translations, the throughput, latency percentiles,
+ * and the number of failures per category (translation exceptions, missing
+ * results, and unexpected exceptions by their class name).</p>
+ *
+ * <p>Usage: {@code BatchTranslationRunner [-threads N] [-translator NAME]...
+ * FILE_OR_DIRECTORY...}</p>
+ *
+ * <p><span style="font-weight:bold">Note</span>: translators are discovered
+ * through the {@link Lookup#getDefault() default lookup} from the registered
+ * {@link FormulaTranslatorsCatalogue translator catalogues}. The runner never
+ * creates MixR drivers (some of which need the running MixR platform or
+ * I3P), so it does not need a running MixR platform. All driver modules whose
+ * translators should be measured must be on the class path.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public final class BatchTranslationRunner {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 100};
+    private final int workersCount;
+    private final List<FormulaTranslator> translators;
+    private final TranslationStatistics parseStatistics;
+    private final TranslationStatistics[] translatorStatistics;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructor">
+    /**
+     * Creates a runner that will use the given translators and the given
+     * number of workers.
+     *
+     * @param workersCount the number of concurrent workers (must be positive).
+     * @param translators the translators to run over every goal. They must all
+     * translate from {@link TermFormatDescriptor Isabelle terms}.
+     */
+    @NbBundle.Messages({
+        "BTR_workers_not_positive=The number of workers must be positive.",
+        "BTR_no_translators=There are no translators to run."
+    })
+    public BatchTranslationRunner(int workersCount, Collection<? extends FormulaTranslator> translators) {
+        if (workersCount < 1) {
+            throw new IllegalArgumentException(Bundle.BTR_workers_not_positive());
+        }
+        if (translators == null || translators.isEmpty()) {
+            throw new IllegalArgumentException(Bundle.BTR_no_translators());
+        }
+        this.workersCount = workersCount;
+        this.translators = new ArrayList<>(translators);
+        this.parseStatistics = new TranslationStatistics("YXML parsing");
+        this.translatorStatistics = new TranslationStatistics[this.translators.size()];
+        for (int i = 0; i < translatorStatistics.length; i++) {
+            translatorStatistics[i] = new TranslationStatistics(this.translators.get(i).getName());
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Command Line Entry">
+    /**
+     * Runs the batch translation from the command line.
+     *
+     * @param args the command-line arguments (see the {@link
+     * BatchTranslationRunner class description} for usage).
+     */
+    @NbBundle.Messages({
+        "BTR_usage=Usage: BatchTranslationRunner [-threads N] [-translator NAME]... FILE_OR_DIRECTORY...",
+        "# {0} - option name",
+        "BTR_missing_option_value=The option ''{0}'' requires a value.",
+        "# {0} - the given value",
+        "BTR_invalid_threads=Invalid number of workers: ''{0}''.",
+        "# {0} - file name",
+        "BTR_missing_file=The file ''{0}'' does not exist.",
+        "# {0} - comma-separated translator names",
+        "BTR_no_matching_translators=No registered translator accepts Isabelle terms (or matches the names: {0})."
+    })
+    public static void main(String[] args) throws InterruptedException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        LinkedHashSet<String> translatorNames = new LinkedHashSet<>();
+        ArrayList<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("-threads".equals(args[i]) || "-translator".equals(args[i])) {
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException(Bundle.BTR_missing_option_value(args[i]));
+                    }
+                    if ("-threads".equals(args[i])) {
+                        workers = parseWorkersCount(args[++i]);
+                    } else {
+                        translatorNames.add(args[++i]);
+                    }
+                } else {
+                    File file = new File(args[i]);
+                    if (!file.exists()) {
+                        throw new IllegalArgumentException(Bundle.BTR_missing_file(args[i]));
+                    }
+                    collectGoalFiles(file, files);
+                }
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException(Bundle.BTR_usage());
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(Bundle.BTR_usage());
+            System.exit(2);
+            return;
+        }
+        List<FormulaTranslator> translators = findTermTranslators(Lookup.getDefault(), translatorNames);
+        if (translators.isEmpty()) {
+            System.err.println(Bundle.BTR_no_matching_translators(translatorNames));
+            System.exit(1);
+            return;
+        }
+        new BatchTranslationRunner(workers, translators).run(files, System.out);
+        System.exit(0);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Public Methods">
+    /**
+     * Returns all translators that translate from {@link TermFormatDescriptor
+     * Isabelle terms} and are listed in the {@link FormulaTranslatorsCatalogue
+     * translator catalogues} registered in the given lookup. No MixR drivers
+     * are created.
+     *
+     * @param lookup the lookup in which to look for the catalogues.
+     * @param names if not empty, only translators with one of these {@link
+     * FormulaTranslator#getName() names} are returned.
+     * @return all registered translators that translate from Isabelle terms.
+     */
+    public static List<FormulaTranslator> findTermTranslators(Lookup lookup, Collection<String> names) {
+        ArrayList<FormulaTranslator> translators = new ArrayList<>();
+        for (FormulaTranslatorsCatalogue catalogue : lookup.lookupAll(FormulaTranslatorsCatalogue.class)) {
+            Collection<FormulaTranslator> listed = catalogue.getFormulaTranslators();
+            if (listed != null) {
+                for (FormulaTranslator translator : listed) {
+                    if (translator.getFromFormat() == TermFormatDescriptor.getInstance()
+                            && (names == null || names.isEmpty() || names.contains(translator.getName()))
+                            && !translators.contains(translator)) {
+                        translators.add(translator);
+                    }
+                }
+            }
+        }
+        return translators;
+    }
+
+    /**
+     * Parses and translates all the given goal files and prints the report to
+     * the given stream. This method blocks until all files have been
+     * processed.
+     *
+     * @param goalFiles the files containing goals in the unescaped YXML
+     * format.
+     * @param report the stream to which to print the report.
+     * @throws InterruptedException thrown if the thread was interrupted while
+     * waiting for the workers.
+     */
+    public void run(List<File> goalFiles, PrintStream report) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(workersCount);
+        long start = System.nanoTime();
+        try {
+            for (final File goalFile : goalFiles) {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        processGoalFile(goalFile);
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+        }
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+        }
+        printReport(goalFiles.size(), System.nanoTime() - start, report);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private static int parseWorkersCount(String value) {
+        try {
+            int workers = Integer.parseInt(value);
+            if (workers > 0) {
+                return workers;
+            }
+        } catch (NumberFormatException ex) {
+        }
+        throw new IllegalArgumentException(Bundle.BTR_invalid_threads(value));
+    }
+
+    private static void collectGoalFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collectGoalFiles(child, files);
+                }
+            }
+        } else if (file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    private static String readYXML(File goalFile) throws IOException {
+        try (LineNumberReader reader = new LineNumberReader(new InputStreamReader(new FileInputStream(goalFile), Charset.forName("US-ASCII")))) {
+            return reader.readLine();
+        }
+    }
+
+    private void processGoalFile(File goalFile) {
+        long start = System.nanoTime();
+        TermGoal goal;
+        try {
+            String yxml = readYXML(goalFile);
+            if (yxml == null) {
+                parseStatistics.recordFailure(TranslationStatistics.FAILURE_NO_RESULT, System.nanoTime() - start);
+                return;
+            }
+            Term.Term term = TermYXML.parseYXML(yxml);
+            goal = TermsToMixR.toGoal(term, null);
+            parseStatistics.recordSuccess(System.nanoTime() - start);
+        } catch (Exception ex) {
+            parseStatistics.recordFailure(ex.getClass().getSimpleName(), System.nanoTime() - start);
+            return;
+        }
+        for (int i = 0; i < translators.size(); i++) {
+            translateGoal(goal, translators.get(i), translatorStatistics[i]);
+        }
+    }
+
+    private static void translateGoal(TermGoal goal, FormulaTranslator translator, TranslationStatistics statistics) {
+        long start = System.nanoTime();
+        try {
+            FormulaRepresentation result = translator.translate(goal.asFormula());
+            if (result == null) {
+                statistics.recordFailure(TranslationStatistics.FAILURE_NO_RESULT, System.nanoTime() - start);
+            } else {
+                statistics.recordSuccess(System.nanoTime() - start);
+            }
+        } catch (TranslationException ex) {
+            statistics.recordFailure(TranslationStatistics.FAILURE_TRANSLATION_EXCEPTION, System.nanoTime() - start);
+        } catch (RuntimeException | StackOverflowError ex) {
+            statistics.recordFailure(ex.getClass().getSimpleName(), System.nanoTime() - start);
+        }
+    }
+
+    private void printReport(int filesCount, long wallNanos, PrintStream report) {
+        double wallSeconds = wallNanos / 1e9;
+        report.printf("Goal files: %d, workers: %d, wall time: %.1f ms, throughput: %.1f goals/s%n",
+                      filesCount, workersCount, wallNanos / 1e6, filesCount / wallSeconds);
+        printStatistics(parseStatistics, wallSeconds, report);
+        for (TranslationStatistics statistics : translatorStatistics) {
+            printStatistics(statistics, wallSeconds, report);
+        }
+    }
+
+    private static void printStatistics(TranslationStatistics statistics, double wallSeconds, PrintStream report) {
+        int attempts = statistics.getAttempts();
+        int successes = statistics.getSuccesses();
+        report.printf("%s: %d attempts, %d succeeded (%.1f%%), %.1f/s overall, %.1f/s per worker%n",
+                      statistics.getName(), attempts, successes,
+                      attempts == 0 ? 0.0 : 100.0 * successes / attempts,
+                      attempts / wallSeconds,
+                      statistics.getTotalNanos() == 0 ? 0.0 : attempts * 1e9 / statistics.getTotalNanos());
+        long[] percentiles = statistics.getLatencyPercentiles(REPORTED_PERCENTILES);
+        report.printf("    latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                      percentiles[0] / 1e6, percentiles[1] / 1e6, percentiles[2] / 1e6, percentiles[3] / 1e6);
+        for (Map.Entry<String, Integer> failure : statistics.getFailures().entrySet()) {
+            report.printf("    failed (%s): %d%n", failure.getKey(), failure.getValue());
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,140 @@
+/*
+ * File name: TranslationStatistics.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle.batch;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accumulates the outcomes of many translation attempts performed by a single
+ * {@link mixr.logic.FormulaTranslator formula translator}. This class is
+ * thread-safe and is meant to be shared by all workers of a {@link
+ * BatchTranslationRunner batch translation run}.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+final class TranslationStatistics {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    /**
+     * The failure category of translations that returned no representation.
+     */
+    static final String FAILURE_NO_RESULT = "no result";
+    /**
+     * The failure category of translations that rejected the input formula
+     * with a {@link mixr.logic.FormulaTranslator.TranslationException}.
+     */
+    static final String FAILURE_TRANSLATION_EXCEPTION = "TranslationException";
+    private final String name;
+    private long[] latencies = new long[64];
+    private int attempts;
+    private int successes;
+    private long totalNanos;
+    private final TreeMap<String, Integer> failures = new TreeMap<>();
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructor">
+    TranslationStatistics(String name) {
+        this.name = name;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Recording">
+    synchronized void recordSuccess(long nanos) {
+        recordAttempt(nanos);
+        ++successes;
+    }
+
+    synchronized void recordFailure(String category, long nanos) {
+        recordAttempt(nanos);
+        Integer count = failures.get(category);
+        failures.put(category, count == null ? 1 : count + 1);
+    }
+
+    private void recordAttempt(long nanos) {
+        if (attempts == latencies.length) {
+            latencies = Arrays.copyOf(latencies, attempts * 2);
+        }
+        latencies[attempts++] = nanos;
+        totalNanos += nanos;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Properties">
+    String getName() {
+        return name;
+    }
+
+    synchronized int getAttempts() {
+        return attempts;
+    }
+
+    synchronized int getSuccesses() {
+        return successes;
+    }
+
+    /**
+     * Returns the sum of latencies of all recorded attempts. Since workers run
+     * concurrently, this is the busy time rather than the wall-clock time.
+     *
+     * @return the sum of latencies of all recorded attempts (in nanoseconds).
+     */
+    synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the number of failed attempts per failure category (sorted by
+     * the category name).
+     *
+     * @return the number of failed attempts per failure category.
+     */
+    synchronized Map<String, Integer> getFailures() {
+        return new TreeMap<>(failures);
+    }
+
+    /**
+     * Returns the latencies at the given percentiles using the nearest-rank
+     * method.
+     *
+     * @param percentiles the percentiles (between 0 and 100) to look up.
+     * @return the latencies (in nanoseconds) at the given percentiles, or
+     * zeros if no attempts were recorded.
+     */
+    synchronized long[] getLatencyPercentiles(double... percentiles) {
+        long[] result = new long[percentiles.length];
+        if (attempts > 0) {
+            long[] sorted = Arrays.copyOf(latencies, attempts);
+            Arrays.sort(sorted);
+            for (int i = 0; i < percentiles.length; i++) {
+                int rank = (int) Math.ceil(percentiles[i] / 100.0 * attempts);
+                result[i] = sorted[Math.min(attempts, Math.max(1, rank)) - 1];
+            }
+        }
+        return result;
+    }
+    // </editor-fold>
+}
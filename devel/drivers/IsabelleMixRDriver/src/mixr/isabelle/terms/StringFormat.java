@@ -24,9 +24,15 @@
  */
 package mixr.isabelle.terms;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import mixr.logic.BinaryEncodedFormulaFormat;
 import mixr.logic.FormulaFormatDescriptor;
 import mixr.logic.FormulaRepresentation;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
 import org.openide.util.NbBundle;
+import static mixr.logic.BinaryEncoding.*;
 
 /**
  * The formula format descriptor for Isabelle formulae in the string form.
@@ -36,7 +42,7 @@ import org.openide.util.NbBundle;
 @NbBundle.Messages({
     "SF_string_format_pretty_name=Isabelle string formula"
 })
-public class StringFormat extends FormulaFormatDescriptor {
+public class StringFormat extends FormulaFormatDescriptor implements BinaryEncodedFormulaFormat {
 
     //<editor-fold defaultstate="collapsed" desc="Fields">
     /**
@@ -66,6 +72,32 @@ public class StringFormat extends FormulaFormatDescriptor {
     }
     // </editor-fold>
 
+    // <editor-fold defaultstate="collapsed" desc="Binary Encoding">
+    /**
+     * Writes the raw formula string. The markup of the formula is not
+     * encoded.
+     */
+    @Override
+    @NbBundle.Messages({
+        "SF_not_a_string_formula=The formula is not an Isabelle string formula."
+    })
+    public void encodeRepresentation(FormulaRepresentation representation, DataOutput out) throws IOException, FormulaEncodingException {
+        if (!(representation.getFormula() instanceof CharSequence)) {
+            throw new FormulaEncodingException(Bundle.SF_not_a_string_formula());
+        }
+        writeString(out, representation.getFormula().toString());
+    }
+
+    @Override
+    public FormulaRepresentation decodeRepresentation(DataInput in) throws IOException, FormulaEncodingException {
+        String rawFormula = readString(in);
+        if (rawFormula == null) {
+            throw new FormulaEncodingException(Bundle.SF_not_a_string_formula());
+        }
+        return new FormulaRepresentation(new StringFormula(rawFormula), this);
+    }
+    // </editor-fold>
+
     // <editor-fold defaultstate="collapsed" desc="Singleton Instance">
     /**
      * Returns the singleton instance of the Isabelle string format descriptor.
@@ -24,6 +24,7 @@
  */
 package mixr.isabelle.terms;
 
+import java.lang.ref.SoftReference;
 import mixr.isabelle.terms.Bundle;
 import org.isabelle.iapp.process.Message;
 import org.openide.util.NbBundle;
@@ -31,13 +32,23 @@ import org.openide.util.NbBundle;
 /**
  * The raw type of the Isabelle string formula. It contains the string of the
  * formula itself as well as the object that carries the markup for the formula.
+ *
+ * <p>The markup is only needed when the formula is displayed, which most
+ * formulae never are. It is therefore only softly referenced and may be
+ * reclaimed by the garbage collector when memory runs low. The formula string
+ * is always kept. So is the compact YXML encoding of the formula's term (if
+ * given), from which a {@link MarkupPrinter markup printer} can {@link
+ * StringFormula#requestMarkedUpFormula(mixr.isabelle.terms.StringFormula.MarkupListener)
+ * rebuild the markup} in the background when it is needed again.</p>
  * @author Matej Urbas [matej.urbas@gmail.com]
  */
 public final class StringFormula implements CharSequence, Comparable<CharSequence> {
 
     //<editor-fold defaultstate="collapsed" desc="Fields">
     private final String formulaString;
-    private final Message markedUpFormula;
+    private final String escapedYXML;
+    private final MarkupPrinter markupPrinter;
+    private volatile SoftReference<Message> markedUpFormula;
     //</editor-fold>
 
     /**
@@ -48,19 +59,41 @@ public final class StringFormula implements CharSequence, Comparable<CharSequenc
      * @throws IllegalArgumentException if the marked up formula is {@code null}
      * or if it does not carry the string formula.
      */
+    public StringFormula(Message markedUpFormula) {
+        this(markedUpFormula, null, null);
+    }
+
+    /**
+     * Creates a new raw Isabelle string formula with markup that can be
+     * rebuilt once it is reclaimed.
+     *
+     * @param markedUpFormula the markup (that contains the string as well as
+     * the formatting markup of the formula). Must not be {@code null}.
+     * @param escapedYXML the YXML encoding (with escaped control characters)
+     * of the term of this formula. If {@code null}, the markup cannot be
+     * rebuilt.
+     * @param markupPrinter prints the term again (in the context of its goal)
+     * when the markup has been reclaimed. If {@code null}, the markup cannot
+     * be rebuilt.
+     *
+     * @throws IllegalArgumentException if the marked up formula is {@code null}
+     * or if it does not carry the string formula.
+     */
     @NbBundle.Messages({
         "SF_formula_null=The string representation of the formula must not be null.",
         "SF_mu_null=The markup of the string formula must not be null."
     })
-    public StringFormula(Message markedUpFormula) {
+    public StringFormula(Message markedUpFormula, String escapedYXML, MarkupPrinter markupPrinter) {
         if (markedUpFormula == null) {
             throw new IllegalArgumentException(Bundle.SF_mu_null());
         }
-        this.markedUpFormula = markedUpFormula;
+        this.markedUpFormula = new SoftReference<>(markedUpFormula);
         this.formulaString = markedUpFormula.getText();
         if (this.formulaString == null) {
             throw new IllegalArgumentException(Bundle.SF_formula_null());
         }
+        this.escapedYXML = escapedYXML;
+        this.markupPrinter = escapedYXML == null ? null : markupPrinter;
     }
 
     /**
@@ -73,6 +106,8 @@ public final class StringFormula implements CharSequence, Comparable<CharSequenc
             throw new IllegalArgumentException(Bundle.SF_formula_null());
         }
         this.formulaString = formula;
+        this.escapedYXML = null;
+        this.markupPrinter = null;
         this.markedUpFormula = null;
     }
     
@@ -86,12 +121,57 @@ public final class StringFormula implements CharSequence, Comparable<CharSequenc
 
     /**
      * Returns the object that contains the formula itself together with its
-     * markup (description of particular elements).
+     * markup (description of particular elements). This method does not
+     * rebuild reclaimed markup (see {@link
+     * StringFormula#requestMarkedUpFormula(mixr.isabelle.terms.StringFormula.MarkupListener)}).
      * @return the object that contains the formula itself together with its
-     * markup (description of particular elements).
+     * markup (description of particular elements). Returns {@code null} if
+     * this formula has no markup or if the markup has been reclaimed.
      */
     public final Message getMarkedUpFormula() {
-        return markedUpFormula;
+        SoftReference<Message> reference = markedUpFormula;
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Passes the markup of this formula to the given listener. If the markup
+     * has been reclaimed, it is rebuilt first (in the background) and the
+     * listener may be invoked on any thread.
+     *
+     * @param listener receives the markup (or {@code null} if it could not be
+     * rebuilt).
+     * @return {@code false} if this formula has no markup and cannot rebuild
+     * it (in which case the listener is not invoked).
+     */
+    public final boolean requestMarkedUpFormula(final MarkupListener listener) {
+        Message markup = getMarkedUpFormula();
+        if (markup != null) {
+            listener.markupPrinted(markup);
+            return true;
+        }
+        if (markupPrinter == null) {
+            return false;
+        }
+        markupPrinter.printTerm(escapedYXML, new MarkupListener() {
+            @Override
+            public void markupPrinted(Message printedMarkup) {
+                if (printedMarkup != null) {
+                    markedUpFormula = new SoftReference<>(printedMarkup);
+                }
+                listener.markupPrinted(printedMarkup);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Returns the YXML encoding (with escaped control characters) of the term
+     * of this formula.
+     * @return the YXML encoding of the term of this formula or {@code null} if
+     * it is not known.
+     */
+    public final String getEscapedYXML() {
+        return escapedYXML;
     }
 
     @Override
@@ -128,4 +208,34 @@ public final class StringFormula implements CharSequence, Comparable<CharSequenc
             return this.getFormulaString().compareTo(o.toString());
         }
     }
+
+    /**
+     * Prints Isabelle terms with markup. It rebuilds the markup of string
+     * formulae after it has been reclaimed.
+     */
+    public interface MarkupPrinter {
+
+        /**
+         * Asynchronously prints the term with the given encoding.
+         *
+         * @param escapedYXML the YXML encoding (with escaped control
+         * characters) of the term to print.
+         * @param listener receives the printed term with its markup (or {@code
+         * null} if the term could not be printed). It may be invoked on any
+         * thread.
+         */
+        void printTerm(String escapedYXML, MarkupListener listener);
+    }
+
+    /**
+     * Receives the markup of string formulae.
+     */
+    public interface MarkupListener {
+
+        /**
+         * @param markup the formula together with its markup or {@code null}
+         * if the markup could not be rebuilt.
+         */
+        void markupPrinted(Message markup);
+    }
 }
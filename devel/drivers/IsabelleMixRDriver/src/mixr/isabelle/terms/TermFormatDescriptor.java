@@ -28,7 +28,9 @@ import mixr.isabelle.pure.lib.FreeVar;
 import mixr.isabelle.pure.lib.PlaceholderWithVars;
 import mixr.isabelle.pure.lib.PlaceholderWithoutVars;
 import mixr.isabelle.pure.lib.TermUtils;
+import mixr.isabelle.pure.lib.TermYXML;
 import mixr.isabelle.terms.Bundle;
+import mixr.logic.BinaryEncodedFormulaFormat;
 import mixr.logic.CarrierFormulaFormat;
 import mixr.logic.Formula;
 import mixr.logic.FormulaFormatDescriptor;
@@ -36,10 +38,19 @@ import mixr.logic.FormulaRepresentation;
 import mixr.logic.FreeVariable;
 import mixr.logic.Goal;
 import mixr.logic.Placeholder;
+import mixr.logic.TextEncodedFormulaFormat;
+import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
 import isabelle.Term;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import org.openide.util.NbBundle;
+import static mixr.logic.BinaryEncoding.*;
 
 /**
  * The formula format descriptor for Isabelle formulae in the term form.
@@ -49,7 +60,7 @@ import org.openide.util.NbBundle;
 @NbBundle.Messages({
     "TFD_term_format_pretty_name=Isabelle term"
 })
-public class TermFormatDescriptor extends FormulaFormatDescriptor implements CarrierFormulaFormat {
+public class TermFormatDescriptor extends FormulaFormatDescriptor implements CarrierFormulaFormat, BinaryEncodedFormulaFormat {
 
     //<editor-fold defaultstate="collapsed" desc="Fields">
     /**
@@ -66,9 +77,81 @@ public class TermFormatDescriptor extends FormulaFormatDescriptor implements Car
     //</editor-fold>
 
     // <editor-fold defaultstate="collapsed" desc="Placeholder Implementation">
+    /**
+     * Builds the term {@code Trueprop (MixR [About [x, ...], ...] ''format:
+     * formula'')} (or {@code Trueprop (MixRNoVars ''format: formula'')} if the
+     * placeholder has no free variables).
+     *
+     * <p>The term is only the MixR-side representation of the placeholder.
+     * Placeholders committed to a proof script are still written in their
+     * textual syntax (see {@link mixr.isabelle.IsabelleDriver}), which
+     * Isabelle parses again.</p>
+     */
     @Override
     public Formula encodePlaceholder(Placeholder placeholder, Goal context) throws PlaceholderEmbeddingException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        Term.Term term = TermUtils.createTrueprop(createPlaceholderTerm(placeholder.getEmbeddedFormula(), placeholder.getFreeVariables()));
+        return new Formula(new FormulaRepresentation(term, this, placeholder.getFreeVariables()), Formula.FormulaRole.Premise);
+    }
+
+    /**
+     * Builds the placeholder term (of type {@code bool}) that embeds the given
+     * formula.
+     *
+     * @param embeddedFormula the formula to embed. Its format must be
+     * {@link TextEncodedFormulaFormat text-encodable}.
+     * @param freeVariables the free variables the embedded formula refers to.
+     * May be {@code null}.
+     * @return the placeholder term.
+     * @throws mixr.logic.CarrierFormulaFormat.PlaceholderEmbeddingException
+     * thrown if the formula could not be encoded as text or if the text
+     * contains characters that cannot be represented in an HOL string (i.e.:
+     * with codes above 255).
+     */
+    @NbBundle.Messages({
+        "TFD_not_text_encodable=The formula in format '{0}' cannot be embedded into an Isabelle term since it cannot be encoded as text.",
+        "TFD_encoding_failed=The formula in format '{0}' could not be encoded as text.",
+        "TFD_payload_not_representable=The formula in format '{0}' cannot be embedded into an Isabelle term since its text contains characters that HOL strings cannot represent."
+    })
+    public static Term.Term createPlaceholderTerm(FormulaRepresentation embeddedFormula, Set<FreeVariable> freeVariables) throws PlaceholderEmbeddingException {
+        if (!(embeddedFormula.getFormat() instanceof TextEncodedFormulaFormat)) {
+            throw new PlaceholderEmbeddingException(Bundle.TFD_not_text_encodable(embeddedFormula.getFormat().getFormatName()));
+        }
+        TextEncodedFormulaFormat format = (TextEncodedFormulaFormat) embeddedFormula.getFormat();
+        String payloadFormula;
+        try {
+            payloadFormula = format.encodeAsString(embeddedFormula.getFormula());
+        } catch (FormulaEncodingException ex) {
+            throw new PlaceholderEmbeddingException(Bundle.TFD_encoding_failed(format.getFormatName()), ex);
+        }
+        try {
+            return TermUtils.createPlaceholder(format.getFormatName(), payloadFormula, toPlaceholderVars(freeVariables));
+        } catch (IllegalArgumentException ex) {
+            throw new PlaceholderEmbeddingException(Bundle.TFD_payload_not_representable(format.getFormatName()), ex);
+        }
+    }
+
+    /**
+     * Groups the given free variables into the {@code About} groups of a
+     * placeholder (see {@link TermUtils#groupPlaceholderVars(java.lang.Iterable)}).
+     * The variables are taken in their natural order.
+     *
+     * @param freeVariables the free variables of a placeholder. May be
+     * {@code null}.
+     * @return the groups of variables (never {@code null}).
+     */
+    public static List<List<FreeVar>> groupPlaceholderVariables(Set<FreeVariable> freeVariables) {
+        return TermUtils.groupPlaceholderVars(toPlaceholderVars(freeVariables));
+    }
+
+    private static ArrayList<FreeVar> toPlaceholderVars(Set<FreeVariable> freeVariables) {
+        ArrayList<FreeVar> vars = new ArrayList<>();
+        if (freeVariables != null) {
+            for (FreeVariable freeVariable : new TreeSet<>(freeVariables)) {
+                Term.Typ type = freeVariable.getType() instanceof Term.Typ ? (Term.Typ) freeVariable.getType() : null;
+                vars.add(new FreeVar(freeVariable.getName(), type));
+            }
+        }
+        return vars;
     }
 
     @Override
@@ -96,6 +179,76 @@ public class TermFormatDescriptor extends FormulaFormatDescriptor implements Car
     }
     // </editor-fold>
 
+    // <editor-fold defaultstate="collapsed" desc="Binary Encoding">
+    /**
+     * Writes the term as an YXML string. The types of free variables are
+     * written as YXML-encoded {@link Term.Free free terms}.
+     */
+    @Override
+    @NbBundle.Messages({
+        "TFD_not_a_term=The representation does not contain an Isabelle term."
+    })
+    public void encodeRepresentation(FormulaRepresentation representation, DataOutput out) throws IOException, FormulaEncodingException {
+        if (!(representation.getFormula() instanceof Term.Term)) {
+            throw new FormulaEncodingException(Bundle.TFD_not_a_term());
+        }
+        writeString(out, TermYXML.outputYXML((Term.Term) representation.getFormula()).toString());
+        Set<FreeVariable> freeVariables = representation.getFreeVariables();
+        if (freeVariables == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, freeVariables.size() + 1);
+            for (FreeVariable freeVariable : freeVariables) {
+                writeString(out, freeVariable.getName());
+                writeString(out, freeVariable.getType() instanceof Term.Typ
+                        ? TermYXML.outputYXML(new Term.Free(freeVariable.getName(), (Term.Typ) freeVariable.getType())).toString()
+                        : null);
+            }
+        }
+    }
+
+    @Override
+    @NbBundle.Messages({
+        "TFD_missing_term=The encoded representation does not contain an Isabelle term."
+    })
+    public FormulaRepresentation decodeRepresentation(DataInput in) throws IOException, FormulaEncodingException {
+        String encodedTerm = readString(in);
+        if (encodedTerm == null) {
+            throw new FormulaEncodingException(Bundle.TFD_missing_term());
+        }
+        Term.Term term = parseTerm(encodedTerm);
+        HashSet<FreeVariable> freeVariables = null;
+        int freeVariablesCount = readVarInt(in);
+        if (freeVariablesCount > 0) {
+            freeVariables = new HashSet<>();
+            for (int i = 0; i < freeVariablesCount - 1; i++) {
+                String name = readString(in);
+                String encodedType = readString(in);
+                Term.Typ type = null;
+                if (encodedType != null) {
+                    Term.Term freeTerm = parseTerm(encodedType);
+                    if (freeTerm instanceof Term.Free) {
+                        type = ((Term.Free) freeTerm).typ();
+                    }
+                }
+                freeVariables.add(new FreeVariable(name, type));
+            }
+        }
+        return new FormulaRepresentation(term, this, freeVariables);
+    }
+
+    @NbBundle.Messages({
+        "TFD_malformed_term=The encoded Isabelle term is malformed."
+    })
+    private static Term.Term parseTerm(String yxml) throws FormulaEncodingException {
+        try {
+            return TermYXML.parseYXML(yxml);
+        } catch (IllegalArgumentException | NullPointerException ex) {
+            throw new FormulaEncodingException(Bundle.TFD_malformed_term(), ex);
+        }
+    }
+    // </editor-fold>
+
     // <editor-fold defaultstate="collapsed" desc="Singleton Instance">
     /**
      * Returns the singleton instance of the Isabelle term format descriptor.
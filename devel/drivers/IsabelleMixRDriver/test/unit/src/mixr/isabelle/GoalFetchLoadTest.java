@@ -0,0 +1,205 @@
+/*
+ * File name: GoalFetchLoadTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mixr.components.GoalProvider;
+import mixr.isabelle.RecordedIsabelleSession.ProofState;
+import mixr.isabelle.terms.TermsToMixRTest;
+import mixr.logic.Goals;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long it takes from a proof state change in Isabelle until the
+ * {@link IsabelleDriver} publishes the new goals. Isabelle is replaced by a
+ * {@link RecordedIsabelleSession}, so this test runs without Isabelle and
+ * I3P. Both the session and the driver run on a {@link ManualFetchExecutor},
+ * so all latencies are measured in virtual time and do not depend on the
+ * speed of the machine.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class GoalFetchLoadTest {
+
+    private static final long RESPONSE_LATENCY_MILLIS = 20;
+    private static final int PROOF_STATES_COUNT = 12;
+    private static final int BURST_STATE_CHANGES = 40;
+    private static final long BURST_INTERVAL_MILLIS = 10;
+    private static final String[][] EXAMPLE_GOALS = {
+        {TermsToMixRTest.Example1_escapedYXML, "MixR(''hyperblocks'', ''data'') ⟹ Tet(a) ∧ Tet(b)"},
+        {TermsToMixRTest.Example2_escapedYXML, "⟦ A; B; MixR(''hyperblocks'', ''data''); C ⟧ ⟹ Tet(a) ∧ Tet(b)"},
+        {TermsToMixRTest.Example3_escapedYXML, "⋀ B a b. ⟦ A; B; MixR(''hyperblocks'', ''data''); C ⟧ ⟹ Tet(a) ∧ Tet(b)"}
+    };
+    private static final Logger LOG = Logger.getLogger(GoalFetchLoadTest.class.getName());
+    private ManualFetchExecutor executor;
+    private RecordedIsabelleSession session;
+    private IsabelleDriver driver;
+    private LinkedBlockingQueue<Goals> publishedGoals;
+
+    public GoalFetchLoadTest() {
+    }
+
+    @Before
+    public void setUp() {
+        executor = new ManualFetchExecutor();
+        session = new RecordedIsabelleSession(createGrowingProofStates(PROOF_STATES_COUNT), RESPONSE_LATENCY_MILLIS, executor);
+        driver = new IsabelleDriver(session, executor);
+        publishedGoals = new LinkedBlockingQueue<>();
+        driver.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (evt.getNewValue() != null) {
+                    publishedGoals.add((Goals) evt.getNewValue());
+                }
+            }
+        }, GoalProvider.CurrentGoalsChangedEvent);
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void testReadRecording() throws Exception {
+        String recording = RecordedIsabelleSession.GOAL_PREFIX + EXAMPLE_GOALS[0][0] + "\n"
+                + "first line\n"
+                + "second line\n"
+                + RecordedIsabelleSession.GOAL_PREFIX + EXAMPLE_GOALS[1][0] + "\n"
+                + EXAMPLE_GOALS[1][1] + "\n"
+                + "\n"
+                + "MixRResponse: No Goals: \n";
+        List<ProofState> proofStates = RecordedIsabelleSession.readRecording(new StringReader(recording));
+        assertEquals(2, proofStates.size());
+        assertEquals(2, proofStates.get(0).getGoalsCount());
+        assertEquals(0, proofStates.get(1).getGoalsCount());
+    }
+
+    @Test
+    public void testStateChangeToGoalsLatency() throws Exception {
+        long[] latencies = new long[session.getProofStatesCount()];
+        for (int i = 0; i < session.getProofStatesCount(); i++) {
+            long start = executor.nanoTime();
+            session.changeProofState(i);
+            awaitGoals(session.getProofState(i).getGoalsCount());
+            latencies[i] = executor.nanoTime() - start;
+            assertTrue(latencies[i] <= TimeUnit.MILLISECONDS.toNanos(GoalFetchScheduler.MAX_DELAY_MILLIS + RESPONSE_LATENCY_MILLIS));
+        }
+        report("State change to goals", latencies);
+        // Every proof state adds one goal to the previous one. Each goal
+        // should thus be sent in full only once.
+        assertEquals(session.getProofState(session.getProofStatesCount() - 1).getGoalsCount(), session.getSentGoalsCount());
+    }
+
+    @Test
+    public void testBurstOfStateChanges() throws Exception {
+        long start = executor.nanoTime();
+        int lastProofState = 0;
+        for (int i = 0; i < BURST_STATE_CHANGES; i++) {
+            lastProofState = i % session.getProofStatesCount();
+            session.changeProofState(lastProofState);
+            executor.advance(BURST_INTERVAL_MILLIS);
+        }
+        long lastChange = executor.nanoTime();
+        awaitGoals(session.getProofState(lastProofState).getGoalsCount());
+        long end = executor.nanoTime();
+        LOG.log(Level.INFO, String.format("Burst of %d state changes: %d goal requests, %.1f ms in total, %.1f ms after the last change.",
+                BURST_STATE_CHANGES, session.getRequestsCount(), (end - start) / 1e6, (end - lastChange) / 1e6));
+        // The changes come faster than the initial fetch delay, so they keep
+        // postponing the fetch until the burst is over:
+        assertEquals(1, session.getRequestsCount());
+    }
+
+    @Test
+    public void testUnchangedProofStateIsNotFetchedAgain() throws Exception {
+        // The driver learns about the proof document with the first response:
+        session.changeProofState(0);
+        awaitGoals(session.getProofState(0).getGoalsCount());
+        session.changeProofState(1);
+        awaitGoals(session.getProofState(1).getGoalsCount());
+        int requestsCount = session.getRequestsCount();
+        // A state change that leaves the proof state as it was:
+        session.changeProofState(1);
+        executor.runUntilIdle();
+        assertEquals(requestsCount, session.getRequestsCount());
+        session.changeProofState(2);
+        awaitGoals(session.getProofState(2).getGoalsCount());
+        assertEquals(requestsCount + 1, session.getRequestsCount());
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Methods">
+    /**
+     * Creates proof states where the n-th state contains n + 1 goals and each
+     * state extends the previous one by a single goal.
+     */
+    private static List<ProofState> createGrowingProofStates(int count) {
+        ArrayList<ProofState> proofStates = new ArrayList<>();
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String[] goal = EXAMPLE_GOALS[i % EXAMPLE_GOALS.length];
+            messages.addAll(Arrays.asList(RecordedIsabelleSession.GOAL_PREFIX + goal[0], goal[1]));
+            proofStates.add(new ProofState(messages));
+        }
+        return proofStates;
+    }
+
+    /**
+     * Runs the pending tasks until the driver publishes goals with the given
+     * number of goals.
+     */
+    private void awaitGoals(int goalsCount) {
+        while (true) {
+            Goals goals = publishedGoals.poll();
+            if (goals == null) {
+                if (!executor.runNext()) {
+                    fail("The driver did not publish " + goalsCount + " goals.");
+                }
+            } else if (goals.size() == goalsCount) {
+                return;
+            }
+        }
+    }
+
+    private static void report(String what, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        LOG.log(Level.INFO, String.format("%s (%d samples): p50 %.1f ms, p90 %.1f ms, max %.1f ms",
+                what, sorted.length,
+                sorted[(sorted.length - 1) / 2] / 1e6,
+                sorted[(int) Math.ceil(0.9 * sorted.length) - 1] / 1e6,
+                sorted[sorted.length - 1] / 1e6));
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,229 @@
+/*
+ * File name: IsabelleDriverCommitTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import isabelle.Term;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import mixr.components.GoalTransformer;
+import mixr.isabelle.pure.lib.TermYXML;
+import mixr.isabelle.terms.TermsToMixR;
+import mixr.isabelle.terms.TermsToMixRTest;
+import mixr.logic.Goal;
+import mixr.logic.GoalTransformationResult;
+import mixr.logic.Goals;
+import org.isabelle.iapp.proofdocument.ProofDocument;
+import org.isabelle.iapp.proofdocument.ProofElement;
+import org.junit.*;
+import propity.util.MovableArrayList;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the proof text that the {@link IsabelleDriver} inserts for committed
+ * inference steps.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class IsabelleDriverCommitTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+    private RecordedIsabelleSession session;
+    private IsabelleDriver driver;
+    private RecordingProofDocument proofDocument;
+    private GoalTransformer transformer;
+
+    public IsabelleDriverCommitTest() {
+    }
+
+    @Before
+    public void setUp() {
+        session = new RecordedIsabelleSession(Collections.<RecordedIsabelleSession.ProofState>emptyList(), 0);
+        driver = new IsabelleDriver(session);
+        proofDocument = new RecordingProofDocument();
+        transformer = (GoalTransformer) Proxy.newProxyInstance(IsabelleDriverCommitTest.class.getClassLoader(), new Class<?>[]{GoalTransformer.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void testStepsOnTheSameGoalsAreRenumbered() throws Exception {
+        Goals goals = createGoals(3);
+        driver.commitTransformedGoalsAsync(discharge(goals, 0)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        // The first goal is gone, so the third one is now the second:
+        driver.commitTransformedGoalsAsync(discharge(goals, 2)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals("apply (mixr goal: 1)\napply (mixr goal: 2)\n", proofDocument.getInsertedText());
+    }
+
+    @Test
+    public void testStepsOnNewGoalsAreNotRenumbered() throws Exception {
+        driver.commitTransformedGoalsAsync(discharge(createGoals(3), 0)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        driver.commitTransformedGoalsAsync(discharge(createGoals(2), 1)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals("apply (mixr goal: 1)\napply (mixr goal: 2)\n", proofDocument.getInsertedText());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGoalChangedByAnEarlierStepIsRejected() throws Exception {
+        Goals goals = createGoals(2);
+        driver.commitTransformedGoalsAsync(discharge(goals, 1));
+        driver.commitTransformedGoalsAsync(discharge(goals, 1));
+    }
+
+    @Test
+    public void testFailedCommitIsNotCounted() throws Exception {
+        Goals goals = createGoals(3);
+        proofDocument.failInsertions(1);
+        try {
+            driver.commitTransformedGoalsAsync(discharge(goals, 0)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            fail("The insertion should have failed.");
+        } catch (ExecutionException ex) {
+        }
+        // The first goal is still there:
+        driver.commitTransformedGoalsAsync(discharge(goals, 2)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals("apply (mixr goal: 3)\n", proofDocument.getInsertedText());
+    }
+
+    @Test
+    public void testCancelledCommitIsNotCounted() throws Exception {
+        Goals goals = createGoals(4);
+        CountDownLatch firstInsertion = proofDocument.blockInsertions();
+        Future<Void> first = driver.commitTransformedGoalsAsync(discharge(goals, 0));
+        firstInsertion.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        Future<Void> second = driver.commitTransformedGoalsAsync(discharge(goals, 1));
+        Future<Void> third = driver.commitTransformedGoalsAsync(discharge(goals, 2));
+        assertTrue(second.cancel(false));
+        // The third step assumed the second one:
+        assertTrue(third.isCancelled());
+        proofDocument.unblockInsertions();
+        first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        // Only the first goal is gone:
+        driver.commitTransformedGoalsAsync(discharge(goals, 3)).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals("apply (mixr goal: 1)\napply (mixr goal: 3)\n", proofDocument.getInsertedText());
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Methods">
+    private Goals createGoals(int count) {
+        Term.Term term = TermYXML.parseYXML(TermYXML.unescapeControlChars(TermsToMixRTest.Example1_escapedYXML));
+        ArrayList<Goal> goals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            goals.add(TermsToMixR.toGoal(term, proofDocument));
+        }
+        return new Goals(driver, goals);
+    }
+
+    /**
+     * Returns a step that discharges the goal with the given index.
+     */
+    @SuppressWarnings("unchecked")
+    private GoalTransformationResult discharge(Goals goals, int index) {
+        MovableArrayList<Goal>[] transformedGoals = new MovableArrayList[index + 1];
+        transformedGoals[index] = new MovableArrayList<>();
+        return new GoalTransformationResult(transformer, goals, transformedGoals, null);
+    }
+
+    /**
+     * A proof document that only records the text inserted into it.
+     */
+    private static final class RecordingProofDocument implements ProofDocument {
+
+        private final StringBuilder insertedText = new StringBuilder();
+        private int failingInsertionsCount;
+        private CountDownLatch insertionStarted;
+        private final CountDownLatch unblocked = new CountDownLatch(1);
+
+        @Override
+        public ProofElement insertAfter(ProofElement element, String text) {
+            CountDownLatch started;
+            synchronized (this) {
+                if (failingInsertionsCount > 0) {
+                    --failingInsertionsCount;
+                    throw new IllegalStateException("The insertion failed.");
+                }
+                insertedText.append(text);
+                started = insertionStarted;
+            }
+            if (started != null) {
+                started.countDown();
+                try {
+                    unblocked.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public ProofElement getLastLockedElement() {
+            return null;
+        }
+
+        @Override
+        public void awaitStable() {
+        }
+
+        /**
+         * Makes the given number of the next insertions fail.
+         */
+        synchronized void failInsertions(int count) {
+            failingInsertionsCount = count;
+        }
+
+        /**
+         * Makes insertions wait until {@link
+         * RecordingProofDocument#unblockInsertions()} is called.
+         *
+         * @return a latch that opens when the first insertion starts waiting.
+         */
+        synchronized CountDownLatch blockInsertions() {
+            insertionStarted = new CountDownLatch(1);
+            return insertionStarted;
+        }
+
+        void unblockInsertions() {
+            unblocked.countDown();
+        }
+
+        synchronized String getInsertedText() {
+            return insertedText.toString();
+        }
+    }
+    // </editor-fold>
+}
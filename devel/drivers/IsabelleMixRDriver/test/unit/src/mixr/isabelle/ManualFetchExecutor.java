@@ -0,0 +1,154 @@
+/*
+ * File name: ManualFetchExecutor.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GoalFetchScheduler.FetchExecutor fetch executor} with a virtual
+ * clock. Tasks run only when the test calls {@link ManualFetchExecutor#runNext()}
+ * or {@link ManualFetchExecutor#advance(long)}, on the test's thread and in
+ * the order of their due times. The clock jumps to the due time of each task
+ * that runs.
+ *
+ * <p>Tasks that are due at the same time run in the order in which they were
+ * submitted. Tasks for the event dispatch thread run on the test's thread
+ * too.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+final class ManualFetchExecutor implements GoalFetchScheduler.FetchExecutor {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    private final TreeSet<PendingTask> pendingTasks = new TreeSet<>();
+    private long nowNanos;
+    private long submittedCount;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="FetchExecutor Implementation">
+    @Override
+    public synchronized long nanoTime() {
+        return nowNanos;
+    }
+
+    @Override
+    public void post(Runnable task) {
+        submit(task, 0, false);
+    }
+
+    @Override
+    public void schedule(Runnable task, int delayMillis) {
+        submit(task, delayMillis, true);
+    }
+
+    @Override
+    public void invokeLater(Runnable task) {
+        submit(task, 0, false);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Running Tasks">
+    /**
+     * Runs the task that is due first and moves the clock to its due time.
+     *
+     * @return {@code false} if there was no task to run.
+     */
+    boolean runNext() {
+        return runNextDueBy(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs all tasks (including the ones they submit) that are due within the
+     * given time and then moves the clock forward by that time.
+     *
+     * @param millis the time by which to move the clock.
+     */
+    void advance(long millis) {
+        long targetNanos;
+        synchronized (this) {
+            targetNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        while (runNextDueBy(targetNanos)) {
+        }
+        synchronized (this) {
+            nowNanos = targetNanos;
+        }
+    }
+
+    /**
+     * Runs tasks until there are none left.
+     */
+    void runUntilIdle() {
+        while (runNext()) {
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    private synchronized void submit(Runnable task, int delayMillis, boolean postpone) {
+        if (postpone) {
+            for (Iterator<PendingTask> it = pendingTasks.iterator(); it.hasNext();) {
+                if (it.next().task == task) {
+                    it.remove();
+                }
+            }
+        }
+        pendingTasks.add(new PendingTask(task, nowNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis), submittedCount++));
+    }
+
+    private boolean runNextDueBy(long deadlineNanos) {
+        PendingTask next;
+        synchronized (this) {
+            if (pendingTasks.isEmpty() || pendingTasks.first().dueNanos > deadlineNanos) {
+                return false;
+            }
+            next = pendingTasks.pollFirst();
+            nowNanos = Math.max(nowNanos, next.dueNanos);
+        }
+        next.task.run();
+        return true;
+    }
+
+    private static final class PendingTask implements Comparable<PendingTask> {
+
+        private final Runnable task;
+        private final long dueNanos;
+        private final long sequence;
+
+        PendingTask(Runnable task, long dueNanos, long sequence) {
+            this.task = task;
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PendingTask other) {
+            return dueNanos == other.dueNanos ? Long.compare(sequence, other.sequence) : Long.compare(dueNanos, other.dueNanos);
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,381 @@
+/*
+ * File name: RecordedIsabelleSession.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.isabelle.iapp.process.Message;
+import org.isabelle.iapp.proofdocument.ProofDocument;
+import org.isabelle.iapp.proofdocument.ProofElement;
+import org.isabelle.iapp.proofdocument.StateListener;
+
+/**
+ * An {@link IsabelleSession} that stands in for a running Isabelle. It replays
+ * recorded proof states instead of executing ML commands.
+ *
+ * <p>A recording is a sequence of proof states as printed by {@code
+ * GoalsExport.mixr_write_sds_goals}: every goal is a line {@code MixRResponse:
+ * Goal: <escaped YXML>} followed by the goal's string representation (which
+ * may span several lines). Proof states are separated by empty lines.</p>
+ *
+ * <p>Goal requests are answered like {@code GoalsExport.mixr_write_goals_delta}
+ * would answer them: goals whose IDs are listed in the command are only
+ * referenced (together with their content hashes). Responses are delivered on
+ * a background thread after a configurable latency, or through a given {@link
+ * GoalFetchScheduler.FetchExecutor fetch executor} (so that tests can control
+ * time).</p>
+ *
+ * <p>All responses come from the same proof document. Its last locked element
+ * is the current proof state, so the driver's proof state key changes exactly
+ * when the proof state does.</p>
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+final class RecordedIsabelleSession implements IsabelleSession {
+
+    // <editor-fold defaultstate="collapsed" desc="Fields">
+    static final String GOAL_PREFIX = "MixRResponse: Goal: ";
+    private static final String GOAL_ENTRY_PREFIX = "MixRResponse: Goal entry: ";
+    private static final String GOAL_REF_PREFIX = "MixRResponse: Goal ref: ";
+    private static final String NO_GOALS = "MixRResponse: No Goals: ";
+    private static final Pattern ML_STRING = Pattern.compile("\"([^\"]*)\"");
+    /**
+     * Poly/ML's words have 63 bits on 64-bit platforms.
+     */
+    private static final long WORD_MASK = Long.MAX_VALUE;
+    private final List<ProofState> proofStates;
+    private final long responseLatencyMillis;
+    private final CopyOnWriteArrayList<StateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+    private final GoalFetchScheduler.FetchExecutor responseExecutor;
+    private final AtomicInteger requestsCount = new AtomicInteger();
+    private final AtomicInteger sentGoalsCount = new AtomicInteger();
+    private final AtomicInteger referencedGoalsCount = new AtomicInteger();
+    private final RecordedProofDocument proofDocument = new RecordedProofDocument();
+    private volatile ProofState currentProofState;
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Constructor">
+    /**
+     * Creates a session that replays the given proof states.
+     *
+     * @param proofStates the recorded proof states.
+     * @param responseLatencyMillis the time it takes for a goal request to be
+     * answered.
+     */
+    RecordedIsabelleSession(List<ProofState> proofStates, long responseLatencyMillis) {
+        this(proofStates, responseLatencyMillis, null);
+    }
+
+    /**
+     * Creates a session that replays the given proof states and delivers its
+     * responses through the given executor.
+     *
+     * @param proofStates the recorded proof states.
+     * @param responseLatencyMillis the time it takes for a goal request to be
+     * answered.
+     * @param responseExecutor delivers the responses (if {@code null}, they
+     * are delivered on this session's own background thread).
+     */
+    RecordedIsabelleSession(List<ProofState> proofStates, long responseLatencyMillis, GoalFetchScheduler.FetchExecutor responseExecutor) {
+        this.proofStates = proofStates;
+        this.responseLatencyMillis = responseLatencyMillis;
+        this.responseExecutor = responseExecutor;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Recordings">
+    /**
+     * Reads a recording (see {@link RecordedIsabelleSession the format}).
+     *
+     * @param recording the recording to read.
+     * @return the recorded proof states.
+     * @throws IOException thrown if the recording could not be read.
+     */
+    static List<ProofState> readRecording(Reader recording) throws IOException {
+        ArrayList<ProofState> proofStates = new ArrayList<>();
+        ArrayList<String> messages = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(recording);
+        boolean expectGoalString = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (!messages.isEmpty()) {
+                    proofStates.add(new ProofState(messages));
+                    messages.clear();
+                }
+                expectGoalString = false;
+            } else if (line.startsWith("MixRResponse: ")) {
+                messages.add(line);
+                expectGoalString = line.startsWith(GOAL_PREFIX);
+            } else if (expectGoalString || messages.isEmpty()) {
+                messages.add(line);
+                expectGoalString = false;
+            } else {
+                // A continuation of a multi-line goal string.
+                int last = messages.size() - 1;
+                messages.set(last, messages.get(last) + "\n" + line);
+            }
+        }
+        if (!messages.isEmpty()) {
+            proofStates.add(new ProofState(messages));
+        }
+        return proofStates;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Replaying">
+    /**
+     * Makes the proof state with the given index current and notifies all
+     * state listeners.
+     *
+     * @param index the index of the recorded proof state.
+     */
+    void changeProofState(int index) {
+        currentProofState = proofStates.get(index);
+        for (StateListener stateListener : stateListeners) {
+            stateListener.stateChanged(null);
+        }
+    }
+
+    int getProofStatesCount() {
+        return proofStates.size();
+    }
+
+    ProofState getProofState(int index) {
+        return proofStates.get(index);
+    }
+
+    /**
+     * Returns the number of goal requests this session received.
+     */
+    int getRequestsCount() {
+        return requestsCount.get();
+    }
+
+    /**
+     * Returns the number of goals this session sent in full.
+     */
+    int getSentGoalsCount() {
+        return sentGoalsCount.get();
+    }
+
+    /**
+     * Returns the number of goals this session sent only as references.
+     */
+    int getReferencedGoalsCount() {
+        return referencedGoalsCount.get();
+    }
+
+    /**
+     * Stops the thread that delivers responses.
+     */
+    void close() {
+        responder.shutdownNow();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="IsabelleSession Implementation">
+    @Override
+    public void addStateListener(StateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    @Override
+    public void requestGoals(String mlCommand, final GoalsResponseListener listener) {
+        requestsCount.incrementAndGet();
+        final String[] texts = respond(currentProofState, getKnownGoalIds(mlCommand));
+        Runnable response = new Runnable() {
+            @Override
+            public void run() {
+                listener.responseReceived(new GoalsResponse(proofDocument, texts, null));
+            }
+        };
+        if (responseExecutor == null) {
+            responder.schedule(response, responseLatencyMillis, TimeUnit.MILLISECONDS);
+        } else {
+            responseExecutor.schedule(response, (int) responseLatencyMillis);
+        }
+    }
+
+    /**
+     * Recordings contain no markup, so no message is ever printed.
+     */
+    @Override
+    public void requestMessage(String mlCommand, MessageResponseListener listener) {
+        listener.messageReceived(null);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Private Helper Methods">
+    /**
+     * The proof document of the replayed proof states.
+     */
+    private final class RecordedProofDocument implements ProofDocument {
+
+        @Override
+        public ProofElement getLastLockedElement() {
+            return currentProofState;
+        }
+
+        @Override
+        public ProofElement insertAfter(ProofElement element, String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void awaitStable() {
+        }
+    }
+
+    private String[] respond(ProofState proofState, Set<String> knownGoalIds) {
+        if (proofState == null || proofState.goalIds.isEmpty()) {
+            return new String[]{NO_GOALS};
+        }
+        ArrayList<String> texts = new ArrayList<>();
+        for (int i = 0; i < proofState.goalIds.size(); i++) {
+            String goalId = proofState.goalIds.get(i);
+            String contentHash = proofState.contentHashes.get(i);
+            if (knownGoalIds.contains(goalId)) {
+                texts.add(GOAL_REF_PREFIX + goalId + " " + contentHash);
+                referencedGoalsCount.incrementAndGet();
+            } else {
+                texts.add(GOAL_ENTRY_PREFIX + goalId + " " + contentHash + " " + proofState.escapedYXMLs.get(i));
+                texts.add(proofState.goalStrings.get(i));
+                sentGoalsCount.incrementAndGet();
+            }
+        }
+        return texts.toArray(new String[texts.size()]);
+    }
+
+    private static Set<String> getKnownGoalIds(String mlCommand) {
+        HashSet<String> goalIds = new HashSet<>();
+        Matcher matcher = ML_STRING.matcher(mlCommand);
+        while (matcher.find()) {
+            goalIds.add(matcher.group(1));
+        }
+        return goalIds;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Proof State">
+    /**
+     * The goals of a single recorded proof state. The proof state is also the
+     * last locked element of the session's proof document while it is
+     * current.
+     */
+    static final class ProofState implements ProofElement {
+
+        private final List<String> goalIds;
+        private final List<String> contentHashes;
+        private final List<String> escapedYXMLs;
+        private final List<String> goalStrings;
+
+        /**
+         * Creates a proof state from the messages Isabelle printed for it
+         * (see {@link RecordedIsabelleSession the format}).
+         */
+        ProofState(List<String> messages) {
+            ArrayList<String> ids = new ArrayList<>();
+            ArrayList<String> hashes = new ArrayList<>();
+            ArrayList<String> yxmls = new ArrayList<>();
+            ArrayList<String> strings = new ArrayList<>();
+            HashMap<String, Integer> repetitions = new HashMap<>();
+            for (int i = 0; i < messages.size(); i++) {
+                if (messages.get(i).startsWith(GOAL_PREFIX)) {
+                    String escapedYXML = messages.get(i).substring(GOAL_PREFIX.length());
+                    ids.add(getGoalId(escapedYXML, repetitions));
+                    hashes.add(getContentHash(escapedYXML));
+                    yxmls.add(escapedYXML);
+                    strings.add(i + 1 < messages.size() ? messages.get(++i) : "");
+                }
+            }
+            this.goalIds = Collections.unmodifiableList(ids);
+            this.contentHashes = Collections.unmodifiableList(hashes);
+            this.escapedYXMLs = Collections.unmodifiableList(yxmls);
+            this.goalStrings = Collections.unmodifiableList(strings);
+        }
+
+        ProofState(String... messages) {
+            this(Arrays.asList(messages));
+        }
+
+        int getGoalsCount() {
+            return goalIds.size();
+        }
+
+        /**
+         * Computes goal IDs the way {@code GoalsExport.goal_ids} does (with
+         * Poly/ML's 63-bit words of 64-bit platforms): {@code string_hash} of
+         * the bytes of the goal's encoding, followed by ".<n>" if n previous
+         * goals got the same hash.
+         *
+         * @param repetitions the number of goals that got each hash so far.
+         * This method updates it.
+         */
+        private static String getGoalId(String escapedYXML, HashMap<String, Integer> repetitions) {
+            long hash = 0;
+            for (byte b : escapedYXML.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash * 31 + (b & 0xff)) & WORD_MASK;
+            }
+            String id = Long.toHexString(hash).toUpperCase();
+            Integer previous = repetitions.get(id);
+            int n = previous == null ? 0 : previous;
+            repetitions.put(id, n + 1);
+            return n == 0 ? id : id + "." + n;
+        }
+
+        /**
+         * Computes the content hash the way {@code GoalsExport.content_hash}
+         * does (with Poly/ML's 63-bit words of 64-bit platforms): a hash of the
+         * bytes of the goal's encoding, followed by their count.
+         */
+        private static String getContentHash(String escapedYXML) {
+            byte[] bytes = escapedYXML.getBytes(StandardCharsets.UTF_8);
+            long hash = 5381;
+            for (byte b : bytes) {
+                hash = ((hash * 33) ^ (b & 0xff)) & WORD_MASK;
+            }
+            return Long.toHexString(hash).toUpperCase() + "-" + bytes.length;
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,172 @@
+/*
+ * File name: BatchTranslationRunnerTest.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mixr.isabelle.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import mixr.components.FormulaTranslatorsCatalogue;
+import mixr.components.MixRDriver;
+import mixr.isabelle.pure.lib.TermYXML;
+import mixr.isabelle.terms.StringFormat;
+import mixr.isabelle.terms.TermFormatDescriptor;
+import mixr.isabelle.terms.TermsToMixRTest;
+import mixr.logic.Formula;
+import mixr.logic.FormulaRepresentation;
+import mixr.logic.FormulaTranslator;
+import org.junit.*;
+import org.openide.util.Lookup;
+import org.openide.util.lookup.AbstractLookup;
+import org.openide.util.lookup.InstanceContent;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link BatchTranslationRunner} outside the MixR platform.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+public class BatchTranslationRunnerTest {
+
+    private File goalFile;
+
+    public BatchTranslationRunnerTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        goalFile = File.createTempFile("goal", ".yxml");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(goalFile), StandardCharsets.US_ASCII)) {
+            writer.write(TermYXML.unescapeControlChars(TermsToMixRTest.Example1_escapedYXML));
+            writer.write('\n');
+        }
+    }
+
+    @After
+    public void tearDown() {
+        goalFile.delete();
+    }
+
+    @Test
+    public void testTranslatorsAreFoundWithoutCreatingDrivers() {
+        InstanceContent content = new InstanceContent();
+        content.add(new TestCatalogue());
+        content.add(MixRDriver.class, new InstanceContent.Convertor<Class<MixRDriver>, MixRDriver>() {
+            @Override
+            public MixRDriver convert(Class<MixRDriver> obj) {
+                throw new AssertionError("The runner created a MixR driver.");
+            }
+
+            @Override
+            public Class<? extends MixRDriver> type(Class<MixRDriver> obj) {
+                return obj;
+            }
+
+            @Override
+            public String id(Class<MixRDriver> obj) {
+                return obj.getName();
+            }
+
+            @Override
+            public String displayName(Class<MixRDriver> obj) {
+                return obj.getName();
+            }
+        });
+        List<FormulaTranslator> translators = BatchTranslationRunner.findTermTranslators(new AbstractLookup(content), Collections.<String>emptyList());
+        assertEquals(Arrays.asList(TestTranslator.INSTANCE), translators);
+    }
+
+    @Test
+    public void testTranslatorsAreFilteredByName() {
+        Lookup lookup = new AbstractLookup(new InstanceContent());
+        assertTrue(BatchTranslationRunner.findTermTranslators(lookup, Arrays.asList("no such translator")).isEmpty());
+    }
+
+    @Test
+    public void testDefaultLookupNeedsNoPlatform() {
+        // The Isabelle driver registered in the default lookup cannot be
+        // created outside the platform:
+        BatchTranslationRunner.findTermTranslators(Lookup.getDefault(), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void testRunOutsideThePlatform() throws Exception {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        new BatchTranslationRunner(2, Arrays.asList(TestTranslator.INSTANCE)).run(Arrays.asList(goalFile, goalFile), new PrintStream(report, true, "UTF-8"));
+        String reportText = report.toString("UTF-8");
+        assertTrue(reportText, reportText.contains("YXML parsing: 2 attempts, 2 succeeded"));
+        assertTrue(reportText, reportText.contains(TestTranslator.INSTANCE.getName() + ": 2 attempts, 2 succeeded"));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Helper Classes">
+    private static final class TestCatalogue implements FormulaTranslatorsCatalogue {
+
+        @Override
+        public Collection<FormulaTranslator> getFormulaTranslators() {
+            return Arrays.<FormulaTranslator>asList(TestTranslator.INSTANCE);
+        }
+    }
+
+    /**
+     * Translates every Isabelle term to the same string formula.
+     */
+    private static final class TestTranslator extends FormulaTranslator {
+
+        static final TestTranslator INSTANCE = new TestTranslator();
+
+        private TestTranslator() {
+            super(TermFormatDescriptor.getInstance(), StringFormat.getInstance(), TranslationType.ToEquivalent, "Test_terms_to_strings");
+        }
+
+        @Override
+        public String getDescription() {
+            return getName();
+        }
+
+        @Override
+        public String getPrettyName() {
+            return getName();
+        }
+
+        @Override
+        public FormulaRepresentation translate(Formula formula) {
+            return StringFormat.createFormula("translated");
+        }
+
+        @Override
+        public FormulaRepresentation translate(List<? extends Formula> premises) throws TranslationException {
+            throw new TranslationException();
+        }
+    }
+    // </editor-fold>
+}
@@ -24,11 +24,12 @@
  */
 package mixr.demo.driver.picproc;
 
+import java.io.File;
 import java.util.Set;
+import mixr.logic.ExternallyStoredFormulaFormat;
 import mixr.logic.FormulaFormatDescriptor;
 import mixr.logic.FormulaRepresentation;
 import mixr.logic.FreeVariable;
-import mixr.logic.TextEncodedFormulaFormat;
 import mixr.logic.TextEncodedFormulaFormat.FormulaEncodingException;
 import mixr.logic.VariableReferencingFormulaFormat;
 import org.openide.util.NbBundle;
@@ -48,7 +49,7 @@ import org.openide.util.NbBundle;
 @NbBundle.Messages({
     "ImgUrlFormat_pretty_name=Image Url"
 })
-public class ImageUrlFormat extends FormulaFormatDescriptor implements TextEncodedFormulaFormat, VariableReferencingFormulaFormat {
+public class ImageUrlFormat extends FormulaFormatDescriptor implements ExternallyStoredFormulaFormat, VariableReferencingFormulaFormat {
 
     /**
      * The name of the hyperlinked image format.
@@ -72,6 +73,14 @@ public class ImageUrlFormat extends FormulaFormatDescriptor implements TextEncod
         return new ImageUrlFormula(encodedFormula);
     }
 
+    /**
+     * Images are decoded again whenever their files change.
+     */
+    @Override
+    public long getModificationStamp(String encodedFormula) {
+        return new File(encodedFormula).lastModified();
+    }
+
     /**
      * Returns the singleton instance of the natural language format descriptor.
      *
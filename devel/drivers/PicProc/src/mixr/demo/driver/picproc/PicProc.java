@@ -34,6 +34,7 @@ import mixr.components.FormulaFormatsProvider;
 import mixr.components.FormulaPresenter;
 import mixr.components.GoalTransformer;
 import mixr.components.MixRDriver;
+import mixr.components.util.InferenceStepResultCache;
 import mixr.logic.AutomatedInferenceRule;
 import mixr.logic.FormulaFormat;
 import mixr.logic.FormulaRepresentation;
@@ -128,7 +129,7 @@ public class PicProc implements MixRDriver, FormulaFormatsProvider, FormulaPrese
     public InferenceStepResult applyAutomatedInferenceRule(InferenceTargets targets, InferenceRuleDescriptor inferenceRule) {
         if (inferenceRule instanceof AutomatedInferenceRule) {
             AutomatedInferenceRule inf = (AutomatedInferenceRule) inferenceRule;
-            return inf.applyAutomatedInferenceRule(targets);
+            return InferenceStepResultCache.getDefault().applyAutomatedInferenceRule(targets, inferenceRule, inf);
         } else {
             throw new IllegalArgumentException(Bundle.PP_not_an_auto_rule());
         }
@@ -34,6 +34,7 @@ import mixr.logic.Goal;
 import mixr.logic.InferenceTargets;
 import mixr.logic.FormulaRepresentation;
 import mixr.logic.Goals;
+import mixr.logic.StandardProofTrace;
 import mixr.MixR;
 import mixr.components.MixRDriver;
 import mixr.components.FormulaFormatsProvider;
@@ -57,10 +58,8 @@ import speedith.core.lang.SpiderDiagram;
 import speedith.core.reasoning.InferenceRules;
 import speedith.core.reasoning.RuleApplicationException;
 import speedith.core.reasoning.RuleApplicationResult;
-import speedith.mixr.logic.IsabelleToSpidersTranslator;
 import speedith.mixr.logic.SpeedithFormatDescriptor;
 import speedith.mixr.logic.SpeedithInferenceRuleDescriptor;
-import speedith.mixr.logic.SpiderToIsabelleStringTranslator;
 import speedith.mixr.ui.SpiderDiagramDialog;
 import speedith.ui.SpiderDiagramPanel;
 import speedith.ui.rules.InteractiveRuleApplication;
@@ -143,7 +142,7 @@ public class SpeedithDriver extends BareGoalProvidingReasoner implements
     //<editor-fold defaultstate="collapsed" desc="Formula Translations Provider Implementation">
     @Override
     public Collection<FormulaTranslator> getFormulaTranslators() {
-        return FormulaTranslatorsContainer.SpeedithTranslators;
+        return SpeedithTranslatorsCatalogue.getSpeedithTranslators();
     }
     //</editor-fold>
 
@@ -218,7 +217,12 @@ public class SpeedithDriver extends BareGoalProvidingReasoner implements
             SpeedithInferenceRuleDescriptor infRule = (SpeedithInferenceRuleDescriptor) infRuleDescriptor;
             try {
                 // Apply inference rule interactively:
+                long timestamp = System.currentTimeMillis();
+                long startTime = System.nanoTime();
                 RuleApplicationResult applicationResult = InteractiveRuleApplication.applyRuleInteractively(infRule.getInfRuleProvider().getInferenceRuleName(), getSpiderDiagramFromTarget(targets));
+                // The time the user spends in the dialog below is not part of
+                // the inference step:
+                long durationNanos = System.nanoTime() - startTime;
                 if (applicationResult != null) {
                     // Show the user the results and aske them whether the results
                     // should be passed back to the master reasoner.
@@ -230,11 +234,13 @@ public class SpeedithDriver extends BareGoalProvidingReasoner implements
                     }
                     // Put the result back to the master reasoner:
                     @SuppressWarnings({"rawtypes", "unchecked"})
-                    GoalTransformationResult goalTransformationResult = new GoalTransformationResult(this, targets.getGoals(), new MovableArrayList[]{
-                                new MovableArrayList<>(Arrays.asList(new Goal[]{
-                                    new Goal(null, null, null, new Formula(new FormulaRepresentation(applicationResult.getGoals().getGoalAt(0), SpeedithFormatDescriptor.getInstance()), Formula.FormulaRole.Goal))
-                                }))
-                            });
+                    MovableArrayList<Goal>[] transformedGoals = new MovableArrayList[]{
+                        new MovableArrayList<>(Arrays.asList(new Goal[]{
+                            new Goal(null, null, null, new Formula(new FormulaRepresentation(applicationResult.getGoals().getGoalAt(0), SpeedithFormatDescriptor.getInstance()), Formula.FormulaRole.Goal))
+                        }))
+                    };
+                    StandardProofTrace proofTrace = StandardProofTrace.create(infRule, targets, Arrays.asList(transformedGoals), timestamp, durationNanos, applicationResult.getGoals().getGoalAt(0).toString());
+                    GoalTransformationResult goalTransformationResult = new GoalTransformationResult(this, targets.getGoals(), transformedGoals, proofTrace);
                     Lookup.getDefault().lookup(MixR.class).getGoalManager().commitTransformedGoals(goalTransformationResult);
                 }
             } catch (RuleApplicationException | UnsupportedOperationException ex) {
@@ -298,17 +304,5 @@ public class SpeedithDriver extends BareGoalProvidingReasoner implements
             SpeedithFormats = Collections.unmodifiableSet(tmp);
         }
     }
-
-    private static class FormulaTranslatorsContainer {
-
-        private static final List<FormulaTranslator> SpeedithTranslators;
-
-        static {
-            ArrayList<FormulaTranslator> tmp = new ArrayList<>();
-            tmp.add(IsabelleToSpidersTranslator.getInstance());
-            tmp.add(SpiderToIsabelleStringTranslator.getInstance());
-            SpeedithTranslators = Collections.unmodifiableList(tmp);
-        }
-    }
     // </editor-fold>
 }
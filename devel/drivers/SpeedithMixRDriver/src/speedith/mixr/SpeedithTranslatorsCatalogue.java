@@ -0,0 +1,70 @@
+/*
+ * File name: SpeedithTranslatorsCatalogue.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package speedith.mixr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import mixr.components.FormulaTranslatorsCatalogue;
+import mixr.logic.FormulaTranslator;
+import org.openide.util.lookup.ServiceProvider;
+import speedith.mixr.logic.IsabelleToSpidersTranslator;
+import speedith.mixr.logic.SpiderToIsabelleStringTranslator;
+import speedith.mixr.logic.SpiderToIsabelleTermTranslator;
+
+/**
+ * Lists the formula translators that the {@link SpeedithDriver Speedith
+ * driver} provides, without creating the driver.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+@ServiceProvider(service = FormulaTranslatorsCatalogue.class)
+public class SpeedithTranslatorsCatalogue implements FormulaTranslatorsCatalogue {
+
+    @Override
+    public Collection<FormulaTranslator> getFormulaTranslators() {
+        return getSpeedithTranslators();
+    }
+
+    static List<FormulaTranslator> getSpeedithTranslators() {
+        return FormulaTranslatorsContainer.SpeedithTranslators;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Lazy Initialisation Helpers">
+    private static class FormulaTranslatorsContainer {
+
+        private static final List<FormulaTranslator> SpeedithTranslators;
+
+        static {
+            ArrayList<FormulaTranslator> tmp = new ArrayList<>();
+            tmp.add(IsabelleToSpidersTranslator.getInstance());
+            tmp.add(SpiderToIsabelleStringTranslator.getInstance());
+            tmp.add(SpiderToIsabelleTermTranslator.getInstance());
+            SpeedithTranslators = Collections.unmodifiableList(tmp);
+        }
+    }
+    // </editor-fold>
+}
@@ -93,6 +93,11 @@ public class IsabelleToSpidersTranslator extends FormulaTranslator {
         }
         if (isaReps.get(0).getFormula() instanceof Term.Term) {
             Term.Term term = (Term.Term) isaReps.get(0).getFormula();
+            // Most goals are not spider diagrams. Reject them without
+            // attempting (and failing) the translation:
+            if (!speedith.mixr.isabelle.Translations.isPossiblySpiderDiagram(term)) {
+                throw new TranslationException(Bundle.ISAtoSDTrans_translation_error_reading_failed());
+            }
             try {
                 SpiderDiagram sd = speedith.mixr.isabelle.Translations.termToSpiderDiagram(term);
                 if (sd == null || !sd.isValid()) {
@@ -30,7 +30,10 @@ import mixr.logic.Formula;
 import mixr.logic.FormulaRepresentation;
 import mixr.logic.FormulaTranslator;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
@@ -50,6 +53,12 @@ public class SpiderToIsabelleStringTranslator extends FormulaTranslator {
     //<editor-fold defaultstate="collapsed" desc="Fields">
     private final SDExporter SDPrettyExporter;
     private final SDExporter SDNormalExporter;
+    /**
+     * The exports of the spider diagrams that were translated so far. Spider
+     * diagrams are immutable, so their exports never change. The diagrams are
+     * only weakly referenced.
+     */
+    private final Map<SpiderDiagram, String> exports = Collections.synchronizedMap(new WeakHashMap<SpiderDiagram, String>());
     //</editor-fold>
 
     // <editor-fold defaultstate="collapsed" desc="Singleton stuff">
@@ -106,8 +115,7 @@ public class SpiderToIsabelleStringTranslator extends FormulaTranslator {
         FormulaRepresentation sdFormula = sdFormulae.get(0);
         try {
             if (sdFormula.getFormula() instanceof SpiderDiagram) {
-            String export = SDNormalExporter.export((SpiderDiagram)sdFormula.getFormula());
-            return new FormulaRepresentation(new StringFormula(export), StringFormat.getInstance());
+                return new FormulaRepresentation(new StringFormula(export((SpiderDiagram) sdFormula.getFormula())), StringFormat.getInstance());
             } else {
                 throw new TranslationException(Bundle.STIST_no_sd());
             }
@@ -120,4 +128,13 @@ public class SpiderToIsabelleStringTranslator extends FormulaTranslator {
     public FormulaRepresentation translate(List<? extends Formula> premises) throws TranslationException {
         throw new TranslationException("Not supported yet.");
     }
+
+    private String export(SpiderDiagram spiderDiagram) throws ExportException {
+        String export = exports.get(spiderDiagram);
+        if (export == null) {
+            export = SDNormalExporter.export(spiderDiagram);
+            exports.put(spiderDiagram, export);
+        }
+        return export;
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * File name: SpiderToIsabelleTermTranslator.java
+ *    Author: Matej Urbas [matej.urbas@gmail.com]
+ * 
+ *  Copyright © 2013 Matej Urbas
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package speedith.mixr.logic;
+
+import isabelle.Term;
+import java.util.ArrayList;
+import java.util.List;
+import mixr.isabelle.pure.lib.TermUtils;
+import mixr.isabelle.terms.TermFormatDescriptor;
+import mixr.logic.Formula;
+import mixr.logic.FormulaRepresentation;
+import mixr.logic.FormulaTranslator;
+import org.openide.util.NbBundle;
+import speedith.core.lang.SpiderDiagram;
+import speedith.mixr.isabelle.SpiderDiagramTerms;
+
+/**
+ * This translator translates {@link SpiderDiagram spider diagrams} to
+ * {@link isabelle.Term.Term Isabelle terms}. Unlike the
+ * {@link SpiderToIsabelleStringTranslator string translator}, it builds the
+ * terms directly (see {@link SpiderDiagramTerms}), so Isabelle does not have
+ * to parse the diagram and the result can be inspected by other MixR
+ * components.
+ *
+ * @author Matej Urbas [matej.urbas@gmail.com]
+ */
+@NbBundle.Messages({
+    "SDtoISATermTrans_internal_name=SpiderDiagram_to_Isabelle_term"
+})
+public class SpiderToIsabelleTermTranslator extends FormulaTranslator {
+
+    // <editor-fold defaultstate="collapsed" desc="Singleton stuff">
+    private SpiderToIsabelleTermTranslator() {
+        super(SpeedithFormatDescriptor.getInstance(), TermFormatDescriptor.getInstance(), TranslationType.ToEquivalent, Bundle.SDtoISATermTrans_internal_name());
+    }
+
+    public static SpiderToIsabelleTermTranslator getInstance() {
+        return SingletonContainer.Instance;
+    }
+
+    private static class SingletonContainer {
+
+        private static final SpiderToIsabelleTermTranslator Instance = new SpiderToIsabelleTermTranslator();
+    }
+    // </editor-fold>
+
+    @Override
+    @NbBundle.Messages({
+        "STITT_description=Translation of spider diagrams into Isabelle terms."
+    })
+    public String getDescription() {
+        return Bundle.STITT_description();
+    }
+
+    @Override
+    @NbBundle.Messages({
+        "STITT_pretty_name=Spider diagrams to Isabelle terms"
+    })
+    public String getPrettyName() {
+        return Bundle.STITT_pretty_name();
+    }
+
+    @Override
+    @NbBundle.Messages({
+        "STITT_no_sd_format_representation=Cannot translate the given formula with this translator. The formula has no spider diagram representation.",
+        "STITT_no_sd=The formula contains an invalid spider diagram.",
+        "STITT_translation_failed=The translation of the spider diagram to an Isabelle term failed."
+    })
+    public FormulaRepresentation translate(Formula formula) throws TranslationException {
+        ArrayList<? extends FormulaRepresentation> sdFormulae = formula.fetchRepresentations(SpeedithFormatDescriptor.getInstance());
+        if (sdFormulae == null || sdFormulae.isEmpty()) {
+            throw new TranslationException(Bundle.STITT_no_sd_format_representation());
+        }
+        FormulaRepresentation sdFormula = sdFormulae.get(0);
+        if (!(sdFormula.getFormula() instanceof SpiderDiagram)) {
+            throw new TranslationException(Bundle.STITT_no_sd());
+        }
+        try {
+            Term.Term term = TermUtils.createTrueprop(SpiderDiagramTerms.toTerm((SpiderDiagram) sdFormula.getFormula()));
+            return new FormulaRepresentation(term, TermFormatDescriptor.getInstance());
+        } catch (IllegalArgumentException ex) {
+            throw new TranslationException(Bundle.STITT_translation_failed(), ex);
+        }
+    }
+
+    @Override
+    @NbBundle.Messages({
+        "STITT_premises_not_supported=Translation of multiple premises into a single Isabelle term is not supported."
+    })
+    public FormulaRepresentation translate(List<? extends Formula> premises) throws TranslationException {
+        throw new TranslationException(Bundle.STITT_premises_not_supported());
+    }
+}
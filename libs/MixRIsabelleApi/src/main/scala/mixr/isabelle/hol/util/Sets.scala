@@ -2,6 +2,7 @@ package mixr.isabelle.hol.util
 
 import isabelle.Term._
 import mixr.isabelle.pure.lib.TermUtils
+import scala.collection.mutable.ListBuffer
 
 object Sets {
 
@@ -12,17 +13,45 @@ object Sets {
   val HOL_EMPTY_SET_CONST = Const("Orderings.bot_class.bot", Type("Set.set", List(TFree("'a", TermUtils.HOL_LIST_TYPE))))
   val HOL_SET_INSERT_CONST = Const("Set.insert", Type("fun", List(TFree("'a", TermUtils.HOL_LIST_TYPE), Type("fun", List(Type("Set.set", List(TFree("'a", TermUtils.HOL_LIST_TYPE))), Type("Set.set", List(TFree("'a", TermUtils.HOL_LIST_TYPE))))))))
   val HOL_SUBSET_CONST = Const("Orderings.ord_class.less_eq", Type("fun", List(Type("Set.set", List(TFree("'a", TermUtils.HOL_LIST_TYPE))), Type("fun", List(Type("Set.set", List(TFree("'a", TermUtils.HOL_LIST_TYPE))), Type("HOL.bool", List()))))))
+  val HOL_SET_MEMBER = "Set.member"
+
+  /**
+   * The type of the elements of the sets in the constants below (`'a`).
+   */
+  val HOL_SET_ELEMENT_TYPE = TFree("'a", TermUtils.HOL_LIST_TYPE)
+
+  /**
+   * The type of the sets in the constants below (`'a set`).
+   */
+  val HOL_SET_TYPE = Type("Set.set", List(HOL_SET_ELEMENT_TYPE))
+  val HOL_SET_UNION_CONST = Const(HOL_SET_UNION, binarySetOperationType)
+  val HOL_SET_INTERSECTION_CONST = Const(HOL_SET_INTERSECTION, binarySetOperationType)
+  val HOL_SET_DIFFERENCE_CONST = Const(HOL_SET_DIFFERENCE, binarySetOperationType)
+  val HOL_SET_COMPLEMENT_CONST = Const(HOL_SET_COMPLEMENT, Type("fun", List(HOL_SET_TYPE, HOL_SET_TYPE)))
+  val HOL_SET_MEMBER_CONST = Const(HOL_SET_MEMBER, Type("fun", List(HOL_SET_ELEMENT_TYPE, Type("fun", List(HOL_SET_TYPE, Type("HOL.bool", List()))))))
 
   def extractInsertedSetElements(setSpecification: Term): List[Term] = {
-    def impl(setSpecificationInner: Term, accumulator: List[Term]): List[Term] = setSpecificationInner match {
-      case HOL_EMPTY_SET_CONST =>
-        accumulator
-      case App(App(HOL_SET_INSERT_CONST, element), rest) =>
-        impl(rest, element :: accumulator)
-      case _ =>
-        throw new IllegalArgumentException("The given term is not a set literal, such as: '{a,b,c,d}'.")
+    val elements = new ListBuffer[Term]
+    var current = setSpecification
+    while (current != HOL_EMPTY_SET_CONST) {
+      current match {
+        case App(App(HOL_SET_INSERT_CONST, element), rest) =>
+          elements += element
+          current = rest
+        case _ =>
+          throw new IllegalArgumentException("The given term is not a set literal, such as: '{a,b,c,d}'.")
+      }
     }
-    impl(setSpecification, Nil).reverse
+    elements.toList
   }
 
+  /**
+   * Builds the set literal `{a, b, c, ...}` of the given elements.
+   */
+  def createInsertedSet(elements: Seq[Term]): Term = {
+    elements.foldRight[Term](HOL_EMPTY_SET_CONST)((element, set) => App(App(HOL_SET_INSERT_CONST, element), set))
+  }
+
+  private def binarySetOperationType: Typ = Type("fun", List(HOL_SET_TYPE, Type("fun", List(HOL_SET_TYPE, HOL_SET_TYPE))))
+
 }
@@ -51,19 +51,31 @@ object TermUtils {
   private val TYPE_PLACEHOLDERVARS_LIST = List(TYPE_PLACEHOLDERVARS)
   private val ISAMIXR_ABOUT = "IsaMixR.About"
   private val MIXR_PLACEHOLDER_VARS_LIST_TYPE = Type(HOL_LIST, TYPE_PLACEHOLDERVARS_LIST)
+  private val PLACEHOLDER_MIXR_CONST = Const(PLACEHOLDER_MIXR, Type(ISA_FUN, List(HOL_CHAR_LIST_TYPE, HOL_BOOL_TYPE)))
+  private val PLACEHOLDER_MIXRVARS_CONST = Const(PLACEHOLDER_MIXRVARS, Type(ISA_FUN, List(MIXR_PLACEHOLDER_VARS_LIST_TYPE, Type(ISA_FUN, List(HOL_CHAR_LIST_TYPE, HOL_BOOL_TYPE)))))
+
+  /**
+   * The type Isabelle uses for terms whose type is still to be inferred.
+   * Placeholder variables of unknown types get this type.
+   */
+  val ISA_DUMMY_TYPE = Type("dummy", List())
 
   /**
    * Extracts the premises and the conclusion from the given term `t`. This
    * method puts the premises into the given array and returns the conclusion.
    */
   def findPremisesAndConclusion(t: Term, premises: java.util.List[Term]): Term = {
-    t match {
-      case App(App(Const(ISA_META_IMPLICATION, _), lhsTerm), rhsTerm) => {
-        premises.add(lhsTerm)
-        findPremisesAndConclusion(rhsTerm, premises)
+    var current = t
+    while (true) {
+      current match {
+        case App(App(Const(ISA_META_IMPLICATION, _), lhsTerm), rhsTerm) =>
+          premises.add(lhsTerm)
+          current = rhsTerm
+        case _ =>
+          return current
       }
-      case _ => t
     }
+    current
   }
 
   /**
@@ -86,13 +98,17 @@ object TermUtils {
    * The quantified variables in the body are still retained as bound.
    */
   def findQuantifiedVarsAndBody(t: Term, variables: java.util.List[Free]): Term = {
-    t match {
-      case App(Const(ISA_META_ALL, _), Abs(varName, varType, body)) => {
-        variables.add(Free(varName, varType))
-        findQuantifiedVarsAndBody(body, variables)
+    var current = t
+    while (true) {
+      current match {
+        case App(Const(ISA_META_ALL, _), Abs(varName, varType, body)) =>
+          variables.add(Free(varName, varType))
+          current = body
+        case _ =>
+          return current
       }
-      case _ => t
     }
+    current
   }
 
   /**
@@ -115,26 +131,44 @@ object TermUtils {
    * be an HOL list.
    */
   def getListElements(listTerm: Term, outElements: java.util.List[Term]): java.util.List[Term] = {
-    listTerm match {
-      case App(App(Const(HOL_LIST_CONS, _), element), rest) => {
-        outElements.add(element)
-        getListElements(rest, outElements)
-      }
-      case Const(HOL_LIST_NIL, _) => {}
-      case x => throw new IllegalArgumentException("The given term is not an HOL list. It contained the term '%s'.".format(x))
-    }
+    traverseListElements(listTerm, element => {
+      outElements.add(element)
+    })
     outElements
   }
 
+  /**
+   * Calls the visitor on every element of the `listTerm` (in order), which
+   * must be an HOL list.
+   */
   def traverseListElements(listTerm: Term, visitor: Term => Unit): Unit = {
-    listTerm match {
-      case App(App(Const(HOL_LIST_CONS, _), element), rest) => {
-        visitor(element)
-        traverseListElements(rest, visitor)
+    traverseListElementsUntil(listTerm, element => {
+      visitor(element)
+      false
+    })
+  }
+
+  /**
+   * Calls the visitor on the elements of the `listTerm` (in order), which
+   * must be an HOL list, until the visitor returns `true`.
+   *
+   * @return `true` iff the visitor returned `true` for some element (in which
+   *         case the remaining elements were not visited).
+   */
+  def traverseListElementsUntil(listTerm: Term, visitor: Term => Boolean): Boolean = {
+    var current = listTerm
+    while (true) {
+      current match {
+        case App(App(Const(HOL_LIST_CONS, _), element), rest) =>
+          if (visitor(element)) return true
+          current = rest
+        case Const(HOL_LIST_NIL, _) =>
+          return false
+        case x =>
+          throw new IllegalArgumentException("The given term is not an HOL list. It contained the term '%s'.".format(x))
       }
-      case Const(HOL_LIST_NIL, _) => {}
-      case _ => throw new IllegalArgumentException("The given term is not an HOL list. It contained the term '%s'.".format(listTerm))
     }
+    false
   }
 
   /**
@@ -147,25 +181,67 @@ object TermUtils {
   }
 
   /**
-   * Visits every term in the given term tree.
+   * Visits every term in the given term tree (in pre-order, function before
+   * argument) until the visitor returns `true`.
+   *
+   * The traversal uses an explicit stack, so it does not overflow the call
+   * stack on deep terms (e.g. long lists or set literals).
+   *
+   * @return `true` iff the visitor returned `true` for some term (in which
+   *         case the remaining terms were not visited).
    */
   def traverseTermTree(t: Term, visitor: Term => Boolean): Boolean = {
-    if (visitor(t)) return true
-    t match {
-      case Abs(_, _, t1) =>
-        traverseTermTree(t1, visitor)
-      case App(t1, t2) => {
-        if (traverseTermTree(t1, visitor)) return true
-        traverseTermTree(t2, visitor)
+    val pending = new mutable.ArrayStack[Term]
+    pending.push(t)
+    while (!pending.isEmpty) {
+      val current = pending.pop()
+      if (visitor(current)) return true
+      current match {
+        case Abs(_, _, body) =>
+          pending.push(body)
+        case App(t1, t2) =>
+          pending.push(t2)
+          pending.push(t1)
+        case _ =>
       }
-      case _ => false
     }
+    false
+  }
+
+  /**
+   * Returns the first term (in the order of [[traverseTermTree]]) in the given
+   * term tree that satisfies the predicate, or `None` if there is none.
+   */
+  def findInTermTree(t: Term, predicate: Term => Boolean): Option[Term] = {
+    var found: Option[Term] = None
+    traverseTermTree(t, subterm => {
+      if (predicate(subterm)) found = Some(subterm)
+      found.isDefined
+    })
+    found
   }
 
   /**
    * If the term represents a string it will extract the string from it. Otherwise it will return `null`.
+   *
+   * Decoded strings are memoized per term instance (in a small, bounded cache
+   * that does not keep the terms alive), so decoding the same payload term
+   * again is cheap.
    */
   def extractString(t: Term): String = {
+    val slot = System.identityHashCode(t) & (STRING_MEMO_SIZE - 1)
+    val memo = stringMemo.get(slot)
+    if (memo != null && (memo.get eq t)) {
+      memo.value
+    } else {
+      val str = decodeString(t)
+      if (str != null)
+        stringMemo.set(slot, new MemoizedString(t, str))
+      str
+    }
+  }
+
+  private def decodeString(t: Term): String = {
     t match {
       case App(App(HOL_NON_EMPTY_STRING_TERM, firstChar), otherChars) => {
         val sb = new StringBuilder()
@@ -230,6 +306,97 @@ object TermUtils {
     }
   }
 
+  /**
+   * Builds the placeholder term `MixRNoVars ''format: formula''` (if there are
+   * no variables) or `MixR [About [x, y, ...], ...] ''format: formula''`. The
+   * term is of type `bool` (it is not wrapped in `Trueprop`).
+   *
+   * The variables are grouped with [[groupPlaceholderVars]].
+   *
+   * @throws IllegalArgumentException if the format or the formula contains
+   *         characters that cannot be represented in an HOL string (see
+   *         [[createString]]).
+   */
+  def createPlaceholder(formulaFormat: String, payloadFormula: String, variables: java.lang.Iterable[FreeVar]): Term = {
+    val payload = createString(formulaFormat + ": " + payloadFormula)
+    val groups = JavaConversions.asScalaBuffer(groupPlaceholderVars(variables))
+    if (groups.isEmpty) {
+      App(PLACEHOLDER_MIXR_CONST, payload)
+    } else {
+      val groupTerms = groups.map(group => createPlaceholderVarGroup(JavaConversions.asScalaBuffer(group)))
+      App(App(PLACEHOLDER_MIXRVARS_CONST, createList(TYPE_PLACEHOLDERVARS, groupTerms)), payload)
+    }
+  }
+
+  /**
+   * Splits the placeholder variables into `About` groups. Variables of the
+   * same type go into the same group. The groups are ordered by the first
+   * appearance of their type and the variables keep their order within the
+   * group. Variables of unknown type (`null` or [[ISA_DUMMY_TYPE]]) each get a
+   * group of their own, so that Isabelle does not force their types to be
+   * equal.
+   *
+   * The variables are grouped in a single pass.
+   */
+  def groupPlaceholderVars(variables: java.lang.Iterable[FreeVar]): java.util.List[java.util.List[FreeVar]] = {
+    val groups = new java.util.ArrayList[java.util.List[FreeVar]]()
+    if (variables != null) {
+      val groupsByType = new java.util.HashMap[Typ, java.util.List[FreeVar]]()
+      for (variable <- JavaConversions.iterableAsScalaIterable(variables)) {
+        val typ = if (variable.typ == null) ISA_DUMMY_TYPE else variable.typ
+        var group = if (typ == ISA_DUMMY_TYPE) null else groupsByType.get(typ)
+        if (group == null) {
+          group = new java.util.ArrayList[FreeVar]()
+          groups.add(group)
+          if (typ != ISA_DUMMY_TYPE)
+            groupsByType.put(typ, group)
+        }
+        group.add(if (variable.typ == null) FreeVar(variable.name, typ) else variable)
+      }
+    }
+    groups
+  }
+
+  /**
+   * Builds the HOL string (a list of characters) that represents the given
+   * string. Only characters with codes from 0 to 255 can be represented.
+   */
+  def createString(str: String): Term = {
+    var list: Term = HOL_EMPTY_STRING_TERM
+    var i = str.length - 1
+    while (i >= 0) {
+      list = App(App(HOL_NON_EMPTY_STRING_TERM, createChar(str.charAt(i))), list)
+      i -= 1
+    }
+    list
+  }
+
+  /**
+   * Wraps the given boolean term into `Trueprop`.
+   */
+  def createTrueprop(t: Term): Term = App(HOL_TRUEPROP_CONST, t)
+
+  /**
+   * Builds the HOL list of the given elements.
+   */
+  def createList(elementType: Typ, elements: Seq[Term]): Term = {
+    val listType = Type(HOL_LIST, List(elementType))
+    val cons = Const(HOL_LIST_CONS, Type(ISA_FUN, List(elementType, Type(ISA_FUN, List(listType, listType)))))
+    elements.foldRight[Term](Const(HOL_LIST_NIL, listType))((element, list) => App(App(cons, element), list))
+  }
+
+  private def createPlaceholderVarGroup(group: Seq[FreeVar]): Term = {
+    val groupType = group.head.typ
+    val about = Const(ISAMIXR_ABOUT, Type(ISA_FUN, List(Type(HOL_LIST, List(groupType)), TYPE_PLACEHOLDERVARS)))
+    App(about, createList(groupType, group.map(variable => Free(variable.name, variable.typ))))
+  }
+
+  private def createChar(c: Char): Term = {
+    if (c >= CHAR_TERMS.length)
+      throw new IllegalArgumentException("The character '%s' cannot be represented in an HOL string.".format(c))
+    CHAR_TERMS(c)
+  }
+
   private def extractPayloadLanguageAndFormula(payload: Term): (String, String) = {
     val payloadString = extractString(payload)
     val delimiterIndex = payloadString.indexOf(':')
@@ -243,25 +410,82 @@ object TermUtils {
 
   private def extractChar(t: Term): Char = {
     t match {
-      case App(App(Const(HOL_STRING_CHAR, Type(ISA_FUN, List(HOL_NIBBLE_TYPE, Type(ISA_FUN, List(HOL_NIBBLE_TYPE, HOL_CHAR_TYPE))))), Const(n1, HOL_NIBBLE_TYPE)), Const(n2, HOL_NIBBLE_TYPE)) =>
-        extractCharFromNibbles(n1, n2)
+      case App(App(charConstructor: Const, Const(n1, nibbleType1)), Const(n2, nibbleType2))
+        if isCharConstructor(charConstructor) && isNibbleType(nibbleType1) && isNibbleType(nibbleType2) =>
+        ((nibbleValue(n1) << 4) + nibbleValue(n2)).toChar
       case _ =>
         throw new IllegalArgumentException("Expected a character term. Got '%s'.".format(t))
     }
   }
 
-  private def extractCharFromNibbles(n1: String, n2: String): Char = {
-    val hexChar1 = n1.charAt(n1.length() - 1)
-    val hexChar2 = n2.charAt(n2.length() - 1)
-    ((hexCharToInt(hexChar1) << 4) + hexCharToInt(hexChar2)).toChar
+  /**
+   * Terms decoded by [[YXMLTermDecoder]] share their constants and types, so
+   * the last instance that was found equal to the expected one is remembered
+   * and compared by reference first.
+   */
+  private def isCharConstructor(c: Const): Boolean = {
+    if (c eq verifiedCharConstructor) {
+      true
+    } else if (c == HOL_CHAR_CONSTRUCTOR) {
+      verifiedCharConstructor = c
+      true
+    } else {
+      false
+    }
+  }
+
+  private def isNibbleType(t: Typ): Boolean = {
+    if (t eq verifiedNibbleType) {
+      true
+    } else if (t == HOL_NIBBLE_TYPE) {
+      verifiedNibbleType = t
+      true
+    } else {
+      false
+    }
+  }
+
+  private def nibbleValue(nibbleName: String): Int = {
+    val value = NIBBLE_VALUES.get(nibbleName)
+    if (value == null)
+      throw new IllegalArgumentException("Not a nibble: '%s'.".format(nibbleName))
+    value.intValue
   }
 
-  private def hexCharToInt(hex: Char): Int = {
-    if (hex >= '0' && hex <= '9')
-      hex - '0'
-    else if (hex >= 'A' && hex <= 'F')
-      hex - 'A' + 10
-    else
-      throw new IllegalArgumentException("Not a hexadecimal character.")
+  private val HOL_NIBBLE_PREFIX = "String.nibble.Nibble"
+  private val HOL_CHAR_CONSTRUCTOR = Const(HOL_STRING_CHAR, Type(ISA_FUN, List(HOL_NIBBLE_TYPE, Type(ISA_FUN, List(HOL_NIBBLE_TYPE, HOL_CHAR_TYPE)))))
+
+  /**
+   * Maps the names of HOL nibble constants (e.g. `String.nibble.NibbleA`) to
+   * their values.
+   */
+  private val NIBBLE_VALUES = {
+    val values = new java.util.HashMap[String, java.lang.Integer]()
+    for (value <- 0 until 16)
+      values.put(HOL_NIBBLE_PREFIX + Integer.toHexString(value).toUpperCase, java.lang.Integer.valueOf(value))
+    values
   }
+
+  private val NIBBLE_TERMS: Array[Term] = Array.tabulate(16)(value =>
+    Const(HOL_NIBBLE_PREFIX + Integer.toHexString(value).toUpperCase, HOL_NIBBLE_TYPE))
+
+  /**
+   * The HOL terms of all characters (indexed by their codes). The terms are
+   * shared by all strings built with [[createString]].
+   */
+  private val CHAR_TERMS: Array[Term] = Array.tabulate(256)(c =>
+    App(App(HOL_CHAR_CONSTRUCTOR, NIBBLE_TERMS(c >> 4)), NIBBLE_TERMS(c & 0xF)))
+
+  private val HOL_TRUEPROP_CONST = Const(HOL_TRUEPROP, Type(ISA_FUN, List(HOL_BOOL_TYPE, Type("prop", List()))))
+
+  @volatile private var verifiedCharConstructor: Const = HOL_CHAR_CONSTRUCTOR
+  @volatile private var verifiedNibbleType: Typ = HOL_NIBBLE_TYPE
+
+  /**
+   * The number of slots in the string memo (a power of two).
+   */
+  private val STRING_MEMO_SIZE = 256
+  private val stringMemo = new java.util.concurrent.atomic.AtomicReferenceArray[MemoizedString](STRING_MEMO_SIZE)
+
+  private final class MemoizedString(term: Term, val value: String) extends java.lang.ref.WeakReference[Term](term)
 }
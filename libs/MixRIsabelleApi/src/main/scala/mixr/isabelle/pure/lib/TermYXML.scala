@@ -1,7 +1,5 @@
 package mixr.isabelle.pure.lib
 
-import scala.util.matching.Regex
-
 /**
  * This object provides some helper methods for converting Isabelle/Scala term
  * trees to and from the YXML format. The main purpose of these methods is to be
@@ -11,41 +9,76 @@ import scala.util.matching.Regex
  */
 object TermYXML {
 
+  /**
+   * The character that starts an escaped control character.
+   */
+  private val ESCAPE_CHAR = '\u00C0'
+
+  /**
+   * The offset between a control character and its escaped counterpart.
+   */
+  private val ESCAPE_OFFSET = 128
+
   /**
    * Removes the escaped control characters from the YXML string. The only escaped
    * control characters are currently "\u0005" and "\u0006", which map to
    * "\u00C0\u0085" and "\u00C0\u0086" respectively.
+   *
+   * The string is scanned once. If it contains no escaped control characters,
+   * no new string is built (a string argument is returned as is).
    */
   def unescapeControlChars(yxml: CharSequence): String = {
     if (yxml == null)
       throw new IllegalArgumentException("The YXML string must be non-null.")
-    else
-      new Regex("\u00C0[\u0085\u0086]").replaceAllIn(yxml, m => {
-        String.valueOf((m.matched.charAt(1) - 128).asInstanceOf[Char])
-      })
+    var escapeIndex = indexOfEscapedControlChar(yxml, 0)
+    if (escapeIndex < 0)
+      yxml.toString
+    else {
+      val result = new java.lang.StringBuilder(yxml.length)
+      var start = 0
+      while (escapeIndex >= 0) {
+        result.append(yxml, start, escapeIndex).append((yxml.charAt(escapeIndex + 1) - ESCAPE_OFFSET).asInstanceOf[Char])
+        start = escapeIndex + 2
+        escapeIndex = indexOfEscapedControlChar(yxml, start)
+      }
+      result.append(yxml, start, yxml.length).toString
+    }
   }
 
   /**
    * Escapes control characters in the given YXML string. The only characters
    * currently escaped are "\u0005" and "\u0006", which map to
    * "\u00C0\u0085" and "\u00C0\u0086" respectively.
+   *
+   * The string is scanned once. If it contains no control characters, no new
+   * string is built (a string argument is returned as is).
    */
   def escapeControlChars(yxml: CharSequence): String = {
     if (yxml == null)
       throw new IllegalArgumentException("The YXML string must be non-null.")
-    else
-      new Regex("[\u0005\u0006]").replaceAllIn(yxml, m => {
-        val c = (m.matched.charAt(0) + 128).asInstanceOf[Char]
-        String.valueOf('\u00C0') + String.valueOf(c)
-      })
+    var controlIndex = indexOfControlChar(yxml, 0)
+    if (controlIndex < 0)
+      yxml.toString
+    else {
+      val result = new java.lang.StringBuilder(yxml.length + 16)
+      var start = 0
+      while (controlIndex >= 0) {
+        result.append(yxml, start, controlIndex).append(ESCAPE_CHAR).append((yxml.charAt(controlIndex) + ESCAPE_OFFSET).asInstanceOf[Char])
+        start = controlIndex + 1
+        controlIndex = indexOfControlChar(yxml, start)
+      }
+      result.append(yxml, start, yxml.length).toString
+    }
   }
 
   /**
    * Parses the given (unescaped) YXML string and returns the corresponding term.
+   *
+   * The term is decoded directly from the YXML string (see [[YXMLTermDecoder]]),
+   * without building an intermediate XML tree.
    */
   def parseYXML(yxml: CharSequence): isabelle.Term.Term = {
-    val t: isabelle.XML.Tree = isabelle.YXML.parse(yxml)
-    isabelle.Term_XML.Decode.term(List(t))
+    YXMLTermDecoder.decode(yxml)
   }
 
   /**
@@ -56,4 +89,28 @@ object TermYXML {
     isabelle.YXML.string_of_body(enc)
   }
 
-}
\ No newline at end of file
+  private def isControlChar(c: Char): Boolean = c == '\u0005' || c == '\u0006'
+
+  private def indexOfControlChar(yxml: CharSequence, from: Int): Int = {
+    val length = yxml.length
+    var i = from
+    while (i < length) {
+      if (isControlChar(yxml.charAt(i)))
+        return i
+      i += 1
+    }
+    -1
+  }
+
+  private def indexOfEscapedControlChar(yxml: CharSequence, from: Int): Int = {
+    val last = yxml.length - 1
+    var i = from
+    while (i < last) {
+      if (yxml.charAt(i) == ESCAPE_CHAR && isControlChar((yxml.charAt(i + 1) - ESCAPE_OFFSET).asInstanceOf[Char]))
+        return i
+      i += 1
+    }
+    -1
+  }
+
+}
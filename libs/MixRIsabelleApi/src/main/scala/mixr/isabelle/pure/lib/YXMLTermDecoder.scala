@@ -0,0 +1,359 @@
+package mixr.isabelle.pure.lib
+
+import isabelle.Term._
+import scala.collection.mutable
+
+/**
+ * Decodes (unescaped) YXML strings straight into Isabelle/Scala terms.
+ *
+ * Unlike `isabelle.YXML.parse` followed by `isabelle.Term_XML.Decode.term`,
+ * this decoder does not build an intermediate XML tree. It reads the YXML
+ * character stream once and creates the term nodes directly.
+ *
+ * Repeated `Type`, `TFree`, `Const` and `Free` nodes, type lists, sorts and
+ * names are interned while decoding. Equal nodes therefore become one shared
+ * instance. The intern tables are kept between calls to [[decode]], so
+ * decoding many similar goals with the same decoder also shares their common
+ * nodes. Use [[clear]] to drop the tables.
+ *
+ * Instances of this class are not thread-safe.
+ * @author Matej Urbas
+ */
+class YXMLTermDecoder {
+
+  import YXMLTermDecoder._
+
+  private val strings = new mutable.HashMap[String, String]
+  private val nodes = new mutable.HashMap[NodeKey, AnyRef]
+  private val attributes = new Array[String](MAX_ATTRIBUTES)
+  private var attributesCount = 0
+  private var yxml: CharSequence = null
+  private var length = 0
+  private var pos = 0
+
+  /**
+   * Decodes the given (unescaped) YXML string into a term.
+   *
+   * @throws IllegalArgumentException if the string is not a valid YXML
+   *         encoding of a term.
+   */
+  def decode(yxml: CharSequence): Term = {
+    if (yxml == null)
+      throw new IllegalArgumentException("The YXML string must be non-null.")
+    this.yxml = yxml
+    this.length = yxml.length
+    this.pos = 0
+    try {
+      val result = term()
+      if (pos != length)
+        malformed("unexpected content after the term")
+      result
+    } finally {
+      this.yxml = null
+    }
+  }
+
+  /**
+   * Returns the number of interned nodes (types, constants, free variables,
+   * type lists and sorts).
+   */
+  def internedNodesCount: Int = nodes.size
+
+  /**
+   * Forgets all interned nodes and names.
+   */
+  def clear(): Unit = {
+    strings.clear()
+    nodes.clear()
+  }
+
+  /**
+   * Terms are decoded with an explicit stack of the `App` and `Abs` nodes
+   * whose children are still being decoded (long HOL lists, for example,
+   * nest one `App` per element).
+   */
+  private def term(): Term = {
+    val pending = new mutable.ArrayStack[PendingTerm]
+    var result: Term = null
+    do {
+      // Descend to the next leaf term:
+      result = null
+      while (result == null) {
+        openElement() match {
+          case TAG_0 =>
+            val name = attribute(0)
+            val constType = typ()
+            result = nodes.getOrElseUpdate(new NodeKey(NODE_CONST, name, constType, null), Const(name, constType)).asInstanceOf[Term]
+          case TAG_1 =>
+            val name = attribute(0)
+            val freeType = typ()
+            result = nodes.getOrElseUpdate(new NodeKey(NODE_FREE, name, freeType, null), Free(name, freeType)).asInstanceOf[Term]
+          case TAG_2 =>
+            val name = attribute(0)
+            val index = intAttribute(1)
+            result = Var((name, index), typ())
+          case TAG_3 =>
+            result = Bound(intAttribute(0))
+          case TAG_4 =>
+            val name = attribute(0)
+            openListNode()
+            val absType = typ()
+            closeElement()
+            openListNode()
+            pending.push(new PendingTerm(name, absType))
+          case TAG_5 =>
+            openListNode()
+            pending.push(new PendingTerm(null, null))
+          case tag =>
+            malformed("unknown term kind '" + tag + "'")
+        }
+      }
+      closeElement()
+      // Ascend while the decoded term completes its parent:
+      var descend = false
+      while (!descend && !pending.isEmpty) {
+        closeElement()
+        val parent = pending.top
+        if (parent.absType != null) {
+          pending.pop()
+          closeElement()
+          result = Abs(parent.name, parent.absType, result)
+        } else if (parent.fun == null) {
+          parent.fun = result
+          openListNode()
+          descend = true
+        } else {
+          pending.pop()
+          closeElement()
+          result = App(parent.fun, result)
+        }
+      }
+    } while (!pending.isEmpty)
+    result
+  }
+
+  /**
+   * Types are decoded with an explicit stack of the `Type` nodes whose
+   * arguments are still being decoded.
+   */
+  private def typ(): Typ = {
+    val pending = new mutable.ArrayStack[PendingType]
+    var result: Typ = null
+    do {
+      // Descend to the next type without arguments:
+      result = null
+      while (result == null) {
+        openElement() match {
+          case TAG_0 =>
+            val name = attribute(0)
+            if (atCloseElement)
+              result = internType(name, Nil)
+            else {
+              openListNode()
+              pending.push(new PendingType(name))
+            }
+          case TAG_1 =>
+            val name = attribute(0)
+            val typeSort = sort()
+            result = nodes.getOrElseUpdate(new NodeKey(NODE_TFREE, name, typeSort, null), TFree(name, typeSort)).asInstanceOf[Typ]
+          case TAG_2 =>
+            val name = attribute(0)
+            val index = intAttribute(1)
+            result = TVar((name, index), sort())
+          case tag =>
+            malformed("unknown type kind '" + tag + "'")
+        }
+      }
+      closeElement()
+      // Ascend while the decoded type is the last argument of its parent:
+      var descend = false
+      while (!descend && !pending.isEmpty) {
+        closeElement()
+        val parent = pending.top
+        parent.args += result
+        if (atCloseElement) {
+          pending.pop()
+          closeElement()
+          result = internType(parent.name, internList(parent.args))
+        } else {
+          openListNode()
+          descend = true
+        }
+      }
+    } while (!pending.isEmpty)
+    result
+  }
+
+  private def internType(name: String, args: List[Typ]): Typ =
+    nodes.getOrElseUpdate(new NodeKey(NODE_TYPE, name, args, null), Type(name, args)).asInstanceOf[Typ]
+
+  private def sort(): List[String] = {
+    val classes = new mutable.ArrayBuffer[String]
+    while (!atCloseElement) {
+      openListNode()
+      classes += internString(text())
+      closeElement()
+    }
+    internList(classes)
+  }
+
+  /**
+   * Interns the list of the given (interned) elements, starting from its
+   * last cell.
+   */
+  private def internList[A <: AnyRef](elements: mutable.ArrayBuffer[A]): List[A] = {
+    var list: List[A] = Nil
+    var i = elements.length - 1
+    while (i >= 0) {
+      list = internCons(elements(i), list)
+      i -= 1
+    }
+    list
+  }
+
+  private def internCons[A <: AnyRef](head: A, tail: List[A]): List[A] = {
+    nodes.getOrElseUpdate(new NodeKey(NODE_CONS, null, head, tail), head :: tail).asInstanceOf[List[A]]
+  }
+
+  private def internString(str: String): String = strings.getOrElseUpdate(str, str)
+
+  /**
+   * Reads the start of an element, stores its attribute values and returns
+   * its name.
+   */
+  private def openElement(): String = {
+    expect(X)
+    expect(Y)
+    val name = internString(token())
+    attributesCount = 0
+    while (pos < length && yxml.charAt(pos) == Y) {
+      pos += 1
+      val attributeStart = pos
+      val attribute = token()
+      val separator = attribute.indexOf('=')
+      if (separator < 0)
+        malformed("attribute without a value", attributeStart)
+      if (attributesCount == MAX_ATTRIBUTES || attribute.substring(0, separator) != INDICES(attributesCount))
+        malformed("unexpected attribute '" + attribute + "'", attributeStart)
+      attributes(attributesCount) = internString(attribute.substring(separator + 1))
+      attributesCount += 1
+    }
+    expect(X)
+    name
+  }
+
+  private def openListNode(): Unit = {
+    if (openElement() != LIST_NODE || attributesCount != 0)
+      malformed("expected a list node")
+  }
+
+  private def closeElement(): Unit = {
+    expect(X)
+    expect(Y)
+    expect(X)
+  }
+
+  private def atCloseElement: Boolean =
+    pos + 2 < length && yxml.charAt(pos) == X && yxml.charAt(pos + 1) == Y && yxml.charAt(pos + 2) == X
+
+  private def attribute(index: Int): String = {
+    if (index >= attributesCount)
+      malformed("missing attribute " + index)
+    attributes(index)
+  }
+
+  private def intAttribute(index: Int): Int = {
+    val value = attribute(index)
+    try {
+      Integer.parseInt(value)
+    } catch {
+      case ex: NumberFormatException => malformed("expected an integer but got '" + value + "'")
+    }
+  }
+
+  /**
+   * Reads everything up to (but not including) the next control character.
+   */
+  private def token(): String = {
+    val start = pos
+    while (pos < length && yxml.charAt(pos) != X && yxml.charAt(pos) != Y)
+      pos += 1
+    yxml.subSequence(start, pos).toString
+  }
+
+  /**
+   * Reads the text body of an element (empty text is encoded as no body).
+   */
+  private def text(): String = {
+    val start = pos
+    while (pos < length && yxml.charAt(pos) != X)
+      pos += 1
+    yxml.subSequence(start, pos).toString
+  }
+
+  private def expect(c: Char): Unit = {
+    if (pos >= length || yxml.charAt(pos) != c)
+      malformed("unexpected character")
+    pos += 1
+  }
+
+  private def malformed(message: String, at: Int = pos): Nothing =
+    throw new IllegalArgumentException("Malformed YXML term at position " + at + ": " + message + ".")
+}
+
+object YXMLTermDecoder {
+
+  private val X = '\u0005'
+  private val Y = '\u0006'
+  private val LIST_NODE = ":"
+  private val TAG_0 = "0"
+  private val TAG_1 = "1"
+  private val TAG_2 = "2"
+  private val TAG_3 = "3"
+  private val TAG_4 = "4"
+  private val TAG_5 = "5"
+  private val MAX_ATTRIBUTES = 2
+  private val INDICES = Array("0", "1")
+
+  private val NODE_CONST = 0
+  private val NODE_FREE = 1
+  private val NODE_TYPE = 2
+  private val NODE_TFREE = 3
+  private val NODE_CONS = 4
+
+  /**
+   * Decodes the given (unescaped) YXML string into a term with a new decoder.
+   */
+  def decode(yxml: CharSequence): Term = new YXMLTermDecoder().decode(yxml)
+
+  /**
+   * An `Abs` node (with its name and type) or an `App` node (with its
+   * function once it is decoded) whose children are still being decoded.
+   */
+  private final class PendingTerm(val name: String, val absType: Typ) {
+    var fun: Term = null
+  }
+
+  /**
+   * A `Type` node whose arguments are still being decoded.
+   */
+  private final class PendingType(val name: String) {
+    val args = new mutable.ArrayBuffer[Typ]
+  }
+
+  /**
+   * The key of an interned node. Children of interned nodes are themselves
+   * interned, so they are compared by reference.
+   */
+  private final class NodeKey(val kind: Int, val name: String, val first: AnyRef, val second: AnyRef) {
+
+    override def hashCode: Int =
+      ((kind * 31 + (if (name == null) 0 else name.hashCode)) * 31 + System.identityHashCode(first)) * 31 + System.identityHashCode(second)
+
+    override def equals(other: Any): Boolean = other match {
+      case key: NodeKey => kind == key.kind && name == key.name && (first eq key.first) && (second eq key.second)
+      case _ => false
+    }
+  }
+
+}
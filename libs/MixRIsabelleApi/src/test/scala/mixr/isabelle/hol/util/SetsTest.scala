@@ -28,6 +28,17 @@ class SetsTest {
     assertEquals(List(freeVar("a"), freeVar("b")), extractInsertedSetElements(twoSetTerm))
     assertEquals(List(freeVar("a"), freeVar("b"), freeVar("c"), freeVar("d")), extractInsertedSetElements(largeSetTerm))
   }
+
+  @Test
+  def element_extraction_must_not_overflow_the_stack_on_very_large_sets(): Unit = {
+    var set: Term.Term = HOL_EMPTY_SET_CONST
+    for (i <- 99999 to 0 by -1)
+      set = App(App(HOL_SET_INSERT_CONST, freeVar("x" + i)), set)
+    val elements = extractInsertedSetElements(set)
+    assertEquals(100000, elements.length)
+    assertEquals(freeVar("x0"), elements.head)
+    assertEquals(freeVar("x99999"), elements.last)
+  }
 }
 
 object SetsTest {
@@ -3,9 +3,10 @@ package mixr.isabelle.pure.lib
 import org.junit.Test
 import TermYXMLTest._
 import TermYXML._
-import isabelle.Term.Type
+import isabelle.Term._
 import scala.collection.JavaConversions._
-import org.junit.Assert.assertThat
+import scala.collection.mutable.ArrayBuffer
+import org.junit.Assert.{assertEquals, assertFalse, assertNull, assertSame, assertThat, assertTrue}
 import org.hamcrest.CoreMatchers.equalTo
 
 class TermUtilsTest {
@@ -42,4 +43,178 @@ class TermUtilsTest {
       equalTo[Placeholder](expectedPlaceholder)
     )
   }
+
+  @Test
+  def getListElements_should_return_all_elements_of_a_very_long_list_in_order(): Unit = {
+    val elements = TermUtils.getListElements(TermUtilsTest.longList(TermUtilsTest.LONG_LENGTH))
+    assertEquals(TermUtilsTest.LONG_LENGTH, elements.length)
+    assertEquals(Bound(0), elements.head)
+    assertEquals(Bound(TermUtilsTest.LONG_LENGTH - 1), elements.last)
+  }
+
+  @Test
+  def traverseListElementsUntil_should_stop_at_the_first_accepted_element(): Unit = {
+    val visited = ArrayBuffer[Term]()
+    val stopped = TermUtils.traverseListElementsUntil(TermUtilsTest.longList(10), element => {
+      visited += element
+      element == Bound(3)
+    })
+    assertTrue(stopped)
+    assertEquals(List(Bound(0), Bound(1), Bound(2), Bound(3)), visited.toList)
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def traverseListElements_should_reject_terms_that_are_not_lists(): Unit = {
+    TermUtils.traverseListElements(App(Bound(0), Bound(1)), element => {})
+  }
+
+  @Test
+  def traverseTermTree_should_visit_functions_before_arguments(): Unit = {
+    val visited = ArrayBuffer[Term]()
+    val term = App(App(Bound(0), Abs("x", TermUtilsTest.TYPE, Bound(1))), Bound(2))
+    assertFalse(TermUtils.traverseTermTree(term, t => {
+      visited += t
+      false
+    }))
+    assertEquals(List(term, term.fun, Bound(0), Abs("x", TermUtilsTest.TYPE, Bound(1)), Bound(1), Bound(2)), visited.toList)
+  }
+
+  @Test
+  def traverseTermTree_should_not_overflow_the_stack_on_very_deep_terms(): Unit = {
+    var count = 0
+    assertFalse(TermUtils.traverseTermTree(TermUtilsTest.longList(TermUtilsTest.LONG_LENGTH), t => {
+      count += 1
+      false
+    }))
+    assertEquals(4 * TermUtilsTest.LONG_LENGTH + 1, count)
+  }
+
+  @Test
+  def findInTermTree_should_return_the_first_matching_subterm(): Unit = {
+    val list = TermUtilsTest.longList(TermUtilsTest.LONG_LENGTH)
+    assertEquals(Some(Bound(TermUtilsTest.LONG_LENGTH - 1)), TermUtils.findInTermTree(list, t => t == Bound(TermUtilsTest.LONG_LENGTH - 1)))
+    assertEquals(None, TermUtils.findInTermTree(list, t => t == Bound(TermUtilsTest.LONG_LENGTH)))
+  }
+
+  @Test
+  def findPremisesAndConclusion_should_extract_all_premises_of_a_long_implication_chain(): Unit = {
+    var term: Term = Bound(TermUtilsTest.LONG_LENGTH)
+    for (i <- (TermUtilsTest.LONG_LENGTH - 1) to 0 by -1)
+      term = App(App(Const(TermUtils.ISA_META_IMPLICATION, TermUtilsTest.TYPE), Bound(i)), term)
+    val premises = ArrayBuffer[Term]()
+    assertEquals(Bound(TermUtilsTest.LONG_LENGTH), TermUtils.findPremisesAndConclusion(term, premises))
+    assertEquals(TermUtilsTest.LONG_LENGTH, premises.length)
+    assertEquals(Bound(0), premises.head)
+  }
+
+  @Test
+  def extractString_should_decode_and_memoize_placeholder_payloads(): Unit = {
+    val App(_, App(_, payload)) = parseYXML(natLangWithoutVarsNoLeadingSpaceUnescapedYXML)
+    val payloadString = TermUtils.extractString(payload)
+    assertEquals("NatLang:Ann is a child of Bob.", payloadString)
+    assertSame(payloadString, TermUtils.extractString(payload))
+  }
+
+  @Test
+  def extractString_should_decode_long_strings(): Unit = {
+    val str = "Some text with Punctuation, digits 0-9 and ~{}. " * 200
+    assertEquals(str, TermUtils.extractString(TermUtilsTest.holString(str)))
+  }
+
+  @Test
+  def extractString_should_return_null_for_non_string_terms(): Unit = {
+    assertNull(TermUtils.extractString(Bound(0)))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def extractString_should_reject_unknown_nibbles(): Unit = {
+    TermUtils.extractString(App(App(TermUtilsTest.HOL_STRING_CONS, TermUtilsTest.holChar("Nibble4", "NibbleG")), TermUtilsTest.HOL_EMPTY_STRING))
+  }
+
+  @Test
+  def createString_should_build_the_same_term_as_the_hol_string_syntax(): Unit = {
+    val str = "NatLang: Ann is a child of Bob."
+    assertEquals(TermUtilsTest.holString(str), TermUtils.createString(str))
+    assertEquals(TermUtilsTest.HOL_EMPTY_STRING, TermUtils.createString(""))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def createString_should_reject_characters_that_are_not_hol_chars(): Unit = {
+    TermUtils.createString("\u2200")
+  }
+
+  @Test
+  def createPlaceholder_should_build_the_term_that_isabelle_parses_from_the_placeholder_syntax(): Unit = {
+    val parsed = parseYXML(natLangWithoutVarsUnescapedYXML)
+    assertEquals(parsed, TermUtils.createTrueprop(TermUtils.createPlaceholder("NatLang", "Ann is a child of Bob.", null)))
+  }
+
+  @Test
+  def createPlaceholder_should_encode_placeholders_that_extractPlaceholder_decodes(): Unit = {
+    val vars = List(FreeVar("A", TermUtilsTest.PERSON_TYPE), FreeVar("n", TermUtilsTest.NAT_TYPE), FreeVar("B", TermUtilsTest.PERSON_TYPE))
+    val term = TermUtils.createPlaceholder("NatLang", "A is a child of B.", vars)
+    val expected = PlaceholderWithVars(List(FreeVar("A", TermUtilsTest.PERSON_TYPE), FreeVar("B", TermUtilsTest.PERSON_TYPE), FreeVar("n", TermUtilsTest.NAT_TYPE)), "NatLang", " A is a child of B.")
+    assertThat(TermUtils.extractPlaceholder(TermUtils.createTrueprop(term)), equalTo[Placeholder](expected))
+    assertEquals(PlaceholderWithoutVars("NatLang", " A is a child of B."), TermUtils.extractPlaceholder(TermUtils.createPlaceholder("NatLang", "A is a child of B.", List[FreeVar]())))
+  }
+
+  @Test
+  def groupPlaceholderVars_should_group_variables_by_type_in_order_of_appearance(): Unit = {
+    val vars = List(FreeVar("n", TermUtilsTest.NAT_TYPE), FreeVar("A", TermUtilsTest.PERSON_TYPE), FreeVar("m", TermUtilsTest.NAT_TYPE), FreeVar("x", null), FreeVar("y", TermUtils.ISA_DUMMY_TYPE))
+    val groups = TermUtils.groupPlaceholderVars(vars).map(_.toList).toList
+    assertEquals(List(
+      List(FreeVar("n", TermUtilsTest.NAT_TYPE), FreeVar("m", TermUtilsTest.NAT_TYPE)),
+      List(FreeVar("A", TermUtilsTest.PERSON_TYPE)),
+      List(FreeVar("x", TermUtils.ISA_DUMMY_TYPE)),
+      List(FreeVar("y", TermUtils.ISA_DUMMY_TYPE))), groups)
+  }
+
+  @Test
+  def groupPlaceholderVars_should_handle_many_variables(): Unit = {
+    val vars = (0 until TermUtilsTest.MANY_VARS).map(i => FreeVar("x" + i, Type("T" + (i % 10), List())))
+    val groups = TermUtils.groupPlaceholderVars(vars)
+    assertEquals(10, groups.size)
+    assertEquals(TermUtilsTest.MANY_VARS, groups.map(_.size).sum)
+  }
+}
+
+object TermUtilsTest {
+
+  private val NIBBLE_TYPE = Type("String.nibble", List())
+  private val CHAR_TYPE = Type("String.char", List())
+  private val CHAR_LIST_TYPE = Type("List.list", List(CHAR_TYPE))
+  private val CHAR_CONSTRUCTOR = Const("String.char.Char", Type("fun", List(NIBBLE_TYPE, Type("fun", List(NIBBLE_TYPE, CHAR_TYPE)))))
+  val HOL_STRING_CONS = Const(TermUtils.HOL_LIST_CONS, Type("fun", List(CHAR_TYPE, Type("fun", List(CHAR_LIST_TYPE, CHAR_LIST_TYPE)))))
+  val HOL_EMPTY_STRING = Const(TermUtils.HOL_LIST_NIL, CHAR_LIST_TYPE)
+
+  def holChar(nibble1: String, nibble2: String): Term =
+    App(App(CHAR_CONSTRUCTOR, Const("String.nibble." + nibble1, NIBBLE_TYPE)), Const("String.nibble." + nibble2, NIBBLE_TYPE))
+
+  /**
+   * Builds the HOL string term of the given (ASCII) string.
+   */
+  def holString(str: String): Term = {
+    var list: Term = HOL_EMPTY_STRING
+    for (c <- str.reverse) {
+      val hex = "%02X".format(c.toInt)
+      list = App(App(HOL_STRING_CONS, holChar("Nibble" + hex.charAt(0), "Nibble" + hex.charAt(1))), list)
+    }
+    list
+  }
+
+  val LONG_LENGTH = 100000
+  val MANY_VARS = 100000
+  val PERSON_TYPE = Type("HeterogeneousStatements.person", List())
+  val NAT_TYPE = Type("Nat.nat", List())
+  val TYPE = Type("dummy", List())
+
+  /**
+   * Builds the HOL list `[Bound 0, Bound 1, ..., Bound (length - 1)]`.
+   */
+  def longList(length: Int): Term = {
+    var list: Term = Const(TermUtils.HOL_LIST_NIL, TYPE)
+    for (i <- (length - 1) to 0 by -1)
+      list = App(App(Const(TermUtils.HOL_LIST_CONS, TYPE), Bound(i)), list)
+    list
+  }
 }
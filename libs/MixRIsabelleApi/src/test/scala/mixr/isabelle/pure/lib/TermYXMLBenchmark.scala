@@ -0,0 +1,47 @@
+package mixr.isabelle.pure.lib
+
+import TermYXMLTest._
+
+/**
+ * A micro-benchmark of YXML control-character escaping and unescaping on the
+ * large YXML test fixtures. It is not run as part of the test suite. Run it
+ * from the test class path, e.g.:
+ *
+ * `scala -cp target/classes:target/test-classes:<dependencies> mixr.isabelle.pure.lib.TermYXMLBenchmark`
+ *
+ * The benchmark first warms up the JIT and then reports the average time per
+ * call and the throughput in characters per microsecond.
+ */
+object TermYXMLBenchmark {
+
+  val FIXTURES = List(
+    "/mixr/isabelle/pure/lib/UnescapedYXML_NatLang_with_vars",
+    "/mixr/isabelle/pure/lib/UnescapedYXML_NatLang_without_vars",
+    "/mixr/isabelle/pure/lib/UnescapedYXML_NatLang_without_vars_no_leading_space",
+    "/mixr/isabelle/pure/lib/UnescapedYXML_sets_element_extraction_large_sets"
+  )
+  val WARMUP_ITERATIONS = 20000
+  val MEASURED_ITERATIONS = 50000
+
+  def main(args: Array[String]): Unit = {
+    val unescaped = FIXTURES.map(readFirstLine)
+    val escaped = unescaped.map(TermYXML.escapeControlChars)
+    measure("escapeControlChars", unescaped, TermYXML.escapeControlChars)
+    measure("unescapeControlChars", escaped, TermYXML.unescapeControlChars)
+    measure("unescapeControlChars (nothing to unescape)", unescaped, TermYXML.unescapeControlChars)
+  }
+
+  private def measure(name: String, inputs: List[String], f: CharSequence => String): Unit = {
+    val charsPerRound = inputs.map(_.length.toLong).sum
+    var sink = 0L
+    for (_ <- 0 until WARMUP_ITERATIONS; input <- inputs)
+      sink += f(input).length
+    val start = System.nanoTime()
+    for (_ <- 0 until MEASURED_ITERATIONS; input <- inputs)
+      sink += f(input).length
+    val elapsed = System.nanoTime() - start
+    val calls = MEASURED_ITERATIONS.toLong * inputs.size
+    println("%s: %.1f ns/call, %.1f chars/us (checksum %d)".format(
+      name, elapsed.toDouble / calls, charsPerRound * MEASURED_ITERATIONS * 1000.0 / elapsed, sink))
+  }
+}
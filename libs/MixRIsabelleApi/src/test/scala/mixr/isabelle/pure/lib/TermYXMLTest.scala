@@ -19,6 +19,29 @@ class TermYXMLTest {
     }
   }
 
+  @Test
+  def escaping_a_yxml_string_without_control_chars_should_return_the_same_string(): Unit = {
+    val yxml = "no control characters here \u00C0"
+    assertSame(yxml, TermYXML.escapeControlChars(yxml))
+  }
+
+  @Test
+  def unescaping_a_yxml_string_without_escaped_control_chars_should_return_the_same_string(): Unit = {
+    for (unescapedYXML <- UNESCAPED_YXMLS) {
+      assertSame(unescapedYXML, TermYXML.unescapeControlChars(unescapedYXML))
+    }
+  }
+
+  @Test
+  def escaping_should_replace_control_chars_at_the_boundaries(): Unit = {
+    assertEquals("\u00C0\u0085a\u00C0\u0086\u00C0\u0085", TermYXML.escapeControlChars("\u0005a\u0006\u0005"))
+  }
+
+  @Test
+  def unescaping_should_ignore_escape_chars_not_followed_by_an_escaped_control_char(): Unit = {
+    assertEquals("\u00C0x\u0005\u00C0", TermYXML.unescapeControlChars("\u00C0x\u00C0\u0085\u00C0"))
+  }
+
   @Test
   def parseYXML_should_produce_the_encoded_term(): Unit = {
     val parsedTerm = TermYXML.parseYXML(SAMPLE_YXML)
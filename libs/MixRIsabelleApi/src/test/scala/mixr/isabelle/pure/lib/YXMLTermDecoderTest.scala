@@ -0,0 +1,114 @@
+package mixr.isabelle.pure.lib
+
+import org.junit.Assert._
+import org.junit.Test
+import isabelle.Term._
+import TermYXMLTest._
+
+class YXMLTermDecoderTest {
+
+  @Test
+  def decode_should_produce_the_encoded_term(): Unit = {
+    assertEquals(SAMPLE_TERM, YXMLTermDecoder.decode(SAMPLE_YXML))
+  }
+
+  @Test
+  def decode_should_produce_the_same_terms_as_the_isabelle_decoder(): Unit = {
+    for (yxml <- YXMLTermDecoderTest.TERM_YXMLS ++ YXMLTermDecoderTest.LARGE_YXML_FILES.map(readFirstLine)) {
+      assertEquals(decodeWithIsabelle(yxml), YXMLTermDecoder.decode(yxml))
+    }
+  }
+
+  @Test
+  def decoding_and_outputting_should_produce_the_original_yxml(): Unit = {
+    for (yxml <- YXMLTermDecoderTest.TERM_YXMLS) {
+      assertEquals(yxml, TermYXML.outputYXML(YXMLTermDecoder.decode(yxml)).toString)
+    }
+  }
+
+  @Test
+  def decode_should_share_repeated_types_and_constants(): Unit = {
+    val decoder = new YXMLTermDecoder
+    val App(trueprop: Const, App(p: Free, _)) = decoder.decode(SAMPLE_YXML)
+    val Type(_, List(boolInTrueprop, _)) = trueprop.typ
+    val Type(_, List(_, boolInP)) = p.typ
+    assertSame(boolInTrueprop, boolInP)
+    val App(truepropAgain: Const, _) = decoder.decode(SAMPLE_YXML)
+    assertSame(trueprop, truepropAgain)
+  }
+
+  @Test
+  def clear_should_forget_interned_nodes(): Unit = {
+    val decoder = new YXMLTermDecoder
+    decoder.decode(SAMPLE_YXML)
+    assertTrue(decoder.internedNodesCount > 0)
+    decoder.clear()
+    assertEquals(0, decoder.internedNodesCount)
+  }
+
+  @Test
+  def longListYXML_should_encode_the_long_list(): Unit = {
+    assertEquals(TermYXML.outputYXML(TermUtilsTest.longList(3)).toString, YXMLTermDecoderTest.longListYXML(3))
+  }
+
+  @Test
+  def decode_should_not_overflow_the_stack_on_very_long_lists(): Unit = {
+    val elements = TermUtils.getListElements(YXMLTermDecoder.decode(YXMLTermDecoderTest.longListYXML(TermUtilsTest.LONG_LENGTH)))
+    assertEquals(TermUtilsTest.LONG_LENGTH, elements.length)
+    assertEquals(Bound(0), elements.head)
+    assertEquals(Bound(TermUtilsTest.LONG_LENGTH - 1), elements.last)
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def decode_should_reject_a_truncated_term(): Unit = {
+    YXMLTermDecoder.decode(SAMPLE_YXML.substring(0, SAMPLE_YXML.length - 1))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def decode_should_reject_trailing_content(): Unit = {
+    YXMLTermDecoder.decode(SAMPLE_YXML + " ")
+  }
+
+  private def decodeWithIsabelle(yxml: String): Term = {
+    isabelle.Term_XML.Decode.term(List(isabelle.YXML.parse(yxml)))
+  }
+}
+
+object YXMLTermDecoderTest {
+  /**
+   * The fixtures that encode whole terms. The last one of `UNESCAPED_YXMLS`
+   * lacks the enclosing element (it is only used by the escaping tests).
+   */
+  val TERM_YXMLS = UNESCAPED_YXMLS.filter(_.startsWith("\u0005\u0006"))
+
+  private val OPEN_APP = "\u0005\u00065\u0005"
+  private val OPEN_LIST_NODE = "\u0005\u0006:\u0005"
+  private val CLOSE_ELEMENT = "\u0005\u0006\u0005"
+
+  /**
+   * Encodes [[TermUtilsTest.longList]] without building the term (Isabelle's
+   * encoder would overflow the stack on long lists).
+   */
+  def longListYXML(length: Int): String = {
+    val cons = TermYXML.outputYXML(Const(TermUtils.HOL_LIST_CONS, TermUtilsTest.TYPE))
+    val yxml = new StringBuilder
+    for (i <- 0 until length) {
+      yxml.append(OPEN_APP).append(OPEN_LIST_NODE)
+      yxml.append(OPEN_APP)
+      yxml.append(OPEN_LIST_NODE).append(cons).append(CLOSE_ELEMENT)
+      yxml.append(OPEN_LIST_NODE).append(TermYXML.outputYXML(Bound(i))).append(CLOSE_ELEMENT)
+      yxml.append(CLOSE_ELEMENT)
+      yxml.append(CLOSE_ELEMENT).append(OPEN_LIST_NODE)
+    }
+    yxml.append(TermYXML.outputYXML(Const(TermUtils.HOL_LIST_NIL, TermUtilsTest.TYPE)))
+    for (i <- 0 until length)
+      yxml.append(CLOSE_ELEMENT).append(CLOSE_ELEMENT)
+    yxml.toString
+  }
+
+  val LARGE_YXML_FILES = List(
+    "/mixr/isabelle/pure/lib/UnescapedYXML_NatLang_with_vars",
+    "/mixr/isabelle/pure/lib/UnescapedYXML_NatLang_without_vars",
+    "/mixr/isabelle/pure/lib/UnescapedYXML_sets_element_extraction_large_sets"
+  )
+}
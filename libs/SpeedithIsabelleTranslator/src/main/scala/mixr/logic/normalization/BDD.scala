@@ -0,0 +1,446 @@
+package mixr.logic.normalization
+
+import scala.collection.mutable
+
+/**
+ * A reduced ordered binary decision diagram (ROBDD) package over the atoms of
+ * [[mixr.logic.normalization.Formula]]s.
+ *
+ * An instance of this class manages a set of shared BDD nodes over a fixed
+ * sequence of variables (the variable ordering). Nodes are referred to by
+ * integer handles: [[BDD.False]] and [[BDD.True]] are the terminals, every
+ * other handle is an internal node. Because the nodes are kept in a unique
+ * table, two equivalent formulae always get the same handle (e.g. a
+ * contradiction is always [[BDD.False]]).
+ *
+ * Results of the Boolean operations are memoized in an operation cache, so
+ * building the BDD of a formula takes time roughly proportional to the size of
+ * the resulting BDD instead of to the size of its DNF. The cache has a fixed
+ * capacity, which [[BDD.apply]] sizes from the formula.
+ *
+ * The variable ordering has a big influence on the size of BDDs. See
+ * [[BDD.firstOccurrenceOrder]] and [[BDD.occurrenceCountOrder]] for simple
+ * heuristics.
+ *
+ * Instances of this class are not thread-safe.
+ *
+ * @param variables the variables in the order in which they are tested
+ *                  (variable `0` is at the root).
+ * @param operationCacheCapacity the number of entries in the operation cache.
+ *                               It is rounded up to a power of two (between
+ *                               [[BDD.MIN_OPERATION_CACHE_CAPACITY]] and
+ *                               [[BDD.MAX_OPERATION_CACHE_CAPACITY]]).
+ * @author Matej Urbas
+ */
+class BDD[A](val variables: IndexedSeq[A], operationCacheCapacity: Int) {
+
+  import BDD._
+
+  /**
+   * Creates a BDD manager with an operation cache sized from the number of
+   * variables.
+   */
+  def this(variables: IndexedSeq[A]) = this(variables, BDD.OPERATION_CACHE_ENTRIES_PER_VARIABLE * variables.length)
+
+  private val variableIndices = {
+    val indices = new mutable.HashMap[A, Int]
+    for (i <- variables.indices) {
+      if (indices.put(variables(i), i).isDefined)
+        throw new IllegalArgumentException("The variable '%s' appears more than once in the variable ordering.".format(variables(i)))
+    }
+    indices
+  }
+
+  // The nodes. The level of a node is the index of its variable. Terminals are
+  // on the level just below the last variable.
+  private var levels = new Array[Int](INITIAL_NODES_CAPACITY)
+  private var lows = new Array[Int](INITIAL_NODES_CAPACITY)
+  private var highs = new Array[Int](INITIAL_NODES_CAPACITY)
+  private var size = 2
+  levels(False) = variables.length
+  levels(True) = variables.length
+
+  // The unique table (open addressing with linear probing). An empty slot
+  // contains `False` (terminals are never stored in the table).
+  private var uniqueTable = new Array[Int](INITIAL_UNIQUE_TABLE_CAPACITY)
+
+  // The operation cache (direct-mapped, a new entry overwrites an old one).
+  private val cacheMask = powerOfTwoAtLeast(math.min(math.max(operationCacheCapacity, MIN_OPERATION_CACHE_CAPACITY), MAX_OPERATION_CACHE_CAPACITY)) - 1
+  private val cacheKeys = new Array[Long](cacheMask + 1)
+  private val cacheOperations = new Array[Int](cacheMask + 1)
+  private val cacheResults = Array.fill(cacheMask + 1)(NO_RESULT)
+
+  /**
+   * Returns the number of nodes (including the two terminals) managed by this
+   * instance.
+   */
+  def nodesCount: Int = size
+
+  /**
+   * Returns the index of the variable tested by the given node, or the number
+   * of variables if the node is a terminal.
+   */
+  def level(node: Int): Int = levels(node)
+
+  /**
+   * Returns the node to follow when the node's variable is false.
+   */
+  def low(node: Int): Int = lows(node)
+
+  /**
+   * Returns the node to follow when the node's variable is true.
+   */
+  def high(node: Int): Int = highs(node)
+
+  /**
+   * Returns the BDD of the variable with the given index.
+   */
+  def variable(index: Int): Int = {
+    if (index < 0 || index >= variables.length)
+      throw new IllegalArgumentException("There is no variable with the index %d.".format(index))
+    mk(index, False, True)
+  }
+
+  /**
+   * Returns the BDD of the given variable.
+   *
+   * @throws IllegalArgumentException if the variable is not in the variable
+   *         ordering of this BDD.
+   */
+  def variableOf(variable: A): Int = {
+    this.variable(variableIndices.getOrElse(variable, throw new IllegalArgumentException("The variable '%s' is not in the variable ordering.".format(variable))))
+  }
+
+  def not(u: Int): Int = {
+    if (u == False) True
+    else if (u == True) False
+    else {
+      val cached = lookup(OP_NOT, u, u)
+      if (cached != NO_RESULT) cached
+      else store(OP_NOT, u, u, mk(levels(u), not(lows(u)), not(highs(u))))
+    }
+  }
+
+  def and(u: Int, v: Int): Int = {
+    if (u == False || v == False) False
+    else if (u == True) v
+    else if (v == True || u == v) u
+    else {
+      // The operation is commutative, so the arguments are put into a
+      // canonical order to share cache entries:
+      val a = math.min(u, v)
+      val b = math.max(u, v)
+      val cached = lookup(OP_AND, a, b)
+      if (cached != NO_RESULT) cached
+      else {
+        val level = math.min(levels(a), levels(b))
+        store(OP_AND, a, b, mk(level, and(cofactor(a, level, false), cofactor(b, level, false)), and(cofactor(a, level, true), cofactor(b, level, true))))
+      }
+    }
+  }
+
+  def or(u: Int, v: Int): Int = {
+    if (u == True || v == True) True
+    else if (u == False) v
+    else if (v == False || u == v) u
+    else {
+      val a = math.min(u, v)
+      val b = math.max(u, v)
+      val cached = lookup(OP_OR, a, b)
+      if (cached != NO_RESULT) cached
+      else {
+        val level = math.min(levels(a), levels(b))
+        store(OP_OR, a, b, mk(level, or(cofactor(a, level, false), cofactor(b, level, false)), or(cofactor(a, level, true), cofactor(b, level, true))))
+      }
+    }
+  }
+
+  /**
+   * Builds the BDD of the given formula.
+   *
+   * @throws IllegalArgumentException if the formula contains an atom that is
+   *         not in the variable ordering of this BDD (or a `null` sub-formula).
+   */
+  def fromFormula(formula: Formula[A]): Int = {
+    // A sub-formula is pushed once to expand its operands and once more (with
+    // the flag set) to combine their BDDs, which are on top of `results`:
+    val pending = new mutable.ArrayStack[(Formula[A], Boolean)]
+    val results = new mutable.ArrayStack[Int]
+    pending.push((formula, false))
+    while (!pending.isEmpty) {
+      pending.pop() match {
+        case (Neg(_), true) => results.push(not(results.pop()))
+        case (Inf(_, _), true) =>
+          val rhs = results.pop()
+          results.push(and(results.pop(), rhs))
+        case (Sup(_, _), true) =>
+          val rhs = results.pop()
+          results.push(or(results.pop(), rhs))
+        case (Atom(atom), _) => results.push(variableOf(atom))
+        case (current@Neg(body), _) =>
+          pending.push((current, true))
+          pending.push((body, false))
+        case (current@Inf(lhs, rhs), _) =>
+          pending.push((current, true))
+          pending.push((rhs, false))
+          pending.push((lhs, false))
+        case (current@Sup(lhs, rhs), _) =>
+          pending.push((current, true))
+          pending.push((rhs, false))
+          pending.push((lhs, false))
+        case (other, _) => throw new IllegalArgumentException("Cannot build a BDD of the formula '%s'.".format(other))
+      }
+    }
+    results.pop()
+  }
+
+  /**
+   * Calls the visitor with every satisfying assignment of all the variables
+   * (not only the ones tested in the BDD). The assignment is indexed by
+   * variable indices.
+   *
+   * The same array is passed to every call of the visitor and it is changed
+   * after the visitor returns. The visitor must copy it if it wants to keep
+   * it.
+   */
+  def foreachSatisfyingAssignment(u: Int)(visitor: Array[Boolean] => Unit): Unit = {
+    val assignment = new Array[Boolean](variables.length)
+    // Every entry is a node, its level and the value of the variable on the
+    // level above it (through which the node was reached). Entries are
+    // expanded depth-first, `false` before `true`, so the variables above an
+    // entry's level still have the values they had when it was pushed:
+    val pending = new mutable.ArrayStack[(Int, Int, Boolean)]
+    pending.push((u, 0, false))
+    while (!pending.isEmpty) {
+      val (node, level, value) = pending.pop()
+      if (level > 0)
+        assignment(level - 1) = value
+      if (node != False) {
+        if (level == variables.length) {
+          visitor(assignment)
+        } else {
+          pending.push((cofactor(node, level, true), level + 1, true))
+          pending.push((cofactor(node, level, false), level + 1, false))
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of satisfying assignments of all the variables.
+   */
+  def satCount(u: Int): BigInt = {
+    val counts = new mutable.HashMap[Int, BigInt]
+    // Returns the number of satisfying assignments of the variables at and
+    // below the node's level:
+    def count(node: Int): BigInt = {
+      if (node == False) BigInt(0)
+      else if (node == True) BigInt(1)
+      else counts.getOrElseUpdate(node, {
+        val level = levels(node)
+        (count(lows(node)) << (levels(lows(node)) - level - 1)) + (count(highs(node)) << (levels(highs(node)) - level - 1))
+      })
+    }
+    count(u) << levels(u)
+  }
+
+  /**
+   * Returns the node to follow from `u` if the variable at `level` has the
+   * given value. Nodes below `level` do not test the variable.
+   */
+  private def cofactor(u: Int, level: Int, value: Boolean): Int = {
+    if (levels(u) != level) u
+    else if (value) highs(u)
+    else lows(u)
+  }
+
+  /**
+   * Returns the unique node with the given level and children.
+   */
+  private def mk(level: Int, low: Int, high: Int): Int = {
+    if (low == high) {
+      low
+    } else {
+      val mask = uniqueTable.length - 1
+      var slot = hash(level, low, high) & mask
+      while (uniqueTable(slot) != False) {
+        val node = uniqueTable(slot)
+        if (levels(node) == level && lows(node) == low && highs(node) == high)
+          return node
+        slot = (slot + 1) & mask
+      }
+      val node = addNode(level, low, high)
+      uniqueTable(slot) = node
+      if (size * 4 > uniqueTable.length * 3)
+        growUniqueTable()
+      node
+    }
+  }
+
+  private def addNode(level: Int, low: Int, high: Int): Int = {
+    if (size == levels.length) {
+      val capacity = levels.length * 2
+      levels = java.util.Arrays.copyOf(levels, capacity)
+      lows = java.util.Arrays.copyOf(lows, capacity)
+      highs = java.util.Arrays.copyOf(highs, capacity)
+    }
+    val node = size
+    levels(node) = level
+    lows(node) = low
+    highs(node) = high
+    size += 1
+    node
+  }
+
+  private def growUniqueTable(): Unit = {
+    uniqueTable = new Array[Int](uniqueTable.length * 2)
+    val mask = uniqueTable.length - 1
+    for (node <- 2 until size) {
+      var slot = hash(levels(node), lows(node), highs(node)) & mask
+      while (uniqueTable(slot) != False)
+        slot = (slot + 1) & mask
+      uniqueTable(slot) = node
+    }
+  }
+
+  private def lookup(operation: Int, a: Int, b: Int): Int = {
+    val key = cacheKey(a, b)
+    val slot = cacheSlot(operation, key)
+    if (cacheKeys(slot) == key && cacheOperations(slot) == operation) cacheResults(slot) else NO_RESULT
+  }
+
+  private def store(operation: Int, a: Int, b: Int, result: Int): Int = {
+    val key = cacheKey(a, b)
+    val slot = cacheSlot(operation, key)
+    cacheKeys(slot) = key
+    cacheOperations(slot) = operation
+    cacheResults(slot) = result
+    result
+  }
+
+  private def cacheKey(a: Int, b: Int): Long = (a.toLong << 32) | (b & 0xFFFFFFFFL)
+
+  private def cacheSlot(operation: Int, key: Long): Int = {
+    val h = (key ^ (key >>> 29)) * 0x9E3779B97F4A7C15L + operation
+    (h ^ (h >>> 32)).toInt & cacheMask
+  }
+
+  private def hash(level: Int, low: Int, high: Int): Int = {
+    val h = (level * 31 + low) * 0x9E3779B1 + high
+    h ^ (h >>> 16)
+  }
+}
+
+object BDD {
+
+  /**
+   * The handle of the terminal node `false`.
+   */
+  val False = 0
+
+  /**
+   * The handle of the terminal node `true`.
+   */
+  val True = 1
+
+  private val INITIAL_NODES_CAPACITY = 256
+  private val INITIAL_UNIQUE_TABLE_CAPACITY = 512
+
+  /**
+   * The smallest number of entries in the operation cache.
+   */
+  val MIN_OPERATION_CACHE_CAPACITY = 1 << 8
+
+  /**
+   * The largest number of entries in the operation cache.
+   */
+  val MAX_OPERATION_CACHE_CAPACITY = 1 << 20
+
+  private val OPERATION_CACHE_ENTRIES_PER_VARIABLE = 64
+  private val OPERATION_CACHE_ENTRIES_PER_OPERATION = 4
+  private val NO_RESULT = -1
+  private val OP_NOT = 1
+  private val OP_AND = 2
+  private val OP_OR = 3
+
+  /**
+   * Creates a BDD manager whose variables are the atoms of the formula (in the
+   * [[firstOccurrenceOrder]]) followed by the additional variables that do not
+   * appear in the formula. Returns the manager and the BDD of the formula.
+   *
+   * The operation cache is sized from the number of operators in the formula
+   * (each of them is at least one cached operation).
+   */
+  def apply[A](formula: Formula[A], additionalVariables: Iterable[A] = Nil): (BDD[A], Int) = {
+    val order = new mutable.LinkedHashSet[A]
+    var operatorsCount = 0
+    foreachSubFormula(formula) {
+      case Atom(atom) => order += atom
+      case _ => operatorsCount += 1
+    }
+    order ++= additionalVariables
+    val bdd = new BDD[A](order.toIndexedSeq, OPERATION_CACHE_ENTRIES_PER_OPERATION * operatorsCount)
+    (bdd, bdd.fromFormula(formula))
+  }
+
+  /**
+   * Orders the atoms of the formula by their first occurrence (left to right).
+   * Atoms that appear close together in the formula are usually related, and
+   * keeping them close in the ordering tends to keep the BDD small.
+   */
+  def firstOccurrenceOrder[A](formula: Formula[A]): IndexedSeq[A] = {
+    val order = new mutable.LinkedHashSet[A]
+    foreachAtom(formula)(atom => order += atom)
+    order.toIndexedSeq
+  }
+
+  /**
+   * Orders the atoms of the formula by the number of their occurrences (the
+   * most frequent atom first). Ties are broken by the first occurrence.
+   */
+  def occurrenceCountOrder[A](formula: Formula[A]): IndexedSeq[A] = {
+    val counts = new mutable.LinkedHashMap[A, Int]
+    foreachAtom(formula)(atom => counts(atom) = counts.getOrElse(atom, 0) + 1)
+    counts.toIndexedSeq.zipWithIndex.sortBy {
+      case ((_, count), firstOccurrence) => (-count, firstOccurrence)
+    }.map(_._1._1)
+  }
+
+  private def foreachAtom[A](formula: Formula[A])(visitor: A => Unit): Unit = {
+    foreachSubFormula(formula) {
+      case Atom(atom) => visitor(atom)
+      case _ =>
+    }
+  }
+
+  /**
+   * Visits the sub-formulae in pre-order (left to right). Sub-formulae that
+   * are neither atoms nor operators (e.g. `null`) are skipped.
+   */
+  private def foreachSubFormula[A](formula: Formula[A])(visitor: Formula[A] => Unit): Unit = {
+    val pending = new mutable.ArrayStack[Formula[A]]
+    pending.push(formula)
+    while (!pending.isEmpty) {
+      pending.pop() match {
+        case atom@Atom(_) => visitor(atom)
+        case neg@Neg(body) =>
+          visitor(neg)
+          pending.push(body)
+        case inf@Inf(lhs, rhs) =>
+          visitor(inf)
+          pending.push(rhs)
+          pending.push(lhs)
+        case sup@Sup(lhs, rhs) =>
+          visitor(sup)
+          pending.push(rhs)
+          pending.push(lhs)
+        case _ =>
+      }
+    }
+  }
+
+  private def powerOfTwoAtLeast(n: Int): Int = {
+    val highest = java.lang.Integer.highestOneBit(n)
+    if (highest == n) n else highest << 1
+  }
+}
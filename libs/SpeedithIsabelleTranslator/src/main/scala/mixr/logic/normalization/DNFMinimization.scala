@@ -0,0 +1,175 @@
+package mixr.logic.normalization
+
+import scala.collection.immutable.BitSet
+import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Computes small disjunctive normal forms (see [[mixr.logic.normalization.NormalForms.toMinimalDNF]]).
+ *
+ * Disjuncts are cubes, i.e. conjunctions of literals over the atoms of the
+ * formula (numbered in their [[mixr.logic.normalization.BDD.firstOccurrenceOrder]]).
+ *
+ *  - With at most [[DNFMinimization.QUINE_MCCLUSKEY_MAX_VARIABLES]] atoms, the
+ *    Quine–McCluskey method computes all prime implicants from the formula's
+ *    [[mixr.logic.normalization.TruthTable]] and covers the formula with the
+ *    essential prime implicants and, greedily, the prime implicants that cover
+ *    the most of the remaining models.
+ *  - With more atoms, the cubes are built bottom-up from the negation normal
+ *    form. Contradictory cubes are dropped and subsumed cubes are absorbed as
+ *    soon as they are produced (this does not merge cubes, e.g. `A ∧ B` and
+ *    `A ∧ ¬B`, so the result is not always minimal).
+ *
+ * @author Matej Urbas
+ */
+private[normalization] object DNFMinimization {
+
+  /**
+   * The largest number of atoms for which the Quine–McCluskey method is used.
+   */
+  val QUINE_MCCLUSKEY_MAX_VARIABLES = 10
+
+  /**
+   * A conjunction of the positive and negative literals of the variables with
+   * the given indices.
+   */
+  private case class Cube(positive: BitSet, negative: BitSet) {
+
+    /**
+     * Indicates whether this cube is implied by the given one (i.e.: all
+     * literals of this cube are also in the given one).
+     */
+    def subsumes(that: Cube): Boolean = positive.subsetOf(that.positive) && negative.subsetOf(that.negative)
+
+    def isContradictory: Boolean = !(positive & negative).isEmpty
+  }
+
+  /**
+   * Returns the disjuncts of a small DNF of the formula. Each disjunct is a
+   * sequence of literals ordered by the first occurrence of their atoms in the
+   * formula. A contradiction has no disjuncts and a tautology has a single
+   * empty disjunct.
+   *
+   * @throws IllegalArgumentException if the formula or any of its
+   *         sub-formulae is `null`.
+   */
+  def minimalDisjuncts[A](formula: Formula[A]): Seq[Seq[Formula[A]]] = {
+    if (formula == null)
+      throw new IllegalArgumentException("Cannot compute the minimal DNF of a null formula.")
+    val variables = BDD.firstOccurrenceOrder(formula)
+    val cubes = if (variables.length <= QUINE_MCCLUSKEY_MAX_VARIABLES) quineMcCluskey(formula, variables) else absorbedCubes(formula, variables)
+    cubes.map(cube => toLiterals(cube, variables))
+  }
+
+  private def quineMcCluskey[A](formula: Formula[A], variables: IndexedSeq[A]): Seq[Cube] = {
+    val minterms = ArrayBuffer[Long]()
+    TruthTable.foreachModel(TruthTable(formula, variables))(minterms += _)
+    val all = (1L << variables.length) - 1
+    cover(primeImplicants(minterms, variables.length), minterms).map {
+      case (bits, mask) => Cube(toBitSet(bits), toBitSet(~bits & ~mask & all))
+    }
+  }
+
+  /**
+   * Returns all prime implicants of the given minterms. An implicant is a pair
+   * of the values of its variables and a mask of the variables it does not
+   * contain (the values of these are zero).
+   */
+  private def primeImplicants(minterms: Seq[Long], variablesCount: Int): Seq[(Long, Long)] = {
+    val primes = ArrayBuffer[(Long, Long)]()
+    var current = new mutable.LinkedHashSet[(Long, Long)]
+    current ++= minterms.map(minterm => (minterm, 0L))
+    while (!current.isEmpty) {
+      val next = new mutable.LinkedHashSet[(Long, Long)]
+      val combined = new mutable.HashSet[(Long, Long)]
+      for (implicant@(bits, mask) <- current; i <- 0 until variablesCount) {
+        val bit = 1L << i
+        // Implicants that differ only in the value of one variable combine
+        // into an implicant without this variable:
+        if ((mask & bit) == 0 && (bits & bit) == 0 && current.contains((bits | bit, mask))) {
+          next += ((bits, mask | bit))
+          combined += implicant
+          combined += ((bits | bit, mask))
+        }
+      }
+      primes ++= current.filterNot(combined.contains)
+      current = next
+    }
+    primes
+  }
+
+  private def cover(primes: Seq[(Long, Long)], minterms: Seq[Long]): Seq[(Long, Long)] = {
+    def covers(prime: (Long, Long), minterm: Long): Boolean = (minterm & ~prime._2) == prime._1
+    val chosen = new mutable.LinkedHashSet[(Long, Long)]
+    // Prime implicants that are the only ones to cover some minterm are
+    // essential:
+    for (minterm <- minterms) {
+      val covering = primes.filter(covers(_, minterm))
+      if (covering.length == 1)
+        chosen += covering.head
+    }
+    val uncovered = new mutable.LinkedHashSet[Long]
+    uncovered ++= minterms.filter(minterm => !chosen.exists(covers(_, minterm)))
+    // Cover the rest greedily (prefer fewer literals on ties):
+    while (!uncovered.isEmpty) {
+      val best = primes.maxBy(prime => (uncovered.count(covers(prime, _)), java.lang.Long.bitCount(prime._2)))
+      chosen += best
+      uncovered.retain(!covers(best, _))
+    }
+    chosen.toSeq
+  }
+
+  private def absorbedCubes[A](formula: Formula[A], variables: IndexedSeq[A]): Seq[Cube] = {
+    val indices = variables.zipWithIndex.toMap
+    // The NNF is shared, so each distinct sub-formula is expanded only once:
+    val expanded = new java.util.IdentityHashMap[Formula[A], Seq[Cube]]
+    def cubes(nnf: Formula[A]): Seq[Cube] = {
+      val cached = expanded.get(nnf)
+      if (cached != null) {
+        cached
+      } else {
+        val result = nnf match {
+          case Atom(atom) => Seq(Cube(BitSet(indices(atom)), BitSet.empty))
+          case Neg(Atom(atom)) => Seq(Cube(BitSet.empty, BitSet(indices(atom))))
+          case Sup(lhs, rhs) =>
+            val disjuncts = ArrayBuffer[Cube]()
+            for (cube <- cubes(lhs) ++ cubes(rhs))
+              addCube(disjuncts, cube)
+            disjuncts
+          case Inf(lhs, rhs) =>
+            val disjuncts = ArrayBuffer[Cube]()
+            val rhsCubes = cubes(rhs)
+            for (lhsCube <- cubes(lhs); rhsCube <- rhsCubes)
+              addCube(disjuncts, Cube(lhsCube.positive | rhsCube.positive, lhsCube.negative | rhsCube.negative))
+            disjuncts
+          case _ => throw new IllegalArgumentException("Cannot compute the minimal DNF of the formula '%s'.".format(nnf))
+        }
+        expanded.put(nnf, result)
+        result
+      }
+    }
+    cubes(new FormulaFactory[A].toNNF(formula))
+  }
+
+  /**
+   * Adds the cube to the disjuncts unless it is contradictory or subsumed by
+   * one of them. Disjuncts subsumed by the cube are removed.
+   */
+  private def addCube(disjuncts: ArrayBuffer[Cube], cube: Cube): Unit = {
+    if (!cube.isContradictory && !disjuncts.exists(_.subsumes(cube))) {
+      var i = disjuncts.length - 1
+      while (i >= 0) {
+        if (cube.subsumes(disjuncts(i)))
+          disjuncts.remove(i)
+        i -= 1
+      }
+      disjuncts += cube
+    }
+  }
+
+  private def toLiterals[A](cube: Cube, variables: IndexedSeq[A]): Seq[Formula[A]] = {
+    (cube.positive | cube.negative).toList.map(i => if (cube.positive(i)) Atom(variables(i)) else Neg(Atom(variables(i))))
+  }
+
+  private def toBitSet(mask: Long): BitSet = BitSet.fromArray(Array(mask))
+}
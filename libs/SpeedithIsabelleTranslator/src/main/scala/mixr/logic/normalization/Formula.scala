@@ -1,5 +1,12 @@
 package mixr.logic.normalization
 
+/**
+ * A propositional formula over atoms of type `A`.
+ *
+ * Formulae are immutable trees (or DAGs, see [[mixr.logic.normalization.FormulaFactory]]).
+ * Every node computes its hash code once (from the cached hash codes of its
+ * children), so putting formulae into hash sets does not traverse them.
+ */
 sealed abstract class Formula[+A] {
 
   final def +[B >: A](that: Formula[B]): Formula[B] = Sup(this, that)
@@ -35,10 +42,17 @@ object Formula {
   implicit def string2atom(str: String): Formula[String] = Atom(str)
 
   implicit def symbol2atom(atomSymbol: Symbol): Formula[Symbol] = Atom(atomSymbol)
+
+  private[normalization] def hash(seed: Int, lhs: Any, rhs: Any): Int = {
+    val h = (seed * 31 + lhs.##) * 0x9E3779B1 + rhs.##
+    h ^ (h >>> 16)
+  }
 }
 
 
 case class Atom[+A](atom: A) extends Formula[A] {
+  override val hashCode: Int = Formula.hash(1, atom, null)
+
   override def toString: String = atom.toString
 
   override def isLiteral: Boolean = true
@@ -51,11 +65,17 @@ case class Atom[+A](atom: A) extends Formula[A] {
 }
 
 case class Inf[+A](lhs: Formula[A], rhs: Formula[A]) extends Formula[A] {
+  override val hashCode: Int = Formula.hash(2, lhs, rhs)
+
+  override def equals(other: Any): Boolean = other match {
+    case that: Inf[_] => (this eq that) || (hashCode == that.hashCode && lhs == that.lhs && rhs == that.rhs)
+    case _ => false
+  }
 
   /**
    * This formula is in CNF if and only if its children are in CNF.
    */
-  def isCNF: Boolean = {
+  lazy val isCNF: Boolean = {
     lhs.isCNF && rhs.isCNF
   }
 
@@ -63,12 +83,12 @@ case class Inf[+A](lhs: Formula[A], rhs: Formula[A]) extends Formula[A] {
    * This formula is in DNF if and only if it contains no Sup(_, _) children
    * and all children must be in DNF.
    */
-  def isDNF: Boolean = this match {
+  lazy val isDNF: Boolean = this match {
     case Inf(Sup(_, _), _) | Inf(_, Sup(_, _)) => false
     case _ => lhs.isDNF && rhs.isDNF
   }
 
-  def isNNF: Boolean = {
+  lazy val isNNF: Boolean = {
     lhs.isNNF && rhs.isNNF
   }
 
@@ -85,6 +105,13 @@ case class Inf[+A](lhs: Formula[A], rhs: Formula[A]) extends Formula[A] {
 }
 
 case class Neg[+A](body: Formula[A]) extends Formula[A] {
+  override val hashCode: Int = Formula.hash(3, body, null)
+
+  override def equals(other: Any): Boolean = other match {
+    case that: Neg[_] => (this eq that) || (hashCode == that.hashCode && body == that.body)
+    case _ => false
+  }
+
   override def toString: String = {
     body match {
       case Neg(_) | Atom(_) =>
@@ -109,6 +136,12 @@ case class Neg[+A](body: Formula[A]) extends Formula[A] {
 }
 
 case class Sup[+A](lhs: Formula[A], rhs: Formula[A]) extends Formula[A] {
+  override val hashCode: Int = Formula.hash(4, lhs, rhs)
+
+  override def equals(other: Any): Boolean = other match {
+    case that: Sup[_] => (this eq that) || (hashCode == that.hashCode && lhs == that.lhs && rhs == that.rhs)
+    case _ => false
+  }
 
   override def toString: String = {
     "%s \u2228 %s".format(lhs, rhs)
@@ -118,7 +151,7 @@ case class Sup[+A](lhs: Formula[A], rhs: Formula[A]) extends Formula[A] {
    * This formula is in CNF if and only if it contains no Inf(_, _) children
    * and all children must be in CNF.
    */
-  def isCNF: Boolean = this match {
+  lazy val isCNF: Boolean = this match {
     case Sup(Inf(_, _), _) | Sup(_, Inf(_, _)) => false
     case _ => lhs.isCNF && rhs.isCNF
   }
@@ -126,11 +159,11 @@ case class Sup[+A](lhs: Formula[A], rhs: Formula[A]) extends Formula[A] {
   /**
    * This formula is in DNF if and only if its children are in DNF.
    */
-  def isDNF: Boolean = {
+  lazy val isDNF: Boolean = {
     lhs.isDNF && rhs.isDNF
   }
 
-  def isNNF: Boolean = {
+  lazy val isNNF: Boolean = {
     lhs.isNNF && rhs.isNNF
   }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package mixr.logic.normalization
+
+import scala.collection.mutable
+
+/**
+ * A hash-consing factory of [[mixr.logic.normalization.Formula]]e.
+ *
+ * Formulae created or [[FormulaFactory.intern interned]] by the same factory
+ * are shared: structurally equal formulae are the same object. A formula is
+ * therefore a DAG whose size is the number of its distinct sub-formulae rather
+ * than the size of its tree.
+ *
+ * The conversions to normal forms are memoized per node, so each distinct
+ * sub-formula is converted only once. They produce the same formulae as the
+ * conversions in [[mixr.logic.normalization.NormalForms]] (which delegate to
+ * a fresh factory).
+ *
+ * Instances of this class are not thread-safe.
+ *
+ * @author Matej Urbas
+ */
+class FormulaFactory[A] {
+
+  // The unique table of all nodes created by this factory.
+  private val nodes = new mutable.HashMap[Formula[A], Formula[A]]
+  // Maps formulae given to this factory (and its own nodes) to the nodes.
+  private val interned = new java.util.IdentityHashMap[Formula[A], Formula[A]]
+  private val nnfs = new java.util.IdentityHashMap[Formula[A], Formula[A]]
+  private val cnfs = new java.util.IdentityHashMap[Formula[A], Formula[A]]
+  private val dnfs = new java.util.IdentityHashMap[Formula[A], Formula[A]]
+
+  /**
+   * Returns the number of distinct formulae created by this factory.
+   */
+  def nodesCount: Int = nodes.size
+
+  def atom(atom: A): Formula[A] = unique(Atom(atom))
+
+  def neg(body: Formula[A]): Formula[A] = mkNeg(intern(body))
+
+  def inf(lhs: Formula[A], rhs: Formula[A]): Formula[A] = mkInf(intern(lhs), intern(rhs))
+
+  def sup(lhs: Formula[A], rhs: Formula[A]): Formula[A] = mkSup(intern(lhs), intern(rhs))
+
+  /**
+   * Returns the shared formula that is structurally equal to the given one.
+   * Sub-formulae that are shared in the given formula are visited only once.
+   */
+  def intern(formula: Formula[A]): Formula[A] = {
+    if (formula == null) {
+      null
+    } else {
+      val known = interned.get(formula)
+      if (known != null) {
+        known
+      } else {
+        val node = formula match {
+          case Neg(body) =>
+            val b = intern(body)
+            unique(if (b eq body) formula else Neg(b))
+          case Inf(lhs, rhs) =>
+            val l = intern(lhs)
+            val r = intern(rhs)
+            unique(if ((l eq lhs) && (r eq rhs)) formula else Inf(l, r))
+          case Sup(lhs, rhs) =>
+            val l = intern(lhs)
+            val r = intern(rhs)
+            unique(if ((l eq lhs) && (r eq rhs)) formula else Sup(l, r))
+          case _ => unique(formula)
+        }
+        interned.put(formula, node)
+        node
+      }
+    }
+  }
+
+  /**
+   * Returns the negation normal form of the formula.
+   */
+  def toNNF(formula: Formula[A]): Formula[A] = nnf(intern(formula))
+
+  /**
+   * Returns the conjunctive normal form of the formula.
+   */
+  def toCNF(formula: Formula[A]): Formula[A] = cnf(toNNF(formula))
+
+  /**
+   * Returns the disjunctive normal form of the formula.
+   */
+  def toDNF(formula: Formula[A]): Formula[A] = dnf(toNNF(formula))
+
+  private def nnf(formula: Formula[A]): Formula[A] = memoized(nnfs, formula) {
+    formula match {
+      case Inf(lhs, rhs) => mkInf(nnf(lhs), nnf(rhs))
+      case Sup(lhs, rhs) => mkSup(nnf(lhs), nnf(rhs))
+      case Neg(Inf(lhs, rhs)) => mkSup(nnf(mkNeg(lhs)), nnf(mkNeg(rhs)))
+      case Neg(Sup(lhs, rhs)) => mkInf(nnf(mkNeg(lhs)), nnf(mkNeg(rhs)))
+      case Neg(Neg(body)) => nnf(body)
+      case _ => formula
+    }
+  }
+
+  private def cnf(nnfFormula: Formula[A]): Formula[A] = memoized(cnfs, nnfFormula) {
+    nnfFormula match {
+      case Sup(Inf(a, b), Inf(c, d)) => mkInf(mkInf(cnf(mkSup(a, c)), cnf(mkSup(a, d))), mkInf(cnf(mkSup(b, c)), cnf(mkSup(b, d))))
+      case Sup(a, Inf(b, c)) => mkInf(cnf(mkSup(a, b)), cnf(mkSup(a, c)))
+      case Sup(Inf(b, c), a) => mkInf(cnf(mkSup(b, a)), cnf(mkSup(c, a)))
+      case t@Sup(a, b) if !t.isCNF => cnf(mkSup(cnf(a), cnf(b)))
+      case t@Inf(a, b) if !t.isCNF => mkInf(cnf(a), cnf(b))
+      case x => x
+    }
+  }
+
+  private def dnf(nnfFormula: Formula[A]): Formula[A] = memoized(dnfs, nnfFormula) {
+    nnfFormula match {
+      case Inf(Sup(a, b), Sup(c, d)) => mkSup(mkSup(dnf(mkInf(a, c)), dnf(mkInf(a, d))), mkSup(dnf(mkInf(b, c)), dnf(mkInf(b, d))))
+      case Inf(a, Sup(b, c)) => mkSup(dnf(mkInf(a, b)), dnf(mkInf(a, c)))
+      case Inf(Sup(b, c), a) => mkSup(dnf(mkInf(b, a)), dnf(mkInf(c, a)))
+      case t@Inf(a, b) if !t.isDNF => dnf(mkInf(dnf(a), dnf(b)))
+      case t@Sup(a, b) if !t.isDNF => mkSup(dnf(a), dnf(b))
+      case x => x
+    }
+  }
+
+  private def memoized(cache: java.util.IdentityHashMap[Formula[A], Formula[A]], formula: Formula[A])(convert: => Formula[A]): Formula[A] = {
+    val cached = cache.get(formula)
+    if (cached != null) {
+      cached
+    } else {
+      val result = convert
+      cache.put(formula, result)
+      result
+    }
+  }
+
+  // The following take shared sub-formulae only:
+
+  private def mkNeg(body: Formula[A]): Formula[A] = unique(Neg(body))
+
+  private def mkInf(lhs: Formula[A], rhs: Formula[A]): Formula[A] = unique(Inf(lhs, rhs))
+
+  private def mkSup(lhs: Formula[A], rhs: Formula[A]): Formula[A] = unique(Sup(lhs, rhs))
+
+  private def unique(candidate: Formula[A]): Formula[A] = {
+    val node = nodes.getOrElseUpdate(candidate, candidate)
+    interned.put(node, node)
+    node
+  }
+}
@@ -13,47 +13,62 @@ object NormalForms {
     }
   }
 
-  def toNNF[A](formula: Formula[A]): Formula[A] = {
-    formula match {
-      case Inf(lhs, rhs) => Inf(toNNF(lhs), toNNF(rhs))
-      case Sup(lhs, rhs) => Sup(toNNF(lhs), toNNF(rhs))
-      case Neg(Inf(lhs, rhs)) => Sup(toNNF(Neg(lhs)), toNNF(Neg(rhs)))
-      case Neg(Sup(lhs, rhs)) => Inf(toNNF(Neg(lhs)), toNNF(Neg(rhs)))
-      case Neg(Neg(body)) => toNNF(body)
-      case _ => formula
-    }
-  }
+  /**
+   * Returns the negation normal form of the formula. Equal sub-formulae are
+   * converted only once (see [[mixr.logic.normalization.FormulaFactory]]).
+   */
+  def toNNF[A](formula: Formula[A]): Formula[A] = new FormulaFactory[A].toNNF(formula)
 
-  def toCNF[A](formula: Formula[A]): Formula[A] = {
-    val nnf = toNNF(formula)
-    def toCNFImpl(nnfFormula: Formula[A]): Formula[A] = {
-      nnfFormula match {
-        case Sup(Inf(a, b), Inf(c, d)) => Inf(Inf(toCNFImpl(Sup(a, c)), toCNFImpl(Sup(a, d))), Inf(toCNFImpl(Sup(b, c)), toCNFImpl(Sup(b, d))))
-        case Sup(a, Inf(b, c)) => Inf(toCNFImpl(Sup(a, b)), toCNFImpl(Sup(a, c)))
-        case Sup(Inf(b, c), a) => Inf(toCNFImpl(Sup(b, a)), toCNFImpl(Sup(c, a)))
-        case t@Sup(a, b) if !t.isCNF => toCNFImpl(Sup(toCNFImpl(a), toCNFImpl(b)))
-        case t@Inf(a, b) if !t.isCNF => Inf(toCNFImpl(a), toCNFImpl(b))
-        case x => x
-      }
-    }
-    toCNFImpl(nnf)
-  }
+  /**
+   * Returns the conjunctive normal form of the formula. Equal sub-formulae are
+   * converted only once and shared in the result.
+   *
+   * The result is equivalent to the formula, but it may be exponentially
+   * larger. Use [[toEquisatisfiableCNF]] for satisfiability checks of large
+   * formulae.
+   */
+  def toCNF[A](formula: Formula[A]): Formula[A] = new FormulaFactory[A].toCNF(formula)
 
-  def toDNF[A](formula: Formula[A]): Formula[A] = {
-    val nnf = toNNF(formula)
-    def toDNFImpl(nnfFormula: Formula[A]): Formula[A] = {
-      nnfFormula match {
-        case Inf(Sup(a, b), Sup(c, d)) => Sup(Sup(toDNFImpl(Inf(a, c)), toDNFImpl(Inf(a, d))), Sup(toDNFImpl(Inf(b, c)), toDNFImpl(Inf(b, d))))
-        case Inf(a, Sup(b, c)) => Sup(toDNFImpl(Inf(a, b)), toDNFImpl(Inf(a, c)))
-        case Inf(Sup(b, c), a) => Sup(toDNFImpl(Inf(b, a)), toDNFImpl(Inf(c, a)))
-        case t@Inf(a, b) if !t.isDNF => toDNFImpl(Inf(toDNFImpl(a), toDNFImpl(b)))
-        case t@Sup(a, b) if !t.isDNF => Sup(toDNFImpl(a), toDNFImpl(b))
-        case x => x
-      }
+  /**
+   * Returns an equisatisfiable CNF of the formula whose size is linear in the
+   * number of distinct sub-formulae (see [[mixr.logic.normalization.TseitinCNF]]).
+   */
+  def toEquisatisfiableCNF[A](formula: Formula[A]): TseitinCNF[A] = TseitinCNF(formula)
+
+  /**
+   * Returns the disjunctive normal form of the formula. Equal sub-formulae are
+   * converted only once and shared in the result.
+   */
+  def toDNF[A](formula: Formula[A]): Formula[A] = new FormulaFactory[A].toDNF(formula)
+
+  /**
+   * Returns a small DNF of the formula (a minimal one for formulae with few
+   * atoms). Unlike [[toDNF]], the result contains no contradictory or
+   * subsumed disjuncts.
+   *
+   * The result of a contradiction is `a ∧ ¬a` and the result of a tautology
+   * is `a ∨ ¬a`, where `a` is the first atom of the formula.
+   *
+   * @throws IllegalArgumentException if the formula or any of its
+   *         sub-formulae is `null`.
+   */
+  def toMinimalDNF[A](formula: Formula[A]): Formula[A] = {
+    val disjuncts = extractMinimalDisjuncts(formula)
+    if (disjuncts.isEmpty || disjuncts.exists(_.isEmpty)) {
+      val atom = Atom(BDD.firstOccurrenceOrder(formula).head)
+      if (disjuncts.isEmpty) Inf(atom, Neg(atom)) else Sup(atom, Neg(atom))
+    } else {
+      disjuncts.map(d => toConjuncts(d, (f: Formula[A]) => f)).reduceLeft[Formula[A]](Sup(_, _))
     }
-    toDNFImpl(nnf)
   }
 
+  /**
+   * Returns the disjuncts of [[toMinimalDNF]], each as a sequence of literals.
+   * A contradiction has no disjuncts and a tautology has a single empty
+   * disjunct.
+   */
+  def extractMinimalDisjuncts[A](formula: Formula[A]): Seq[Seq[Formula[A]]] = DNFMinimization.minimalDisjuncts(formula)
+
   def extractDistinctDisjuncts[A](formula: Formula[A], extractedDisjuncts: mutable.HashSet[Formula[A]] = mutable.HashSet[Formula[A]]()): mutable.HashSet[Formula[A]] = {
     formula match {
       case Sup(Sup(a, b), c) =>
@@ -0,0 +1,169 @@
+package mixr.logic.normalization
+
+import scala.collection.mutable
+
+/**
+ * Bit-parallel truth tables of [[mixr.logic.normalization.Formula]]s.
+ *
+ * The truth table of a formula over `n` variables is a bitset of `2^n` bits
+ * packed into `long` words. Bit `z` tells whether the formula is true in the
+ * assignment `z`, where variable `i` is true iff bit `i` of `z` is set. The
+ * assignments can thus also be used as masks (e.g. of the contours a zone is
+ * in).
+ *
+ * Connectives are evaluated word by word, i.e. for 64 assignments at once.
+ * For 12 variables, the truth table of a formula takes 64 words and each
+ * connective in the formula takes 64 bitwise operations.
+ *
+ * @author Matej Urbas
+ */
+object TruthTable {
+
+  /**
+   * The largest number of variables supported by truth tables (a truth table
+   * over this many variables takes 2MB).
+   */
+  val MAX_VARIABLES = 24
+
+  // The truth tables of the first six variables within a single word:
+  private val VARIABLE_WORDS = Array(
+    0xAAAAAAAAAAAAAAAAL,
+    0xCCCCCCCCCCCCCCCCL,
+    0xF0F0F0F0F0F0F0F0L,
+    0xFF00FF00FF00FF00L,
+    0xFFFF0000FFFF0000L,
+    0xFFFFFFFF00000000L)
+
+  /**
+   * Returns the truth table of the formula.
+   *
+   * @throws IllegalArgumentException if the formula contains an atom that is
+   *         not in the given variables, a `null` sub-formula, or if there are
+   *         more than [[MAX_VARIABLES]] variables.
+   */
+  def apply[A](formula: Formula[A], variables: IndexedSeq[A]): Array[Long] = {
+    val variablesCount = checkVariablesCount(variables.length)
+    val variableIndices = variables.zipWithIndex.toMap
+    // A sub-formula is pushed once to expand its operands and once more (with
+    // the flag set) to combine their tables, which are on top of `results`:
+    val pending = new mutable.ArrayStack[(Formula[A], Boolean)]
+    val results = new mutable.ArrayStack[Array[Long]]
+    pending.push((formula, false))
+    while (!pending.isEmpty) {
+      pending.pop() match {
+        case (Neg(_), true) =>
+          val table = results.top
+          var i = 0
+          while (i < table.length) {
+            table(i) = ~table(i)
+            i += 1
+          }
+        case (Inf(_, _), true) =>
+          val rhsTable = results.pop()
+          val table = results.top
+          var i = 0
+          while (i < table.length) {
+            table(i) &= rhsTable(i)
+            i += 1
+          }
+        case (Sup(_, _), true) =>
+          val rhsTable = results.pop()
+          val table = results.top
+          var i = 0
+          while (i < table.length) {
+            table(i) |= rhsTable(i)
+            i += 1
+          }
+        case (Atom(atom), _) =>
+          results.push(variable(variableIndices.getOrElse(atom, throw new IllegalArgumentException("The atom '%s' is not among the variables of the truth table.".format(atom))), variablesCount))
+        case (current@Neg(body), _) =>
+          pending.push((current, true))
+          pending.push((body, false))
+        case (current@Inf(lhs, rhs), _) =>
+          pending.push((current, true))
+          pending.push((rhs, false))
+          pending.push((lhs, false))
+        case (current@Sup(lhs, rhs), _) =>
+          pending.push((current, true))
+          pending.push((rhs, false))
+          pending.push((lhs, false))
+        case (other, _) => throw new IllegalArgumentException("Cannot evaluate the formula '%s'.".format(other))
+      }
+    }
+    clearUnusedBits(results.pop(), variablesCount)
+  }
+
+  /**
+   * Returns the truth table that is true in every assignment of the given
+   * number of variables.
+   */
+  def tautology(variablesCount: Int): Array[Long] = {
+    val table = new Array[Long](wordsCount(checkVariablesCount(variablesCount)))
+    java.util.Arrays.fill(table, -1L)
+    clearUnusedBits(table, variablesCount)
+  }
+
+  /**
+   * Returns the truth table of the variable with the given index.
+   */
+  def variable(index: Int, variablesCount: Int): Array[Long] = {
+    if (index < 0 || index >= variablesCount)
+      throw new IllegalArgumentException("There is no variable with the index %d.".format(index))
+    val table = new Array[Long](wordsCount(checkVariablesCount(variablesCount)))
+    if (index < 6) {
+      java.util.Arrays.fill(table, VARIABLE_WORDS(index))
+    } else {
+      // Whole words are either in or out of the variable:
+      var word = 0
+      while (word < table.length) {
+        table(word) = if (((word >>> (index - 6)) & 1) == 0) 0L else -1L
+        word += 1
+      }
+    }
+    clearUnusedBits(table, variablesCount)
+  }
+
+  /**
+   * Calls the visitor with every assignment (mask of true variables) in which
+   * the truth table is true, in ascending order.
+   */
+  def foreachModel(table: Array[Long])(visitor: Long => Unit): Unit = {
+    var word = 0
+    while (word < table.length) {
+      var bits = table(word)
+      while (bits != 0) {
+        visitor((word.toLong << 6) | java.lang.Long.numberOfTrailingZeros(bits))
+        bits &= bits - 1
+      }
+      word += 1
+    }
+  }
+
+  /**
+   * Returns the number of assignments in which the truth table is true.
+   */
+  def modelsCount(table: Array[Long]): Long = {
+    var count = 0L
+    for (word <- table)
+      count += java.lang.Long.bitCount(word)
+    count
+  }
+
+  private def wordsCount(variablesCount: Int): Int = if (variablesCount <= 6) 1 else 1 << (variablesCount - 6)
+
+  private def checkVariablesCount(variablesCount: Int): Int = {
+    if (variablesCount < 0 || variablesCount > MAX_VARIABLES)
+      throw new IllegalArgumentException("Truth tables support at most %d variables (%d were given).".format(MAX_VARIABLES, variablesCount))
+    variablesCount
+  }
+
+  /**
+   * With fewer than six variables, only the lowest `2^n` bits of the single
+   * word are assignments.
+   */
+  private def clearUnusedBits(table: Array[Long], variablesCount: Int): Array[Long] = {
+    if (variablesCount < 6)
+      table(0) &= (1L << (1 << variablesCount)) - 1
+    table
+  }
+}
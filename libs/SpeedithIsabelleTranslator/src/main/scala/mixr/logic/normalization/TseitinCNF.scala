@@ -0,0 +1,160 @@
+package mixr.logic.normalization
+
+import scala.collection.mutable
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * An equisatisfiable conjunctive normal form of a formula (see
+ * [[mixr.logic.normalization.NormalForms.toEquisatisfiableCNF]]).
+ *
+ * Variables are numbered from `1` (as in the DIMACS format): the atoms of the
+ * formula are the variables `1` to `atoms.length`, the remaining variables up
+ * to `variablesCount` are fresh. A clause is an array of literals, where the
+ * literal `v` is the variable `v` and `-v` is its negation.
+ *
+ * The formula is satisfiable iff the clauses are. Moreover, every model of the
+ * clauses is a model of the formula (when restricted to the atoms), and every
+ * model of the formula can be extended to a model of the clauses.
+ *
+ * @param atoms the atoms of the formula (in the order of their variables).
+ * @param variablesCount the number of atoms and fresh variables.
+ * @param clauses the clauses (a conjunction of disjunctions of literals).
+ * @author Matej Urbas
+ */
+class TseitinCNF[A] private(val atoms: IndexedSeq[A], val variablesCount: Int, val clauses: IndexedSeq[Array[Int]]) {
+
+  /**
+   * Returns the variable of the given atom.
+   *
+   * @throws IllegalArgumentException if the atom is not in the formula.
+   */
+  def variableOf(atom: A): Int = {
+    val index = atoms.indexOf(atom)
+    if (index < 0)
+      throw new IllegalArgumentException("The atom '%s' does not appear in the formula.".format(atom))
+    index + 1
+  }
+
+  /**
+   * Indicates whether the variable was introduced by the transformation (i.e.:
+   * it is not an atom of the formula).
+   */
+  def isFresh(variable: Int): Boolean = variable > atoms.length
+
+  /**
+   * Indicates whether the assignment (indexed by variables, index `0` is
+   * ignored) satisfies all the clauses.
+   */
+  def isSatisfiedBy(assignment: Array[Boolean]): Boolean = {
+    clauses.forall(clause => clause.exists(literal => if (literal > 0) assignment(literal) else !assignment(-literal)))
+  }
+}
+
+/**
+ * Converts formulae to equisatisfiable CNFs with the Plaisted–Greenbaum
+ * variant of the Tseitin transformation.
+ *
+ * The formula is first converted to its (shared) negation normal form, where
+ * all sub-formulae occur positively. Each distinct conjunction or disjunction
+ * (after flattening nested ones of the same kind) that is not at the top
+ * level gets a fresh variable `x` and only the clauses for `x → subformula`.
+ * Top-level conjuncts become clauses directly, so a formula that already is in
+ * CNF gets no fresh variables. The result has a size linear in the number of
+ * distinct sub-formulae (unlike [[mixr.logic.normalization.NormalForms.toCNF]],
+ * which preserves equivalence but may grow exponentially).
+ */
+object TseitinCNF {
+
+  /**
+   * Returns an equisatisfiable CNF of the formula.
+   *
+   * @throws IllegalArgumentException if the formula or any of its
+   *         sub-formulae is `null`.
+   */
+  def apply[A](formula: Formula[A]): TseitinCNF[A] = {
+    if (formula == null)
+      throw new IllegalArgumentException("Cannot convert a null formula to CNF.")
+    val atoms = BDD.firstOccurrenceOrder(formula)
+    val builder = new Builder[A](atoms)
+    builder.addRoot(new FormulaFactory[A].toNNF(formula))
+    new TseitinCNF(atoms, builder.variablesCount, builder.clauses)
+  }
+
+  private class Builder[A](atoms: IndexedSeq[A]) {
+
+    private val atomVariables = new mutable.HashMap[A, Int]
+    for (i <- atoms.indices)
+      atomVariables(atoms(i)) = i + 1
+    // The literals of sub-formulae that were encoded already:
+    private val literals = new java.util.IdentityHashMap[Formula[A], Integer]
+
+    var variablesCount = atoms.length
+    val clauses = ArrayBuffer[Array[Int]]()
+
+    def addRoot(nnf: Formula[A]): Unit = {
+      for (conjunct <- flatten(nnf, isConjunction = true))
+        addClause(flatten(conjunct, isConjunction = false).map(literalOf))
+    }
+
+    private def literalOf(nnf: Formula[A]): Int = {
+      val known = literals.get(nnf)
+      if (known != null) {
+        known.intValue
+      } else {
+        val literal = nnf match {
+          case Atom(atom) => atomVariables(atom)
+          case Neg(Atom(atom)) => -atomVariables(atom)
+          case Inf(_, _) =>
+            val x = freshVariable()
+            for (conjunct <- flatten(nnf, isConjunction = true))
+              addClause(Seq(-x, literalOf(conjunct)))
+            x
+          case Sup(_, _) =>
+            val x = freshVariable()
+            addClause(-x +: flatten(nnf, isConjunction = false).map(literalOf))
+            x
+          case _ => throw new IllegalArgumentException("Cannot convert the formula '%s' to CNF.".format(nnf))
+        }
+        literals.put(nnf, literal)
+        literal
+      }
+    }
+
+    private def freshVariable(): Int = {
+      variablesCount += 1
+      variablesCount
+    }
+
+    /**
+     * Adds the clause without duplicate literals, unless it is a tautology.
+     */
+    private def addClause(clauseLiterals: Seq[Int]): Unit = {
+      val distinct = new mutable.LinkedHashSet[Int]
+      distinct ++= clauseLiterals
+      if (!distinct.exists(literal => distinct.contains(-literal)))
+        clauses += distinct.toArray
+    }
+
+    /**
+     * Returns the operands of the maximal chain of conjunctions (or
+     * disjunctions) at the top of the formula, from left to right.
+     */
+    private def flatten(nnf: Formula[A], isConjunction: Boolean): Seq[Formula[A]] = {
+      val operands = ArrayBuffer[Formula[A]]()
+      val pending = new mutable.ArrayStack[Formula[A]]
+      pending.push(nnf)
+      while (!pending.isEmpty) {
+        pending.pop() match {
+          case Inf(lhs, rhs) if isConjunction =>
+            pending.push(rhs)
+            pending.push(lhs)
+          case Sup(lhs, rhs) if !isConjunction =>
+            pending.push(rhs)
+            pending.push(lhs)
+          case operand => operands += operand
+        }
+      }
+      operands
+    }
+  }
+}
@@ -6,10 +6,8 @@ import scala.collection.mutable
 import mixr.isabelle.hol.util.Sets
 import mixr.isabelle.hol.util.Sets._
 import mixr.logic.normalization._
-import mixr.logic.normalization.NormalForms._
 import mixr.logic.normalization.HOLSetConversions._
 import speedith.mixr.isabelle.ShadedZoneTranslator._
-import scala.collection
 import scala.collection.JavaConversions._
 
 
@@ -37,39 +35,14 @@ case class ShadedZoneTranslator(shadingSpecificationTerms: Seq[Term],
   private def extractShadedZones(setSpecTerm: Term): Iterable[Zone] = {
     val setSpecFormula = holSetToBooleanFormula(setSpecTerm)
     assertHOLSetSpecificationIsValid(setSpecFormula)
-    val setSpecDNF = toDNF(setSpecFormula)
-    val disjuncts = extractDistinctDisjuncts(setSpecDNF).map(d => extractDistinctConjuncts(d))
-    val nonContradictoryDisjuncts = disjuncts.filter(disjunct => disjunct.forall {
-      case Neg(s) => !disjunct.contains(s)
-      case _ => true
-    })
-    nonContradictoryDisjuncts.flatMap(toZones)
-  }
-
-  private def toZones(contours: collection.Set[Formula[String]]): Seq[Zone] = {
-    val inContours = contours.collect {
-      case Atom(contour) => contour
-    }
-    val outContours = contours.collect {
-      case Neg(Atom(contour)) => contour
-    }
-    allZones(contourNames, inContours, outContours)
-  }
-
-  private def allZones(allContours: collection.Set[String],
-                       inContours: collection.Set[String],
-                       outContours: collection.Set[String]): Seq[Zone] = {
-    def allZonesImpl(remainingContours: List[String], refinedInContours: List[String], refinedOutContours: List[String]): List[Zone] = {
-      remainingContours match {
-        case Nil =>
-          List(new Zone(refinedInContours, refinedOutContours))
-        case contour :: tailingContours =>
-          allZonesImpl(tailingContours, contour :: refinedInContours, refinedOutContours) :::
-            allZonesImpl(tailingContours, refinedInContours, contour :: refinedOutContours)
-      }
-    }
-    val missingZones = (allContours -- inContours) -- outContours
-    allZonesImpl(missingZones.toList, inContours.toList, outContours.toList)
+    // Every zone (over all contours) in the set is shaded. Contours that appear
+    // only in the shading specification are also taken into account:
+    val contours = new mutable.LinkedHashSet[String]
+    contours ++= contourNames
+    contours ++= BDD.firstOccurrenceOrder(setSpecFormula)
+    val zones = mutable.HashSet[Zone]()
+    ZoneEnumeration.foreachZone(setSpecFormula, contours.toIndexedSeq, (contour: String) => contour)(zones += _)
+    zones
   }
 
   private def assertHOLSetSpecificationIsValid(setSpecFormula: Formula[_]): Unit = {
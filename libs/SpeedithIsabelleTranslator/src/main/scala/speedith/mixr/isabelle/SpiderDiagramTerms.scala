@@ -0,0 +1,112 @@
+package speedith.mixr.isabelle
+
+import isabelle.Term._
+import speedith.core.lang._
+import speedith.core.lang.Operator._
+import mixr.isabelle.pure.lib.TermUtils
+import mixr.isabelle.pure.lib.TermUtils._
+import mixr.isabelle.hol.util.Sets._
+import scala.collection.JavaConversions._
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Translates spider diagrams to Isabelle/HOL terms directly (i.e., without
+ * exporting them to text, which Isabelle would have to parse again).
+ *
+ * The terms have the form that [[Translations]] reads back:
+ *
+ *  - a unitary spider diagram becomes
+ *    `∃s1 ... sn. distinct[s1, ..., sn] ∧ s1 ∈ R1 ∧ ... ∧ sn ∈ Rn ∧ Z1 ⊆ {s1, ..., sn} ∧ ...`,
+ *    where `Ri` are the habitats and `Zi` the shaded zones,
+ *  - compound spider diagrams become the corresponding HOL connectives, and
+ *  - the null spider diagram becomes `True`.
+ *
+ * Contours are free variables of type `'a set`, zones are set expressions such
+ * as `(A ∩ B) - C`, and spiders are of type `'a`. The returned terms are of
+ * type `bool` (they are not wrapped in `Trueprop`).
+ * @author Matej Urbas
+ */
+object SpiderDiagramTerms {
+
+  private val HOL_BOOL_TYPE = Type("HOL.bool", List())
+  private val HOL_BINARY_CONNECTIVE_TYPE = Type("fun", List(HOL_BOOL_TYPE, Type("fun", List(HOL_BOOL_TYPE, HOL_BOOL_TYPE))))
+  private val HOL_CONJUNCTION_CONST = Const(HOL_CONJUNCTION, HOL_BINARY_CONNECTIVE_TYPE)
+  private val HOL_DISJUNCTION_CONST = Const(HOL_DISJUNCTION, HOL_BINARY_CONNECTIVE_TYPE)
+  private val HOL_IMPLICATION_CONST = Const(HOL_IMPLICATION, HOL_BINARY_CONNECTIVE_TYPE)
+  private val HOL_EQUIVALENCE_CONST = Const(HOL_EQUALITY, HOL_BINARY_CONNECTIVE_TYPE)
+  private val HOL_NOT_CONST = Const(HOL_NOT, Type("fun", List(HOL_BOOL_TYPE, HOL_BOOL_TYPE)))
+  private val HOL_TRUE_CONST = Const(HOL_TRUE, HOL_BOOL_TYPE)
+  private val HOL_EXISTENTIAL_CONST = Const(HOL_EXISTENTIAL, Type("fun", List(Type("fun", List(HOL_SET_ELEMENT_TYPE, HOL_BOOL_TYPE)), HOL_BOOL_TYPE)))
+  private val HOL_DISTINCT_CONST = Const("List.distinct", Type("fun", List(Type("List.list", List(HOL_SET_ELEMENT_TYPE)), HOL_BOOL_TYPE)))
+
+  /**
+   * Translates the spider diagram to an Isabelle/HOL term.
+   *
+   * @throws IllegalArgumentException if the spider diagram contains an
+   *         unknown kind of spider diagram, operator, or an empty zone.
+   */
+  def toTerm(sd: SpiderDiagram): Term = {
+    sd match {
+      case psd: PrimarySpiderDiagram => primaryToTerm(psd)
+      case csd: CompoundSpiderDiagram => compoundToTerm(csd)
+      case _: NullSpiderDiagram => HOL_TRUE_CONST
+      case _ => throw new IllegalArgumentException("Cannot translate the spider diagram '%s' to an Isabelle term.".format(sd))
+    }
+  }
+
+  private def compoundToTerm(csd: CompoundSpiderDiagram): Term = {
+    val operands = csd.getOperands.map(toTerm)
+    csd.getOperator match {
+      case Negation => App(HOL_NOT_CONST, operands(0))
+      case Conjunction => binaryToTerm(HOL_CONJUNCTION_CONST, operands)
+      case Disjunction => binaryToTerm(HOL_DISJUNCTION_CONST, operands)
+      case Implication => binaryToTerm(HOL_IMPLICATION_CONST, operands)
+      case Equivalence => binaryToTerm(HOL_EQUIVALENCE_CONST, operands)
+      case operator => throw new IllegalArgumentException("Cannot translate the spider diagram operator '%s' to an Isabelle term.".format(operator))
+    }
+  }
+
+  private def binaryToTerm(connective: Term, operands: Seq[Term]): Term = App(App(connective, operands(0)), operands(1))
+
+  private def primaryToTerm(psd: PrimarySpiderDiagram): Term = {
+    val spiders = nonNull(psd.getSpiders).toIndexedSeq
+    // The innermost quantifier binds the last spider (de Bruijn index 0):
+    val boundSpiders = spiders.indices.map(i => Bound(spiders.length - 1 - i))
+    val conjuncts = ArrayBuffer[Term]()
+    if (spiders.length > 1)
+      conjuncts += App(HOL_DISTINCT_CONST, TermUtils.createList(HOL_SET_ELEMENT_TYPE, boundSpiders))
+    for (i <- spiders.indices)
+      conjuncts += App(App(HOL_SET_MEMBER_CONST, boundSpiders(i)), regionToTerm(psd.getHabitat(spiders(i))))
+    val shadedZones = nonNull(psd.getShadedZones)
+    if (!shadedZones.isEmpty) {
+      val spidersSet = createInsertedSet(boundSpiders)
+      for (zone <- shadedZones)
+        conjuncts += App(App(HOL_SUBSET_CONST, zoneToTerm(zone)), spidersSet)
+    }
+    val body = if (conjuncts.isEmpty) HOL_TRUE_CONST else conjuncts.reduceRight[Term]((conjunct, rest) => App(App(HOL_CONJUNCTION_CONST, conjunct), rest))
+    spiders.foldRight(body)((spider, quantifiedBody) => App(HOL_EXISTENTIAL_CONST, Abs(spider, HOL_SET_ELEMENT_TYPE, quantifiedBody)))
+  }
+
+  private def regionToTerm(region: Region): Term = {
+    val zones = if (region == null) Nil else nonNull(region.getZones).toSeq
+    if (zones.isEmpty) HOL_EMPTY_SET_CONST
+    else zones.map(zoneToTerm).reduceLeft[Term]((lhs, rhs) => App(App(HOL_SET_UNION_CONST, lhs), rhs))
+  }
+
+  private def zoneToTerm(zone: Zone): Term = {
+    val inContours = nonNull(zone.getInContours).toSeq.map(contourToTerm)
+    val outContours = nonNull(zone.getOutContours).toSeq.map(contourToTerm)
+    if (inContours.isEmpty) {
+      if (outContours.isEmpty)
+        throw new IllegalArgumentException("Cannot translate a zone without contours to an Isabelle term.")
+      outContours.map(contour => App(HOL_SET_COMPLEMENT_CONST, contour)).reduceLeft[Term]((lhs, rhs) => App(App(HOL_SET_INTERSECTION_CONST, lhs), rhs))
+    } else {
+      val intersection = inContours.reduceLeft[Term]((lhs, rhs) => App(App(HOL_SET_INTERSECTION_CONST, lhs), rhs))
+      outContours.foldLeft(intersection)((zoneTerm, contour) => App(App(HOL_SET_DIFFERENCE_CONST, zoneTerm), contour))
+    }
+  }
+
+  private def contourToTerm(contour: String): Term = Free(contour, HOL_SET_TYPE)
+
+  private def nonNull[A](set: java.util.Set[A]): java.util.Set[A] = if (set == null) java.util.Collections.emptySet[A]() else set
+}
@@ -8,6 +8,7 @@ import speedith.core.lang.Operator
 import speedith.core.lang.Operator._
 import scala.collection.immutable.HashMap
 import scala.collection.mutable.ArrayBuffer
+import scala.annotation.tailrec
 import scala.collection.mutable
 import mixr.isabelle.pure.lib.TermUtils
 import mixr.logic.normalization._
@@ -17,13 +18,23 @@ import mixr.logic.normalization._
 
 object Translations {
 
+  /**
+   * The habitats of a unitary spider diagram are extracted in parallel only if
+   * the number of spiders times the number of zones is at least this large.
+   */
+  private val PARALLEL_HABITATS_MIN_ZONES = 1 << 12
+
   /**
    * Takes an Isabelle term and tries to translate it to a spider diagram.
    *
    * @throws an exception is thrown if the translation fails for any reason.
    */
   @throws(classOf[ReadingException])
-  def termToSpiderDiagram(t: Term): SpiderDiagram = recognise(t, null)._1
+  def termToSpiderDiagram(t: Term): SpiderDiagram = {
+    // Most terms are not spider diagrams. Reject them before doing any work:
+    if (!isPossiblySpiderDiagram(t)) throw notPossiblySNF(t)
+    recognise(t, null)._1
+  }
 
   /**
    * Takes an Isabelle term and tries to translate it to a spider diagram.
@@ -68,24 +79,33 @@ object Translations {
     }
   }
 
-  private type RecogniserIn = ( /*term:*/ Term, /*spiderType:*/ Typ)
   private type RecogniserOut = (SpiderDiagram, /*spiderType:*/ Typ)
-  private type Recogniser = PartialFunction[RecogniserIn, RecogniserOut]
+  private type Recogniser = ( /*term:*/ Term, /*spiderType:*/ Typ) => RecogniserOut
 
   private val recogniseBinaryHOLOperator: Recogniser = {
-    case (App(App(Const(operator, typ), lhs), rhs), spiderType) if BinaryOperators contains operator =>
+    case (App(App(Const(operator, typ), lhs), rhs), spiderType) =>
       // If this recognises the meta implications, then it will be without
       // quantified spiders. Therefore the LHS and the RHS must be just normal
       // spider diagrams in the SNF form.
       val (lhsSD, spiderType1) = recognise(lhs, spiderType)
       val (rhsSD, spiderType2) = recognise(rhs, spiderType1)
       (SpiderDiagrams.createCompoundSD(operatorsIsaToSD(operator), lhsSD, rhsSD), spiderType2)
+    case (term, _) => throw notSNF(term)
   }
 
   private val recogniseNegation: Recogniser = {
     case (App(Const(HOL_NOT, typ), body), spiderType) =>
       val (negSD, spiderType1) = recognise(body, spiderType)
       (SpiderDiagrams.createCompoundSD(Negation, negSD), spiderType1)
+    case (term, _) => throw notSNF(term)
+  }
+
+  /**
+   * `True` is the null spider diagram (see [[SpiderDiagramTerms.toTerm]]).
+   */
+  private val recogniseTrue: Recogniser = {
+    case (Const(HOL_TRUE, _), spiderType) => (SpiderDiagrams.createNullSD(), spiderType)
+    case (term, _) => throw notSNF(term)
   }
 
   private val recogniseExistential: Recogniser = {
@@ -104,10 +124,12 @@ object Translations {
 
       // Now extract the unitary spider diagram out of the data:
       convertToPSD(spiders, spiderType1, conjuncts)
+    case (term, _) => throw notSNF(term)
   }
 
   private val recogniseTrueprop: Recogniser = {
     case (App(Const(HOL_TRUEPROP, typ), body), spiderType) => recognise(body, spiderType)
+    case (term, _) => throw notSNF(term)
   }
 
   private val recogniseMetaAll: Recogniser = {
@@ -135,17 +157,72 @@ object Translations {
       val (rhsSD, spiderType3) = recognise(conclusion, spiderType2)
 
       (SpiderDiagrams.createCompoundSD(Implication, lhsSD, rhsSD), spiderType3)
+    case (term, _) => throw notSNF(term)
+  }
+
+  /**
+   * The recognisers of SNF terms by the name of their head constant.
+   */
+  private val recognisers = {
+    val table = new java.util.HashMap[String, Recogniser]()
+    table.put(HOL_CONJUNCTION, recogniseBinaryHOLOperator)
+    table.put(HOL_DISJUNCTION, recogniseBinaryHOLOperator)
+    table.put(HOL_IMPLICATION, recogniseBinaryHOLOperator)
+    table.put(HOL_EQUALITY, recogniseBinaryHOLOperator)
+    table.put(ISA_META_IMPLICATION, recogniseBinaryHOLOperator)
+    table.put(ISA_META_ALL, recogniseMetaAll)
+    table.put(HOL_TRUEPROP, recogniseTrueprop)
+    table.put(HOL_EXISTENTIAL, recogniseExistential)
+    table.put(HOL_NOT, recogniseNegation)
+    table.put(HOL_TRUE, recogniseTrue)
+    table
+  }
+
+  private def recognise(term: Term, spiderType: Typ): RecogniserOut = {
+    val head = headConstant(term)
+    val recogniser = if (head == null) null else recognisers.get(head)
+    if (recogniser == null) throw notSNF(term)
+    recogniser(term, spiderType)
+  }
+
+  /**
+   * Indicates whether the term could be a spider diagram in SNF. This is a
+   * cheap check of the connectives at the top of the term (it allocates
+   * nothing and looks only at the outermost connectives down to quantifiers).
+   * If it returns `false`, then [[termToSpiderDiagram]] certainly fails.
+   */
+  def isPossiblySpiderDiagram(term: Term): Boolean = {
+    term match {
+      case App(App(Const(operator, _), lhs), rhs) if BinaryOperators contains operator =>
+        isPossiblySpiderDiagram(lhs) && isPossiblySpiderDiagram(rhs)
+      case App(Const(HOL_NOT, _), body) => isPossiblySpiderDiagram(body)
+      case App(Const(HOL_TRUEPROP, _), body) => isPossiblySpiderDiagram(body)
+      case App(Const(HOL_EXISTENTIAL, _), Abs(_, _, _)) => true
+      case App(Const(ISA_META_ALL, _), Abs(_, _, _)) => true
+      case Const(HOL_TRUE, _) => true
+      case _ => false
+    }
+  }
+
+  @tailrec
+  private def headConstant(term: Term): String = {
+    term match {
+      case App(fun, _) => headConstant(fun)
+      case Const(name, _) => name
+      case _ => null
+    }
   }
 
-  private val recognise: Recogniser = {
-    case x => (recogniseBinaryHOLOperator
-      orElse recogniseMetaAll
-      orElse recogniseTrueprop
-      orElse recogniseExistential
-      orElse recogniseNegation
-      orElse {
-      case _ => throw new ReadingException("Not an SNF formula. Found an unknown term '%s'.".format(x))
-    }: Recogniser)(x)
+  private def notSNF(term: Term): ReadingException = new ReadingException("Not an SNF formula. Found an unknown term '%s'.".format(term))
+
+  /**
+   * The exception for terms that [[isPossiblySpiderDiagram]] rejects. Most
+   * terms are rejected, so this names only the head constant of the term and
+   * does not format the whole (possibly very large) term.
+   */
+  private def notPossiblySNF(term: Term): ReadingException = {
+    val head = headConstant(term)
+    new ReadingException(if (head == null) "Not an SNF formula." else "Not an SNF formula. Found a term with the head constant '%s'.".format(head))
   }
 
   private val BinaryOperators = Set(HOL_CONJUNCTION, HOL_DISJUNCTION, HOL_IMPLICATION, HOL_EQUALITY, ISA_META_IMPLICATION)
@@ -160,7 +237,7 @@ object Translations {
       return null
     var typ: Typ = null
     var sds: SpiderDiagram = null
-    for (i <- (conjuncts.length - 1) to 0 by -1) {
+    for (i <- (conjuncts.length - 1) to 0 by -1 if isPossiblySpiderDiagram(conjuncts(i))) {
       try {
         val (sd, typTmp) = recognise(conjuncts(i), typ)
         typ = typTmp
@@ -199,7 +276,7 @@ object Translations {
     }
   }
 
-  private def operatorsIsaToSD = HashMap(
+  private val operatorsIsaToSD = HashMap(
     HOL_CONJUNCTION -> Conjunction,
     HOL_DISJUNCTION -> Disjunction,
     HOL_IMPLICATION -> Implication,
@@ -208,12 +285,18 @@ object Translations {
     HOL_NOT -> Negation)
 
   private def extractConjuncts(term: Term, conjuncts: mutable.Buffer[Term]): Unit = {
-    term match {
-      case App(App(Const(HOL_CONJUNCTION, _), lhs), rhs) =>
-        extractConjuncts(lhs, conjuncts)
-        extractConjuncts(rhs, conjuncts)
-      case App(Const(HOL_TRUEPROP, typ), body) => extractConjuncts(body, conjuncts)
-      case x => conjuncts += x
+    // An explicit stack keeps long conjunction chains off the call stack. The
+    // right-hand side is pushed first so that conjuncts come out left to right.
+    val pending = new mutable.ArrayStack[Term]
+    pending.push(term)
+    while (!pending.isEmpty) {
+      pending.pop() match {
+        case App(App(Const(HOL_CONJUNCTION, _), lhs), rhs) =>
+          pending.push(rhs)
+          pending.push(lhs)
+        case App(Const(HOL_TRUEPROP, typ), body) => pending.push(body)
+        case x => conjuncts += x
+      }
     }
   }
 
@@ -325,29 +408,6 @@ object Translations {
    */
   private def getSpiderWithBoundIndex(boundIndex: Int, spiders: IndexedSeq[Free]): Free = spiders(spiders.length - 1 - boundIndex)
 
-  private def addSubsetsFromTo[A](fromSet: Seq[A], mustContain: mutable.HashSet[A], toSet: mutable.HashSet[mutable.HashSet[A]], out: mutable.HashSet[A] = mutable.HashSet[A](), startIndex: Int = 0): Unit = {
-    var i = startIndex
-    toSet += mustContain ++ out
-    while (i < fromSet.length) {
-      out += fromSet(i)
-      addSubsetsFromTo(fromSet, mustContain, toSet, out, i + 1)
-      out -= fromSet(i)
-      i = i + 1
-    }
-  }
-
-  private def fromInZonesToSDRegion(inZones: mutable.HashSet[mutable.HashSet[Free]], contours: mutable.HashSet[Free]): Region = {
-    val zones = new java.util.TreeSet[Zone]()
-    for (z <- inZones) {
-      val inContours = new java.util.TreeSet[String]()
-      val outContours = new java.util.TreeSet[String]()
-      z.foreach(contour => inContours.add(contour.name))
-      contours.foreach(contour => if (!z.contains(contour)) outContours.add(contour.name))
-      zones.add(new Zone(inContours, outContours))
-    }
-    new Region(zones)
-  }
-
   private def habitatSpecificationTermToFormula(spiderIndex: Int, term: Term): Formula[Free] = {
     term match {
       case App(App(Const(HOL_CONJUNCTION, _), lhs), rhs) =>
@@ -386,55 +446,35 @@ object Translations {
   }
 
   private def extractHabitats(conjuncts: mutable.Buffer[Term], spiders: IndexedSeq[Free], contours: mutable.HashSet[Free], spiderType: Typ, habitats: java.util.HashMap[String, Region] = new java.util.HashMap()): (java.util.HashMap[String, Region], Typ) = {
-    // For each spider, find all the terms that talk about its set membership:
-    for (spiderIndex <- 0 to spiders.length - 1) {
-      // This set will contain all zones of this spider's habitat:
-      val inZones = new mutable.HashSet[mutable.HashSet[Free]]()
-      // First fetch all the 'habitat-specifying' terms for this spider and
-      // convert them into a 'set-lattice' formula, which we will normalise:
-      val habitatTerms = isaHabitatSpecifiersToFormula(spiderIndex, conjuncts)
-      // If there are no habitat-specifying terms, then the spider can live anywhere:
-      if (habitatTerms == null) {
-        addSubsetsFromTo(contours.toSeq, mutable.HashSet.empty, inZones)
-      } else {
-        // There are some habitat-specifying terms. Calculate the disjunctive
-        // normal form of the habitat-specifying formula (this makes it then
-        // easy to find all zones of the habitat):
-        val disjuncts = extractDistinctDisjuncts(toDNF(habitatTerms)).map(d => extractDistinctConjuncts(d))
-        // Remove all self-contradicting disjuncts:
-        disjuncts.retain(d => d.forall {
-          case Neg(s) => !d.contains(s)
-          case _ => true
-        })
-
-        // A disjunct may not be fully specified (which means that in each clause
-        // some contours might be missing). In this case, we have to calculate
-        // for each clause all its fully-specified zones that are its subsets:
-        for (d <- disjuncts) {
-          // We calculate the fully-specified zones in the following way:
-          //	-	if 'specified' contains all contours that are mentioned in the clause 'd',
-          //		'positive' is the set of all positive contour literals in
-          //		'd', and 'other' are all contours not mentioned in 'd',
-          //		then '{x in P(other) | positive union x}' is the set of all
-          //		sub zones of the region specified in clause 'd':
-          val positive = d.collect {
-            case Atom(s) => s
-          }
-          val specified = d.map {
-            case Atom(s) => s
-            case Neg(Atom(s)) => s
-            case _ => throw new RuntimeException("Found an unknown term in a set which should contain only contour literals.")
-          }
-          val other = contours.filter(a => !specified.contains(a))
-          addSubsetsFromTo(other.toBuffer, positive, inZones)
-        }
-      }
-      //println("Habitat of spider %s: %s".format(getSpiderWithBoundIndex(spiderIndex, spiders).name, inZones.map(a => a.map(b => b.name))));
-      habitats.put(getSpiderWithBoundIndex(spiderIndex, spiders).name, fromInZonesToSDRegion(inZones, contours))
+    // First fetch all the 'habitat-specifying' terms of each spider and
+    // convert them into a 'set-lattice' formula. This removes the terms from
+    // the shared list of conjuncts, so it is done sequentially. If there are no
+    // habitat-specifying terms, then the spider can live anywhere (i.e.: the
+    // formula is `null`):
+    val habitatFormulae = (0 until spiders.length).map(spiderIndex => isaHabitatSpecifiersToFormula(spiderIndex, conjuncts))
+    // Contours are numbered once for all spiders (they are the bits of zone
+    // masks):
+    val orderedContours = contours.toIndexedSeq
+    // The habitats are independent of each other. Enumerating their zones is
+    // spread over the fork/join pool of parallel collections, but only if
+    // there is enough work to pay for it:
+    val regions = if (spiders.length > 1 && (spiders.length.toLong << math.min(orderedContours.length, 62)) >= PARALLEL_HABITATS_MIN_ZONES) {
+      habitatFormulae.par.map(formula => habitatToRegion(formula, orderedContours)).seq
+    } else {
+      habitatFormulae.map(formula => habitatToRegion(formula, orderedContours))
     }
+    for (spiderIndex <- 0 to spiders.length - 1)
+      habitats.put(getSpiderWithBoundIndex(spiderIndex, spiders).name, regions(spiderIndex))
     (habitats, spiderType)
   }
 
+  private def habitatToRegion(habitatFormula: Formula[Free], contours: IndexedSeq[Free]): Region = {
+    // This set will contain all zones of this spider's habitat:
+    val zones = new java.util.TreeSet[Zone]()
+    ZoneEnumeration.foreachZone(habitatFormula, contours, (contour: Free) => contour.name)(zones.add(_))
+    new Region(zones)
+  }
+
   private def convertToPSD(spiders: IndexedSeq[Free], spiderType: Typ, conjuncts: mutable.Buffer[Term]): (PrimarySpiderDiagram, Typ) = {
     checkSpiderInequalities(spiders, conjuncts)
 
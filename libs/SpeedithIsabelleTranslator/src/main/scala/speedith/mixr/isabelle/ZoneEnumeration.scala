@@ -0,0 +1,65 @@
+package speedith.mixr.isabelle
+
+import speedith.core.lang.Zone
+import mixr.logic.normalization._
+
+/**
+ * Enumerates the zones of regions that are given as set formulae over
+ * contours.
+ *
+ * Contours are bit positions and zones are masks of the contours they are in.
+ * The region is evaluated bit-parallel as a [[mixr.logic.normalization.TruthTable]]
+ * (64 zones per word) and Speedith's [[speedith.core.lang.Zone]] objects are
+ * created only for the zones in the region.
+ *
+ * With more than [[mixr.logic.normalization.TruthTable.MAX_VARIABLES]]
+ * contours, the zones are enumerated from the region's [[mixr.logic.normalization.BDD]]
+ * instead.
+ *
+ * @author Matej Urbas
+ */
+private[isabelle] object ZoneEnumeration {
+
+  /**
+   * Calls the visitor with every zone (over all the given contours) in the
+   * region.
+   *
+   * @param region the set formula of the region. If `null`, the region
+   *               contains all zones.
+   * @param contours all contours of the diagram.
+   * @param contourName returns the name of a contour.
+   * @throws IllegalArgumentException if the region contains a contour that is
+   *         not among the given contours.
+   */
+  def foreachZone[A](region: Formula[A], contours: IndexedSeq[A], contourName: A => String)(visitor: Zone => Unit): Unit = {
+    val names = contours.map(contourName).toArray
+    if (contours.length <= TruthTable.MAX_VARIABLES) {
+      val table = if (region == null) TruthTable.tautology(contours.length) else TruthTable(region, contours)
+      TruthTable.foreachModel(table)(mask => visitor(toZone(names, mask)))
+    } else {
+      val bdd = new BDD(contours)
+      val regionBDD = if (region == null) BDD.True else bdd.fromFormula(region)
+      bdd.foreachSatisfyingAssignment(regionBDD)(assignment => visitor(toZone(names, assignment)))
+    }
+  }
+
+  private def toZone(names: Array[String], mask: Long): Zone = {
+    val inContours = new java.util.ArrayList[String]()
+    val outContours = new java.util.ArrayList[String]()
+    var i = 0
+    while (i < names.length) {
+      if ((mask & (1L << i)) != 0) inContours.add(names(i)) else outContours.add(names(i))
+      i += 1
+    }
+    new Zone(inContours, outContours)
+  }
+
+  private def toZone(names: Array[String], assignment: Array[Boolean]): Zone = {
+    val inContours = new java.util.ArrayList[String]()
+    val outContours = new java.util.ArrayList[String]()
+    for (i <- 0 until names.length) {
+      if (assignment(i)) inContours.add(names(i)) else outContours.add(names(i))
+    }
+    new Zone(inContours, outContours)
+  }
+}
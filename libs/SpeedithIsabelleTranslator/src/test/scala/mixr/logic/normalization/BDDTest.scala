@@ -0,0 +1,130 @@
+package mixr.logic.normalization
+
+import org.junit.Test
+import mixr.logic.normalization.Formula._
+import org.junit.Assert._
+import scala.collection.mutable
+import BDDTest._
+
+class BDDTest {
+
+  @Test
+  def equivalent_formulae_must_have_the_same_node(): Unit = {
+    val bdd = new BDD(IndexedSeq('A, 'B, 'C))
+    assertEquals(bdd.fromFormula(!('A & 'B) | 'C), bdd.fromFormula(!'A | !'B | 'C))
+    assertEquals(bdd.fromFormula('A & ('B | 'C)), bdd.fromFormula(('A & 'B) | ('C & 'A)))
+  }
+
+  @Test
+  def contradictions_and_tautologies_must_be_terminals(): Unit = {
+    val bdd = new BDD(IndexedSeq('A, 'B))
+    assertEquals(BDD.False, bdd.fromFormula('A & !'A & 'B))
+    assertEquals(BDD.True, bdd.fromFormula('A | !'A | 'B))
+  }
+
+  @Test
+  def satCount_must_count_assignments_of_all_variables(): Unit = {
+    val bdd = new BDD(IndexedSeq('A, 'B, 'C, 'D))
+    assertEquals(BigInt(8), bdd.satCount(bdd.fromFormula('C)))
+    assertEquals(BigInt(12), bdd.satCount(bdd.fromFormula('A | 'D)))
+    assertEquals(BigInt(16), bdd.satCount(BDD.True))
+    assertEquals(BigInt(0), bdd.satCount(BDD.False))
+  }
+
+  @Test
+  def foreachSatisfyingAssignment_must_return_exactly_the_models_of_the_formula(): Unit = {
+    val formula = 'A & !(('B | 'C) & 'D)
+    val variables = IndexedSeq('A, 'B, 'C, 'D, 'E)
+    val bdd = new BDD(variables)
+    val models = satisfyingAssignments(bdd, bdd.fromFormula(formula))
+    val expected = allAssignments(variables.length).filter(assignment => evaluate(formula, variables, assignment)).toSet
+    assertEquals(expected, models.toSet)
+    assertEquals(expected.size, models.size)
+  }
+
+  @Test
+  def foreachSatisfyingAssignment_must_handle_many_variables(): Unit = {
+    val variables = (0 until 40).map(i => "C" + i)
+    val formula = variables.map(Atom(_): Formula[String]).reduceLeft(_ | _)
+    val bdd = new BDD(variables)
+    val node = bdd.fromFormula(formula)
+    assertEquals(BigInt(2).pow(40) - 1, bdd.satCount(node))
+    assertEquals(variables.length + 2, reachableNodesCount(bdd, node))
+  }
+
+  @Test
+  def fromFormula_must_handle_deeply_nested_formulae(): Unit = {
+    // A left-nested chain of operators, which would overflow the call stack if
+    // the formula were traversed recursively:
+    val formula = (1 to 100000).foldLeft[Formula[Symbol]]('A)((f, i) => if (i % 2 == 0) f & Atom('B) else f | Atom('B))
+    val bdd = new BDD(IndexedSeq('A, 'B))
+    assertEquals(bdd.variableOf('B), bdd.fromFormula(formula))
+  }
+
+  @Test
+  def the_size_of_the_operation_cache_must_not_change_the_results(): Unit = {
+    val formula = (0 until 12).map(i => Atom("A" + i) & !Atom("B" + i)).reduceLeft[Formula[String]](_ | _)
+    val variables = BDD.firstOccurrenceOrder(formula)
+    val smallCache = new BDD(variables, 1)
+    val largeCache = new BDD(variables, BDD.MAX_OPERATION_CACHE_CAPACITY)
+    assertEquals(smallCache.satCount(smallCache.fromFormula(formula)), largeCache.satCount(largeCache.fromFormula(formula)))
+    assertEquals(smallCache.nodesCount, largeCache.nodesCount)
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def fromFormula_must_reject_unknown_atoms(): Unit = {
+    new BDD(IndexedSeq('A)).fromFormula('A & 'B)
+  }
+
+  @Test
+  def apply_must_order_formula_atoms_before_additional_variables(): Unit = {
+    val (bdd, node) = BDD('B & ('A | !'B), List('C, 'A))
+    assertEquals(IndexedSeq('B, 'A, 'C), bdd.variables)
+    assertEquals(BigInt(2), bdd.satCount(node))
+  }
+
+  @Test
+  def occurrenceCountOrder_must_put_the_most_frequent_atoms_first(): Unit = {
+    assertEquals(IndexedSeq('C, 'A, 'B), BDD.occurrenceCountOrder('A & 'B | 'C & !'C | 'C & 'A))
+  }
+}
+
+object BDDTest {
+
+  /**
+   * Returns the number of nodes (including the terminals) reachable from the
+   * given node.
+   */
+  def reachableNodesCount[A](bdd: BDD[A], node: Int): Int = {
+    val visited = new mutable.HashSet[Int]
+    val pending = new mutable.ArrayStack[Int]
+    pending.push(node)
+    while (!pending.isEmpty) {
+      val current = pending.pop()
+      if (visited.add(current) && current != BDD.False && current != BDD.True) {
+        pending.push(bdd.high(current))
+        pending.push(bdd.low(current))
+      }
+    }
+    visited.size
+  }
+
+  def satisfyingAssignments[A](bdd: BDD[A], node: Int): Seq[List[Boolean]] = {
+    val models = mutable.ArrayBuffer[List[Boolean]]()
+    bdd.foreachSatisfyingAssignment(node)(assignment => models += assignment.toList)
+    models
+  }
+
+  def allAssignments(variablesCount: Int): Seq[List[Boolean]] = {
+    (0 until (1 << variablesCount)).map(bits => (0 until variablesCount).map(i => (bits & (1 << i)) != 0).toList)
+  }
+
+  def evaluate[A](formula: Formula[A], variables: IndexedSeq[A], assignment: List[Boolean]): Boolean = {
+    formula match {
+      case Atom(atom) => assignment(variables.indexOf(atom))
+      case Neg(body) => !evaluate(body, variables, assignment)
+      case Inf(lhs, rhs) => evaluate(lhs, variables, assignment) && evaluate(rhs, variables, assignment)
+      case Sup(lhs, rhs) => evaluate(lhs, variables, assignment) || evaluate(rhs, variables, assignment)
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package mixr.logic.normalization
+
+import org.junit.Test
+import mixr.logic.normalization.Formula._
+import org.junit.Assert._
+import FormulaFactoryTest._
+
+class FormulaFactoryTest {
+
+  @Test
+  def intern_must_return_the_same_object_for_equal_formulae(): Unit = {
+    val factory = new FormulaFactory[Symbol]
+    val a = factory.intern(('A & !'B) | 'C)
+    val b = factory.intern(('A & !'B) | 'C)
+    assertSame(a, b)
+    assertSame(a, factory.sup(factory.inf(factory.atom('A), factory.neg(factory.atom('B))), factory.atom('C)))
+    assertEquals(6, factory.nodesCount)
+  }
+
+  @Test
+  def intern_must_share_equal_sub_formulae(): Unit = {
+    val factory = new FormulaFactory[Symbol]
+    val Sup(lhs, rhs) = factory.intern(('A & 'B) | ('A & 'B))
+    assertSame(lhs, rhs)
+  }
+
+  @Test
+  def normal_forms_must_be_the_same_as_the_ones_of_NormalForms(): Unit = {
+    val formula = !(('A | !'B) & ('C | ('D & !'A))) | ('B & 'C)
+    val factory = new FormulaFactory[Symbol]
+    assertEquals(NormalForms.toNNF(formula), factory.toNNF(formula))
+    assertEquals(NormalForms.toCNF(formula), factory.toCNF(formula))
+    assertEquals(NormalForms.toDNF(formula), factory.toDNF(formula))
+  }
+
+  @Test
+  def conversions_must_be_bounded_by_the_number_of_distinct_sub_formulae(): Unit = {
+    // The tree of this formula has 2^60 leaves, but only 62 distinct sub-formulae:
+    val formula = !(1 to 60).foldLeft[Formula[Symbol]]('A)((f, _) => f & f)
+    val factory = new FormulaFactory[Symbol]
+    val nnf = factory.toNNF(formula)
+    // Sixty disjunctions on the left-most path, then the negated atom:
+    assertEquals(62, depth(nnf))
+    assertTrue(factory.nodesCount < 200)
+  }
+
+  @Test
+  def hashCode_must_be_equal_for_equal_formulae(): Unit = {
+    assertEquals((('A & !'B) | 'C).hashCode, (('A & !'B) | 'C).hashCode)
+    assertFalse((('A & 'B) | 'C) == (('A | 'B) & 'C))
+  }
+}
+
+object FormulaFactoryTest {
+
+  /**
+   * Returns the depth of the formula along its left-most path.
+   */
+  def depth(formula: Formula[_]): Int = {
+    formula match {
+      case Inf(lhs, _) => 1 + depth(lhs)
+      case Sup(lhs, _) => 1 + depth(lhs)
+      case Neg(body) => 1 + depth(body)
+      case _ => 1
+    }
+  }
+}
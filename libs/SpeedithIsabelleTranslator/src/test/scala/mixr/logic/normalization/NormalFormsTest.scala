@@ -171,6 +171,53 @@ class NormalFormsTest {
     )
   }
 
+  @Test
+  def conversion_to_minimal_DNF_should_remove_subsumed_and_contradictory_disjuncts(): Unit = {
+    applyMinimalDNFAndAssert(
+      ('A & 'B) | ('A & 'B & 'C) | ('C & !'C),
+      'A & 'B
+    )
+  }
+
+  @Test
+  def conversion_to_minimal_DNF_should_merge_complementary_disjuncts(): Unit = {
+    applyMinimalDNFAndAssert(
+      ('A & 'B) | ('A & !'B),
+      'A
+    )
+  }
+
+  @Test
+  def conversion_to_minimal_DNF_should_remove_redundant_disjuncts(): Unit = {
+    applyMinimalDNFAndAssert(
+      ('A & 'B) | (!'A & 'C) | ('B & 'C),
+      ('A & 'B) | (!'A & 'C)
+    )
+  }
+
+  @Test
+  def conversion_to_minimal_DNF_should_handle_contradictions_and_tautologies(): Unit = {
+    applyMinimalDNFAndAssert('A & 'B & !'A, 'A & !'A)
+    applyMinimalDNFAndAssert('B | 'A | !'B, 'B | !'B)
+  }
+
+  @Test
+  def conversion_to_minimal_DNF_should_produce_an_equivalent_formula(): Unit = {
+    val formula = !(('A | !'B) & ('C | ('D & !'A))) | ('B & 'C)
+    val variables = IndexedSeq('A, 'B, 'C, 'D)
+    assertArrayEquals(TruthTable(formula, variables), TruthTable(toMinimalDNF(formula), variables))
+  }
+
+  @Test
+  def conversion_to_minimal_DNF_should_absorb_disjuncts_of_formulae_with_many_atoms(): Unit = {
+    val atoms = (0 to 11).map(i => Atom("C" + i): Formula[String])
+    val formula = (atoms(0) & atoms(1)) | (atoms(0) & atoms(1) & atoms(2)) | (atoms(3) & !atoms(3)) | atoms.drop(4).reduceLeft(_ & _)
+    assertEquals(
+      Seq(Seq(atoms(0), atoms(1)), atoms.drop(4)),
+      extractMinimalDisjuncts(formula)
+    )
+  }
+
   private def applyNNFAndAssert(initialFormula: Formula[Symbol], expectedFormula: Formula[Symbol]) {
     assertThat(
       toNNF(initialFormula),
@@ -191,4 +238,11 @@ class NormalFormsTest {
       equalTo(expectedFormula)
     )
   }
+
+  private def applyMinimalDNFAndAssert(initialFormula: Formula[Symbol], expectedFormula: Formula[Symbol]) {
+    assertThat(
+      toMinimalDNF(initialFormula),
+      equalTo(expectedFormula)
+    )
+  }
 }
@@ -0,0 +1,80 @@
+package mixr.logic.normalization
+
+import org.junit.Test
+import mixr.logic.normalization.Formula._
+import org.junit.Assert._
+import scala.collection.mutable
+import BDDTest._
+import TruthTableTest._
+
+class TruthTableTest {
+
+  @Test
+  def apply_must_be_true_exactly_in_the_models_of_the_formula(): Unit = {
+    val formula = 'A & !(('B | 'C) & 'D)
+    val variables = IndexedSeq('A, 'B, 'C, 'D, 'E)
+    val expected = allAssignments(variables.length).filter(assignment => evaluate(formula, variables, assignment))
+    assertEquals(expected, models(TruthTable(formula, variables), variables.length))
+  }
+
+  @Test
+  def apply_must_agree_with_the_BDD_on_many_variables(): Unit = {
+    val variables = (0 until 12).map(i => "C" + i)
+    val formula = variables.grouped(3).map(group => Atom(group(0)) & !Atom(group(1)) | Atom(group(2))).reduceLeft(_ & _)
+    val table = TruthTable(formula, variables)
+    val bdd = new BDD(variables)
+    val bddModels = mutable.ArrayBuffer[Long]()
+    bdd.foreachSatisfyingAssignment(bdd.fromFormula(formula))(assignment => bddModels += toMask(assignment))
+    val tableModels = mutable.ArrayBuffer[Long]()
+    TruthTable.foreachModel(table)(tableModels += _)
+    assertEquals(bddModels.sorted, tableModels)
+    assertEquals(bdd.satCount(bdd.fromFormula(formula)), BigInt(TruthTable.modelsCount(table)))
+  }
+
+  @Test
+  def apply_must_handle_deeply_nested_formulae(): Unit = {
+    // A left-nested chain of operators, which would overflow the call stack if
+    // the formula were evaluated recursively:
+    val formula = (1 to 100000).foldLeft[Formula[Symbol]]('A)((f, i) => if (i % 2 == 0) f & Atom('B) else f | Atom('B))
+    val variables = IndexedSeq('A, 'B)
+    assertEquals(models(TruthTable('B, variables), variables.length), models(TruthTable(formula, variables), variables.length))
+  }
+
+  @Test
+  def tautology_must_contain_all_assignments(): Unit = {
+    assertEquals(1L, TruthTable.modelsCount(TruthTable.tautology(0)))
+    assertEquals(8L, TruthTable.modelsCount(TruthTable.tautology(3)))
+    assertEquals(1L << 14, TruthTable.modelsCount(TruthTable.tautology(14)))
+  }
+
+  @Test
+  def negations_must_not_produce_assignments_of_missing_variables(): Unit = {
+    assertEquals(List(0L, 1L), models(TruthTable(!'B, IndexedSeq('A, 'B)), 2).map(toMask))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def apply_must_reject_unknown_atoms(): Unit = {
+    TruthTable('A & 'B, IndexedSeq('A))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def apply_must_reject_too_many_variables(): Unit = {
+    TruthTable.tautology(TruthTable.MAX_VARIABLES + 1)
+  }
+}
+
+object TruthTableTest {
+
+  def models(table: Array[Long], variablesCount: Int): Seq[List[Boolean]] = {
+    val result = mutable.ArrayBuffer[List[Boolean]]()
+    TruthTable.foreachModel(table)(mask => result += (0 until variablesCount).map(i => (mask & (1L << i)) != 0).toList)
+    result
+  }
+
+  def toMask(assignment: Seq[Boolean]): Long = {
+    var mask = 0L
+    for (i <- assignment.indices if assignment(i))
+      mask |= 1L << i
+    mask
+  }
+}
@@ -0,0 +1,63 @@
+package mixr.logic.normalization
+
+import org.junit.Test
+import mixr.logic.normalization.Formula._
+import org.junit.Assert._
+import BDDTest._
+import TseitinCNFTest._
+
+class TseitinCNFTest {
+
+  @Test
+  def a_formula_in_CNF_must_not_get_fresh_variables(): Unit = {
+    val cnf = TseitinCNF(('A | 'B) & (!'A | 'C))
+    assertEquals(3, cnf.variablesCount)
+    assertEquals(List(List(1, 2), List(-1, 3)), cnf.clauses.map(_.toList).toList)
+  }
+
+  @Test
+  def models_of_the_clauses_must_be_exactly_the_extended_models_of_the_formula(): Unit = {
+    val formula = !(('A | !'B) & ('C | ('D & !'A))) | ('B & 'C)
+    val cnf = TseitinCNF(formula)
+    for (atomsAssignment <- allAssignments(cnf.atoms.length)) {
+      assertEquals(
+        evaluate(formula, cnf.atoms, atomsAssignment),
+        hasSatisfyingExtension(cnf, atomsAssignment)
+      )
+    }
+  }
+
+  @Test
+  def a_contradiction_must_have_unsatisfiable_clauses(): Unit = {
+    val cnf = TseitinCNF(('A | 'B) & !'A & !'B)
+    assertFalse(allAssignments(cnf.atoms.length).exists(hasSatisfyingExtension(cnf, _)))
+  }
+
+  @Test
+  def the_size_of_alternating_formulae_must_stay_linear(): Unit = {
+    // The equivalent CNF of this formula has 2^30 clauses:
+    val formula = (1 to 30).map(i => Atom("A" + i) & Atom("B" + i)).reduceLeft[Formula[String]](_ | _)
+    val cnf = NormalForms.toEquisatisfiableCNF(formula)
+    assertEquals(90, cnf.variablesCount)
+    assertEquals(61, cnf.clauses.length)
+    assertTrue(cnf.isFresh(61))
+    assertFalse(cnf.isFresh(cnf.variableOf("B30")))
+  }
+
+  @Test(expected = classOf[IllegalArgumentException])
+  def null_sub_formulae_must_be_rejected(): Unit = {
+    TseitinCNF(Inf(Atom('A), null))
+  }
+}
+
+object TseitinCNFTest {
+
+  /**
+   * Indicates whether some assignment of the fresh variables satisfies the
+   * clauses together with the given assignment of the atoms.
+   */
+  def hasSatisfyingExtension(cnf: TseitinCNF[_], atomsAssignment: List[Boolean]): Boolean = {
+    val freshCount = cnf.variablesCount - cnf.atoms.length
+    allAssignments(freshCount).exists(freshAssignment => cnf.isSatisfiedBy((false :: atomsAssignment ::: freshAssignment).toArray))
+  }
+}
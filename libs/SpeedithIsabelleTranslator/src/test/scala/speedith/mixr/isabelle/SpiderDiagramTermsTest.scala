@@ -0,0 +1,62 @@
+package speedith.mixr.isabelle
+
+import org.junit.Test
+import isabelle.Term._
+import org.junit.Assert.assertEquals
+import speedith.core.lang._
+import mixr.isabelle.hol.util.Sets._
+import mixr.isabelle.pure.lib.TermUtils
+import scala.collection.JavaConversions._
+import TranslationsTest._
+import SpiderDiagramTermsTest._
+
+class SpiderDiagramTermsTest {
+
+  @Test
+  def toTerm_must_translate_a_unitary_spider_diagram_with_one_spider(): Unit = {
+    val sd = SpiderDiagrams.createPrimarySD(List("s"), Map("s" -> region(Zone.fromInContours("A").withOutContours("B"))), null, null)
+    val expected = App(Const(TermUtils.HOL_EXISTENTIAL, EX_TYPE), Abs("s", HOL_SET_ELEMENT_TYPE,
+      App(App(HOL_SET_MEMBER_CONST, Bound(0)), App(App(HOL_SET_DIFFERENCE_CONST, contour("A")), contour("B")))))
+    assertEquals(expected, SpiderDiagramTerms.toTerm(sd))
+  }
+
+  @Test
+  def toTerm_must_translate_the_null_spider_diagram_to_true(): Unit = {
+    assertEquals(Const(TermUtils.HOL_TRUE, BOOL_TYPE), SpiderDiagramTerms.toTerm(SpiderDiagrams.createNullSD()))
+  }
+
+  @Test
+  def toTerm_must_produce_terms_that_translate_back_to_the_null_spider_diagram(): Unit = {
+    val nullSD = SpiderDiagrams.createNullSD()
+    assertEquals(nullSD, Translations.termToSpiderDiagram(SpiderDiagramTerms.toTerm(nullSD)))
+    val sd = SpiderDiagrams.createPrimarySD(List("s"), Map("s" -> region(Zone.fromInContours("A"))), null, null)
+    val implication = SpiderDiagrams.createCompoundSD(Operator.Implication, sd, nullSD)
+    assertEquals(implication, Translations.termToSpiderDiagram(SpiderDiagramTerms.toTerm(implication)))
+  }
+
+  @Test
+  def toTerm_must_produce_terms_that_translate_back_to_the_same_spider_diagram(): Unit = {
+    val spiderDiagram = translateSpiderDiagramFromIsaTerm(YXML_FILE_SPIDER_DIAGRAM_AB_WITH_SPIDERS)
+    assertEquals(spiderDiagram, Translations.termToSpiderDiagram(SpiderDiagramTerms.toTerm(spiderDiagram)))
+  }
+
+  @Test
+  def toTerm_must_produce_terms_with_shaded_zones_that_translate_back_to_the_same_spider_diagram(): Unit = {
+    val habitats = Map(
+      "s1" -> region(Zone.fromInContours("A", "B")),
+      "s2" -> region(Zone.fromInContours("A").withOutContours("B"), Zone.fromInContours("B").withOutContours("A")))
+    val shadedZones = List(Zone.fromInContours("A", "B"), Zone.fromOutContours("A", "B"))
+    val sd = SpiderDiagrams.createPrimarySD(List("s1", "s2"), habitats, shadedZones, null)
+    assertEquals(sd, Translations.termToSpiderDiagram(SpiderDiagramTerms.toTerm(sd)))
+  }
+}
+
+object SpiderDiagramTermsTest {
+
+  val BOOL_TYPE = Type("HOL.bool", List())
+  val EX_TYPE = Type("fun", List(Type("fun", List(HOL_SET_ELEMENT_TYPE, BOOL_TYPE)), BOOL_TYPE))
+
+  def contour(name: String): Term = Free(name, HOL_SET_TYPE)
+
+  def region(zones: Zone*): Region = new Region(seqAsJavaList(zones))
+}
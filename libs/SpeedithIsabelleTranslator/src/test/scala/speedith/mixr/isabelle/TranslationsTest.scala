@@ -3,10 +3,13 @@ package speedith.mixr.isabelle
 import org.junit.Test
 import java.io.{LineNumberReader, InputStreamReader}
 import java.nio.charset.Charset
-import isabelle.Term.Term
+import isabelle.Term._
 import mixr.isabelle.pure.lib.TermYXML
-import org.junit.Assert.assertTrue
-import speedith.core.lang.{SpiderDiagram, CompoundSpiderDiagram}
+import org.junit.Assert.{assertEquals, assertFalse, assertTrue}
+import speedith.core.lang._
+import speedith.core.lang.reader.ReadingException
+import mixr.isabelle.pure.lib.TermUtils
+import scala.collection.JavaConversions._
 import TranslationsTest._
 
 class TranslationsTest {
@@ -16,6 +19,31 @@ class TranslationsTest {
     val spiderDiagram = translateSpiderDiagramFromIsaTerm(YXML_FILE_SPIDER_DIAGRAM_AB_WITH_SPIDERS)
     assertTrue(spiderDiagram.isInstanceOf[CompoundSpiderDiagram])
   }
+
+  @Test
+  def isPossiblySpiderDiagram_must_accept_spider_diagrams(): Unit = {
+    assertTrue(Translations.isPossiblySpiderDiagram(parseYXMLFile(YXML_FILE_SPIDER_DIAGRAM_AB_WITH_SPIDERS)))
+  }
+
+  @Test
+  def isPossiblySpiderDiagram_must_reject_terms_with_non_SNF_connectives(): Unit = {
+    assertFalse(Translations.isPossiblySpiderDiagram(NON_SNF_TERM))
+  }
+
+  @Test(expected = classOf[ReadingException])
+  def termToSpiderDiagram_must_reject_terms_with_non_SNF_connectives(): Unit = {
+    Translations.termToSpiderDiagram(NON_SNF_TERM)
+  }
+
+  @Test
+  def termToSpiderDiagram_must_translate_diagrams_with_many_spiders_and_contours(): Unit = {
+    val contours = (1 to 10).map("C" + _)
+    def zone(inContours: String*): Zone = new Zone(seqAsJavaList(inContours), seqAsJavaList(contours.filterNot(inContours.contains)))
+    val spiders = (1 to 4).map("s" + _)
+    val habitats = spiders.indices.map(i => spiders(i) -> new Region(seqAsJavaList(List(zone(contours(i)), zone(contours(i), contours(i + 1)))))).toMap
+    val spiderDiagram = SpiderDiagrams.createPrimarySD(spiders, habitats, null, null)
+    assertEquals(spiderDiagram, Translations.termToSpiderDiagram(SpiderDiagramTerms.toTerm(spiderDiagram)))
+  }
 }
 
 object TranslationsTest {
@@ -24,6 +52,16 @@ object TranslationsTest {
    * (∃s1 s2. distinct[s1, s2] ∧ s1 ∈ A ∩ B ∧ s2 ∈ (A - B) ∪ (B - A)) ⟶ (∃t1 t2. distinct[t1, t2] ∧ t1 ∈ A ∧ t2 ∈ B) ∧ (A ∩ B) ≠ {}
    */
   val YXML_FILE_SPIDER_DIAGRAM_AB_WITH_SPIDERS = "/speedith/mixr/isabelle/UnescapedYXML_spider_diagram_AB_with_spiders"
+  /**
+   * Trueprop (P ∧ ¬Q), where `P` and `Q` are boolean variables.
+   */
+  val NON_SNF_TERM = {
+    val bool = Type("HOL.bool", List())
+    val binaryConnective = Type("fun", List(bool, Type("fun", List(bool, bool))))
+    App(Const(TermUtils.HOL_TRUEPROP, Type("fun", List(bool, Type("prop", List())))),
+      App(App(Const(TermUtils.HOL_CONJUNCTION, binaryConnective), Free("P", bool)),
+        App(Const(TermUtils.HOL_NOT, Type("fun", List(bool, bool))), Free("Q", bool))))
+  }
   /**
    * (∃s1 s2. distinct[s1, s2] ∧ s1 ∈ A ∩ B ∧ s2 ∈ (A - B) ∪ (B - A) ∧ A ⊆ {s1, s2}) ⟶ (∃t1 t2. distinct[t1, t2] ∧ t1 ∈ A ∧ t2 ∈ B) ∧ (A ∩ B) ≠ {}
    */